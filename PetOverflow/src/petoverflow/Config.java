@@ -16,4 +16,132 @@ public class Config {
 	 */
 	public static final boolean CREATE_INITIAL_DB = true;
 
+	/**
+	 * The storage the DAOs use. Derby keeps the data in an embedded database,
+	 * Memory keeps it in the heap of the server, see MEMORY_SNAPSHOT_FILE.
+	 */
+	public static final DaoBackend DAO_BACKEND = DaoBackend.Derby;
+
+	/**
+	 * The file the in-memory backend loads its data from on startup and saves
+	 * it to on shutdown. null keeps the data only while the server runs.
+	 */
+	public static final String MEMORY_SNAPSHOT_FILE = null;
+
+	/**
+	 * When enabled, the Derby databases are kept in memory instead of on disk,
+	 * so queries never wait for disk I/O. See DERBY_SNAPSHOT_DIR for keeping
+	 * the data between runs.
+	 */
+	public static final boolean DERBY_IN_MEMORY = false;
+
+	/**
+	 * The directory in-memory Derby databases are restored from on startup and
+	 * checkpointed to while the server runs. null keeps the data only while
+	 * the server runs.
+	 */
+	public static final String DERBY_SNAPSHOT_DIR = null;
+
+	/**
+	 * Milliseconds between two checkpoints of an in-memory Derby database to
+	 * DERBY_SNAPSHOT_DIR. A last checkpoint is always taken on shutdown. 0
+	 * checkpoints only on shutdown.
+	 */
+	public static final long DERBY_CHECKPOINT_INTERVAL_MS = 60000;
+
+	/**
+	 * The number of database connections that are opened on startup and kept
+	 * open by the connection pool, even when they are idle.
+	 */
+	public static final int DB_POOL_MIN_SIZE = 2;
+
+	/**
+	 * The maximal number of database connections that can be open at the same
+	 * time. Requests beyond that wait for a connection to be returned.
+	 */
+	public static final int DB_POOL_MAX_SIZE = 20;
+
+	/**
+	 * Milliseconds a request waits for a free database connection before it
+	 * fails.
+	 */
+	public static final long DB_POOL_ACQUIRE_TIMEOUT_MS = 5000;
+
+	/**
+	 * Milliseconds a database connection may be held before it is reported as
+	 * leaked. 0 disables leak detection.
+	 */
+	public static final long DB_POOL_LEAK_THRESHOLD_MS = 30000;
+
+	/**
+	 * The number of prepared statements cached by each pooled database
+	 * connection. 0 disables statement caching.
+	 */
+	public static final int DB_STATEMENT_CACHE_SIZE = 64;
+
+	/**
+	 * Milliseconds between two checks of the values the DAOs store derived
+	 * from other data, such as vote counts. Values that drifted are repaired.
+	 * 0 disables the checks.
+	 */
+	public static final long RECONCILE_INTERVAL_MS = 60 * 60 * 1000;
+
+	/**
+	 * When enabled, all the values the DAOs store derived from other data are
+	 * recalculated in bulk once the server starts, and the drifted ones are
+	 * repaired. The server serves requests meanwhile.
+	 */
+	public static final boolean RECOMPUTE_ON_STARTUP = false;
+
+	/**
+	 * The number of threads that read the data of a recalculation, 0 for the
+	 * number of processors. At most half of the connection pool is used.
+	 */
+	public static final int RECOMPUTE_PARALLELISM = 0;
+
+	/**
+	 * The number of question ids each thread of a recalculation reads at once
+	 */
+	public static final int RECOMPUTE_RANGE_SIZE = 1000;
+
+	/**
+	 * The number of rows a recalculation repairs in each transaction
+	 */
+	public static final int RECOMPUTE_BATCH_SIZE = 500;
+
+	/**
+	 * The weight of a question's rating in its search score, which is added
+	 * to the relevance of the question's text to the query: the best rated
+	 * result gains this fraction of the highest relevance of the results. 0
+	 * ranks search results by relevance only.
+	 */
+	public static final double SEARCH_RATING_WEIGHT = 0.5;
+
+	/**
+	 * How much a word of an answer counts when the answer's question is
+	 * searched, relative to a word of the question itself
+	 */
+	public static final double SEARCH_ANSWER_WEIGHT = 0.5;
+
+	/**
+	 * The milliseconds a search may spend on correcting misspelled words. 0
+	 * disables the correction.
+	 */
+	public static final long SEARCH_TYPO_BUDGET_MS = 20;
+
+	/**
+	 * When enabled, the DAOs load the whole row of a question, answer or user
+	 * in the query that finds it, and the getters read from that snapshot.
+	 * When disabled, items hold only their id and every getter queries the
+	 * database.
+	 */
+	public static final boolean HYDRATE_ENTITIES = true;
+
+	/**
+	 * The storage backends of the DAOs
+	 */
+	public enum DaoBackend {
+		Derby, Memory
+	}
+
 }
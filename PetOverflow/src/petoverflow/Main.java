@@ -1,11 +1,19 @@
 package petoverflow;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import petoverflow.Config.DaoBackend;
+import petoverflow.dao.DaoManager;
 import petoverflow.dao.UserDao;
 import petoverflow.dao.derby.DaoManagerDerby;
-import petoverflow.dao.derby.DerbyUtils;
+import petoverflow.dao.memory.DaoManagerMemory;
+import petoverflow.dao.utility.RecomputeReport;
 
 /**
  * This class is used to initiate multiple things.
@@ -16,6 +24,11 @@ import petoverflow.dao.derby.DerbyUtils;
  */
 public class Main implements ServletContextListener {
 
+	/**
+	 * Runs the periodic reconciliation of the DAOs, null if it is disabled
+	 */
+	private ScheduledExecutorService m_reconciler;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -27,11 +40,16 @@ public class Main implements ServletContextListener {
 	public void contextInitialized(ServletContextEvent ev) {
 		System.out.println("Initializing server");
 		try {
-			DaoManagerDerby.init();
-			UserDao userDao = DaoManagerDerby.getInstance().getUserDao();
+			if (Config.DAO_BACKEND == DaoBackend.Memory) {
+				DaoManagerMemory.init();
+			} else {
+				DaoManagerDerby.init();
+			}
+			UserDao userDao = DaoManager.getInstance().getUserDao();
 			if (Config.CREATE_INITIAL_DB && userDao.isEmpty()) {
 				SampleDbInitiator.run();
 			}
+			scheduleReconcile();
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -47,7 +65,70 @@ public class Main implements ServletContextListener {
 	@Override
 	public void contextDestroyed(ServletContextEvent ev) {
 		System.out.println("Destroying server");
-		DerbyUtils.shutdown();
+		if (m_reconciler != null) {
+			// Let a running reconciliation finish before the DAOs are released
+			m_reconciler.shutdown();
+			try {
+				m_reconciler.awaitTermination(Config.DB_POOL_ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			DaoManager.getInstance().shutdown();
+		} catch (IllegalStateException e) {
+			// The server failed to initialize, there is nothing to release
+		}
+	}
+
+	/**
+	 * Recalculate the values of the DAOs once if RECOMPUTE_ON_STARTUP is
+	 * enabled, and reconcile them every RECONCILE_INTERVAL_MS
+	 */
+	private void scheduleReconcile() {
+		if (Config.RECONCILE_INTERVAL_MS <= 0 && !Config.RECOMPUTE_ON_STARTUP) {
+			return;
+		}
+		m_reconciler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "dao-reconcile");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		if (Config.RECOMPUTE_ON_STARTUP) {
+			m_reconciler.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						RecomputeReport report = DaoManager.getInstance().recompute();
+						System.out.println("Recomputed the DAOs: " + report);
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+		if (Config.RECONCILE_INTERVAL_MS <= 0) {
+			return;
+		}
+		m_reconciler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					long start = System.currentTimeMillis();
+					int repaired = DaoManager.getInstance().reconcile();
+					System.out.println("Reconciled the DAOs in " + (System.currentTimeMillis() - start) + "ms, "
+							+ repaired + " items repaired");
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}, Config.RECONCILE_INTERVAL_MS, Config.RECONCILE_INTERVAL_MS, TimeUnit.MILLISECONDS);
 	}
 
 }
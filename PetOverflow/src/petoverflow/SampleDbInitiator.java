@@ -9,7 +9,6 @@ import petoverflow.dao.DaoManager;
 import petoverflow.dao.QuestionDao;
 import petoverflow.dao.QuestionVoteDao;
 import petoverflow.dao.UserDao;
-import petoverflow.dao.derby.DaoManagerDerby;
 import petoverflow.dao.items.Answer;
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.User;
@@ -149,18 +148,24 @@ public class SampleDbInitiator {
 
 	public static void run() {
 		try {
-			DaoManager m_daoManager = DaoManagerDerby.getInstance();
+			DaoManager m_daoManager = DaoManager.getInstance();
 			m_userDao = m_daoManager.getUserDao();
 			m_questionDao = m_daoManager.getQuestionDao();
 			m_answerDao = m_daoManager.getAnswerDao();
 			m_questionVoteDao = m_daoManager.getQuestionVoteDao();
 			m_answerVoteDao = m_daoManager.getAnswerVoteDao();
 
-			initiateUsers();
-			initiateQuestion1();
-			initiateQuestion2();
-			initiateQuestion3();
-			initiateUnanswered();
+			m_daoManager.beginWork();
+			try {
+				initiateUsers();
+				initiateQuestion1();
+				initiateQuestion2();
+				initiateQuestion3();
+				initiateUnanswered();
+				m_daoManager.commitWork();
+			} finally {
+				m_daoManager.endWork();
+			}
 
 		} catch (Exception e) {
 			e.printStackTrace();
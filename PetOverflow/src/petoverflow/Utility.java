@@ -5,6 +5,7 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -49,6 +50,22 @@ public class Utility {
 		return list.subList(offset, Math.min(list.size(), offset + size));
 	}
 
+	/**
+	 * Copy a collection of integers to an array
+	 * 
+	 * @param values
+	 *            the integers
+	 * @return an array of the integers, in the collection's iteration order
+	 */
+	public static int[] toIntArray(Collection<Integer> values) {
+		int[] array = new int[values.size()];
+		int i = 0;
+		for (Integer value : values) {
+			array[i++] = value;
+		}
+		return array;
+	}
+
 	/**
 	 * Sorts a list, so that the highest rated elements are <b>first</b>
 	 * 
@@ -141,37 +158,6 @@ public class Utility {
 		});
 	}
 
-	/**
-	 * Divides the given text into words, using the space character.
-	 * 
-	 * @param text The text to divide
-	 * @return All the different words in the text
-	 */
-	public static List<String> breakToWords(String text) {
-		if (text == null) {
-			throw new IllegalArgumentException("text can't be null");
-		}
-
-		List<String> words = new ArrayList<String>();
-		int spaceIndex = text.indexOf(' ');
-		while (spaceIndex >= 0) {
-			int nextSpaceIndex = text.substring(spaceIndex + 1).indexOf(' ');
-
-			if (nextSpaceIndex > 0) {
-				String word = text.substring(spaceIndex + 1, spaceIndex + nextSpaceIndex + 1);
-				words.add(word);
-			}
-
-			text = text.substring(spaceIndex + 1);
-			spaceIndex = text.indexOf(' ');
-		}
-		if (text.length() > 0) {
-			words.add(text);
-		}
-
-		return words;
-	}
-
 	/**
 	 * Send a SMS to a phone number
 	 * 
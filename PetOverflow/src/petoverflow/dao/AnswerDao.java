@@ -2,6 +2,7 @@ package petoverflow.dao;
 
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 
 import petoverflow.dao.items.Answer;
 import petoverflow.dao.items.Question;
@@ -50,6 +51,17 @@ public interface AnswerDao {
 	 */
 	public Answer getAnswer(int answerId) throws Exception;
 
+	/**
+	 * Get many answers by their ids at once. The answers are hydrated.
+	 * 
+	 * @param answerIds
+	 *            the answers' ids
+	 * @return the existing answers, in the order of the ids
+	 * @throws Exception
+	 *             if fail
+	 */
+	public List<Answer> getAnswers(int[] answerIds) throws Exception;
+
 	/**
 	 * Get a text of an answer
 	 * 
@@ -103,7 +115,8 @@ public interface AnswerDao {
 	 *            the wanted size of the list
 	 * @param offset
 	 *            the wanted offset of the total list
-	 * @return a sub list of the list of the answers the user published
+	 * @return a sub list of the list of the answers the user published, newest
+	 *         first
 	 * @throws Exception
 	 *             if fail
 	 */
@@ -120,6 +133,18 @@ public interface AnswerDao {
 	 */
 	public List<Answer> getAnswersByAuthorAll(int authorId) throws Exception;
 
+	/**
+	 * Get all answers by many users at once. The answers are hydrated.
+	 * 
+	 * @param authorIds
+	 *            the users' ids
+	 * @return the answers of each user, by the user's id. Every requested id
+	 *         is mapped, to an empty list if the user has no answers.
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<Integer, List<Answer>> getAnswersByAuthors(int[] authorIds) throws Exception;
+
 	/**
 	 * Get answers to a specific question in range [offset, offset + size)
 	 * 
@@ -129,7 +154,8 @@ public interface AnswerDao {
 	 *            the wanted size of the list
 	 * @param offset
 	 *            the wanted offset of the total list
-	 * @return a sub list of the list of all answers to the question
+	 * @return a sub list of the list of all answers to the question, best
+	 *         rated first
 	 * @throws Exception
 	 *             if fail
 	 */
@@ -146,4 +172,17 @@ public interface AnswerDao {
 	 */
 	public List<Answer> getQuestionAnswersAll(int questionId) throws Exception;
 
+	/**
+	 * Get all answers to many questions at once. The answers are hydrated.
+	 * 
+	 * @param questionIds
+	 *            the questions' ids
+	 * @return the answers to each question ordered by id, by the question's
+	 *         id. Every requested id is mapped, to an empty list if the
+	 *         question has no answers.
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<Integer, List<Answer>> getAnswersForQuestions(int[] questionIds) throws Exception;
+
 }
@@ -1,6 +1,7 @@
 package petoverflow.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import petoverflow.dao.items.Vote;
 
@@ -46,7 +47,21 @@ public interface AnswerVoteDao {
 	public List<Vote> getAnswerVotes(int answerId) throws Exception;
 
 	/**
-	 * Get the best answer to this question
+	 * Get all votes to many answers at once
+	 * 
+	 * @param answerIds
+	 *            the answers' ids
+	 * @return the votes to each answer, by the answer's id. Every requested id
+	 *         is mapped, to an empty list if the answer has no votes.
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<Integer, List<Vote>> getVotesForAnswers(int[] answerIds) throws Exception;
+
+	/**
+	 * Get the best answer to this question: the answer with the highest net
+	 * vote count, the earliest of the tied ones. The best answer is stored
+	 * with the question and kept up to date on every answer and answer vote.
 	 * 
 	 * @param questionId
 	 *            the question id
@@ -57,4 +72,40 @@ public interface AnswerVoteDao {
 	 */
 	public Integer getBestAnswerForQuestion(int questionId) throws Exception;
 
+	/**
+	 * Get the best answers to many questions at once
+	 * 
+	 * @param questionIds
+	 *            the questions' ids
+	 * @return the id of the best answer of each question, by the question's
+	 *         id. Questions without answers aren't mapped.
+	 * @throws Exception
+	 *             if fail
+	 * @see #getBestAnswerForQuestion(int)
+	 */
+	public Map<Integer, Integer> getBestAnswersForQuestions(int[] questionIds) throws Exception;
+
+	/**
+	 * Get the net vote count of an answer, the number of up votes minus the
+	 * number of down votes. The counts are stored with the answer, so this
+	 * doesn't read the votes.
+	 * 
+	 * @param answerId
+	 *            the answer's id
+	 * @return the net vote count of the answer
+	 * @throws Exception
+	 *             if fail
+	 */
+	public int getVoteCount(int answerId) throws Exception;
+
+	/**
+	 * Recount the stored vote counts of all answers from their votes, and
+	 * repair the ones that are wrong
+	 * 
+	 * @return the number of answers that were repaired
+	 * @throws Exception
+	 *             if fail
+	 */
+	public int reconcileVoteCounts() throws Exception;
+
 }
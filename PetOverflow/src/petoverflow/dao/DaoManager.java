@@ -1,5 +1,7 @@
 package petoverflow.dao;
 
+import petoverflow.dao.utility.RecomputeReport;
+
 /**
  * The DaoManager class used to manage all DAO objects. It's contains all sub
  * DAO objects. This class is singleton.
@@ -55,4 +57,80 @@ public abstract class DaoManager {
 		return m_topicDao;
 	}
 
+	/**
+	 * Begin a unit of work on the current thread. DAO calls until the
+	 * matching {@link #endWork()} may share one connection and transaction.
+	 * Units of work can be nested, only the outermost one commits.
+	 */
+	public void beginWork() {
+	}
+
+	/**
+	 * Commit the current unit of work
+	 * 
+	 * @throws Exception
+	 *             if the commit fails
+	 */
+	public void commitWork() throws Exception {
+	}
+
+	/**
+	 * End the current unit of work, rolling it back if it wasn't committed
+	 */
+	public void endWork() {
+	}
+
+	/**
+	 * Check whether the current unit of work failed because it deadlocked
+	 * with another one. Its changes were rolled back, so it can be run again.
+	 * 
+	 * @return true if the current unit of work deadlocked, else - false
+	 */
+	public boolean isWorkDeadlocked() {
+		return false;
+	}
+
+	/**
+	 * Check the values the DAOs store derived from other data, such as the
+	 * vote counts and ratings of questions, answers, users and topics, and
+	 * repair the ones that drifted
+	 * 
+	 * @return the number of repaired items
+	 * @throws Exception
+	 *             if a DAO fails
+	 */
+	public int reconcile() throws Exception {
+		int repaired = m_questionVoteDao.reconcileVoteCounts() + m_answerVoteDao.reconcileVoteCounts();
+		repaired += m_questionDao.reconcileRatings();
+		repaired += m_userDao.reconcileRatings();
+		repaired += m_topicDao.reconcileRatings();
+		return repaired;
+	}
+
+	/**
+	 * Recalculate all the values the DAOs store derived from other data, and
+	 * repair the ones that drifted. Unlike {@link #reconcile()} the whole
+	 * data is read in bulk, which suits a full check such as on startup or
+	 * after a restore.
+	 * 
+	 * @return the report of the recalculation
+	 * @throws Exception
+	 *             if a DAO fails
+	 */
+	public RecomputeReport recompute() throws Exception {
+		long start = System.currentTimeMillis();
+		RecomputeReport report = new RecomputeReport();
+		int repaired = reconcile();
+		report.addDrift("reconciled values", repaired);
+		report.addWritten(repaired);
+		report.setDurationMs(System.currentTimeMillis() - start);
+		return report;
+	}
+
+	/**
+	 * Release the resources of the DAOs when the server stops
+	 */
+	public void shutdown() {
+	}
+
 }
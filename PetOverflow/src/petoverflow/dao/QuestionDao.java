@@ -2,9 +2,11 @@ package petoverflow.dao;
 
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.User;
+import petoverflow.dao.utility.Page;
 
 /**
  * The QuestionDao interface provide a set of methods that allow reading and
@@ -49,6 +51,17 @@ public interface QuestionDao {
 	 */
 	public Question getQuestion(int questionId) throws Exception;
 
+	/**
+	 * Get many questions by their ids at once. The questions are hydrated.
+	 * 
+	 * @param questionIds
+	 *            the questions' ids
+	 * @return the existing questions, in the order of the ids
+	 * @throws Exception
+	 *             if fail
+	 */
+	public List<Question> getQuestions(int[] questionIds) throws Exception;
+
 	/**
 	 * Get the text of a question
 	 * 
@@ -82,6 +95,31 @@ public interface QuestionDao {
 	 */
 	public Timestamp getQuestionTimestamp(int questionId) throws Exception;
 
+	/**
+	 * Get the rating of a question. The rating is stored with the question and
+	 * kept up to date on every vote and answer, so this doesn't read the
+	 * answers or the votes.
+	 * 
+	 * @param questionId
+	 *            the question's id
+	 * @return the rating of the question
+	 * @throws Exception
+	 *             if fail
+	 * @see Question#getRating()
+	 */
+	public double getQuestionRating(int questionId) throws Exception;
+
+	/**
+	 * Get the ratings of many questions at once
+	 * 
+	 * @param questionIds
+	 *            the questions' ids
+	 * @return the rating of each existing question, by the question's id
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<Integer, Double> getQuestionRatings(int[] questionIds) throws Exception;
+
 	/**
 	 * Get questions by a specific user in range [offset, offset + size)
 	 * 
@@ -91,7 +129,8 @@ public interface QuestionDao {
 	 *            the wanted size of the list
 	 * @param offset
 	 *            the wanted offset of the total list
-	 * @return a sub list of the list of all questions published by the user
+	 * @return a sub list of the list of all questions published by the user,
+	 *         newest first
 	 * @throws Exception
 	 *             if fail
 	 */
@@ -108,6 +147,18 @@ public interface QuestionDao {
 	 */
 	public List<Question> getQuestionsByAuthorAll(int authorId) throws Exception;
 
+	/**
+	 * Get all questions by many users at once. The questions are hydrated.
+	 * 
+	 * @param authorIds
+	 *            the users' ids
+	 * @return the questions of each user, by the user's id. Every requested id
+	 *         is mapped, to an empty list if the user has no questions.
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<Integer, List<Question>> getQuestionsByAuthors(int[] authorIds) throws Exception;
+
 	/**
 	 * Get the newest questions list
 	 * 
@@ -115,12 +166,30 @@ public interface QuestionDao {
 	 *            the wanted size of the list
 	 * @param offset
 	 *            the wanted offset of the total list
-	 * @return a list of the newest questions
+	 * @return a list of the newest questions that have no answers yet, newest
+	 *         first
 	 * @throws Exception
 	 *             if fail
 	 */
 	public List<Question> getNewestQuestions(int size, int offset) throws Exception;
 
+	/**
+	 * Get a page of the newest questions that have no answers yet, newest
+	 * first. Every page costs the same, no matter how deep it is.
+	 * 
+	 * @param size
+	 *            the wanted size of the page
+	 * @param cursor
+	 *            the token of the page, as returned with the previous page.
+	 *            Null or empty for the first page.
+	 * @return the page, and the token of the next page
+	 * @throws IllegalArgumentException
+	 *             if the cursor is malformed
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Page<Question> getNewestQuestions(int size, String cursor) throws Exception;
+
 	/**
 	 * Get the best questions list
 	 * 
@@ -128,14 +197,35 @@ public interface QuestionDao {
 	 *            the wanted size of the list
 	 * @param offset
 	 *            the wanted offset of the total list
-	 * @return a list of the best questions
+	 * @return a list of the best questions, best rated first
 	 * @throws Exception
 	 *             if fail
 	 */
 	public List<Question> getBestQuestions(int size, int offset) throws Exception;
+
+	/**
+	 * Get a page of the best questions, best rated first. Every page costs the
+	 * same, no matter how deep it is.
+	 * 
+	 * @param size
+	 *            the wanted size of the page
+	 * @param cursor
+	 *            the token of the page, as returned with the previous page.
+	 *            Null or empty for the first page.
+	 * @return the page, and the token of the next page
+	 * @throws IllegalArgumentException
+	 *             if the cursor is malformed
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Page<Question> getBestQuestions(int size, String cursor) throws Exception;
 	
 	/**
-	 * Find questions with the given text
+	 * Find questions with the given text. A question matches if its text or
+	 * the text of its answers contains every word of the given text, ignoring
+	 * case and punctuation. A word that no question contains matches the
+	 * words that are a typo or two away from it. The questions are ordered by
+	 * the relevance of their text to the given text, and by rating.
 	 * 
 	 * @param text To search inside questions
 	 * @param size The number of questions to return
@@ -145,4 +235,17 @@ public interface QuestionDao {
 	 */
 	public List<Question> searchQuestion(String text, int size, int offset) throws Exception;
 
+	/**
+	 * Recalculate the stored answer counts, ratings and best answers of all
+	 * questions, and repair the ones that are wrong. The vote counts the ratings are
+	 * calculated from should be reconciled first.
+	 * 
+	 * @return the number of repaired values
+	 * @throws Exception
+	 *             if fail
+	 * @see QuestionVoteDao#reconcileVoteCounts()
+	 * @see AnswerVoteDao#reconcileVoteCounts()
+	 */
+	public int reconcileRatings() throws Exception;
+
 }
@@ -1,6 +1,7 @@
 package petoverflow.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import petoverflow.dao.items.Vote;
 
@@ -45,4 +46,40 @@ public interface QuestionVoteDao {
 	 */
 	public List<Vote> getQuestionVotes(int questionId) throws Exception;
 
+	/**
+	 * Get all votes to many questions at once
+	 * 
+	 * @param questionIds
+	 *            the questions' ids
+	 * @return the votes to each question, by the question's id. Every
+	 *         requested id is mapped, to an empty list if the question has no
+	 *         votes.
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<Integer, List<Vote>> getVotesForQuestions(int[] questionIds) throws Exception;
+
+	/**
+	 * Get the net vote count of a question, the number of up votes minus the
+	 * number of down votes. The counts are stored with the question, so this
+	 * doesn't read the votes.
+	 * 
+	 * @param questionId
+	 *            the question's id
+	 * @return the net vote count of the question
+	 * @throws Exception
+	 *             if fail
+	 */
+	public int getVoteCount(int questionId) throws Exception;
+
+	/**
+	 * Recount the stored vote counts of all questions from their votes, and
+	 * repair the ones that are wrong
+	 * 
+	 * @return the number of questions that were repaired
+	 * @throws Exception
+	 *             if fail
+	 */
+	public int reconcileVoteCounts() throws Exception;
+
 }
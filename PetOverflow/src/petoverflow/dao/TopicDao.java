@@ -1,9 +1,11 @@
 package petoverflow.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.Topic;
+import petoverflow.dao.utility.Page;
 
 /**
  * The TopicDao interface provide a set of methods that show the connections
@@ -12,16 +14,30 @@ import petoverflow.dao.items.Topic;
 public interface TopicDao {
 
 	/**
-	 * Get a rating of a topic
+	 * Get a rating of a topic. The rating is stored with the topic and kept up
+	 * to date whenever the rating of one of its questions changes, so this
+	 * doesn't read the topic's questions.
 	 * 
 	 * @param topicName
 	 *            the topic name
-	 * @return the topic's rating
+	 * @return the topic's rating, 0 if the topic has no questions
 	 * @throws Exception
 	 *             if fail
 	 */
 	public double getTopicRating(String topicName) throws Exception;
 
+	/**
+	 * Get the ratings of many topics at once
+	 * 
+	 * @param topics
+	 *            the topics' names
+	 * @return the rating of each topic, by the topic's name. Every requested
+	 *         topic is mapped, to 0 if it has no questions.
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<String, Double> getTopicRatings(List<String> topics) throws Exception;
+
 	/**
 	 * Get all topics of a specific question
 	 * 
@@ -33,6 +49,19 @@ public interface TopicDao {
 	 */
 	public List<Topic> getQuestionTopics(int questionId) throws Exception;
 
+	/**
+	 * Get the topics of many questions at once
+	 * 
+	 * @param questionIds
+	 *            the questions' ids
+	 * @return the topics of each question, by the question's id. Every
+	 *         requested id is mapped, to an empty list if the question has no
+	 *         topics.
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<Integer, List<Topic>> getTopicsForQuestions(int[] questionIds) throws Exception;
+
 	/**
 	 * Set topics to a question
 	 * 
@@ -77,6 +106,19 @@ public interface TopicDao {
 	 */
 	public List<Question> getQuestionsByTopicAll(String topic) throws Exception;
 
+	/**
+	 * Get all questions of many topics at once
+	 * 
+	 * @param topics
+	 *            the topics' names
+	 * @return the questions of each topic, by the topic's name. Every
+	 *         requested topic is mapped, to an empty list if it has no
+	 *         questions.
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<String, List<Question>> getQuestionsByTopics(List<String> topics) throws Exception;
+
 	/**
 	 * Get list of popular topics in range [offset, offset + size)
 	 * 
@@ -107,7 +149,31 @@ public interface TopicDao {
 	public List<Question> getBestQuestionsByTopic(String topic, int size, int offset) throws Exception;
 
 	/**
-	 * Find topics with the given text
+	 * Get a page of the best questions in a topic, best rated first. Every
+	 * page costs the same, no matter how deep it is.
+	 * 
+	 * @param topic
+	 *            the topic name
+	 * @param size
+	 *            the wanted size
+	 * @param cursor
+	 *            the token of the page, as returned with the previous page.
+	 *            Null or empty for the first page.
+	 * @return the page, and the token of the next page
+	 * @throws IllegalArgumentException
+	 *             if the cursor is malformed
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Page<Question> getBestQuestionsByTopic(String topic, int size, String cursor) throws Exception;
+
+	/**
+	 * Find topics with the given text. A topic matches if each word of the
+	 * given text is a part of a word of its name, ignoring case and plurals.
+	 * If no topic matches, misspelled words are corrected to the nearest word
+	 * of a topic's name, or of a capitalized part of one, such as "grey" of
+	 * "AfricanGrey", and the search is repeated. Parts of a name that aren't
+	 * capitalized, such as "grey" of "Africangrey", aren't corrected to.
 	 * 
 	 * @param text To search inside topics
 	 * @param size The number of topics to return
@@ -117,4 +183,16 @@ public interface TopicDao {
 	 */
 	public List<Topic> searchTopics(String text, int size, int offset) throws Exception;
 
+	/**
+	 * Recalculate the stored question counts and ratings of all topics, and
+	 * repair the ones that are wrong. The ratings of the questions the topic
+	 * ratings are calculated from should be reconciled first.
+	 * 
+	 * @return the number of repaired values
+	 * @throws Exception
+	 *             if fail
+	 * @see QuestionDao#reconcileRatings()
+	 */
+	public int reconcileRatings() throws Exception;
+
 }
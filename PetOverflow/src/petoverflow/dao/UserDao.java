@@ -1,9 +1,11 @@
 package petoverflow.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import petoverflow.dao.items.Topic;
 import petoverflow.dao.items.User;
+import petoverflow.dao.utility.Page;
 
 /**
  * The UserDao interface provide a set of methods to manage, read and create new
@@ -85,6 +87,17 @@ public interface UserDao {
 	 */
 	public User getUser(String username) throws Exception;
 
+	/**
+	 * Get many users by their ids at once. The users are hydrated.
+	 * 
+	 * @param userIds
+	 *            the users' ids
+	 * @return the existing users, in the order of the ids
+	 * @throws Exception
+	 *             if fail
+	 */
+	public List<User> getUsers(int[] userIds) throws Exception;
+
 	/**
 	 * Get a user's username
 	 * 
@@ -150,7 +163,35 @@ public interface UserDao {
 	public boolean getUserWantsSms(int userId) throws Exception;
 
 	/**
-	 * Get a list of the best topics of a user
+	 * Get the rating of a user. The rating is stored with the user and kept up
+	 * to date on every vote, answer and question, so this doesn't read the
+	 * user's questions and answers.
+	 * 
+	 * @param userId
+	 *            the user's id
+	 * @return the rating of the user
+	 * @throws Exception
+	 *             if fail
+	 * @see User#getRating()
+	 */
+	public double getUserRating(int userId) throws Exception;
+
+	/**
+	 * Get the ratings of many users at once
+	 * 
+	 * @param userIds
+	 *            the users' ids
+	 * @return the rating of each existing user, by the user's id
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Map<Integer, Double> getUserRatings(int[] userIds) throws Exception;
+
+	/**
+	 * Get a list of the best topics of a user: the topics of the questions the
+	 * user answered, by the sum of the net votes of the user's answers in each
+	 * topic, highest first and by name on ties. The sums are stored and kept
+	 * up to date on every answer and answer vote.
 	 * 
 	 * @param userId
 	 *            the user's id
@@ -162,6 +203,20 @@ public interface UserDao {
 	 */
 	public List<Topic> getUserBestTopics(int userId, int size) throws Exception;
 
+	/**
+	 * Get the best topics of many users at once
+	 * 
+	 * @param userIds
+	 *            the users' ids
+	 * @param size
+	 *            the wanted size of each user's list
+	 * @return the best topics of each user, by the user's id
+	 * @throws Exception
+	 *             if fail
+	 * @see #getUserBestTopics(int, int)
+	 */
+	public Map<Integer, List<Topic>> getUsersBestTopics(int[] userIds, int size) throws Exception;
+
 	/**
 	 * Set a user's password to a new one
 	 * 
@@ -235,6 +290,23 @@ public interface UserDao {
 	 */
 	public List<User> getMostRatedUsers(int size, int offset) throws Exception;
 
+	/**
+	 * Get a page of the users with the highest rating, best rated first.
+	 * Every page costs the same, no matter how deep it is.
+	 * 
+	 * @param size
+	 *            the length of the requested page
+	 * @param cursor
+	 *            the token of the page, as returned with the previous page.
+	 *            Null or empty for the first page.
+	 * @return the page, and the token of the next page
+	 * @throws IllegalArgumentException
+	 *             if the cursor is malformed
+	 * @throws Exception
+	 *             if fail
+	 */
+	public Page<User> getMostRatedUsers(int size, String cursor) throws Exception;
+
 	/**
 	 * Checks if a username and a password is authenticated
 	 * 
@@ -249,4 +321,16 @@ public interface UserDao {
 	 */
 	public Integer isAuthenticationPair(String username, String password) throws Exception;
 
+	/**
+	 * Recalculate the stored question and answer counts, rating sums, ratings
+	 * and topic scores of all users, and repair the ones that are wrong. The ratings of
+	 * the questions the sums are calculated from should be reconciled first.
+	 * 
+	 * @return the number of repaired values
+	 * @throws Exception
+	 *             if fail
+	 * @see QuestionDao#reconcileRatings()
+	 */
+	public int reconcileRatings() throws Exception;
+
 }
@@ -8,12 +8,15 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import petoverflow.Utility;
+import petoverflow.Config;
 import petoverflow.dao.AnswerDao;
 import petoverflow.dao.DaoManager;
 import petoverflow.dao.DaoObject;
+import petoverflow.dao.derby.DerbyUtils.RowHandler;
 import petoverflow.dao.items.Answer;
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.User;
@@ -29,6 +32,20 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 */
 	private static AnswerDaoDerby m_instance;
 
+	/**
+	 * The columns an answer is hydrated from. They are qualified by the table
+	 * name, so they can be selected from joins too.
+	 */
+	private static final String ANSWER_COLUMNS = DerbyUtils.qualify(DerbyConfig.ANSWER_TABLE_NAME, DerbyConfig.ID,
+			DerbyConfig.TEXT, DerbyConfig.AUTHOR_ID, DerbyConfig.QUESTION_ID, DerbyConfig.TIMESTAMP);
+
+	/**
+	 * The answers of a question, best rated first
+	 */
+	private static final String QUESTION_ANSWERS_QUERY = "SELECT " + ANSWER_COLUMNS + " FROM "
+			+ DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID + " = ? ORDER BY "
+			+ DerbyConfig.UP_VOTES + " - " + DerbyConfig.DOWN_VOTES + " DESC, " + DerbyConfig.ID;
+
 	/**
 	 * Get the single instance of this class
 	 * 
@@ -76,10 +93,55 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 */
 	@Override
 	public Answer getAnswer(int answerId) throws SQLException, NoSuchAnswerException {
-		if (!exist(answerId)) {
-			throw new NoSuchAnswerException();
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + ANSWER_COLUMNS + " FROM "
+					+ DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+			statements.add(s);
+			s.setInt(1, answerId);
+			rs = s.executeQuery();
+			if (!rs.next()) {
+				throw new NoSuchAnswerException();
+			}
+			return toAnswer(rs, Config.HYDRATE_ENTITIES);
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
 		}
-		return new Answer(getDaoManager(), answerId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswers(int[])
+	 */
+	@Override
+	public List<Answer> getAnswers(int[] answerIds) throws SQLException {
+		final HashMap<Integer, Answer> found = new HashMap<Integer, Answer>();
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + ANSWER_COLUMNS + " FROM " + DerbyConfig.ANSWER_TABLE_NAME
+				+ " WHERE " + DerbyConfig.ID + " IN ", "", answerIds, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						Answer answer = toAnswer(rs, true);
+						found.put(answer.getId(), answer);
+					}
+				});
+
+		List<Answer> answers = new ArrayList<Answer>();
+		for (int answerId : answerIds) {
+			Answer answer = found.get(answerId);
+			if (answer != null) {
+				answers.add(answer);
+			}
+		}
+		return answers;
 	}
 
 	/*
@@ -95,8 +157,8 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement(
-					"SELECT * FROM " + DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + " FROM "
+					+ DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
 			statements.add(s);
 			s.setInt(1, answerId);
 			rs = s.executeQuery();
@@ -115,13 +177,18 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 * @see petoverflow.dao.AnswerDao#createAnswer(String, int, int)
 	 */
 	@Override
-	public Answer createAnswer(String text, int authorId, int questionId) throws SQLException {
+	public Answer createAnswer(final String text, int authorId, final int questionId) throws SQLException {
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
+		// The answer is counted in its question's and its author's ratings
+		// atomically
+		DerbyUnitOfWork.begin();
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			DerbyRatings.answerAdded(conn, statements, questionId, authorId);
+
 			PreparedStatement s = conn.prepareStatement("INSERT INTO " + DerbyConfig.ANSWER_TABLE_NAME + " ("
 					+ DerbyConfig.TEXT + "," + DerbyConfig.AUTHOR_ID + "," + DerbyConfig.QUESTION_ID + ","
 					+ DerbyConfig.TIMESTAMP + ") VALUES (?, ?, ?, ?)", new String[] { DerbyConfig.ID });
@@ -137,13 +204,27 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 			if (!rs.next()) {
 				throw new SQLException("Unexpected error");
 			}
-			int id = rs.getInt(1);
+			final int id = rs.getInt(1);
+			DerbyRatings.answerInserted(conn, statements, questionId);
+
+			DerbyUnitOfWork.afterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					QuestionDaoDerby.getInstance().indexAnswer(id, questionId, text);
+				}
+			});
+			DerbyUnitOfWork.commit();
+			if (Config.HYDRATE_ENTITIES) {
+				return new Answer(getDaoManager(), id, text, authorId, questionId, now);
+			}
 			return new Answer(getDaoManager(), id);
 
 		} catch (SQLException e) {
 			throw e;
 		} finally {
 			DerbyUtils.cleanUp(rs, statements, conn);
+			DerbyUnitOfWork.end();
 		}
 	}
 
@@ -154,10 +235,6 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 */
 	@Override
 	public String getAnswerText(int answerId) throws SQLException, NoSuchAnswerException {
-		if (!exist(answerId)) {
-			throw new NoSuchAnswerException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -170,7 +247,7 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 			s.setInt(1, answerId);
 			rs = s.executeQuery();
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchAnswerException();
 			}
 			return rs.getString(DerbyConfig.TEXT);
 
@@ -188,10 +265,6 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 */
 	@Override
 	public User getAnswerAuthor(int answerId) throws Exception {
-		if (!exist(answerId)) {
-			throw new NoSuchAnswerException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -204,7 +277,7 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 			s.setInt(1, answerId);
 			rs = s.executeQuery();
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchAnswerException();
 			}
 			int userId = rs.getInt(DerbyConfig.AUTHOR_ID);
 			return getDaoManager().getUserDao().getUser(userId);
@@ -223,10 +296,6 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 */
 	@Override
 	public Question getAnswerQuestion(int answerId) throws Exception {
-		if (!exist(answerId)) {
-			throw new NoSuchAnswerException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -239,7 +308,7 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 			s.setInt(1, answerId);
 			rs = s.executeQuery();
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchAnswerException();
 			}
 			int questionId = rs.getInt(DerbyConfig.QUESTION_ID);
 			return getDaoManager().getQuestionDao().getQuestion(questionId);
@@ -258,10 +327,6 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 */
 	@Override
 	public Timestamp getAnswerTimestamp(int answerId) throws SQLException, NoSuchAnswerException {
-		if (!exist(answerId)) {
-			throw new NoSuchAnswerException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -274,7 +339,7 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 			s.setInt(1, answerId);
 			rs = s.executeQuery();
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchAnswerException();
 			}
 			return rs.getTimestamp(DerbyConfig.TIMESTAMP);
 
@@ -292,8 +357,19 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 */
 	@Override
 	public List<Answer> getAnswersByAuthor(int authorId, int size, int offset) throws SQLException {
-		List<Answer> answersByUser = getAnswersByAuthorAll(authorId);
-		return Utility.cutList(answersByUser, size, offset);
+		final List<Answer> answersByUser = new ArrayList<Answer>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME,
+				"SELECT " + ANSWER_COLUMNS + " FROM " + DerbyConfig.ANSWER_TABLE_NAME + " WHERE "
+						+ DerbyConfig.AUTHOR_ID + " = ? ORDER BY " + DerbyConfig.TIMESTAMP + " DESC, " + DerbyConfig.ID
+						+ " DESC",
+				new Object[] { authorId }, size, offset, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						answersByUser.add(toAnswer(rs, Config.HYDRATE_ENTITIES));
+					}
+				});
+		return answersByUser;
 	}
 
 	/*
@@ -308,7 +384,7 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + " FROM "
+			PreparedStatement s = conn.prepareStatement("SELECT " + ANSWER_COLUMNS + " FROM "
 					+ DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.AUTHOR_ID + " = ?");
 			statements.add(s);
 			s.setInt(1, authorId);
@@ -316,8 +392,7 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 
 			List<Answer> answersByUser = new ArrayList<Answer>();
 			while (rs.next()) {
-				int answerId = rs.getInt(DerbyConfig.ID);
-				answersByUser.add(new Answer(getDaoManager(), answerId));
+				answersByUser.add(toAnswer(rs, Config.HYDRATE_ENTITIES));
 			}
 			return answersByUser;
 
@@ -328,6 +403,16 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswersByAuthors(int[])
+	 */
+	@Override
+	public Map<Integer, List<Answer>> getAnswersByAuthors(int[] authorIds) throws SQLException {
+		return getAnswersBy(DerbyConfig.AUTHOR_ID, authorIds);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -335,8 +420,16 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 	 */
 	@Override
 	public List<Answer> getQuestionAnswers(int questionId, int size, int offset) throws SQLException {
-		List<Answer> questionAnswers = getQuestionAnswersAll(questionId);
-		return Utility.cutList(questionAnswers, size, offset);
+		final List<Answer> questionAnswers = new ArrayList<Answer>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME, QUESTION_ANSWERS_QUERY, new Object[] { questionId }, size, offset,
+				new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						questionAnswers.add(toAnswer(rs, Config.HYDRATE_ENTITIES));
+					}
+				});
+		return questionAnswers;
 	}
 
 	/*
@@ -352,19 +445,15 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + " FROM "
-					+ DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID + " = ?");
+			PreparedStatement s = conn.prepareStatement(QUESTION_ANSWERS_QUERY);
 			statements.add(s);
 			s.setInt(1, questionId);
 			rs = s.executeQuery();
 
 			List<Answer> questionAnswers = new ArrayList<Answer>();
 			while (rs.next()) {
-				int answerId = rs.getInt(DerbyConfig.ID);
-				questionAnswers.add(new Answer(getDaoManager(), answerId));
+				questionAnswers.add(toAnswer(rs, Config.HYDRATE_ENTITIES));
 			}
-
-			Utility.sortByRating(questionAnswers);
 			return questionAnswers;
 
 		} catch (SQLException e) {
@@ -374,4 +463,51 @@ public class AnswerDaoDerby extends DaoObject implements AnswerDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswersForQuestions(int[])
+	 */
+	@Override
+	public Map<Integer, List<Answer>> getAnswersForQuestions(int[] questionIds) throws SQLException {
+		return getAnswersBy(DerbyConfig.QUESTION_ID, questionIds);
+	}
+
+	/**
+	 * Get the answers of many parents at once, grouped by the parent's id
+	 * 
+	 * @param column
+	 *            the column of the parent's id
+	 * @param ids
+	 *            the parents' ids
+	 */
+	private Map<Integer, List<Answer>> getAnswersBy(final String column, int[] ids) throws SQLException {
+		final Map<Integer, List<Answer>> answersBy = new HashMap<Integer, List<Answer>>();
+		for (int id : ids) {
+			answersBy.put(id, new ArrayList<Answer>());
+		}
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + ANSWER_COLUMNS + " FROM " + DerbyConfig.ANSWER_TABLE_NAME
+				+ " WHERE " + column + " IN ", " ORDER BY " + DerbyConfig.ID, ids, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						answersBy.get(rs.getInt(column)).add(toAnswer(rs, true));
+					}
+				});
+		return answersBy;
+	}
+
+	/**
+	 * Create an answer from the current row of a result set that selected
+	 * {@link #ANSWER_COLUMNS}
+	 */
+	private Answer toAnswer(ResultSet rs, boolean hydrate) throws SQLException {
+		int id = rs.getInt(DerbyConfig.ID);
+		if (!hydrate) {
+			return new Answer(getDaoManager(), id);
+		}
+		return new Answer(getDaoManager(), id, rs.getString(DerbyConfig.TEXT), rs.getInt(DerbyConfig.AUTHOR_ID),
+				rs.getInt(DerbyConfig.QUESTION_ID), rs.getTimestamp(DerbyConfig.TIMESTAMP));
+	}
+
 }
@@ -6,13 +6,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import petoverflow.dao.AnswerVoteDao;
+import petoverflow.dao.derby.DerbyUtils.RowHandler;
 import petoverflow.dao.DaoManager;
 import petoverflow.dao.DaoObject;
 import petoverflow.dao.items.Vote;
 import petoverflow.dao.items.Vote.VoteType;
+import petoverflow.dao.utility.exception.NoSuchAnswerException;
 
 /**
  * The AnswerVoteDaoDerby class implements the AnswerVoteDao interface with
@@ -76,13 +80,16 @@ public class AnswerVoteDaoDerby extends DaoObject implements AnswerVoteDao {
 			e1.printStackTrace();
 			return;
 		}
-		removeVote(answerId, vote.getVoterId());
 
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
+		// Replacing the previous vote is done atomically
+		DerbyUnitOfWork.begin();
 		try {
+			removeVote(answerId, vote.getVoterId());
+
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
 			PreparedStatement s = conn
 					.prepareStatement("INSERT INTO " + DerbyConfig.ANSWER_VOTE_TABLE_NAME + " (" + DerbyConfig.VOTER_ID
@@ -92,11 +99,15 @@ public class AnswerVoteDaoDerby extends DaoObject implements AnswerVoteDao {
 			s.setInt(2, answerId);
 			s.setBoolean(3, vote.getType() == VoteType.Up);
 			s.executeUpdate();
+			DerbyRatings.answerVoted(conn, statements, answerId, vote.getType() == VoteType.Up, 1);
+
+			DerbyUnitOfWork.commit();
 
 		} catch (SQLException e) {
 			throw e;
 		} finally {
 			DerbyUtils.cleanUp(rs, statements, conn);
+			DerbyUnitOfWork.end();
 		}
 	}
 
@@ -110,19 +121,37 @@ public class AnswerVoteDaoDerby extends DaoObject implements AnswerVoteDao {
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
+		// The vote and the counts depending on it change together
+		DerbyUnitOfWork.begin();
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement("DELETE FROM " + DerbyConfig.ANSWER_VOTE_TABLE_NAME + " WHERE "
-					+ DerbyConfig.VOTER_ID + " = ? AND " + DerbyConfig.ANSWER_ID + " = ?");
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.VOTE_TYPE + " FROM "
+					+ DerbyConfig.ANSWER_VOTE_TABLE_NAME + " WHERE " + DerbyConfig.VOTER_ID + " = ? AND "
+					+ DerbyConfig.ANSWER_ID + " = ?");
 			statements.add(s);
 			s.setInt(1, voterId);
 			s.setInt(2, answerId);
-			s.executeUpdate();
+			rs = s.executeQuery();
+			if (rs.next()) {
+				boolean up = rs.getBoolean(DerbyConfig.VOTE_TYPE);
+
+				s = conn.prepareStatement("DELETE FROM " + DerbyConfig.ANSWER_VOTE_TABLE_NAME + " WHERE "
+						+ DerbyConfig.VOTER_ID + " = ? AND " + DerbyConfig.ANSWER_ID + " = ?");
+				statements.add(s);
+				s.setInt(1, voterId);
+				s.setInt(2, answerId);
+				if (s.executeUpdate() > 0) {
+					DerbyRatings.answerVoted(conn, statements, answerId, up, -1);
+				}
+			}
+
+			DerbyUnitOfWork.commit();
 
 		} catch (SQLException e) {
 			throw e;
 		} finally {
 			DerbyUtils.cleanUp(rs, statements, conn);
+			DerbyUnitOfWork.end();
 		}
 	}
 
@@ -164,7 +193,7 @@ public class AnswerVoteDaoDerby extends DaoObject implements AnswerVoteDao {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see petoverflow.dao.AnswerVoteDao#getQuestionTimestamp(int)
+	 * @see petoverflow.dao.AnswerVoteDao#getBestAnswerForQuestion(int)
 	 */
 	@Override
 	public Integer getBestAnswerForQuestion(int questionId) throws SQLException {
@@ -175,29 +204,129 @@ public class AnswerVoteDaoDerby extends DaoObject implements AnswerVoteDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + " FROM "
-					+ DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID + " = ?");
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.BEST_ANSWER_ID + " FROM "
+					+ DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
 			statements.add(s);
 			s.setInt(1, questionId);
 			rs = s.executeQuery();
 
-			Integer bestAnswer = null;
-			int bestRating = Integer.MIN_VALUE;
-			AnswerVoteDao answerVoteDao = getDaoManager().getAnswerVoteDao();
-			while (rs.next()) {
-				int currentId = rs.getInt(1);
-				int currentRating = answerVoteDao.getAnswerVotes(currentId).size();
-				if (currentRating > bestRating) {
-					bestRating = currentRating;
-					bestAnswer = currentId;
-				}
+			if (!rs.next()) {
+				return null;
+			}
+			int bestAnswer = rs.getInt(1);
+			return rs.wasNull() ? null : bestAnswer;
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#getBestAnswersForQuestions(int[])
+	 */
+	@Override
+	public Map<Integer, Integer> getBestAnswersForQuestions(int[] questionIds) throws SQLException {
+		final Map<Integer, Integer> bestAnswers = new HashMap<Integer, Integer>();
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + DerbyConfig.ID + ", " + DerbyConfig.BEST_ANSWER_ID
+				+ " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " IN ", "", questionIds,
+				new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						int bestAnswer = rs.getInt(DerbyConfig.BEST_ANSWER_ID);
+						if (!rs.wasNull()) {
+							bestAnswers.put(rs.getInt(DerbyConfig.ID), bestAnswer);
+						}
+					}
+				});
+		return bestAnswers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#getVotesForAnswers(int[])
+	 */
+	@Override
+	public Map<Integer, List<Vote>> getVotesForAnswers(int[] answerIds) throws SQLException {
+		final Map<Integer, List<Vote>> votes = new HashMap<Integer, List<Vote>>();
+		for (int id : answerIds) {
+			votes.put(id, new ArrayList<Vote>());
+		}
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT * FROM " + DerbyConfig.ANSWER_VOTE_TABLE_NAME + " WHERE "
+				+ DerbyConfig.ANSWER_ID + " IN ", "", answerIds, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						int voterId = rs.getInt(DerbyConfig.VOTER_ID);
+						boolean voteTypeFlag = rs.getBoolean(DerbyConfig.VOTE_TYPE);
+						VoteType voteType = voteTypeFlag ? VoteType.Up : VoteType.Down;
+						votes.get(rs.getInt(DerbyConfig.ANSWER_ID)).add(new Vote(voterId, voteType));
+					}
+				});
+		return votes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#getVoteCount(int)
+	 */
+	@Override
+	public int getVoteCount(int answerId) throws SQLException, NoSuchAnswerException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.UP_VOTES + " - "
+					+ DerbyConfig.DOWN_VOTES + " FROM " + DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.ID
+					+ " = ?");
+			statements.add(s);
+			s.setInt(1, answerId);
+			rs = s.executeQuery();
+			if (!rs.next()) {
+				throw new NoSuchAnswerException();
 			}
-			return bestAnswer;
-		} catch (Exception e) {
-			throw new SQLException(e.getMessage());
+			return rs.getInt(1);
+
+		} catch (SQLException e) {
+			throw e;
 		} finally {
 			DerbyUtils.cleanUp(rs, statements, conn);
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#reconcileVoteCounts()
+	 */
+	@Override
+	public int reconcileVoteCounts() throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			Statement s = conn.createStatement();
+			statements.add(s);
+			int repaired = s.executeUpdate(DerbyConfig.ANSWER_VOTES_REPAIR);
+			if (repaired > 0) {
+				System.err.println("Repaired the vote counts of " + repaired + " answers");
+			}
+			return repaired;
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(null, statements, conn);
+		}
+	}
+
 }
@@ -2,7 +2,9 @@ package petoverflow.dao.derby;
 
 import java.sql.SQLException;
 
+import petoverflow.Config;
 import petoverflow.dao.DaoManager;
+import petoverflow.dao.utility.RecomputeReport;
 
 /**
  * Manager for Derby DAO objects
@@ -30,6 +32,72 @@ public class DaoManagerDerby extends DaoManager {
 		m_questionVoteDao = QuestionVoteDaoDerby.getInstance();
 		m_answerVoteDao = AnswerVoteDaoDerby.getInstance();
 		m_topicDao = TopicDaoDerby.getInstance();
+
+		DerbySchemaMigrator.migrate(DerbyConfig.DB_NAME);
+		QuestionDaoDerby.getInstance().buildSearchIndex();
+		TopicDaoDerby.getInstance().buildTopicTerms();
+		DerbyUtils.scheduleCheckpoints(DerbyConfig.DB_NAME);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.DaoManager#beginWork()
+	 */
+	@Override
+	public void beginWork() {
+		DerbyUnitOfWork.begin();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.DaoManager#commitWork()
+	 */
+	@Override
+	public void commitWork() throws SQLException {
+		DerbyUnitOfWork.commit();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.DaoManager#endWork()
+	 */
+	@Override
+	public void endWork() {
+		DerbyUnitOfWork.end();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.DaoManager#isWorkDeadlocked()
+	 */
+	@Override
+	public boolean isWorkDeadlocked() {
+		return DerbyUnitOfWork.isDeadlocked();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.DaoManager#recompute()
+	 */
+	@Override
+	public RecomputeReport recompute() throws SQLException {
+		return new DerbyRecomputeJob(Config.RECOMPUTE_PARALLELISM, Config.RECOMPUTE_RANGE_SIZE,
+				Config.RECOMPUTE_BATCH_SIZE).run();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.DaoManager#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		DerbyUtils.shutdown();
 	}
 
 }
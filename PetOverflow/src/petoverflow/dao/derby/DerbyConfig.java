@@ -21,6 +21,19 @@ public class DerbyConfig {
 	public static final String VOTER_ID = "voterId";
 	public static final String VOTE_TYPE = "voteType";
 	public static final String TOPIC = "topic";
+	public static final String VERSION = "version";
+	public static final String APPLIED_AT = "appliedAt";
+	public static final String DURATION_MS = "durationMs";
+	public static final String USER_ID = "userId";
+	public static final String SCORE = "score";
+	public static final String RATING = "rating";
+	public static final String UP_VOTES = "upVotes";
+	public static final String DOWN_VOTES = "downVotes";
+	public static final String ANSWER_COUNT = "answerCount";
+	public static final String ANSWER_SCORE = "answerScore";
+	public static final String QUESTION_COUNT = "questionCount";
+	public static final String QUESTION_RATING_SUM = "questionRatingSum";
+	public static final String BEST_ANSWER_ID = "bestAnswerId";
 
 	private static final String ID_TYPE = "INTEGER GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1) PRIMARY KEY";
 	private static final String USERNAME_TYPE = "VARCHAR(10) NOT NULL UNIQUE";
@@ -38,6 +51,13 @@ public class DerbyConfig {
 	private static final String VOTER_ID_TYPE = "INTEGER NOT NULL";
 	private static final String VOTE_TYPE_TYPE = "BOOLEAN NOT NULL"; // true='+',false='-'
 	private static final String TOPIC_TYPE = "VARCHAR(50) NOT NULL";
+	private static final String USER_ID_TYPE = "INTEGER NOT NULL";
+	private static final String VERSION_TYPE = "INTEGER NOT NULL PRIMARY KEY";
+	private static final String APPLIED_AT_TYPE = "TIMESTAMP NOT NULL";
+	private static final String DURATION_MS_TYPE = "BIGINT NOT NULL";
+	public static final String COUNT_TYPE = "INTEGER NOT NULL DEFAULT 0";
+	public static final String RATING_TYPE = "DOUBLE NOT NULL DEFAULT 0";
+	public static final String BEST_ANSWER_ID_TYPE = "INTEGER";
 
 	public static final String DB_NAME = "PetOvDb";
 
@@ -78,4 +98,325 @@ public class DerbyConfig {
 			+ QUESTION_ID_TYPE + ", " + TOPIC + " " + TOPIC_TYPE + ", FOREIGN KEY (" + QUESTION_ID + ") REFERENCES "
 			+ QUESTION_TABLE_NAME + "(" + ID + "))";
 
+	public static final String TOPIC_STATS_TABLE_NAME = "TopicStats";
+	public static final String TOPIC_STATS_TABLE_CREATE = "CREATE TABLE " + TOPIC_STATS_TABLE_NAME + " (" + TOPIC + " "
+			+ TOPIC_TYPE + " PRIMARY KEY, " + QUESTION_COUNT + " " + COUNT_TYPE + ", " + RATING + " " + RATING_TYPE
+			+ ")";
+
+	public static final String USER_TOPIC_SCORE_TABLE_NAME = "UserTopicScore";
+	public static final String USER_TOPIC_SCORE_TABLE_CREATE = "CREATE TABLE " + USER_TOPIC_SCORE_TABLE_NAME + " ("
+			+ USER_ID + " " + USER_ID_TYPE + ", " + TOPIC + " " + TOPIC_TYPE + ", " + SCORE + " " + COUNT_TYPE
+			+ ", PRIMARY KEY (" + USER_ID + ", " + TOPIC + "), FOREIGN KEY (" + USER_ID + ") REFERENCES "
+			+ USER_TABLE_NAME + "(" + ID + "))";
+
+	public static final String SCHEMA_VERSION_TABLE_NAME = "SchemaVersion";
+	public static final String SCHEMA_VERSION_TABLE_CREATE = "CREATE TABLE " + SCHEMA_VERSION_TABLE_NAME + " ("
+			+ VERSION + " " + VERSION_TYPE + ", " + DESCRIPTION + " " + DESCRIPTION_TYPE + ", " + APPLIED_AT + " "
+			+ APPLIED_AT_TYPE + ", " + DURATION_MS + " " + DURATION_MS_TYPE + ")";
+
+	public static final String QUESTION_AUTHOR_INDEX = "QuestionAuthorIdx";
+	public static final String QUESTION_TIMESTAMP_INDEX = "QuestionTimestampIdx";
+	public static final String ANSWER_QUESTION_INDEX = "AnswerQuestionIdx";
+	public static final String ANSWER_AUTHOR_INDEX = "AnswerAuthorIdx";
+	public static final String TOPIC_TOPIC_INDEX = "QuestionTopicTopicIdx";
+	public static final String TOPIC_QUESTION_INDEX = "QuestionTopicQuestionIdx";
+	public static final String QUESTION_VOTE_QUESTION_INDEX = "QuestionVoteQuestionIdx";
+	public static final String ANSWER_VOTE_ANSWER_INDEX = "AnswerVoteAnswerIdx";
+	public static final String QUESTION_RATING_INDEX = "QuestionRatingIdx";
+	public static final String USER_RATING_INDEX = "PetOwnerRatingIdx";
+	public static final String TOPIC_RATING_INDEX = "TopicStatsRatingIdx";
+	public static final String QUESTION_UNANSWERED_INDEX = "QuestionUnansweredIdx";
+	public static final String USER_TOPIC_SCORE_INDEX = "UserTopicScoreIdx";
+
+	/*
+	 * The rating views were replaced by the stored ratings and are dropped by
+	 * migration 6. They are kept for migration 2, which creates them.
+	 */
+
+	/**
+	 * Net vote score of each answer: +1 for each up vote, -1 for each down vote
+	 */
+	public static final String ANSWER_SCORE_VIEW_NAME = "AnswerScore";
+	public static final String ANSWER_SCORE_VIEW_CREATE = "CREATE VIEW " + ANSWER_SCORE_VIEW_NAME + " (" + ANSWER_ID
+			+ ", " + QUESTION_ID + ", " + AUTHOR_ID + ", " + SCORE + ") AS SELECT a." + ID + ", a." + QUESTION_ID
+			+ ", a." + AUTHOR_ID + ", SUM(CASE WHEN v." + VOTE_TYPE + " IS NULL THEN 0 WHEN v." + VOTE_TYPE
+			+ " THEN 1 ELSE -1 END) FROM " + ANSWER_TABLE_NAME + " a LEFT JOIN " + ANSWER_VOTE_TABLE_NAME + " v ON v."
+			+ ANSWER_ID + " = a." + ID + " GROUP BY a." + ID + ", a." + QUESTION_ID + ", a." + AUTHOR_ID;
+
+	/**
+	 * Rating of each question, as in {@link petoverflow.dao.items.Question#getRating()}
+	 */
+	public static final String QUESTION_RATING_VIEW_NAME = "QuestionRating";
+	public static final String QUESTION_RATING_VIEW_CREATE = "CREATE VIEW " + QUESTION_RATING_VIEW_NAME + " ("
+			+ QUESTION_ID + ", " + AUTHOR_ID + ", " + RATING + ") AS SELECT q." + ID + ", q." + AUTHOR_ID
+			+ ", 0.2E0 * COALESCE(qv." + SCORE + ", 0) + 0.8E0 * COALESCE(s." + SCORE + ", 0) FROM "
+			+ QUESTION_TABLE_NAME + " q LEFT JOIN (SELECT " + QUESTION_ID + ", SUM(CASE WHEN " + VOTE_TYPE
+			+ " THEN 1 ELSE -1 END) AS " + SCORE + " FROM " + QUESTION_VOTE_TABLE_NAME + " GROUP BY " + QUESTION_ID
+			+ ") qv ON qv." + QUESTION_ID + " = q." + ID + " LEFT JOIN (SELECT " + QUESTION_ID + ", AVG(CAST(" + SCORE
+			+ " AS DOUBLE)) AS " + SCORE + " FROM " + ANSWER_SCORE_VIEW_NAME + " GROUP BY " + QUESTION_ID + ") s ON s."
+			+ QUESTION_ID + " = q." + ID;
+
+	/**
+	 * Rating of each user, as in {@link petoverflow.dao.items.User#getRating()}
+	 */
+	public static final String USER_RATING_VIEW_NAME = "UserRating";
+	public static final String USER_RATING_VIEW_CREATE = "CREATE VIEW " + USER_RATING_VIEW_NAME + " (" + USER_ID
+			+ ", " + RATING + ") AS SELECT u." + ID + ", 0.2E0 * COALESCE(qr." + RATING + ", 0) + 0.8E0 * COALESCE(ar."
+			+ RATING + ", 0) FROM " + USER_TABLE_NAME + " u LEFT JOIN (SELECT " + AUTHOR_ID + ", AVG(" + RATING
+			+ ") AS " + RATING + " FROM " + QUESTION_RATING_VIEW_NAME + " GROUP BY " + AUTHOR_ID + ") qr ON qr."
+			+ AUTHOR_ID + " = u." + ID + " LEFT JOIN (SELECT " + AUTHOR_ID + ", AVG(CAST(" + SCORE + " AS DOUBLE)) AS "
+			+ RATING + " FROM " + ANSWER_SCORE_VIEW_NAME + " GROUP BY " + AUTHOR_ID + ") ar ON ar." + AUTHOR_ID
+			+ " = u." + ID;
+
+	/**
+	 * Rating of each topic, as in {@link petoverflow.dao.items.Topic#getRating()}
+	 */
+	public static final String TOPIC_RATING_VIEW_NAME = "TopicRating";
+	public static final String TOPIC_RATING_VIEW_CREATE = "CREATE VIEW " + TOPIC_RATING_VIEW_NAME + " (" + TOPIC
+			+ ", " + RATING + ") AS SELECT t." + TOPIC + ", SUM(r." + RATING + ") FROM " + TOPIC_TABLE_NAME
+			+ " t JOIN " + QUESTION_RATING_VIEW_NAME + " r ON r." + QUESTION_ID + " = t." + QUESTION_ID + " GROUP BY t."
+			+ TOPIC;
+
+	/**
+	 * Recount the up and down votes stored on every question from its votes
+	 */
+	public static final String QUESTION_VOTES_RECOUNT = recountVotes(QUESTION_TABLE_NAME, QUESTION_VOTE_TABLE_NAME,
+			QUESTION_ID);
+
+	/**
+	 * Recount the votes of the questions whose stored vote counts are wrong
+	 */
+	public static final String QUESTION_VOTES_REPAIR = repairVotes(QUESTION_TABLE_NAME, QUESTION_VOTE_TABLE_NAME,
+			QUESTION_ID);
+
+	/**
+	 * Recount the up and down votes stored on every answer from its votes
+	 */
+	public static final String ANSWER_VOTES_RECOUNT = recountVotes(ANSWER_TABLE_NAME, ANSWER_VOTE_TABLE_NAME,
+			ANSWER_ID);
+
+	/**
+	 * Recount the votes of the answers whose stored vote counts are wrong
+	 */
+	public static final String ANSWER_VOTES_REPAIR = repairVotes(ANSWER_TABLE_NAME, ANSWER_VOTE_TABLE_NAME,
+			ANSWER_ID);
+
+	/**
+	 * The rating of a question from its stored vote counts and answers' score,
+	 * as in {@link petoverflow.dao.items.Question#combineRating(double, double, int)}
+	 */
+	private static final String QUESTION_RATING = "0.2E0 * (" + UP_VOTES + " - " + DOWN_VOTES + ") + CASE WHEN "
+			+ ANSWER_COUNT + " = 0 THEN 0E0 ELSE 0.8E0 * (CAST(" + ANSWER_SCORE + " AS DOUBLE) / " + ANSWER_COUNT
+			+ ") END";
+
+	/**
+	 * Set the stored rating of a question from its stored counts
+	 */
+	public static final String QUESTION_RATING_UPDATE = "UPDATE " + QUESTION_TABLE_NAME + " SET " + RATING + " = "
+			+ QUESTION_RATING + " WHERE " + ID + " = ?";
+
+	/**
+	 * Set the stored best answer of a question from its answers' stored vote
+	 * counts
+	 */
+	public static final String QUESTION_BEST_ANSWER_UPDATE = "UPDATE " + QUESTION_TABLE_NAME + " t SET "
+			+ BEST_ANSWER_ID + " = " + findBestAnswer() + " WHERE " + ID + " = ?";
+
+	/**
+	 * Find the best answer of every question
+	 */
+	public static final String QUESTION_BEST_ANSWER_RECOUNT = "UPDATE " + QUESTION_TABLE_NAME + " t SET "
+			+ BEST_ANSWER_ID + " = " + findBestAnswer();
+
+	/**
+	 * Find the best answer of the questions whose stored best answer is wrong
+	 */
+	public static final String QUESTION_BEST_ANSWER_REPAIR = QUESTION_BEST_ANSWER_RECOUNT + " WHERE COALESCE("
+			+ BEST_ANSWER_ID + ", 0) <> COALESCE(" + findBestAnswer() + ", 0)";
+
+	/**
+	 * Recount the number of answers and the sum of the answers' net votes
+	 * stored on every question
+	 */
+	public static final String QUESTION_ANSWERS_RECOUNT = "UPDATE " + QUESTION_TABLE_NAME + " t SET " + ANSWER_COUNT
+			+ " = " + countAnswers() + ", " + ANSWER_SCORE + " = " + sumAnswerScores();
+
+	/**
+	 * Recount the answers of the questions whose stored answer counts are
+	 * wrong
+	 */
+	public static final String QUESTION_ANSWERS_REPAIR = QUESTION_ANSWERS_RECOUNT + " WHERE " + ANSWER_COUNT + " <> "
+			+ countAnswers() + " OR " + ANSWER_SCORE + " <> " + sumAnswerScores();
+
+	/**
+	 * Recalculate the stored rating of every question
+	 */
+	public static final String QUESTION_RATING_RECOUNT = "UPDATE " + QUESTION_TABLE_NAME + " SET " + RATING + " = "
+			+ QUESTION_RATING;
+
+	/**
+	 * Recalculate the stored ratings that are wrong
+	 */
+	public static final String QUESTION_RATING_REPAIR = QUESTION_RATING_RECOUNT + " WHERE " + RATING + " <> "
+			+ QUESTION_RATING;
+
+	/**
+	 * The rating of a user from its stored counts and sums, as in
+	 * {@link petoverflow.dao.items.User#combineRating(double, int, double, int)}
+	 */
+	private static final String USER_RATING = "0.2E0 * CASE WHEN " + QUESTION_COUNT + " = 0 THEN 0E0 ELSE "
+			+ QUESTION_RATING_SUM + " / " + QUESTION_COUNT + " END + 0.8E0 * CASE WHEN " + ANSWER_COUNT
+			+ " = 0 THEN 0E0 ELSE CAST(" + ANSWER_SCORE + " AS DOUBLE) / " + ANSWER_COUNT + " END";
+
+	/**
+	 * How far a stored sum of ratings may be from the recalculated sum. The
+	 * sums are updated by the change of each rating, so they collect rounding
+	 * errors that are not worth a repair.
+	 */
+	static final String RATING_SUM_TOLERANCE = "1E-9";
+
+	/**
+	 * Set the stored rating of a user from its stored counts and sums
+	 */
+	public static final String USER_RATING_UPDATE = "UPDATE " + USER_TABLE_NAME + " SET " + RATING + " = "
+			+ USER_RATING + " WHERE " + ID + " = ?";
+
+	/**
+	 * Recount the questions and answers stored on every user, and the sums of
+	 * their ratings
+	 */
+	public static final String USER_POSTS_RECOUNT = "UPDATE " + USER_TABLE_NAME + " t SET " + QUESTION_COUNT + " = "
+			+ countAuthored(QUESTION_TABLE_NAME) + ", " + QUESTION_RATING_SUM + " = " + sumQuestionRatings() + ", "
+			+ ANSWER_COUNT + " = " + countAuthored(ANSWER_TABLE_NAME) + ", " + ANSWER_SCORE + " = "
+			+ sumAuthoredAnswerScores();
+
+	/**
+	 * Recount the questions and answers of the users whose stored counts or
+	 * sums are wrong
+	 */
+	public static final String USER_POSTS_REPAIR = USER_POSTS_RECOUNT + " WHERE " + QUESTION_COUNT + " <> "
+			+ countAuthored(QUESTION_TABLE_NAME) + " OR ABS(" + QUESTION_RATING_SUM + " - " + sumQuestionRatings()
+			+ ") > " + RATING_SUM_TOLERANCE + " OR " + ANSWER_COUNT + " <> " + countAuthored(ANSWER_TABLE_NAME)
+			+ " OR " + ANSWER_SCORE + " <> " + sumAuthoredAnswerScores();
+
+	/**
+	 * Recalculate the stored rating of every user
+	 */
+	public static final String USER_RATING_RECOUNT = "UPDATE " + USER_TABLE_NAME + " SET " + RATING + " = "
+			+ USER_RATING;
+
+	/**
+	 * Recalculate the stored user ratings that are wrong
+	 */
+	public static final String USER_RATING_REPAIR = USER_RATING_RECOUNT + " WHERE " + RATING + " <> " + USER_RATING;
+
+	/**
+	 * Add the topics that have no stored rating yet, with the number and the
+	 * sum of the ratings of their questions
+	 */
+	public static final String TOPIC_STATS_FILL = "INSERT INTO " + TOPIC_STATS_TABLE_NAME + " (" + TOPIC + ", "
+			+ QUESTION_COUNT + ", " + RATING + ") SELECT p." + TOPIC + ", COUNT(*), SUM(q." + RATING + ") FROM "
+			+ TOPIC_TABLE_NAME + " p JOIN " + QUESTION_TABLE_NAME + " q ON q." + ID + " = p." + QUESTION_ID
+			+ " WHERE p." + TOPIC + " NOT IN (SELECT " + TOPIC + " FROM " + TOPIC_STATS_TABLE_NAME + ") GROUP BY p."
+			+ TOPIC;
+
+	/**
+	 * Recount the questions and the ratings sums of the topics whose stored
+	 * values are wrong
+	 */
+	public static final String TOPIC_STATS_REPAIR = "UPDATE " + TOPIC_STATS_TABLE_NAME + " t SET " + QUESTION_COUNT
+			+ " = " + countTopicQuestions() + ", " + RATING + " = " + sumTopicRatings() + " WHERE " + QUESTION_COUNT
+			+ " <> " + countTopicQuestions() + " OR ABS(" + RATING + " - " + sumTopicRatings() + ") > "
+			+ RATING_SUM_TOLERANCE;
+
+	/**
+	 * Add the topics a user answered in that have no stored score yet, with
+	 * the sum of the net votes of the user's answers in the topic
+	 */
+	public static final String USER_TOPIC_SCORES_FILL = "INSERT INTO " + USER_TOPIC_SCORE_TABLE_NAME + " ("
+			+ USER_ID + ", " + TOPIC + ", " + SCORE + ") SELECT a." + AUTHOR_ID + ", p." + TOPIC + ", SUM(a."
+			+ UP_VOTES + " - a." + DOWN_VOTES + ") FROM " + ANSWER_TABLE_NAME + " a JOIN " + TOPIC_TABLE_NAME
+			+ " p ON p." + QUESTION_ID + " = a." + QUESTION_ID + " WHERE NOT EXISTS (SELECT * FROM "
+			+ USER_TOPIC_SCORE_TABLE_NAME + " s WHERE s." + USER_ID + " = a." + AUTHOR_ID + " AND s." + TOPIC
+			+ " = p." + TOPIC + ") GROUP BY a." + AUTHOR_ID + ", p." + TOPIC;
+
+	/**
+	 * Remove the stored scores of topics the user has no answers in
+	 */
+	public static final String USER_TOPIC_SCORES_PRUNE = "DELETE FROM " + USER_TOPIC_SCORE_TABLE_NAME
+			+ " t WHERE NOT EXISTS (SELECT * FROM " + ANSWER_TABLE_NAME + " a JOIN " + TOPIC_TABLE_NAME + " p ON p."
+			+ QUESTION_ID + " = a." + QUESTION_ID + " WHERE a." + AUTHOR_ID + " = t." + USER_ID + " AND p." + TOPIC
+			+ " = t." + TOPIC + ")";
+
+	/**
+	 * Recalculate the stored topic scores of users that are wrong
+	 */
+	public static final String USER_TOPIC_SCORES_REPAIR = "UPDATE " + USER_TOPIC_SCORE_TABLE_NAME + " t SET "
+			+ SCORE + " = " + sumTopicAnswerScores() + " WHERE " + SCORE + " <> " + sumTopicAnswerScores();
+
+	/**
+	 * The answer of question t with the highest net votes, the earliest of
+	 * the tied ones, as the answers are listed. Null if it has no answers.
+	 */
+	private static String findBestAnswer() {
+		return "(SELECT MIN(a." + ID + ") FROM " + ANSWER_TABLE_NAME + " a WHERE a." + QUESTION_ID + " = t." + ID
+				+ " AND a." + UP_VOTES + " - a." + DOWN_VOTES + " = (SELECT MAX(b." + UP_VOTES + " - b." + DOWN_VOTES
+				+ ") FROM " + ANSWER_TABLE_NAME + " b WHERE b." + QUESTION_ID + " = t." + ID + "))";
+	}
+
+	private static String countAnswers() {
+		return "(SELECT COUNT(*) FROM " + ANSWER_TABLE_NAME + " a WHERE a." + QUESTION_ID + " = t." + ID + ")";
+	}
+
+	private static String sumAnswerScores() {
+		return "(SELECT COALESCE(SUM(a." + UP_VOTES + " - a." + DOWN_VOTES + "), 0) FROM " + ANSWER_TABLE_NAME
+				+ " a WHERE a." + QUESTION_ID + " = t." + ID + ")";
+	}
+
+	private static String countAuthored(String tableName) {
+		return "(SELECT COUNT(*) FROM " + tableName + " p WHERE p." + AUTHOR_ID + " = t." + ID + ")";
+	}
+
+	private static String sumQuestionRatings() {
+		return "(SELECT COALESCE(SUM(q." + RATING + "), 0E0) FROM " + QUESTION_TABLE_NAME + " q WHERE q." + AUTHOR_ID
+				+ " = t." + ID + ")";
+	}
+
+	private static String sumAuthoredAnswerScores() {
+		return "(SELECT COALESCE(SUM(a." + UP_VOTES + " - a." + DOWN_VOTES + "), 0) FROM " + ANSWER_TABLE_NAME
+				+ " a WHERE a." + AUTHOR_ID + " = t." + ID + ")";
+	}
+
+	private static String countTopicQuestions() {
+		return "(SELECT COUNT(*) FROM " + TOPIC_TABLE_NAME + " p WHERE p." + TOPIC + " = t." + TOPIC + ")";
+	}
+
+	private static String sumTopicRatings() {
+		return "(SELECT COALESCE(SUM(q." + RATING + "), 0E0) FROM " + TOPIC_TABLE_NAME + " p JOIN "
+				+ QUESTION_TABLE_NAME + " q ON q." + ID + " = p." + QUESTION_ID + " WHERE p." + TOPIC + " = t." + TOPIC
+				+ ")";
+	}
+
+	private static String sumTopicAnswerScores() {
+		return "(SELECT COALESCE(SUM(a." + UP_VOTES + " - a." + DOWN_VOTES + "), 0) FROM " + ANSWER_TABLE_NAME
+				+ " a JOIN " + TOPIC_TABLE_NAME + " p ON p." + QUESTION_ID + " = a." + QUESTION_ID + " WHERE a."
+				+ AUTHOR_ID + " = t." + USER_ID + " AND p." + TOPIC + " = t." + TOPIC + ")";
+	}
+
+	private static String countVotes(String voteTableName, String foreignKey, boolean up) {
+		return "(SELECT COUNT(*) FROM " + voteTableName + " v WHERE v." + foreignKey + " = t." + ID + " AND v."
+				+ VOTE_TYPE + " = " + (up ? "TRUE" : "FALSE") + ")";
+	}
+
+	private static String recountVotes(String tableName, String voteTableName, String foreignKey) {
+		return "UPDATE " + tableName + " t SET " + UP_VOTES + " = " + countVotes(voteTableName, foreignKey, true)
+				+ ", " + DOWN_VOTES + " = " + countVotes(voteTableName, foreignKey, false);
+	}
+
+	private static String repairVotes(String tableName, String voteTableName, String foreignKey) {
+		return recountVotes(tableName, voteTableName, foreignKey) + " WHERE " + UP_VOTES + " <> "
+				+ countVotes(voteTableName, foreignKey, true) + " OR " + DOWN_VOTES + " <> "
+				+ countVotes(voteTableName, foreignKey, false);
+	}
+
 }
@@ -0,0 +1,615 @@
+package petoverflow.dao.derby;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * The DerbyConnectionPool class is a bounded pool of Derby connections. It
+ * hands out logical connections whose <code>close</code> returns the physical
+ * connection to the pool instead of closing it, so DAO code can keep using the
+ * usual get-connection / clean-up pattern.
+ *
+ * Idle connections are validated before they are handed out, connections that
+ * are held for too long are reported as leaks, and live statistics of the pool
+ * are available through {@link #getStatistics()}.
+ */
+public class DerbyConnectionPool implements DataSource {
+
+	/**
+	 * Seconds to wait for a connection validation
+	 */
+	private static final int VALIDATION_TIMEOUT = 1;
+
+	private final String m_url;
+
+	private final int m_minSize;
+
+	private final int m_maxSize;
+
+	private final long m_acquireTimeout;
+
+	private final long m_leakThreshold;
+
+	private final int m_statementCacheSize;
+
+	/**
+	 * Idle physical connections. The most recently returned connection is at
+	 * the head, so the warmest connection is reused first.
+	 */
+	private final LinkedBlockingDeque<Connection> m_idle = new LinkedBlockingDeque<Connection>();
+
+	/**
+	 * Limits the number of physical connections to the pool's max size
+	 */
+	private final Semaphore m_permits;
+
+	/**
+	 * The logical connections that are currently handed out, kept only when
+	 * leak detection is on
+	 */
+	private final Map<PooledConnection, Lease> m_leases = new ConcurrentHashMap<PooledConnection, Lease>();
+
+	/**
+	 * The prepared statements cache of each open physical connection
+	 */
+	private final Map<Connection, DerbyStatementCache> m_statementCaches = new ConcurrentHashMap<Connection, DerbyStatementCache>();
+
+	private final AtomicInteger m_openCount = new AtomicInteger();
+
+	private final AtomicInteger m_activeCount = new AtomicInteger();
+
+	private final AtomicLong m_acquireCount = new AtomicLong();
+
+	private final AtomicLong m_createCount = new AtomicLong();
+
+	private final AtomicLong m_destroyCount = new AtomicLong();
+
+	private final AtomicLong m_timeoutCount = new AtomicLong();
+
+	private final AtomicLong m_leakCount = new AtomicLong();
+
+	private final AtomicLong m_waitNanos = new AtomicLong();
+
+	private final AtomicLong m_statementHits = new AtomicLong();
+
+	private final AtomicLong m_statementMisses = new AtomicLong();
+
+	private final ScheduledExecutorService m_leakDetector;
+
+	private volatile boolean m_closed = false;
+
+	private PrintWriter m_logWriter;
+
+	private int m_loginTimeout;
+
+	/**
+	 * Constructor
+	 *
+	 * @param url
+	 *            the JDBC URL of the pooled database
+	 * @param minSize
+	 *            the number of connections opened up front and kept open
+	 * @param maxSize
+	 *            the maximal number of connections open at the same time
+	 * @param acquireTimeout
+	 *            milliseconds to wait for a free connection before failing
+	 * @param leakThreshold
+	 *            milliseconds a connection may be held before it is reported
+	 *            as a leak, 0 to disable leak detection
+	 * @param statementCacheSize
+	 *            the number of prepared statements cached per connection, 0
+	 *            to disable statement caching
+	 * @throws SQLException
+	 *             if failed to open the initial connections
+	 */
+	public DerbyConnectionPool(String url, int minSize, int maxSize, long acquireTimeout, long leakThreshold,
+			int statementCacheSize) throws SQLException {
+		if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size [" + minSize + ", " + maxSize + "]");
+		}
+		m_url = url;
+		m_minSize = minSize;
+		m_maxSize = maxSize;
+		m_acquireTimeout = acquireTimeout;
+		m_leakThreshold = leakThreshold;
+		m_statementCacheSize = statementCacheSize;
+		m_permits = new Semaphore(maxSize, true);
+
+		for (int i = 0; i < m_minSize; i++) {
+			m_idle.offerLast(openPhysical());
+		}
+
+		if (m_leakThreshold > 0) {
+			m_leakDetector = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "derby-pool-leak-detector");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long period = Math.max(1, m_leakThreshold / 2);
+			m_leakDetector.scheduleAtFixedRate(new Runnable() {
+
+				@Override
+				public void run() {
+					detectLeaks();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			m_leakDetector = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.sql.DataSource#getConnection()
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (m_closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+
+		long start = System.nanoTime();
+		try {
+			if (!m_permits.tryAcquire(m_acquireTimeout, TimeUnit.MILLISECONDS)) {
+				m_timeoutCount.incrementAndGet();
+				throw new SQLException("Timed out after " + m_acquireTimeout + "ms waiting for a connection. "
+						+ getStatistics());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		} finally {
+			m_waitNanos.addAndGet(System.nanoTime() - start);
+		}
+
+		try {
+			Connection physical = takeValidIdle();
+			if (physical == null) {
+				physical = openPhysical();
+			}
+			PooledConnection pooled = new PooledConnection(physical);
+			if (m_leakThreshold > 0) {
+				// Capturing the stack is costly, only leak detection needs it
+				m_leases.put(pooled, new Lease());
+			}
+			m_activeCount.incrementAndGet();
+			m_acquireCount.incrementAndGet();
+			return pooled.getProxy();
+		} catch (SQLException e) {
+			m_permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			m_permits.release();
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.sql.DataSource#getConnection(java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("The pool only serves connections of its own URL");
+	}
+
+	/**
+	 * Get a snapshot of the current state of the pool
+	 *
+	 * @return the pool statistics
+	 */
+	public PoolStatistics getStatistics() {
+		int idle = m_idle.size();
+		int active = m_activeCount.get();
+		return new PoolStatistics(m_minSize, m_maxSize, m_openCount.get(), active, idle,
+				m_permits.getQueueLength(), m_acquireCount.get(), m_createCount.get(), m_destroyCount.get(),
+				m_timeoutCount.get(), m_leakCount.get(), TimeUnit.NANOSECONDS.toMillis(m_waitNanos.get()),
+				m_statementHits.get(), m_statementMisses.get());
+	}
+
+	/**
+	 * Close the pool. All idle connections are closed immediately, connections
+	 * which are still in use are closed when they are returned.
+	 */
+	public void close() {
+		m_closed = true;
+		if (m_leakDetector != null) {
+			m_leakDetector.shutdownNow();
+		}
+		Connection physical;
+		while ((physical = m_idle.pollFirst()) != null) {
+			destroyPhysical(physical);
+		}
+	}
+
+	/**
+	 * Take an idle connection and make sure it can still be used
+	 *
+	 * @return a valid physical connection, or null if there are no idle ones
+	 */
+	private Connection takeValidIdle() {
+		Connection physical;
+		while ((physical = m_idle.pollFirst()) != null) {
+			try {
+				if (!physical.isClosed() && physical.isValid(VALIDATION_TIMEOUT)) {
+					return physical;
+				}
+			} catch (SQLException e) {
+				// Treated as an invalid connection
+			}
+			destroyPhysical(physical);
+		}
+		return null;
+	}
+
+	/**
+	 * Open a new physical connection to the database
+	 *
+	 * @return the new connection
+	 * @throws SQLException
+	 *             if Derby fails
+	 */
+	private Connection openPhysical() throws SQLException {
+		Connection physical = DriverManager.getConnection(m_url);
+		if (m_statementCacheSize > 0) {
+			m_statementCaches.put(physical, new DerbyStatementCache(physical, m_statementCacheSize,
+					m_statementHits, m_statementMisses));
+		}
+		m_openCount.incrementAndGet();
+		m_createCount.incrementAndGet();
+		return physical;
+	}
+
+	/**
+	 * Close a physical connection, ignoring failures
+	 *
+	 * @param physical
+	 *            the connection to close
+	 */
+	private void destroyPhysical(Connection physical) {
+		m_openCount.decrementAndGet();
+		m_destroyCount.incrementAndGet();
+		DerbyStatementCache statementCache = m_statementCaches.remove(physical);
+		if (statementCache != null) {
+			statementCache.clear();
+		}
+		try {
+			physical.close();
+		} catch (SQLException e) {
+			// Nothing to do, the connection is discarded anyway
+		}
+	}
+
+	/**
+	 * Return a logical connection's physical connection to the pool
+	 *
+	 * @param pooled
+	 *            the returned logical connection
+	 */
+	private void release(PooledConnection pooled) {
+		m_leases.remove(pooled);
+		m_activeCount.decrementAndGet();
+		Connection physical = pooled.getPhysical();
+		try {
+			boolean reusable = !m_closed && !physical.isClosed();
+			if (reusable && !physical.getAutoCommit()) {
+				// Don't let uncommitted work leak into the next borrower
+				physical.rollback();
+				physical.setAutoCommit(true);
+			}
+			if (reusable) {
+				m_idle.offerFirst(physical);
+			} else {
+				destroyPhysical(physical);
+			}
+		} catch (SQLException e) {
+			destroyPhysical(physical);
+		} finally {
+			m_permits.release();
+		}
+	}
+
+	/**
+	 * Report all connections that are held for longer than the leak threshold
+	 */
+	private void detectLeaks() {
+		long now = System.currentTimeMillis();
+		for (Lease lease : m_leases.values()) {
+			if (!lease.m_reported && now - lease.m_acquiredAt > m_leakThreshold) {
+				lease.m_reported = true;
+				m_leakCount.incrementAndGet();
+				System.err.println("Possible connection leak: connection held by " + lease.m_threadName + " for "
+						+ (now - lease.m_acquiredAt) + "ms, acquired at:");
+				lease.m_acquiredFrom.printStackTrace(System.err);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.sql.CommonDataSource#getLogWriter()
+	 */
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return m_logWriter;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.sql.CommonDataSource#setLogWriter(java.io.PrintWriter)
+	 */
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		m_logWriter = out;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.sql.CommonDataSource#setLoginTimeout(int)
+	 */
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		m_loginTimeout = seconds;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.sql.CommonDataSource#getLoginTimeout()
+	 */
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return m_loginTimeout;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.sql.CommonDataSource#getParentLogger()
+	 */
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.sql.Wrapper#unwrap(java.lang.Class)
+	 */
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("Not a wrapper of " + iface.getName());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.sql.Wrapper#isWrapperFor(java.lang.Class)
+	 */
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+	/**
+	 * Book keeping of a handed out connection, used for leak detection
+	 */
+	private static class Lease {
+
+		private final long m_acquiredAt = System.currentTimeMillis();
+
+		private final String m_threadName = Thread.currentThread().getName();
+
+		private final Exception m_acquiredFrom = new Exception("Connection acquired here");
+
+		private volatile boolean m_reported = false;
+
+	}
+
+	/**
+	 * The logical connection handed out by the pool. All calls are delegated
+	 * to the physical connection, except <code>close</code> which returns it
+	 * to the pool, and <code>prepareStatement</code> which goes through the
+	 * connection's statement cache.
+	 */
+	private class PooledConnection implements InvocationHandler {
+
+		private final Connection m_physical;
+
+		private final Connection m_proxy;
+
+		private final DerbyStatementCache m_statementCache;
+
+		private boolean m_logicallyClosed = false;
+
+		public PooledConnection(Connection physical) {
+			m_physical = physical;
+			m_statementCache = m_statementCaches.get(physical);
+			m_proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+		}
+
+		public Connection getPhysical() {
+			return m_physical;
+		}
+
+		public Connection getProxy() {
+			return m_proxy;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close")) {
+				synchronized (this) {
+					if (m_logicallyClosed) {
+						return null;
+					}
+					m_logicallyClosed = true;
+				}
+				release(this);
+				return null;
+			} else if (name.equals("isClosed")) {
+				return m_logicallyClosed || m_physical.isClosed();
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("toString")) {
+				return "Pooled" + m_physical.toString();
+			} else if (m_logicallyClosed) {
+				throw new SQLException("Connection is closed");
+			} else if (name.equals("prepareStatement") && m_statementCache != null) {
+				return m_statementCache.prepare(method, args);
+			}
+
+			try {
+				return method.invoke(m_physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+	}
+
+	/**
+	 * An immutable snapshot of the pool's state and counters
+	 */
+	public static class PoolStatistics {
+
+		private final int m_minSize;
+		private final int m_maxSize;
+		private final int m_open;
+		private final int m_active;
+		private final int m_idle;
+		private final int m_waiting;
+		private final long m_acquired;
+		private final long m_created;
+		private final long m_destroyed;
+		private final long m_timeouts;
+		private final long m_leaks;
+		private final long m_totalWaitMillis;
+		private final long m_statementHits;
+		private final long m_statementMisses;
+
+		public PoolStatistics(int minSize, int maxSize, int open, int active, int idle, int waiting, long acquired,
+				long created, long destroyed, long timeouts, long leaks, long totalWaitMillis, long statementHits,
+				long statementMisses) {
+			m_minSize = minSize;
+			m_maxSize = maxSize;
+			m_open = open;
+			m_active = active;
+			m_idle = idle;
+			m_waiting = waiting;
+			m_acquired = acquired;
+			m_created = created;
+			m_destroyed = destroyed;
+			m_timeouts = timeouts;
+			m_leaks = leaks;
+			m_totalWaitMillis = totalWaitMillis;
+			m_statementHits = statementHits;
+			m_statementMisses = statementMisses;
+		}
+
+		public int getMinSize() {
+			return m_minSize;
+		}
+
+		public int getMaxSize() {
+			return m_maxSize;
+		}
+
+		public int getOpen() {
+			return m_open;
+		}
+
+		public int getActive() {
+			return m_active;
+		}
+
+		public int getIdle() {
+			return m_idle;
+		}
+
+		public int getWaiting() {
+			return m_waiting;
+		}
+
+		public long getAcquired() {
+			return m_acquired;
+		}
+
+		public long getCreated() {
+			return m_created;
+		}
+
+		public long getDestroyed() {
+			return m_destroyed;
+		}
+
+		public long getTimeouts() {
+			return m_timeouts;
+		}
+
+		public long getLeaks() {
+			return m_leaks;
+		}
+
+		public long getTotalWaitMillis() {
+			return m_totalWaitMillis;
+		}
+
+		public long getStatementHits() {
+			return m_statementHits;
+		}
+
+		public long getStatementMisses() {
+			return m_statementMisses;
+		}
+
+		@Override
+		public String toString() {
+			return "Pool[size=" + m_minSize + ".." + m_maxSize + ", open=" + m_open + ", active=" + m_active
+					+ ", idle=" + m_idle + ", waiting=" + m_waiting + ", acquired=" + m_acquired + ", created="
+					+ m_created + ", destroyed=" + m_destroyed + ", timeouts=" + m_timeouts + ", leaks=" + m_leaks
+					+ ", totalWaitMs=" + m_totalWaitMillis + ", statementHits=" + m_statementHits
+					+ ", statementMisses=" + m_statementMisses + "]";
+		}
+
+	}
+
+}
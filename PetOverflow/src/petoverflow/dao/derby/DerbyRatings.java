@@ -0,0 +1,424 @@
+package petoverflow.dao.derby;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * The DerbyRatings class keeps the counts and ratings stored with questions,
+ * answers, users and topics, the best answer of each question and the topic
+ * scores of each user up to date. The DAOs call it on every change a stored
+ * value depends on - a vote, a new answer, a new question or its topics - with
+ * the connection of the change, so the stored values are updated in the same
+ * transaction as the change.
+ *
+ * Each change updates only the rows it affects, by the change's delta, instead
+ * of recalculating from all the votes and answers.
+ *
+ * A change holds the locks of the rows it updates until its transaction ends,
+ * so every change locks its rows in the same order - the question, its
+ * answers, the users by ascending id, then the topics' stats and the users'
+ * topic scores - and concurrent changes wait for each other instead of
+ * deadlocking.
+ */
+class DerbyRatings {
+
+	private DerbyRatings() {
+	}
+
+	/**
+	 * Count a vote added to or removed from a question
+	 *
+	 * @param conn
+	 *            the connection of the change
+	 * @param statements
+	 *            the statements of the change, the statements used are added
+	 *            to be cleaned up with them
+	 * @param questionId
+	 *            the question's id
+	 * @param up
+	 *            whether it is an up vote
+	 * @param delta
+	 *            1 if the vote was added, -1 if it was removed
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	static void questionVoted(Connection conn, List<Statement> statements, int questionId, boolean up, int delta)
+			throws SQLException {
+		String column = up ? DerbyConfig.UP_VOTES : DerbyConfig.DOWN_VOTES;
+		update(conn, statements, "UPDATE " + DerbyConfig.QUESTION_TABLE_NAME + " SET " + column + " = " + column
+				+ " + ? WHERE " + DerbyConfig.ID + " = ?", delta, questionId);
+		RatingChange change = rateQuestion(conn, statements, questionId);
+		if (change != null) {
+			moveToAuthor(conn, statements, change);
+			moveToTopics(conn, statements, change);
+		}
+	}
+
+	/**
+	 * Count a vote added to or removed from an answer
+	 *
+	 * @param conn
+	 *            the connection of the change
+	 * @param statements
+	 *            the statements of the change, the statements used are added
+	 *            to be cleaned up with them
+	 * @param answerId
+	 *            the answer's id
+	 * @param up
+	 *            whether it is an up vote
+	 * @param delta
+	 *            1 if the vote was added, -1 if it was removed
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	static void answerVoted(Connection conn, List<Statement> statements, int answerId, boolean up, int delta)
+			throws SQLException {
+		PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.QUESTION_ID + ", "
+				+ DerbyConfig.AUTHOR_ID + " FROM " + DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.ID
+				+ " = ?");
+		statements.add(s);
+		s.setInt(1, answerId);
+		ResultSet rs = s.executeQuery();
+		int questionId;
+		int authorId;
+		try {
+			if (!rs.next()) {
+				return;
+			}
+			questionId = rs.getInt(DerbyConfig.QUESTION_ID);
+			authorId = rs.getInt(DerbyConfig.AUTHOR_ID);
+		} finally {
+			rs.close();
+		}
+		int scoreDelta = up ? delta : -delta;
+
+		update(conn, statements, "UPDATE " + DerbyConfig.QUESTION_TABLE_NAME + " SET " + DerbyConfig.ANSWER_SCORE
+				+ " = " + DerbyConfig.ANSWER_SCORE + " + ? WHERE " + DerbyConfig.ID + " = ?", scoreDelta, questionId);
+		String column = up ? DerbyConfig.UP_VOTES : DerbyConfig.DOWN_VOTES;
+		update(conn, statements, "UPDATE " + DerbyConfig.ANSWER_TABLE_NAME + " SET " + column + " = " + column
+				+ " + ? WHERE " + DerbyConfig.ID + " = ?", delta, answerId);
+		RatingChange change = rateQuestion(conn, statements, questionId);
+		update(conn, statements, DerbyConfig.QUESTION_BEST_ANSWER_UPDATE, questionId);
+
+		// The users by ascending id
+		if (change != null && change.m_authorId < authorId) {
+			moveToAuthor(conn, statements, change);
+		}
+		update(conn, statements, "UPDATE " + DerbyConfig.USER_TABLE_NAME + " SET " + DerbyConfig.ANSWER_SCORE + " = "
+				+ DerbyConfig.ANSWER_SCORE + " + ? WHERE " + DerbyConfig.ID + " = ?", scoreDelta, authorId);
+		rateUser(conn, statements, authorId);
+		if (change != null && change.m_authorId >= authorId) {
+			moveToAuthor(conn, statements, change);
+		}
+
+		if (change != null) {
+			moveToTopics(conn, statements, change);
+		}
+		update(conn, statements, "UPDATE " + DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME + " SET " + DerbyConfig.SCORE
+				+ " = " + DerbyConfig.SCORE + " + ? WHERE " + DerbyConfig.USER_ID + " = ? AND " + DerbyConfig.TOPIC
+				+ " IN (SELECT " + DerbyConfig.TOPIC + " FROM " + DerbyConfig.TOPIC_TABLE_NAME + " WHERE "
+				+ DerbyConfig.QUESTION_ID + " = ?)", scoreDelta, authorId, questionId);
+	}
+
+	/**
+	 * Count a new answer to a question. Called before the answer is inserted:
+	 * inserting it locks the question and the author for its foreign keys, so
+	 * they are locked for the update first. {@link #answerInserted} sets the
+	 * best answer once the answer is inserted.
+	 *
+	 * @param conn
+	 *            the connection of the change
+	 * @param statements
+	 *            the statements of the change, the statements used are added
+	 *            to be cleaned up with them
+	 * @param questionId
+	 *            the answered question's id
+	 * @param authorId
+	 *            the answer's author's id
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	static void answerAdded(Connection conn, List<Statement> statements, int questionId, int authorId)
+			throws SQLException {
+		update(conn, statements, "UPDATE " + DerbyConfig.QUESTION_TABLE_NAME + " SET " + DerbyConfig.ANSWER_COUNT
+				+ " = " + DerbyConfig.ANSWER_COUNT + " + 1 WHERE " + DerbyConfig.ID + " = ?", questionId);
+		RatingChange change = rateQuestion(conn, statements, questionId);
+
+		// The users by ascending id
+		if (change != null && change.m_authorId < authorId) {
+			moveToAuthor(conn, statements, change);
+		}
+		update(conn, statements, "UPDATE " + DerbyConfig.USER_TABLE_NAME + " SET " + DerbyConfig.ANSWER_COUNT + " = "
+				+ DerbyConfig.ANSWER_COUNT + " + 1 WHERE " + DerbyConfig.ID + " = ?", authorId);
+		rateUser(conn, statements, authorId);
+		if (change != null && change.m_authorId >= authorId) {
+			moveToAuthor(conn, statements, change);
+		}
+		if (change != null) {
+			moveToTopics(conn, statements, change);
+		}
+
+		// A new answer has no votes, it only makes the user known in the
+		// question's topics
+		PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.TOPIC + " FROM "
+				+ DerbyConfig.TOPIC_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID + " = ?");
+		statements.add(s);
+		s.setInt(1, questionId);
+		ResultSet rs = s.executeQuery();
+		try {
+			while (rs.next()) {
+				scoreUserTopic(conn, statements, authorId, rs.getString(DerbyConfig.TOPIC), 0);
+			}
+		} finally {
+			rs.close();
+		}
+	}
+
+	/**
+	 * Set the best answer of a question after a new answer to it was inserted
+	 *
+	 * @param conn
+	 *            the connection of the change
+	 * @param statements
+	 *            the statements of the change, the statements used are added
+	 *            to be cleaned up with them
+	 * @param questionId
+	 *            the answered question's id
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	static void answerInserted(Connection conn, List<Statement> statements, int questionId) throws SQLException {
+		update(conn, statements, DerbyConfig.QUESTION_BEST_ANSWER_UPDATE, questionId);
+	}
+
+	/**
+	 * Count a new question of a user. A new question's rating is 0, so it
+	 * doesn't change the sum of the user's question ratings.
+	 *
+	 * @param conn
+	 *            the connection of the change
+	 * @param statements
+	 *            the statements of the change, the statements used are added
+	 *            to be cleaned up with them
+	 * @param authorId
+	 *            the question's author's id
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	static void questionAdded(Connection conn, List<Statement> statements, int authorId) throws SQLException {
+		update(conn, statements, "UPDATE " + DerbyConfig.USER_TABLE_NAME + " SET " + DerbyConfig.QUESTION_COUNT
+				+ " = " + DerbyConfig.QUESTION_COUNT + " + 1 WHERE " + DerbyConfig.ID + " = ?", authorId);
+		rateUser(conn, statements, authorId);
+	}
+
+	/**
+	 * Count a question in one of its topics
+	 *
+	 * @param conn
+	 *            the connection of the change
+	 * @param statements
+	 *            the statements of the change, the statements used are added
+	 *            to be cleaned up with them
+	 * @param questionId
+	 *            the question's id
+	 * @param topic
+	 *            the topic's name
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	static void topicAdded(Connection conn, List<Statement> statements, int questionId, String topic)
+			throws SQLException {
+		String questionRating = "(SELECT " + DerbyConfig.RATING + " FROM " + DerbyConfig.QUESTION_TABLE_NAME
+				+ " WHERE " + DerbyConfig.ID + " = ?)";
+		PreparedStatement update = conn.prepareStatement("UPDATE " + DerbyConfig.TOPIC_STATS_TABLE_NAME + " SET "
+				+ DerbyConfig.QUESTION_COUNT + " = " + DerbyConfig.QUESTION_COUNT + " + 1, " + DerbyConfig.RATING
+				+ " = " + DerbyConfig.RATING + " + " + questionRating + " WHERE " + DerbyConfig.TOPIC + " = ?");
+		statements.add(update);
+		update.setInt(1, questionId);
+		update.setString(2, topic);
+		if (update.executeUpdate() == 0) {
+			PreparedStatement insert = conn.prepareStatement("INSERT INTO " + DerbyConfig.TOPIC_STATS_TABLE_NAME
+					+ " (" + DerbyConfig.TOPIC + ", " + DerbyConfig.QUESTION_COUNT + ", " + DerbyConfig.RATING
+					+ ") VALUES (?, 1, " + questionRating + ")");
+			statements.add(insert);
+			insert.setString(1, topic);
+			insert.setInt(2, questionId);
+			try {
+				insert.executeUpdate();
+			} catch (SQLException e) {
+				// A concurrent question added the topic first
+				if (!"23505".equals(e.getSQLState())) {
+					throw e;
+				}
+				update.executeUpdate();
+			}
+		}
+
+		// The question's answers now count for their authors in the topic
+		PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.AUTHOR_ID + ", SUM("
+				+ DerbyConfig.UP_VOTES + " - " + DerbyConfig.DOWN_VOTES + ") FROM " + DerbyConfig.ANSWER_TABLE_NAME
+				+ " WHERE " + DerbyConfig.QUESTION_ID + " = ? GROUP BY " + DerbyConfig.AUTHOR_ID);
+		statements.add(s);
+		s.setInt(1, questionId);
+		ResultSet rs = s.executeQuery();
+		try {
+			while (rs.next()) {
+				scoreUserTopic(conn, statements, rs.getInt(1), topic, rs.getInt(2));
+			}
+		} finally {
+			rs.close();
+		}
+	}
+
+	/**
+	 * Add to the stored score of a user in a topic, and store it if the user
+	 * has none yet
+	 */
+	private static void scoreUserTopic(Connection conn, List<Statement> statements, int userId, String topic,
+			int delta) throws SQLException {
+		PreparedStatement update = conn.prepareStatement("UPDATE " + DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME
+				+ " SET " + DerbyConfig.SCORE + " = " + DerbyConfig.SCORE + " + ? WHERE " + DerbyConfig.USER_ID
+				+ " = ? AND " + DerbyConfig.TOPIC + " = ?");
+		statements.add(update);
+		update.setInt(1, delta);
+		update.setInt(2, userId);
+		update.setString(3, topic);
+		if (update.executeUpdate() > 0) {
+			return;
+		}
+
+		PreparedStatement insert = conn.prepareStatement("INSERT INTO " + DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME
+				+ " (" + DerbyConfig.USER_ID + ", " + DerbyConfig.TOPIC + ", " + DerbyConfig.SCORE
+				+ ") VALUES (?, ?, ?)");
+		statements.add(insert);
+		insert.setInt(1, userId);
+		insert.setString(2, topic);
+		insert.setInt(3, delta);
+		try {
+			insert.executeUpdate();
+		} catch (SQLException e) {
+			// A concurrent answer of the user added the topic first
+			if (!"23505".equals(e.getSQLState())) {
+				throw e;
+			}
+			update.executeUpdate();
+		}
+	}
+
+	/**
+	 * Set the stored rating of a question from its stored counts, and, once
+	 * committed, its rating in the search index. Called after the question's
+	 * counts were updated, so the question is already locked.
+	 *
+	 * @return the change of the rating, or null if there is no such question
+	 */
+	private static RatingChange rateQuestion(Connection conn, List<Statement> statements, int questionId)
+			throws SQLException {
+		PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.RATING + ", " + DerbyConfig.AUTHOR_ID
+				+ " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+		statements.add(s);
+		s.setInt(1, questionId);
+		ResultSet rs = s.executeQuery();
+		double oldRating;
+		int authorId;
+		try {
+			if (!rs.next()) {
+				return null;
+			}
+			oldRating = rs.getDouble(DerbyConfig.RATING);
+			authorId = rs.getInt(DerbyConfig.AUTHOR_ID);
+		} finally {
+			rs.close();
+		}
+
+		update(conn, statements, DerbyConfig.QUESTION_RATING_UPDATE, questionId);
+		s = conn.prepareStatement("SELECT " + DerbyConfig.RATING + " FROM " + DerbyConfig.QUESTION_TABLE_NAME
+				+ " WHERE " + DerbyConfig.ID + " = ?");
+		statements.add(s);
+		s.setInt(1, questionId);
+		rs = s.executeQuery();
+		double rating;
+		try {
+			rs.next();
+			rating = rs.getDouble(DerbyConfig.RATING);
+		} finally {
+			rs.close();
+		}
+		QuestionDaoDerby.getInstance().indexRating(questionId, rating);
+		return new RatingChange(questionId, authorId, rating - oldRating);
+	}
+
+	/**
+	 * Move the change of a question's rating to the sum of the question
+	 * ratings stored with its author
+	 */
+	private static void moveToAuthor(Connection conn, List<Statement> statements, RatingChange change)
+			throws SQLException {
+		PreparedStatement s = conn.prepareStatement("UPDATE " + DerbyConfig.USER_TABLE_NAME + " SET "
+				+ DerbyConfig.QUESTION_RATING_SUM + " = " + DerbyConfig.QUESTION_RATING_SUM + " + ? WHERE "
+				+ DerbyConfig.ID + " = ?");
+		statements.add(s);
+		s.setDouble(1, change.m_delta);
+		s.setInt(2, change.m_authorId);
+		s.executeUpdate();
+		rateUser(conn, statements, change.m_authorId);
+	}
+
+	/**
+	 * Move the change of a question's rating to the ratings stored with its
+	 * topics
+	 */
+	private static void moveToTopics(Connection conn, List<Statement> statements, RatingChange change)
+			throws SQLException {
+		PreparedStatement s = conn.prepareStatement("UPDATE " + DerbyConfig.TOPIC_STATS_TABLE_NAME + " SET "
+				+ DerbyConfig.RATING + " = " + DerbyConfig.RATING + " + ? WHERE " + DerbyConfig.TOPIC + " IN (SELECT "
+				+ DerbyConfig.TOPIC + " FROM " + DerbyConfig.TOPIC_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID
+				+ " = ?)");
+		statements.add(s);
+		s.setDouble(1, change.m_delta);
+		s.setInt(2, change.m_questionId);
+		s.executeUpdate();
+	}
+
+	/**
+	 * Set the stored rating of a user from its stored counts and sums
+	 */
+	private static void rateUser(Connection conn, List<Statement> statements, int userId) throws SQLException {
+		update(conn, statements, DerbyConfig.USER_RATING_UPDATE, userId);
+	}
+
+	private static void update(Connection conn, List<Statement> statements, String sql, int... params)
+			throws SQLException {
+		PreparedStatement s = conn.prepareStatement(sql);
+		statements.add(s);
+		for (int i = 0; i < params.length; i++) {
+			s.setInt(i + 1, params[i]);
+		}
+		s.executeUpdate();
+	}
+
+	/**
+	 * The change of a question's stored rating, which is moved to the values
+	 * stored with its author and topics
+	 */
+	private static class RatingChange {
+
+		final int m_questionId;
+
+		final int m_authorId;
+
+		final double m_delta;
+
+		RatingChange(int questionId, int authorId, double delta) {
+			m_questionId = questionId;
+			m_authorId = authorId;
+			m_delta = delta;
+		}
+
+	}
+
+}
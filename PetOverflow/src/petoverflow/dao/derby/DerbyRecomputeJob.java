@@ -0,0 +1,814 @@
+package petoverflow.dao.derby;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import petoverflow.Config;
+import petoverflow.dao.items.Question;
+import petoverflow.dao.items.User;
+import petoverflow.dao.utility.RecomputeReport;
+
+/**
+ * The DerbyRecomputeJob class recalculates every value the Derby DAOs store
+ * derived from other data - the vote counts, answer counts, ratings and best
+ * answers of questions, the vote counts of answers, the counts, sums and
+ * ratings of users, the topic stats and the topic scores of users - from the
+ * votes, answers and topics, and repairs the stored values that drifted.
+ *
+ * Unlike {@link petoverflow.dao.DaoManager#reconcile()}, which checks the
+ * stored values with a correlated query per row, the job reads every table
+ * once. The questions are split into ranges of ids, which a fork-join pool
+ * reads and aggregates in parallel, each range with its own connection; the
+ * partial sums of users and topics are merged as the ranges are joined.
+ *
+ * The job runs online. It reads with short read-committed queries, and writes
+ * only the drifted values, in small transactions of batched updates. The
+ * stored values are read before the data they are derived from, and each
+ * update applies only if the stored value is still the one that was read. A
+ * change that happened meanwhile updated the stored value itself, so its row
+ * is skipped.
+ */
+public class DerbyRecomputeJob {
+
+	/**
+	 * How far a recalculated rating or sum of ratings may be from the stored
+	 * one. The sums are added up in a different order than the stored ones.
+	 */
+	private static final double TOLERANCE = Double.parseDouble(DerbyConfig.RATING_SUM_TOLERANCE);
+
+	private static final String QUESTION_UPDATE = "UPDATE " + DerbyConfig.QUESTION_TABLE_NAME + " SET "
+			+ DerbyConfig.UP_VOTES + " = ?, " + DerbyConfig.DOWN_VOTES + " = ?, " + DerbyConfig.ANSWER_COUNT + " = ?, "
+			+ DerbyConfig.ANSWER_SCORE + " = ?, " + DerbyConfig.RATING + " = ?, " + DerbyConfig.BEST_ANSWER_ID
+			+ " = ? WHERE " + DerbyConfig.ID + " = ? AND " + DerbyConfig.UP_VOTES + " = ? AND "
+			+ DerbyConfig.DOWN_VOTES + " = ? AND " + DerbyConfig.ANSWER_COUNT + " = ? AND " + DerbyConfig.ANSWER_SCORE
+			+ " = ? AND " + DerbyConfig.RATING + " = ? AND COALESCE(" + DerbyConfig.BEST_ANSWER_ID + ", 0) = ?";
+
+	private static final String ANSWER_UPDATE = "UPDATE " + DerbyConfig.ANSWER_TABLE_NAME + " SET "
+			+ DerbyConfig.UP_VOTES + " = ?, " + DerbyConfig.DOWN_VOTES + " = ? WHERE " + DerbyConfig.ID + " = ? AND "
+			+ DerbyConfig.UP_VOTES + " = ? AND " + DerbyConfig.DOWN_VOTES + " = ?";
+
+	private static final String USER_UPDATE = "UPDATE " + DerbyConfig.USER_TABLE_NAME + " SET "
+			+ DerbyConfig.QUESTION_COUNT + " = ?, " + DerbyConfig.QUESTION_RATING_SUM + " = ?, "
+			+ DerbyConfig.ANSWER_COUNT + " = ?, " + DerbyConfig.ANSWER_SCORE + " = ?, " + DerbyConfig.RATING
+			+ " = ? WHERE " + DerbyConfig.ID + " = ? AND " + DerbyConfig.QUESTION_COUNT + " = ? AND "
+			+ DerbyConfig.QUESTION_RATING_SUM + " = ? AND " + DerbyConfig.ANSWER_COUNT + " = ? AND "
+			+ DerbyConfig.ANSWER_SCORE + " = ? AND " + DerbyConfig.RATING + " = ?";
+
+	private static final String TOPIC_INSERT = "INSERT INTO " + DerbyConfig.TOPIC_STATS_TABLE_NAME + " ("
+			+ DerbyConfig.TOPIC + ", " + DerbyConfig.QUESTION_COUNT + ", " + DerbyConfig.RATING + ") VALUES (?, ?, ?)";
+
+	private static final String TOPIC_UPDATE = "UPDATE " + DerbyConfig.TOPIC_STATS_TABLE_NAME + " SET "
+			+ DerbyConfig.QUESTION_COUNT + " = ?, " + DerbyConfig.RATING + " = ? WHERE " + DerbyConfig.TOPIC
+			+ " = ? AND " + DerbyConfig.QUESTION_COUNT + " = ? AND " + DerbyConfig.RATING + " = ?";
+
+	private static final String USER_TOPIC_INSERT = "INSERT INTO " + DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME + " ("
+			+ DerbyConfig.USER_ID + ", " + DerbyConfig.TOPIC + ", " + DerbyConfig.SCORE + ") VALUES (?, ?, ?)";
+
+	private static final String USER_TOPIC_UPDATE = "UPDATE " + DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME + " SET "
+			+ DerbyConfig.SCORE + " = ? WHERE " + DerbyConfig.USER_ID + " = ? AND " + DerbyConfig.TOPIC + " = ? AND "
+			+ DerbyConfig.SCORE + " = ?";
+
+	private static final String USER_TOPIC_DELETE = "DELETE FROM " + DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME
+			+ " WHERE " + DerbyConfig.USER_ID + " = ? AND " + DerbyConfig.TOPIC + " = ? AND " + DerbyConfig.SCORE
+			+ " = ?";
+
+	private final int m_parallelism;
+
+	private final int m_rangeSize;
+
+	private final int m_batchSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param parallelism
+	 *            the number of ranges read at the same time, 0 for the number
+	 *            of processors. At most half of the connection pool is used,
+	 *            the rest is left to the requests.
+	 * @param rangeSize
+	 *            the number of question ids in each range
+	 * @param batchSize
+	 *            the number of rows written in each transaction
+	 */
+	public DerbyRecomputeJob(int parallelism, int rangeSize, int batchSize) {
+		if (parallelism <= 0) {
+			parallelism = Runtime.getRuntime().availableProcessors();
+		}
+		m_parallelism = Math.max(1, Math.min(parallelism, Config.DB_POOL_MAX_SIZE / 2));
+		m_rangeSize = Math.max(1, rangeSize);
+		m_batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Recalculate all the derived values and repair the drifted ones
+	 *
+	 * @return the report of the run
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	public RecomputeReport run() throws SQLException {
+		long start = System.currentTimeMillis();
+		Stored stored = readStored();
+
+		Aggregate total;
+		ForkJoinPool pool = new ForkJoinPool(m_parallelism);
+		try {
+			total = pool.invoke(new RangeTask(1, stored.m_lastQuestionId));
+		} catch (RangeFailedException e) {
+			throw e.getSQLException();
+		} finally {
+			pool.shutdown();
+		}
+		total.m_report.addRowsRead(stored.m_rowsRead);
+
+		compareUsers(stored, total);
+		compareTopics(stored, total);
+		compareUserTopics(stored, total);
+		write(total.m_writes, total.m_report);
+
+		total.m_report.setDurationMs(System.currentTimeMillis() - start);
+		return total.m_report;
+	}
+
+	/**
+	 * Read the stored values of the users and topics, and the last question
+	 * id. The last question id is read after the stored values, so every
+	 * question they count is in the ranges.
+	 */
+	private Stored readStored() throws SQLException {
+		Stored stored = new Stored();
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			rs = query(conn, statements, "SELECT " + DerbyConfig.ID + ", " + DerbyConfig.QUESTION_COUNT
+					+ ", " + DerbyConfig.QUESTION_RATING_SUM + ", " + DerbyConfig.ANSWER_COUNT + ", "
+					+ DerbyConfig.ANSWER_SCORE + ", " + DerbyConfig.RATING + " FROM " + DerbyConfig.USER_TABLE_NAME);
+			while (rs.next()) {
+				UserSums user = new UserSums();
+				user.m_questionCount = rs.getInt(DerbyConfig.QUESTION_COUNT);
+				user.m_questionRatingSum = rs.getDouble(DerbyConfig.QUESTION_RATING_SUM);
+				user.m_answerCount = rs.getInt(DerbyConfig.ANSWER_COUNT);
+				user.m_answerScore = rs.getInt(DerbyConfig.ANSWER_SCORE);
+				user.m_rating = rs.getDouble(DerbyConfig.RATING);
+				stored.m_users.put(rs.getInt(DerbyConfig.ID), user);
+				stored.m_rowsRead++;
+			}
+			rs.close();
+
+			rs = query(conn, statements, "SELECT " + DerbyConfig.TOPIC + ", " + DerbyConfig.QUESTION_COUNT + ", "
+					+ DerbyConfig.RATING + " FROM " + DerbyConfig.TOPIC_STATS_TABLE_NAME);
+			while (rs.next()) {
+				TopicSums topic = new TopicSums();
+				topic.m_questionCount = rs.getInt(DerbyConfig.QUESTION_COUNT);
+				topic.m_rating = rs.getDouble(DerbyConfig.RATING);
+				stored.m_topics.put(rs.getString(DerbyConfig.TOPIC), topic);
+				stored.m_rowsRead++;
+			}
+			rs.close();
+
+			rs = query(conn, statements, "SELECT " + DerbyConfig.USER_ID + ", " + DerbyConfig.TOPIC + ", "
+					+ DerbyConfig.SCORE + " FROM " + DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME);
+			while (rs.next()) {
+				addScore(stored.m_userTopics, rs.getInt(DerbyConfig.USER_ID), rs.getString(DerbyConfig.TOPIC),
+						rs.getInt(DerbyConfig.SCORE));
+				stored.m_rowsRead++;
+			}
+			rs.close();
+
+			rs = query(conn, statements, "SELECT MAX(" + DerbyConfig.ID + ") FROM " + DerbyConfig.QUESTION_TABLE_NAME);
+			rs.next();
+			stored.m_lastQuestionId = rs.getInt(1);
+			return stored;
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
+		}
+	}
+
+	/**
+	 * Read the questions of a range of ids, their answers, votes and topics,
+	 * and recalculate their values
+	 */
+	private Aggregate readRange(int first, int last) throws SQLException {
+		QuestionRow[] questions = new QuestionRow[last - first + 1];
+		Map<Integer, AnswerRow> answers = new HashMap<Integer, AnswerRow>();
+		Aggregate aggregate = new Aggregate();
+		long rowsRead = 0;
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			// The stored values first, then the data they are derived from
+			rs = query(conn, statements, "SELECT " + DerbyConfig.ID + ", " + DerbyConfig.AUTHOR_ID + ", "
+					+ DerbyConfig.UP_VOTES + ", " + DerbyConfig.DOWN_VOTES + ", " + DerbyConfig.ANSWER_COUNT + ", "
+					+ DerbyConfig.ANSWER_SCORE + ", " + DerbyConfig.RATING + ", " + DerbyConfig.BEST_ANSWER_ID
+					+ " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " BETWEEN ? AND ?",
+					first, last);
+			while (rs.next()) {
+				QuestionRow question = new QuestionRow(rs);
+				questions[question.m_id - first] = question;
+				rowsRead++;
+			}
+			rs.close();
+
+			rs = query(conn, statements, "SELECT " + DerbyConfig.ID + ", " + DerbyConfig.QUESTION_ID + ", "
+					+ DerbyConfig.AUTHOR_ID + ", " + DerbyConfig.UP_VOTES + ", " + DerbyConfig.DOWN_VOTES + " FROM "
+					+ DerbyConfig.ANSWER_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID + " BETWEEN ? AND ? ORDER BY "
+					+ DerbyConfig.ID, first, last);
+			while (rs.next()) {
+				AnswerRow answer = new AnswerRow(rs);
+				QuestionRow question = questions[answer.m_questionId - first];
+				// The question is null if it was added after it was read
+				if (question != null) {
+					question.m_answers.add(answer);
+					answers.put(answer.m_id, answer);
+				}
+				rowsRead++;
+			}
+			rs.close();
+
+			rs = query(conn, statements, "SELECT " + DerbyConfig.QUESTION_ID + ", " + DerbyConfig.VOTE_TYPE
+					+ " FROM " + DerbyConfig.QUESTION_VOTE_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID
+					+ " BETWEEN ? AND ?", first, last);
+			while (rs.next()) {
+				QuestionRow question = questions[rs.getInt(DerbyConfig.QUESTION_ID) - first];
+				if (question != null) {
+					if (rs.getBoolean(DerbyConfig.VOTE_TYPE)) {
+						question.m_upVotes++;
+					} else {
+						question.m_downVotes++;
+					}
+				}
+				rowsRead++;
+			}
+			rs.close();
+
+			rs = query(conn, statements, "SELECT v." + DerbyConfig.ANSWER_ID + ", v." + DerbyConfig.VOTE_TYPE
+					+ " FROM " + DerbyConfig.ANSWER_VOTE_TABLE_NAME + " v JOIN " + DerbyConfig.ANSWER_TABLE_NAME
+					+ " a ON a." + DerbyConfig.ID + " = v." + DerbyConfig.ANSWER_ID + " WHERE a."
+					+ DerbyConfig.QUESTION_ID + " BETWEEN ? AND ?", first, last);
+			while (rs.next()) {
+				AnswerRow answer = answers.get(rs.getInt(DerbyConfig.ANSWER_ID));
+				if (answer != null) {
+					if (rs.getBoolean(DerbyConfig.VOTE_TYPE)) {
+						answer.m_upVotes++;
+					} else {
+						answer.m_downVotes++;
+					}
+				}
+				rowsRead++;
+			}
+			rs.close();
+
+			rs = query(conn, statements, "SELECT " + DerbyConfig.QUESTION_ID + ", " + DerbyConfig.TOPIC + " FROM "
+					+ DerbyConfig.TOPIC_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID + " BETWEEN ? AND ?", first,
+					last);
+			while (rs.next()) {
+				QuestionRow question = questions[rs.getInt(DerbyConfig.QUESTION_ID) - first];
+				if (question != null) {
+					question.m_topics.add(rs.getString(DerbyConfig.TOPIC));
+				}
+				rowsRead++;
+			}
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
+		}
+
+		for (QuestionRow question : questions) {
+			if (question != null) {
+				recompute(question, aggregate);
+			}
+		}
+		aggregate.m_report.addRowsRead(rowsRead);
+		return aggregate;
+	}
+
+	/**
+	 * Recalculate the values of a question and its answers, and add them to
+	 * the sums of their authors and topics
+	 */
+	private void recompute(QuestionRow question, Aggregate aggregate) {
+		int answerScore = 0;
+		int bestAnswerId = 0;
+		int bestScore = 0;
+		for (AnswerRow answer : question.m_answers) {
+			if (answer.m_upVotes != answer.m_storedUpVotes || answer.m_downVotes != answer.m_storedDownVotes) {
+				aggregate.m_report.addDrift("answer vote counts", 1);
+				aggregate.m_writes.add(new Write(ANSWER_UPDATE, answer.m_upVotes, answer.m_downVotes, answer.m_id,
+						answer.m_storedUpVotes, answer.m_storedDownVotes));
+			}
+			int score = answer.m_upVotes - answer.m_downVotes;
+			answerScore += score;
+			// The answers are in ascending ids, so ties keep the earliest one
+			if (bestAnswerId == 0 || score > bestScore) {
+				bestAnswerId = answer.m_id;
+				bestScore = score;
+			}
+
+			UserSums author = aggregate.getUser(answer.m_authorId);
+			author.m_answerCount++;
+			author.m_answerScore += score;
+			for (String topic : question.m_topics) {
+				addScore(aggregate.m_userTopics, answer.m_authorId, topic, score);
+			}
+		}
+		int answerCount = question.m_answers.size();
+		double rating = Question.combineRating(question.m_upVotes - question.m_downVotes, answerScore, answerCount);
+
+		boolean drifted = false;
+		if (question.m_upVotes != question.m_storedUpVotes || question.m_downVotes != question.m_storedDownVotes) {
+			aggregate.m_report.addDrift("question vote counts", 1);
+			drifted = true;
+		}
+		if (answerCount != question.m_storedAnswerCount || answerScore != question.m_storedAnswerScore) {
+			aggregate.m_report.addDrift("question answer counts", 1);
+			drifted = true;
+		}
+		if (Math.abs(rating - question.m_storedRating) > TOLERANCE) {
+			aggregate.m_report.addDrift("question ratings", 1);
+			drifted = true;
+		}
+		if (bestAnswerId != question.m_storedBestAnswerId) {
+			aggregate.m_report.addDrift("best answers", 1);
+			drifted = true;
+		}
+		if (drifted) {
+			aggregate.m_writes.add(new Write(QUESTION_UPDATE, question.m_upVotes, question.m_downVotes, answerCount,
+					answerScore, rating, bestAnswerId != 0 ? bestAnswerId : null, question.m_id,
+					question.m_storedUpVotes, question.m_storedDownVotes, question.m_storedAnswerCount,
+					question.m_storedAnswerScore, question.m_storedRating, question.m_storedBestAnswerId));
+		}
+
+		UserSums author = aggregate.getUser(question.m_authorId);
+		author.m_questionCount++;
+		author.m_questionRatingSum += rating;
+		for (String topic : question.m_topics) {
+			TopicSums sums = aggregate.getTopic(topic);
+			sums.m_questionCount++;
+			sums.m_rating += rating;
+		}
+	}
+
+	/**
+	 * Compare the stored sums and ratings of the users to the recalculated
+	 * ones. Users added after the stored values were read are left out.
+	 */
+	private void compareUsers(Stored stored, Aggregate total) {
+		for (Entry<Integer, UserSums> entry : stored.m_users.entrySet()) {
+			UserSums storedUser = entry.getValue();
+			UserSums user = total.getUser(entry.getKey());
+			user.m_rating = User.combineRating(user.m_questionRatingSum, user.m_questionCount, user.m_answerScore,
+					user.m_answerCount);
+
+			boolean drifted = false;
+			if (user.m_questionCount != storedUser.m_questionCount
+					|| Math.abs(user.m_questionRatingSum - storedUser.m_questionRatingSum) > TOLERANCE
+					|| user.m_answerCount != storedUser.m_answerCount
+					|| user.m_answerScore != storedUser.m_answerScore) {
+				total.m_report.addDrift("user post counts", 1);
+				drifted = true;
+			}
+			if (Math.abs(user.m_rating - storedUser.m_rating) > TOLERANCE) {
+				total.m_report.addDrift("user ratings", 1);
+				drifted = true;
+			}
+			if (drifted) {
+				total.m_writes.add(new Write(USER_UPDATE, user.m_questionCount, user.m_questionRatingSum,
+						user.m_answerCount, user.m_answerScore, user.m_rating, entry.getKey(),
+						storedUser.m_questionCount, storedUser.m_questionRatingSum, storedUser.m_answerCount,
+						storedUser.m_answerScore, storedUser.m_rating));
+			}
+		}
+	}
+
+	/**
+	 * Compare the stored topic stats to the recalculated ones
+	 */
+	private void compareTopics(Stored stored, Aggregate total) {
+		for (Entry<String, TopicSums> entry : stored.m_topics.entrySet()) {
+			total.getTopic(entry.getKey());
+		}
+		for (Entry<String, TopicSums> entry : total.m_topics.entrySet()) {
+			TopicSums topic = entry.getValue();
+			TopicSums storedTopic = stored.m_topics.get(entry.getKey());
+			if (storedTopic == null) {
+				total.m_report.addDrift("topic stats", 1);
+				total.m_writes.add(new Write(TOPIC_INSERT, entry.getKey(), topic.m_questionCount, topic.m_rating));
+			} else if (topic.m_questionCount != storedTopic.m_questionCount
+					|| Math.abs(topic.m_rating - storedTopic.m_rating) > TOLERANCE) {
+				total.m_report.addDrift("topic stats", 1);
+				total.m_writes.add(new Write(TOPIC_UPDATE, topic.m_questionCount, topic.m_rating, entry.getKey(),
+						storedTopic.m_questionCount, storedTopic.m_rating));
+			}
+		}
+	}
+
+	/**
+	 * Compare the stored topic scores of the users to the recalculated ones
+	 */
+	private void compareUserTopics(Stored stored, Aggregate total) {
+		for (Entry<Integer, Map<String, Integer>> user : total.m_userTopics.entrySet()) {
+			Map<String, Integer> storedScores = stored.m_userTopics.get(user.getKey());
+			for (Entry<String, Integer> score : user.getValue().entrySet()) {
+				Integer storedScore = storedScores != null ? storedScores.get(score.getKey()) : null;
+				if (storedScore == null) {
+					total.m_report.addDrift("user topic scores", 1);
+					total.m_writes.add(new Write(USER_TOPIC_INSERT, user.getKey(), score.getKey(), score.getValue()));
+				} else if (!storedScore.equals(score.getValue())) {
+					total.m_report.addDrift("user topic scores", 1);
+					total.m_writes.add(new Write(USER_TOPIC_UPDATE, score.getValue(), user.getKey(), score.getKey(),
+							storedScore));
+				}
+			}
+		}
+		for (Entry<Integer, Map<String, Integer>> user : stored.m_userTopics.entrySet()) {
+			Map<String, Integer> scores = total.m_userTopics.get(user.getKey());
+			for (Entry<String, Integer> storedScore : user.getValue().entrySet()) {
+				if (scores == null || !scores.containsKey(storedScore.getKey())) {
+					total.m_report.addDrift("user topic scores", 1);
+					total.m_writes.add(new Write(USER_TOPIC_DELETE, user.getKey(), storedScore.getKey(),
+							storedScore.getValue()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the repairs, m_batchSize rows per transaction. Updates and deletes
+	 * are sent in batches; inserts are sent one by one, since a concurrent
+	 * change may have inserted the same row.
+	 */
+	private void write(List<Write> writes, RecomputeReport report) throws SQLException {
+		if (writes.isEmpty()) {
+			return;
+		}
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		Map<String, PreparedStatement> batches = new LinkedHashMap<String, PreparedStatement>();
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			conn.setAutoCommit(false);
+			int rows = 0;
+			for (Write write : writes) {
+				PreparedStatement s = batches.get(write.m_sql);
+				if (s == null) {
+					s = conn.prepareStatement(write.m_sql);
+					statements.add(s);
+					batches.put(write.m_sql, s);
+				}
+				write.bind(s);
+				if (write.m_sql.startsWith("INSERT")) {
+					try {
+						report.addWritten(s.executeUpdate());
+					} catch (SQLException e) {
+						if (!"23505".equals(e.getSQLState())) {
+							throw e;
+						}
+						report.addSkipped(1);
+					}
+				} else {
+					s.addBatch();
+				}
+				if (++rows % m_batchSize == 0) {
+					flush(batches, report);
+					conn.commit();
+				}
+			}
+			flush(batches, report);
+			conn.commit();
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(null, statements, conn);
+		}
+	}
+
+	private static void flush(Map<String, PreparedStatement> batches, RecomputeReport report) throws SQLException {
+		for (Entry<String, PreparedStatement> batch : batches.entrySet()) {
+			if (batch.getKey().startsWith("INSERT")) {
+				continue;
+			}
+			for (int count : batch.getValue().executeBatch()) {
+				if (count == 0) {
+					report.addSkipped(1);
+				} else {
+					report.addWritten(1);
+				}
+			}
+		}
+	}
+
+	private static ResultSet query(Connection conn, List<Statement> statements, String sql, int... params)
+			throws SQLException {
+		PreparedStatement s = conn.prepareStatement(sql);
+		statements.add(s);
+		for (int i = 0; i < params.length; i++) {
+			s.setInt(i + 1, params[i]);
+		}
+		return s.executeQuery();
+	}
+
+	private static void addScore(Map<Integer, Map<String, Integer>> scores, int userId, String topic, int score) {
+		Map<String, Integer> userScores = scores.get(userId);
+		if (userScores == null) {
+			userScores = new HashMap<String, Integer>();
+			scores.put(userId, userScores);
+		}
+		Integer previous = userScores.get(topic);
+		userScores.put(topic, (previous == null ? 0 : previous) + score);
+	}
+
+	/**
+	 * Splits a range of question ids until it is small enough to read, and
+	 * merges the aggregates of the halves
+	 */
+	private class RangeTask extends RecursiveTask<Aggregate> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int m_first;
+
+		private final int m_last;
+
+		RangeTask(int first, int last) {
+			m_first = first;
+			m_last = last;
+		}
+
+		@Override
+		protected Aggregate compute() {
+			if (m_last - m_first < m_rangeSize) {
+				try {
+					return m_first <= m_last ? readRange(m_first, m_last) : new Aggregate();
+				} catch (SQLException e) {
+					throw new RangeFailedException(e);
+				}
+			}
+			int middle = m_first + (m_last - m_first) / 2;
+			RangeTask left = new RangeTask(m_first, middle);
+			left.fork();
+			Aggregate aggregate = new RangeTask(middle + 1, m_last).compute();
+			aggregate.merge(left.join());
+			return aggregate;
+		}
+
+	}
+
+	/**
+	 * Carries the failure of a range out of the fork-join pool
+	 */
+	private static class RangeFailedException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		RangeFailedException(SQLException cause) {
+			super(cause);
+		}
+
+		RangeFailedException(Throwable cause) {
+			super(cause);
+		}
+
+		/**
+		 * Get the failure of the range. The pool may rethrow a copy of the
+		 * exception, which wraps the original one.
+		 */
+		SQLException getSQLException() {
+			Throwable cause = getCause();
+			while (!(cause instanceof SQLException)) {
+				cause = cause.getCause();
+			}
+			return (SQLException) cause;
+		}
+
+	}
+
+	/**
+	 * The values derived from a part of the questions, and the repairs found
+	 * in them
+	 */
+	private static class Aggregate {
+
+		final Map<Integer, UserSums> m_users = new HashMap<Integer, UserSums>();
+
+		final Map<String, TopicSums> m_topics = new HashMap<String, TopicSums>();
+
+		final Map<Integer, Map<String, Integer>> m_userTopics = new HashMap<Integer, Map<String, Integer>>();
+
+		final List<Write> m_writes = new ArrayList<Write>();
+
+		final RecomputeReport m_report = new RecomputeReport();
+
+		UserSums getUser(int userId) {
+			UserSums user = m_users.get(userId);
+			if (user == null) {
+				user = new UserSums();
+				m_users.put(userId, user);
+			}
+			return user;
+		}
+
+		TopicSums getTopic(String topic) {
+			TopicSums sums = m_topics.get(topic);
+			if (sums == null) {
+				sums = new TopicSums();
+				m_topics.put(topic, sums);
+			}
+			return sums;
+		}
+
+		void merge(Aggregate other) {
+			for (Entry<Integer, UserSums> entry : other.m_users.entrySet()) {
+				UserSums user = getUser(entry.getKey());
+				user.m_questionCount += entry.getValue().m_questionCount;
+				user.m_questionRatingSum += entry.getValue().m_questionRatingSum;
+				user.m_answerCount += entry.getValue().m_answerCount;
+				user.m_answerScore += entry.getValue().m_answerScore;
+			}
+			for (Entry<String, TopicSums> entry : other.m_topics.entrySet()) {
+				TopicSums topic = getTopic(entry.getKey());
+				topic.m_questionCount += entry.getValue().m_questionCount;
+				topic.m_rating += entry.getValue().m_rating;
+			}
+			for (Entry<Integer, Map<String, Integer>> user : other.m_userTopics.entrySet()) {
+				for (Entry<String, Integer> score : user.getValue().entrySet()) {
+					addScore(m_userTopics, user.getKey(), score.getKey(), score.getValue());
+				}
+			}
+			m_writes.addAll(other.m_writes);
+			m_report.merge(other.m_report);
+		}
+
+	}
+
+	/**
+	 * The stored values of the users and topics
+	 */
+	private static class Stored {
+
+		final Map<Integer, UserSums> m_users = new HashMap<Integer, UserSums>();
+
+		final Map<String, TopicSums> m_topics = new HashMap<String, TopicSums>();
+
+		final Map<Integer, Map<String, Integer>> m_userTopics = new HashMap<Integer, Map<String, Integer>>();
+
+		int m_lastQuestionId = 0;
+
+		long m_rowsRead = 0;
+
+	}
+
+	private static class UserSums {
+
+		int m_questionCount = 0;
+
+		double m_questionRatingSum = 0;
+
+		int m_answerCount = 0;
+
+		int m_answerScore = 0;
+
+		double m_rating = 0;
+
+	}
+
+	private static class TopicSums {
+
+		int m_questionCount = 0;
+
+		double m_rating = 0;
+
+	}
+
+	/**
+	 * A question's stored values, and the votes, answers and topics they are
+	 * recalculated from
+	 */
+	private static class QuestionRow {
+
+		final int m_id;
+
+		final int m_authorId;
+
+		final int m_storedUpVotes;
+
+		final int m_storedDownVotes;
+
+		final int m_storedAnswerCount;
+
+		final int m_storedAnswerScore;
+
+		final double m_storedRating;
+
+		/**
+		 * The stored best answer, 0 if there is none
+		 */
+		final int m_storedBestAnswerId;
+
+		int m_upVotes = 0;
+
+		int m_downVotes = 0;
+
+		final List<AnswerRow> m_answers = new ArrayList<AnswerRow>();
+
+		final List<String> m_topics = new ArrayList<String>();
+
+		QuestionRow(ResultSet rs) throws SQLException {
+			m_id = rs.getInt(DerbyConfig.ID);
+			m_authorId = rs.getInt(DerbyConfig.AUTHOR_ID);
+			m_storedUpVotes = rs.getInt(DerbyConfig.UP_VOTES);
+			m_storedDownVotes = rs.getInt(DerbyConfig.DOWN_VOTES);
+			m_storedAnswerCount = rs.getInt(DerbyConfig.ANSWER_COUNT);
+			m_storedAnswerScore = rs.getInt(DerbyConfig.ANSWER_SCORE);
+			m_storedRating = rs.getDouble(DerbyConfig.RATING);
+			m_storedBestAnswerId = rs.getInt(DerbyConfig.BEST_ANSWER_ID);
+		}
+
+	}
+
+	/**
+	 * An answer's stored vote counts, and the votes they are recalculated
+	 * from
+	 */
+	private static class AnswerRow {
+
+		final int m_id;
+
+		final int m_questionId;
+
+		final int m_authorId;
+
+		final int m_storedUpVotes;
+
+		final int m_storedDownVotes;
+
+		int m_upVotes = 0;
+
+		int m_downVotes = 0;
+
+		AnswerRow(ResultSet rs) throws SQLException {
+			m_id = rs.getInt(DerbyConfig.ID);
+			m_questionId = rs.getInt(DerbyConfig.QUESTION_ID);
+			m_authorId = rs.getInt(DerbyConfig.AUTHOR_ID);
+			m_storedUpVotes = rs.getInt(DerbyConfig.UP_VOTES);
+			m_storedDownVotes = rs.getInt(DerbyConfig.DOWN_VOTES);
+		}
+
+	}
+
+	/**
+	 * A repair to write: a statement and its parameters
+	 */
+	private static class Write {
+
+		final String m_sql;
+
+		final Object[] m_params;
+
+		Write(String sql, Object... params) {
+			m_sql = sql;
+			m_params = params;
+		}
+
+		void bind(PreparedStatement s) throws SQLException {
+			for (int i = 0; i < m_params.length; i++) {
+				Object param = m_params[i];
+				if (param == null) {
+					s.setNull(i + 1, Types.INTEGER);
+				} else if (param instanceof Integer) {
+					s.setInt(i + 1, (Integer) param);
+				} else if (param instanceof Double) {
+					s.setDouble(i + 1, (Double) param);
+				} else {
+					s.setString(i + 1, (String) param);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,235 @@
+package petoverflow.dao.derby;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The DerbySchemaMigrator class brings the schema of an existing database up
+ * to date. The tables are created by the DAOs with their original layout; every
+ * later schema change (indexes, new columns, derived tables) is a numbered
+ * migration here. The version of the last applied migration is stored in the
+ * database, so each migration runs exactly once per database.
+ *
+ * To change the schema, append a new migration with the next version number.
+ * Never edit a migration which was already released.
+ */
+public class DerbySchemaMigrator {
+
+	/**
+	 * All migrations, in the order they are applied
+	 */
+	private static final List<Migration> MIGRATIONS = Arrays.asList(
+
+			new Migration(1, "Secondary indexes for the hot filters",
+					createIndex(DerbyConfig.QUESTION_AUTHOR_INDEX, DerbyConfig.QUESTION_TABLE_NAME,
+							DerbyConfig.AUTHOR_ID),
+					createIndex(DerbyConfig.QUESTION_TIMESTAMP_INDEX, DerbyConfig.QUESTION_TABLE_NAME,
+							DerbyConfig.TIMESTAMP),
+					createIndex(DerbyConfig.ANSWER_QUESTION_INDEX, DerbyConfig.ANSWER_TABLE_NAME,
+							DerbyConfig.QUESTION_ID),
+					createIndex(DerbyConfig.ANSWER_AUTHOR_INDEX, DerbyConfig.ANSWER_TABLE_NAME, DerbyConfig.AUTHOR_ID),
+					createIndex(DerbyConfig.TOPIC_TOPIC_INDEX, DerbyConfig.TOPIC_TABLE_NAME,
+							DerbyConfig.TOPIC + ", " + DerbyConfig.QUESTION_ID),
+					createIndex(DerbyConfig.TOPIC_QUESTION_INDEX, DerbyConfig.TOPIC_TABLE_NAME,
+							DerbyConfig.QUESTION_ID),
+					createIndex(DerbyConfig.QUESTION_VOTE_QUESTION_INDEX, DerbyConfig.QUESTION_VOTE_TABLE_NAME,
+							DerbyConfig.QUESTION_ID),
+					createIndex(DerbyConfig.ANSWER_VOTE_ANSWER_INDEX, DerbyConfig.ANSWER_VOTE_TABLE_NAME,
+							DerbyConfig.ANSWER_ID)),
+
+			new Migration(2, "Rating views for ordering in SQL", DerbyConfig.ANSWER_SCORE_VIEW_CREATE,
+					DerbyConfig.QUESTION_RATING_VIEW_CREATE, DerbyConfig.USER_RATING_VIEW_CREATE,
+					DerbyConfig.TOPIC_RATING_VIEW_CREATE),
+
+			new Migration(3, "Vote counters on questions and answers",
+					addColumn(DerbyConfig.QUESTION_TABLE_NAME, DerbyConfig.UP_VOTES, DerbyConfig.COUNT_TYPE),
+					addColumn(DerbyConfig.QUESTION_TABLE_NAME, DerbyConfig.DOWN_VOTES, DerbyConfig.COUNT_TYPE),
+					addColumn(DerbyConfig.ANSWER_TABLE_NAME, DerbyConfig.UP_VOTES, DerbyConfig.COUNT_TYPE),
+					addColumn(DerbyConfig.ANSWER_TABLE_NAME, DerbyConfig.DOWN_VOTES, DerbyConfig.COUNT_TYPE),
+					DerbyConfig.QUESTION_VOTES_RECOUNT, DerbyConfig.ANSWER_VOTES_RECOUNT),
+
+			new Migration(4, "Stored question ratings",
+					addColumn(DerbyConfig.QUESTION_TABLE_NAME, DerbyConfig.ANSWER_COUNT, DerbyConfig.COUNT_TYPE),
+					addColumn(DerbyConfig.QUESTION_TABLE_NAME, DerbyConfig.ANSWER_SCORE, DerbyConfig.COUNT_TYPE),
+					addColumn(DerbyConfig.QUESTION_TABLE_NAME, DerbyConfig.RATING, DerbyConfig.RATING_TYPE),
+					DerbyConfig.QUESTION_ANSWERS_RECOUNT, DerbyConfig.QUESTION_RATING_RECOUNT,
+					createIndex(DerbyConfig.QUESTION_RATING_INDEX, DerbyConfig.QUESTION_TABLE_NAME,
+							DerbyConfig.RATING + " DESC, " + DerbyConfig.ID)),
+
+			new Migration(5, "Stored user ratings",
+					addColumn(DerbyConfig.USER_TABLE_NAME, DerbyConfig.QUESTION_COUNT, DerbyConfig.COUNT_TYPE),
+					addColumn(DerbyConfig.USER_TABLE_NAME, DerbyConfig.QUESTION_RATING_SUM, DerbyConfig.RATING_TYPE),
+					addColumn(DerbyConfig.USER_TABLE_NAME, DerbyConfig.ANSWER_COUNT, DerbyConfig.COUNT_TYPE),
+					addColumn(DerbyConfig.USER_TABLE_NAME, DerbyConfig.ANSWER_SCORE, DerbyConfig.COUNT_TYPE),
+					addColumn(DerbyConfig.USER_TABLE_NAME, DerbyConfig.RATING, DerbyConfig.RATING_TYPE),
+					DerbyConfig.USER_POSTS_RECOUNT, DerbyConfig.USER_RATING_RECOUNT,
+					createIndex(DerbyConfig.USER_RATING_INDEX, DerbyConfig.USER_TABLE_NAME,
+							DerbyConfig.RATING + " DESC, " + DerbyConfig.ID)),
+
+			new Migration(6, "Stored topic ratings, rating views dropped",
+					dropView(DerbyConfig.TOPIC_RATING_VIEW_NAME), dropView(DerbyConfig.USER_RATING_VIEW_NAME),
+					dropView(DerbyConfig.QUESTION_RATING_VIEW_NAME), dropView(DerbyConfig.ANSWER_SCORE_VIEW_NAME),
+					DerbyConfig.TOPIC_STATS_TABLE_CREATE, DerbyConfig.TOPIC_STATS_FILL,
+					createIndex(DerbyConfig.TOPIC_RATING_INDEX, DerbyConfig.TOPIC_STATS_TABLE_NAME,
+							DerbyConfig.RATING + " DESC, " + DerbyConfig.TOPIC)),
+
+			new Migration(7, "Index of the unanswered questions, newest first",
+					createIndex(DerbyConfig.QUESTION_UNANSWERED_INDEX, DerbyConfig.QUESTION_TABLE_NAME,
+							DerbyConfig.ANSWER_COUNT + ", " + DerbyConfig.TIMESTAMP + " DESC, " + DerbyConfig.ID
+									+ " DESC")),
+
+			new Migration(8, "Stored best answer of each question",
+					addColumn(DerbyConfig.QUESTION_TABLE_NAME, DerbyConfig.BEST_ANSWER_ID,
+							DerbyConfig.BEST_ANSWER_ID_TYPE),
+					DerbyConfig.QUESTION_BEST_ANSWER_RECOUNT),
+
+			new Migration(9, "Stored topic scores of each user",
+					DerbyConfig.USER_TOPIC_SCORE_TABLE_CREATE, DerbyConfig.USER_TOPIC_SCORES_FILL,
+					createIndex(DerbyConfig.USER_TOPIC_SCORE_INDEX, DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME,
+							DerbyConfig.USER_ID + ", " + DerbyConfig.SCORE + " DESC, " + DerbyConfig.TOPIC))
+
+	);
+
+	/**
+	 * Apply all the migrations the database doesn't have yet
+	 *
+	 * @param dbName
+	 *            the name of the data base
+	 * @throws ClassNotFoundException
+	 *             if derby is not installed
+	 * @throws SQLException
+	 *             if a migration fails. The failed migration is rolled back.
+	 */
+	public static void migrate(String dbName) throws ClassNotFoundException, SQLException {
+		DerbyUtils.initTable(dbName, DerbyConfig.SCHEMA_VERSION_TABLE_CREATE);
+
+		int currentVersion = getSchemaVersion(dbName);
+		int latestVersion = MIGRATIONS.get(MIGRATIONS.size() - 1).m_version;
+		if (currentVersion >= latestVersion) {
+			System.out.println("Database schema is up to date (version " + currentVersion + ")");
+			return;
+		}
+
+		System.out.println("Migrating database schema from version " + currentVersion + " to " + latestVersion);
+		long start = System.currentTimeMillis();
+		for (Migration migration : MIGRATIONS) {
+			if (migration.m_version > currentVersion) {
+				apply(dbName, migration);
+			}
+		}
+		System.out.println("Database schema migrated in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Get the version of the last migration applied to the database
+	 *
+	 * @param dbName
+	 *            the name of the data base
+	 * @return the schema version, 0 if no migration was applied
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	public static int getSchemaVersion(String dbName) throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(dbName);
+			PreparedStatement s = conn.prepareStatement(
+					"SELECT MAX(" + DerbyConfig.VERSION + ") FROM " + DerbyConfig.SCHEMA_VERSION_TABLE_NAME);
+			statements.add(s);
+			rs = s.executeQuery();
+			rs.next();
+			return rs.getInt(1);
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
+		}
+	}
+
+	/**
+	 * Apply a single migration in one transaction, and record its version
+	 */
+	private static void apply(String dbName, Migration migration) throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+
+		long migrationStart = System.currentTimeMillis();
+		DerbyUnitOfWork.begin();
+		try {
+			conn = DerbyUtils.getConnection(dbName);
+			for (String step : migration.m_steps) {
+				long stepStart = System.currentTimeMillis();
+				Statement s = conn.createStatement();
+				statements.add(s);
+				s.execute(step);
+				System.out.println("  [" + migration.m_version + "] " + step + " ("
+						+ (System.currentTimeMillis() - stepStart) + "ms)");
+			}
+
+			long duration = System.currentTimeMillis() - migrationStart;
+			PreparedStatement s = conn.prepareStatement("INSERT INTO " + DerbyConfig.SCHEMA_VERSION_TABLE_NAME + " ("
+					+ DerbyConfig.VERSION + ", " + DerbyConfig.DESCRIPTION + ", " + DerbyConfig.APPLIED_AT + ", "
+					+ DerbyConfig.DURATION_MS + ") VALUES (?, ?, ?, ?)");
+			statements.add(s);
+			s.setInt(1, migration.m_version);
+			s.setString(2, migration.m_description);
+			s.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+			s.setLong(4, duration);
+			s.executeUpdate();
+
+			DerbyUnitOfWork.commit();
+			System.out.println("Applied schema migration " + migration.m_version + " (" + migration.m_description
+					+ ") in " + duration + "ms");
+
+		} catch (SQLException e) {
+			System.err.println("Schema migration " + migration.m_version + " failed, rolling back");
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(null, statements, conn);
+			DerbyUnitOfWork.end();
+		}
+	}
+
+	private static String createIndex(String indexName, String tableName, String columns) {
+		return "CREATE INDEX " + indexName + " ON " + tableName + " (" + columns + ")";
+	}
+
+	private static String dropView(String viewName) {
+		return "DROP VIEW " + viewName;
+	}
+
+	private static String addColumn(String tableName, String column, String type) {
+		return "ALTER TABLE " + tableName + " ADD COLUMN " + column + " " + type;
+	}
+
+	/**
+	 * A numbered schema change, made of SQL statements applied in order
+	 */
+	private static class Migration {
+
+		private final int m_version;
+
+		private final String m_description;
+
+		private final String[] m_steps;
+
+		public Migration(int version, String description, String... steps) {
+			m_version = version;
+			m_description = description;
+			m_steps = steps;
+		}
+
+	}
+
+}
@@ -0,0 +1,241 @@
+package petoverflow.dao.derby;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DerbyStatementCache class keeps the prepared statements of one physical
+ * connection, keyed by their SQL text, so that preparing the same SQL again
+ * skips Derby's parsing and plan compilation.
+ *
+ * The cache is bounded and evicts the least recently used statement. A cached
+ * statement is handed out to one user at a time; closing it returns it to the
+ * cache. If the same SQL is prepared again while its statement is still in use
+ * (e.g. a nested DAO call while iterating a result set), a plain uncached
+ * statement is returned instead.
+ */
+public class DerbyStatementCache {
+
+	private final Connection m_physical;
+
+	private final int m_maxSize;
+
+	private final AtomicLong m_hits;
+
+	private final AtomicLong m_misses;
+
+	private final LinkedHashMap<String, CachedStatement> m_statements;
+
+	/**
+	 * Constructor
+	 *
+	 * @param physical
+	 *            the connection the statements are prepared on
+	 * @param maxSize
+	 *            the maximal number of cached statements
+	 * @param hits
+	 *            counter of cache hits, may be shared between caches
+	 * @param misses
+	 *            counter of cache misses, may be shared between caches
+	 */
+	public DerbyStatementCache(Connection physical, int maxSize, AtomicLong hits, AtomicLong misses) {
+		m_physical = physical;
+		m_maxSize = maxSize;
+		m_hits = hits;
+		m_misses = misses;
+		m_statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+				if (size() <= m_maxSize) {
+					return false;
+				}
+				eldest.getValue().evict();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Prepare a statement, reusing a cached one if possible
+	 *
+	 * @param method
+	 *            the <code>prepareStatement</code> variant that was called
+	 * @param args
+	 *            the arguments of the call, the SQL text first
+	 * @return a prepared statement, whose <code>close</code> returns it to
+	 *         the cache
+	 * @throws SQLException
+	 *             if Derby fails to prepare the statement
+	 */
+	public synchronized PreparedStatement prepare(Method method, Object[] args) throws SQLException {
+		String key = keyOf(args);
+		CachedStatement cached = m_statements.get(key);
+		if (cached != null && !cached.m_inUse) {
+			m_hits.incrementAndGet();
+			cached.m_inUse = true;
+			return cached.m_proxy;
+		}
+
+		m_misses.incrementAndGet();
+		PreparedStatement physical = invokePrepare(method, args);
+		if (cached != null) {
+			// Already in use by an outer caller, don't share it
+			return physical;
+		}
+		cached = new CachedStatement(physical);
+		cached.m_inUse = true;
+		m_statements.put(key, cached);
+		return cached.m_proxy;
+	}
+
+	/**
+	 * Close all cached statements
+	 */
+	public synchronized void clear() {
+		List<CachedStatement> statements = new ArrayList<CachedStatement>(m_statements.values());
+		m_statements.clear();
+		for (CachedStatement statement : statements) {
+			statement.evict();
+		}
+	}
+
+	/**
+	 * Get the number of currently cached statements
+	 *
+	 * @return the size of the cache
+	 */
+	public synchronized int size() {
+		return m_statements.size();
+	}
+
+	private PreparedStatement invokePrepare(Method method, Object[] args) throws SQLException {
+		try {
+			return (PreparedStatement) method.invoke(m_physical, args);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			throw new SQLException(cause);
+		} catch (IllegalAccessException e) {
+			throw new SQLException(e);
+		}
+	}
+
+	/**
+	 * Build the cache key of a <code>prepareStatement</code> call. Calls with
+	 * the same SQL but different extra arguments (e.g. generated key columns)
+	 * get different keys.
+	 */
+	private static String keyOf(Object[] args) {
+		if (args.length == 1) {
+			return (String) args[0];
+		}
+		StringBuilder key = new StringBuilder((String) args[0]);
+		for (int i = 1; i < args.length; i++) {
+			key.append('\u0000');
+			if (args[i] instanceof Object[]) {
+				for (Object o : (Object[]) args[i]) {
+					key.append(o).append(',');
+				}
+			} else if (args[i] instanceof int[]) {
+				for (int o : (int[]) args[i]) {
+					key.append(o).append(',');
+				}
+			} else {
+				key.append(args[i]);
+			}
+		}
+		return key.toString();
+	}
+
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			// Discarded anyway
+		}
+	}
+
+	/**
+	 * A cached statement and the proxy handed out for it. Closing the proxy
+	 * clears the parameters and makes the statement available again.
+	 */
+	private class CachedStatement implements InvocationHandler {
+
+		private final PreparedStatement m_physical;
+
+		private final PreparedStatement m_proxy;
+
+		private boolean m_inUse = false;
+
+		private boolean m_evicted = false;
+
+		public CachedStatement(PreparedStatement physical) {
+			m_physical = physical;
+			m_proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		/**
+		 * Remove this statement from use. It is closed now, or when its
+		 * current user closes it.
+		 */
+		public void evict() {
+			m_evicted = true;
+			if (!m_inUse) {
+				closeQuietly(m_physical);
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close")) {
+				synchronized (DerbyStatementCache.this) {
+					if (!m_inUse) {
+						return null;
+					}
+					m_inUse = false;
+					if (m_evicted) {
+						closeQuietly(m_physical);
+					} else {
+						m_physical.clearParameters();
+					}
+				}
+				return null;
+			} else if (name.equals("isClosed")) {
+				return !m_inUse || m_physical.isClosed();
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("toString")) {
+				return "Cached" + m_physical.toString();
+			} else if (!m_inUse) {
+				throw new SQLException("Statement is closed");
+			}
+
+			try {
+				return method.invoke(m_physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,323 @@
+package petoverflow.dao.derby;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The DerbyUnitOfWork class binds a single database connection to the current
+ * thread. While a unit of work is active, every
+ * {@link DerbyUtils#getConnection(String)} call of the thread returns the same
+ * connection, in a single transaction that is committed once at the end.
+ *
+ * Units of work can be nested. Only the outermost one commits; if a nested
+ * unit of work ends without committing, the whole unit of work is rolled back.
+ * Changes outside the database that depend on the transaction, such as the
+ * search index, are registered with {@link #afterCommit(Runnable)}, so they are
+ * made only once the outermost level committed.
+ *
+ * When Derby picks the transaction as the victim of a deadlock, it rolls the
+ * whole transaction back. The unit of work records that, and refuses to commit
+ * the work that ran after it; the caller may run the unit of work again, see
+ * {@link #isDeadlocked()}.
+ * Usage:
+ *
+ * <pre>
+ * DerbyUnitOfWork.begin();
+ * try {
+ * 	// DAO calls
+ * 	DerbyUnitOfWork.commit();
+ * } finally {
+ * 	DerbyUnitOfWork.end();
+ * }
+ * </pre>
+ */
+public class DerbyUnitOfWork {
+
+	/**
+	 * The SQLState Derby reports when a transaction is picked as a deadlock
+	 * victim
+	 */
+	public static final String DEADLOCK_STATE = "40001";
+
+	/**
+	 * The unit of work of each thread
+	 */
+	private static final ThreadLocal<DerbyUnitOfWork> m_current = new ThreadLocal<DerbyUnitOfWork>();
+
+	/**
+	 * The name of the DB the connection belongs to
+	 */
+	private String m_dbName;
+
+	/**
+	 * The pooled connection of this unit of work, opened on first use
+	 */
+	private Connection m_connection;
+
+	/**
+	 * The view of the connection handed out to DAOs, closing it does nothing
+	 */
+	private Connection m_shared;
+
+	/**
+	 * Number of begin calls that weren't ended yet
+	 */
+	private int m_depth = 1;
+
+	/**
+	 * Whether the innermost open level committed
+	 */
+	private boolean m_levelCommitted = false;
+
+	/**
+	 * Set when a nested level ended without committing
+	 */
+	private boolean m_rollbackOnly = false;
+
+	/**
+	 * Set when a statement of the transaction failed on a deadlock
+	 */
+	private boolean m_deadlocked = false;
+
+	/**
+	 * The actions to run once the transaction committed, in the order they
+	 * were registered
+	 */
+	private final List<Runnable> m_afterCommit = new ArrayList<Runnable>();
+
+	private DerbyUnitOfWork() {
+	}
+
+	/**
+	 * Begin a unit of work on the current thread, or join the one that is
+	 * already active
+	 */
+	public static void begin() {
+		DerbyUnitOfWork current = m_current.get();
+		if (current == null) {
+			m_current.set(new DerbyUnitOfWork());
+		} else {
+			current.m_depth++;
+			current.m_levelCommitted = false;
+		}
+	}
+
+	/**
+	 * Commit the current unit of work. Nested levels only mark themselves as
+	 * successful, the outermost level commits the transaction.
+	 *
+	 * @throws SQLException
+	 *             if the commit fails, or a nested level failed
+	 */
+	public static void commit() throws SQLException {
+		DerbyUnitOfWork current = m_current.get();
+		if (current == null) {
+			throw new IllegalStateException("No active unit of work");
+		}
+		current.m_levelCommitted = true;
+		if (current.m_depth > 1) {
+			return;
+		}
+		if (current.m_deadlocked) {
+			current.m_connection.rollback();
+			throw new SQLException("Unit of work was rolled back, it was picked as a deadlock victim",
+					DEADLOCK_STATE);
+		}
+		if (current.m_rollbackOnly) {
+			if (current.m_connection != null) {
+				current.m_connection.rollback();
+			}
+			throw new SQLException("Unit of work was rolled back, a nested unit of work failed");
+		}
+		if (current.m_connection != null) {
+			current.m_connection.commit();
+		}
+		List<Runnable> actions = new ArrayList<Runnable>(current.m_afterCommit);
+		current.m_afterCommit.clear();
+		for (Runnable action : actions) {
+			try {
+				action.run();
+			} catch (RuntimeException e) {
+				// The transaction is committed anyway, the other actions still run
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Run an action once the current unit of work committed. In a nested
+	 * level, the action waits for the outermost level to commit; if the unit
+	 * of work is rolled back, the action never runs.
+	 *
+	 * @param action
+	 *            the action
+	 */
+	public static void afterCommit(Runnable action) {
+		DerbyUnitOfWork current = m_current.get();
+		if (current == null) {
+			throw new IllegalStateException("No active unit of work");
+		}
+		current.m_afterCommit.add(action);
+	}
+
+	/**
+	 * End the current level of the unit of work. When the outermost level
+	 * ends, uncommitted work is rolled back and the connection is returned to
+	 * the pool.
+	 */
+	public static void end() {
+		DerbyUnitOfWork current = m_current.get();
+		if (current == null) {
+			throw new IllegalStateException("No active unit of work");
+		}
+		current.m_depth--;
+		if (current.m_depth > 0) {
+			if (!current.m_levelCommitted) {
+				current.m_rollbackOnly = true;
+			}
+			current.m_levelCommitted = false;
+			return;
+		}
+
+		m_current.remove();
+		if (current.m_connection == null) {
+			return;
+		}
+		try {
+			if (!current.m_levelCommitted) {
+				current.m_connection.rollback();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				current.m_connection.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Check whether the current thread has an active unit of work
+	 *
+	 * @return true if a unit of work is active, else - false
+	 */
+	public static boolean isActive() {
+		return m_current.get() != null;
+	}
+
+	/**
+	 * Check whether the current unit of work was picked as a deadlock victim.
+	 * Its transaction was rolled back, so running the whole unit of work
+	 * again is safe.
+	 *
+	 * @return true if a statement of the current unit of work failed on a
+	 *         deadlock, else - false
+	 */
+	public static boolean isDeadlocked() {
+		DerbyUnitOfWork current = m_current.get();
+		return current != null && current.m_deadlocked;
+	}
+
+	/**
+	 * Get the connection of the current unit of work
+	 *
+	 * @param dbName
+	 *            name of the DB
+	 * @return the bound connection, or null if there is no active unit of
+	 *         work or it is bound to another DB
+	 * @throws SQLException
+	 *             if failed to get a connection from the pool
+	 */
+	static Connection getConnection(String dbName) throws SQLException {
+		DerbyUnitOfWork current = m_current.get();
+		if (current == null) {
+			return null;
+		}
+		if (current.m_connection == null) {
+			Connection connection = DerbyUtils.getPool(dbName).getConnection();
+			connection.setAutoCommit(false);
+			current.m_dbName = dbName;
+			current.m_connection = connection;
+			current.m_shared = current.sharedView(connection);
+		} else if (!current.m_dbName.equals(dbName)) {
+			return null;
+		}
+		return current.m_shared;
+	}
+
+	/**
+	 * Wrap a connection so that closing it does nothing, the unit of work
+	 * closes it when it ends
+	 */
+	private Connection sharedView(final Connection connection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String name = method.getName();
+						if (name.equals("close")) {
+							return null;
+						} else if (name.equals("equals")) {
+							return proxy == args[0];
+						} else if (name.equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						}
+						return call(connection, method, args);
+					}
+				});
+	}
+
+	/**
+	 * Wrap a statement or a result set of the transaction, so that a deadlock
+	 * it reports is recorded
+	 */
+	private Object watched(final Object target, Class<?> type) {
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				} else if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				return call(target, method, args);
+			}
+		});
+	}
+
+	/**
+	 * Invoke a JDBC method of the transaction. The statements and result sets
+	 * it returns are watched as well.
+	 */
+	private Object call(Object target, Method method, Object[] args) throws Throwable {
+		Object result;
+		try {
+			result = method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException && DEADLOCK_STATE.equals(((SQLException) cause).getSQLState())) {
+				m_deadlocked = true;
+			}
+			throw cause;
+		}
+		Class<?> type = method.getReturnType();
+		if (result != null && (Statement.class.isAssignableFrom(type) || ResultSet.class.isAssignableFrom(type))) {
+			return watched(result, type);
+		}
+		return result;
+	}
+
+}
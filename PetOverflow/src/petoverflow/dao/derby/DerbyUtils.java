@@ -1,18 +1,64 @@
 package petoverflow.dao.derby;
 
+import java.io.File;
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import petoverflow.Config;
 
 /**
  * Tools for manipulation Derby DB
  */
 public class DerbyUtils {
 
+	/**
+	 * A connection pool for each of the used databases
+	 */
+	private static final HashMap<String, DerbyConnectionPool> m_pools = new HashMap<String, DerbyConnectionPool>();
+
+	/**
+	 * Takes the periodic checkpoints of the in-memory databases, null until
+	 * the first one is scheduled
+	 */
+	private static ScheduledExecutorService m_checkpointer;
+
+	/**
+	 * The maximal number of ids bound to a single IN list. Longer id lists are
+	 * queried in chunks.
+	 */
+	private static final int MAX_IN_LIST_SIZE = 256;
+
+	/**
+	 * The RowHandler interface is used to consume the rows of a query one by
+	 * one
+	 */
+	public interface RowHandler {
+
+		/**
+		 * Handle the current row of a result set
+		 * 
+		 * @param rs
+		 *            the result set, positioned on the row
+		 * @throws SQLException
+		 *             if reading the row fails
+		 */
+		public void handleRow(ResultSet rs) throws SQLException;
+
+	}
+
 	/**
 	 * Initialize a derby table
 	 * 
@@ -75,6 +121,22 @@ public class DerbyUtils {
 	 * Not shutting down when in a client environment, see method Javadoc.
 	 */
 	public static void shutdown() {
+		stopCheckpoints();
+		List<String> dbNames;
+		synchronized (DerbyUtils.class) {
+			dbNames = new ArrayList<String>(m_pools.keySet());
+		}
+		if (Config.DERBY_IN_MEMORY) {
+			for (String dbName : dbNames) {
+				checkpoint(dbName);
+			}
+		}
+		closePools();
+		if (Config.DERBY_IN_MEMORY) {
+			for (String dbName : dbNames) {
+				drop(dbName);
+			}
+		}
 		try {
 			// the shutdown=true attribute shuts down Derby
 			DriverManager.getConnection("jdbc:derby:;shutdown=true");
@@ -178,9 +240,178 @@ public class DerbyUtils {
 		}
 	}
 
+	/**
+	 * Run a query filtered by a list of ids, in as few round trips as possible
+	 * 
+	 * The query is <code>before + "(?, ?, ...)" + after</code>, so
+	 * <code>before</code> should end with <code>"WHERE column IN "</code>.
+	 * Duplicate ids are queried once. The IN list is padded to a power of two
+	 * by repeating the last id, so that only a few different SQL texts are
+	 * prepared and cached.
+	 * 
+	 * @param dbName
+	 *            name of the DB
+	 * @param before
+	 *            the SQL before the IN list
+	 * @param after
+	 *            the SQL after the IN list, may be empty
+	 * @param ids
+	 *            the ids to query
+	 * @param handler
+	 *            called for each row of the result
+	 * @throws SQLException
+	 *             if fail
+	 */
+	public static void selectIn(String dbName, String before, String after, int[] ids, RowHandler handler)
+			throws SQLException {
+		TreeSet<Integer> distinct = new TreeSet<Integer>();
+		for (int id : ids) {
+			distinct.add(id);
+		}
+		selectIn(dbName, before, after, distinct.toArray(), handler);
+	}
+
+	/**
+	 * Run a query filtered by a list of strings, in as few round trips as
+	 * possible
+	 * 
+	 * @see #selectIn(String, String, String, int[], RowHandler)
+	 */
+	public static void selectIn(String dbName, String before, String after, List<String> values,
+			RowHandler handler) throws SQLException {
+		selectIn(dbName, before, after, new TreeSet<String>(values).toArray(), handler);
+	}
+
+	private static void selectIn(String dbName, String before, String after, Object[] distinct, RowHandler handler)
+			throws SQLException {
+		if (distinct.length == 0) {
+			return;
+		}
+
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = getConnection(dbName);
+			for (int start = 0; start < distinct.length; start += MAX_IN_LIST_SIZE) {
+				int count = Math.min(MAX_IN_LIST_SIZE, distinct.length - start);
+				int padded = Integer.highestOneBit(count);
+				if (padded < count) {
+					padded <<= 1;
+				}
+
+				StringBuilder inList = new StringBuilder("(");
+				for (int i = 0; i < padded; i++) {
+					inList.append(i == 0 ? "?" : ", ?");
+				}
+				inList.append(")");
+
+				PreparedStatement s = conn.prepareStatement(before + inList + after);
+				statements.add(s);
+				for (int i = 0; i < padded; i++) {
+					s.setObject(i + 1, distinct[start + Math.min(i, count - 1)]);
+				}
+				rs = s.executeQuery();
+				while (rs.next()) {
+					handler.handleRow(rs);
+				}
+				rs.close();
+				rs = null;
+				statements.remove(s);
+				s.close();
+			}
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			cleanUp(rs, statements, conn);
+		}
+	}
+
+	/**
+	 * Build a select list of columns qualified by their table name
+	 * 
+	 * @param tableName
+	 *            the table of the columns
+	 * @param columns
+	 *            the columns' names
+	 * @return the comma separated select list
+	 */
+	public static String qualify(String tableName, String... columns) {
+		StringBuilder selectList = new StringBuilder();
+		for (String column : columns) {
+			if (selectList.length() > 0) {
+				selectList.append(", ");
+			}
+			selectList.append(tableName).append('.').append(column);
+		}
+		return selectList.toString();
+	}
+
+	/**
+	 * Run a query and handle a single page of its rows. The paging is done by
+	 * the database, so rows before the page are never sent to the application.
+	 * 
+	 * @param dbName
+	 *            name of the DB
+	 * @param sql
+	 *            the query, including its ORDER BY clause
+	 * @param params
+	 *            the parameters of the query, in order
+	 * @param size
+	 *            the page size
+	 * @param offset
+	 *            the number of rows to skip
+	 * @param handler
+	 *            called for each row of the page
+	 * @throws SQLException
+	 *             if fail
+	 */
+	public static void selectPage(String dbName, String sql, Object[] params, int size, int offset,
+			RowHandler handler) throws SQLException {
+		if (size < 0) {
+			throw new IllegalArgumentException("size shouldn't be negative");
+		} else if (offset < 0) {
+			throw new IllegalArgumentException("offset shouldn't be negative");
+		} else if (size == 0) {
+			// Derby doesn't accept an empty fetch
+			return;
+		}
+
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = getConnection(dbName);
+			PreparedStatement s = conn.prepareStatement(sql + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY");
+			statements.add(s);
+			for (int i = 0; i < params.length; i++) {
+				s.setObject(i + 1, params[i]);
+			}
+			s.setInt(params.length + 1, offset);
+			s.setInt(params.length + 2, size);
+			rs = s.executeQuery();
+			while (rs.next()) {
+				handler.handleRow(rs);
+			}
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			cleanUp(rs, statements, conn);
+		}
+	}
+
 	/**
 	 * Get a connection to a DB
 	 * 
+	 * The connection is borrowed from the DB's connection pool, closing it
+	 * returns it to the pool. If the current thread is inside a
+	 * {@link DerbyUnitOfWork}, the unit of work's connection is returned
+	 * instead, and closing it does nothing.
+	 * 
 	 * @param dbName
 	 *            name of the DB
 	 * @return a connection object
@@ -188,14 +419,190 @@ public class DerbyUtils {
 	 *             if fail
 	 */
 	public static Connection getConnection(String dbName) throws SQLException {
+		Connection bound = DerbyUnitOfWork.getConnection(dbName);
+		if (bound != null) {
+			return bound;
+		}
+		return getPool(dbName).getConnection();
+	}
+
+	/**
+	 * Get the connection pool of a DB, creating it on first use
+	 * 
+	 * @param dbName
+	 *            name of the DB
+	 * @return the connection pool of the DB
+	 * @throws SQLException
+	 *             if failed to create the pool
+	 */
+	public static synchronized DerbyConnectionPool getPool(String dbName) throws SQLException {
+		DerbyConnectionPool pool = m_pools.get(dbName);
+		if (pool == null) {
+			try {
+				Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+			} catch (ClassNotFoundException e) {
+				throw new SQLException("Derby is not installed", e);
+			}
+			if (Config.DERBY_IN_MEMORY) {
+				restore(dbName);
+			}
+			pool = new DerbyConnectionPool(getUrl(dbName) + ";create=true", Config.DB_POOL_MIN_SIZE,
+					Config.DB_POOL_MAX_SIZE, Config.DB_POOL_ACQUIRE_TIMEOUT_MS, Config.DB_POOL_LEAK_THRESHOLD_MS,
+					Config.DB_STATEMENT_CACHE_SIZE);
+			m_pools.put(dbName, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Get the connection URL of a DB, without attributes
+	 */
+	private static String getUrl(String dbName) {
+		return Config.DERBY_IN_MEMORY ? "jdbc:derby:memory:" + dbName : "jdbc:derby:" + dbName;
+	}
+
+	/**
+	 * Get the directory the snapshot of an in-memory DB is kept in
+	 * 
+	 * @return the snapshot directory, or null if snapshots are disabled
+	 */
+	private static File getSnapshot(String dbName) {
+		if (Config.DERBY_SNAPSHOT_DIR == null) {
+			return null;
+		}
+		return new File(Config.DERBY_SNAPSHOT_DIR, dbName);
+	}
+
+	/**
+	 * Create an in-memory DB from its last snapshot, if there is one. The
+	 * following connections with create=true join the restored DB.
+	 */
+	private static void restore(String dbName) throws SQLException {
+		File snapshot = getSnapshot(dbName);
+		if (snapshot == null || !snapshot.isDirectory()) {
+			System.out.println("Creating an empty in-memory database " + dbName);
+			return;
+		}
+		long start = System.currentTimeMillis();
+		Connection conn = DriverManager
+				.getConnection(getUrl(dbName) + ";createFrom=" + snapshot.getAbsolutePath());
+		conn.close();
+		System.out.println("Restored in-memory database " + dbName + " from " + snapshot + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Write a snapshot of an in-memory DB to the snapshot directory, with the
+	 * Derby online backup. The backup replaces the previous snapshot only
+	 * after it completed, so a failed checkpoint keeps the last good one.
+	 * Does nothing if the DB is on disk, or snapshots are disabled.
+	 * 
+	 * @param dbName
+	 *            name of the DB
+	 * @return true if a snapshot was written, else - false
+	 */
+	public static boolean checkpoint(String dbName) {
+		if (!Config.DERBY_IN_MEMORY || Config.DERBY_SNAPSHOT_DIR == null) {
+			return false;
+		}
+
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+
+		long start = System.currentTimeMillis();
 		try {
-			return DriverManager.getConnection("jdbc:derby:" + dbName + ";create=true");
+			conn = getConnection(dbName);
+			CallableStatement s = conn.prepareCall("CALL SYSCS_UTIL.SYSCS_BACKUP_DATABASE(?)");
+			statements.add(s);
+			s.setString(1, new File(Config.DERBY_SNAPSHOT_DIR).getAbsolutePath());
+			s.execute();
+			System.out.println("Checkpointed in-memory database " + dbName + " in "
+					+ (System.currentTimeMillis() - start) + "ms");
+			return true;
+
 		} catch (SQLException e) {
-			// printSQLException(e);
-			// throw e;
-			e.printStackTrace();
-			return null;
+			System.err.println("Checkpoint of in-memory database " + dbName + " failed");
+			printSQLException(e);
+			return false;
+		} finally {
+			cleanUp(null, statements, conn);
+		}
+	}
+
+	/**
+	 * Checkpoint an in-memory DB every DERBY_CHECKPOINT_INTERVAL_MS, until
+	 * shutdown. Does nothing if the DB is on disk, snapshots are disabled or
+	 * the interval is 0.
+	 * 
+	 * @param dbName
+	 *            name of the DB
+	 */
+	public static synchronized void scheduleCheckpoints(final String dbName) {
+		if (!Config.DERBY_IN_MEMORY || Config.DERBY_SNAPSHOT_DIR == null || Config.DERBY_CHECKPOINT_INTERVAL_MS <= 0) {
+			return;
+		}
+		if (m_checkpointer == null) {
+			m_checkpointer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "derby-checkpoint");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		m_checkpointer.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				checkpoint(dbName);
+			}
+		}, Config.DERBY_CHECKPOINT_INTERVAL_MS, Config.DERBY_CHECKPOINT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the periodic checkpoints, waiting for a running one to finish
+	 */
+	private static synchronized void stopCheckpoints() {
+		if (m_checkpointer == null) {
+			return;
+		}
+		m_checkpointer.shutdown();
+		try {
+			m_checkpointer.awaitTermination(Config.DB_POOL_ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		m_checkpointer = null;
+	}
+
+	/**
+	 * Drop an in-memory DB, releasing its memory. Dropping always throws an
+	 * SQLException, with SQL state 08006 on success.
+	 */
+	private static void drop(String dbName) {
+		try {
+			DriverManager.getConnection(getUrl(dbName) + ";drop=true");
+		} catch (SQLException se) {
+			if ("08006".equals(se.getSQLState())) {
+				System.out.println("Dropped in-memory database " + dbName);
+			} else {
+				System.err.println("Failed to drop in-memory database " + dbName);
+				printSQLException(se);
+			}
+		}
+	}
+
+	/**
+	 * Close the connection pools of all DBs
+	 */
+	private static synchronized void closePools() {
+		for (DerbyConnectionPool pool : m_pools.values()) {
+			System.out.println("Closing connection pool " + pool.getStatistics());
+			pool.close();
 		}
+		m_pools.clear();
 	}
 
 	/**
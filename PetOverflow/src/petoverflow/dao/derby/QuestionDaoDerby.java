@@ -8,14 +8,20 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import petoverflow.Utility;
+import petoverflow.Config;
 import petoverflow.dao.DaoManager;
 import petoverflow.dao.DaoObject;
 import petoverflow.dao.QuestionDao;
+import petoverflow.dao.derby.DerbyUtils.RowHandler;
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.User;
+import petoverflow.dao.search.SearchIndex;
+import petoverflow.dao.utility.Cursor;
+import petoverflow.dao.utility.Page;
 import petoverflow.dao.utility.exception.NoSuchQuestionException;
 
 /**
@@ -28,6 +34,19 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	 */
 	private static QuestionDaoDerby m_instance;
 
+	/**
+	 * The terms of the text of the questions and their answers, which
+	 * searches are answered from
+	 */
+	private final SearchIndex m_searchIndex = new SearchIndex(Config.SEARCH_ANSWER_WEIGHT, Config.SEARCH_TYPO_BUDGET_MS);
+
+	/**
+	 * The columns a question is hydrated from. They are qualified by the table
+	 * name, so they can be selected from joins too.
+	 */
+	static final String QUESTION_COLUMNS = DerbyUtils.qualify(DerbyConfig.QUESTION_TABLE_NAME, DerbyConfig.ID,
+			DerbyConfig.TEXT, DerbyConfig.AUTHOR_ID, DerbyConfig.TIMESTAMP);
+
 	/**
 	 * Get the single instance of this class
 	 * 
@@ -78,10 +97,56 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	 */
 	@Override
 	public Question getQuestion(int questionId) throws SQLException, NoSuchQuestionException {
-		if (!exist(questionId)) {
-			throw new NoSuchQuestionException();
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + QUESTION_COLUMNS + " FROM "
+					+ DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+			statements.add(s);
+			s.setInt(1, questionId);
+			rs = s.executeQuery();
+			if (!rs.next()) {
+				throw new NoSuchQuestionException();
+			}
+			return toQuestion(rs, Config.HYDRATE_ENTITIES);
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
 		}
-		return new Question(getDaoManager(), questionId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestions(int[])
+	 */
+	@Override
+	public List<Question> getQuestions(int[] questionIds) throws SQLException {
+		final HashMap<Integer, Question> found = new HashMap<Integer, Question>();
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + QUESTION_COLUMNS + " FROM "
+				+ DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " IN ", "", questionIds,
+				new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						Question question = toQuestion(rs, true);
+						found.put(question.getId(), question);
+					}
+				});
+
+		List<Question> questions = new ArrayList<Question>();
+		for (int questionId : questionIds) {
+			Question question = found.get(questionId);
+			if (question != null) {
+				questions.add(question);
+			}
+		}
+		return questions;
 	}
 
 	/*
@@ -97,8 +162,8 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement(
-					"SELECT * FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + " FROM "
+					+ DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
 			statements.add(s);
 			s.setInt(1, questionId);
 			rs = s.executeQuery();
@@ -118,9 +183,19 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	 */
 	@Override
 	public List<Question> getQuestionsByAuthor(int authorId, int size, int offset) throws SQLException {
-		List<Question> userQuestions = getQuestionsByAuthorAll(authorId);
-		return Utility.cutList(userQuestions, size, offset);
-
+		final List<Question> userQuestions = new ArrayList<Question>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME,
+				"SELECT " + QUESTION_COLUMNS + " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE "
+						+ DerbyConfig.AUTHOR_ID + " = ? ORDER BY " + DerbyConfig.TIMESTAMP + " DESC, " + DerbyConfig.ID
+						+ " DESC",
+				new Object[] { authorId }, size, offset, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						userQuestions.add(toQuestion(rs, Config.HYDRATE_ENTITIES));
+					}
+				});
+		return userQuestions;
 	}
 
 	/*
@@ -135,16 +210,15 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement(
-					"SELECT * FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.AUTHOR_ID + " = ?");
+			PreparedStatement s = conn.prepareStatement("SELECT " + QUESTION_COLUMNS + " FROM "
+					+ DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.AUTHOR_ID + " = ?");
 			statements.add(s);
 			s.setInt(1, authorId);
 			rs = s.executeQuery();
 
 			List<Question> userQuestions = new ArrayList<Question>();
 			while (rs.next()) {
-				int id = rs.getInt(DerbyConfig.ID);
-				userQuestions.add(new Question(getDaoManager(), id));
+				userQuestions.add(toQuestion(rs, Config.HYDRATE_ENTITIES));
 			}
 			return userQuestions;
 
@@ -155,6 +229,30 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionsByAuthors(int[])
+	 */
+	@Override
+	public Map<Integer, List<Question>> getQuestionsByAuthors(int[] authorIds) throws SQLException {
+		final Map<Integer, List<Question>> questionsByAuthor = new HashMap<Integer, List<Question>>();
+		for (int authorId : authorIds) {
+			questionsByAuthor.put(authorId, new ArrayList<Question>());
+		}
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + QUESTION_COLUMNS + " FROM "
+				+ DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.AUTHOR_ID + " IN ",
+				" ORDER BY " + DerbyConfig.ID, authorIds, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						int authorId = rs.getInt(DerbyConfig.AUTHOR_ID);
+						questionsByAuthor.get(authorId).add(toQuestion(rs, true));
+					}
+				});
+		return questionsByAuthor;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -162,11 +260,14 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	 * java.sql.Timestamp)
 	 */
 	@Override
-	public Question createQuestion(String text, int userId, List<String> topics) throws Exception {
+	public Question createQuestion(final String text, int userId, List<String> topics) throws Exception {
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
+		// The question, its topics and its author's count are written
+		// atomically
+		DerbyUnitOfWork.begin();
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
 			PreparedStatement s = conn.prepareStatement(
@@ -184,17 +285,28 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 			if (!rs.next()) {
 				throw new SQLException("Unexpected error");
 			}
-			int id = rs.getInt(1);
-			Question question = new Question(getDaoManager(), id);
+			final int id = rs.getInt(1);
+			DerbyRatings.questionAdded(conn, statements, userId);
+			Question question = Config.HYDRATE_ENTITIES ? new Question(getDaoManager(), id, text, userId, now)
+					: new Question(getDaoManager(), id);
 
 			getDaoManager().getTopicDao().setQuestionTopics(question.getId(), topics);
 
+			DerbyUnitOfWork.afterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					m_searchIndex.addQuestion(id, text);
+				}
+			});
+			DerbyUnitOfWork.commit();
 			return question;
 
 		} catch (SQLException e) {
 			throw e;
 		} finally {
 			DerbyUtils.cleanUp(rs, statements, conn);
+			DerbyUnitOfWork.end();
 		}
 	}
 
@@ -205,10 +317,6 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	 */
 	@Override
 	public String getQuestionText(int questionId) throws SQLException, NoSuchQuestionException {
-		if (!exist(questionId)) {
-			throw new NoSuchQuestionException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -221,7 +329,7 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 			s.setInt(1, questionId);
 			rs = s.executeQuery();
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchQuestionException();
 			}
 			return rs.getString(DerbyConfig.TEXT);
 
@@ -239,10 +347,6 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	 */
 	@Override
 	public User getQuestionAuthor(int questionId) throws Exception {
-		if (!exist(questionId)) {
-			throw new NoSuchQuestionException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -255,7 +359,7 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 			s.setInt(1, questionId);
 			rs = s.executeQuery();
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchQuestionException();
 			}
 			int userId = rs.getInt(DerbyConfig.AUTHOR_ID);
 			return getDaoManager().getUserDao().getUser(userId);
@@ -274,10 +378,6 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	 */
 	@Override
 	public Timestamp getQuestionTimestamp(int questionId) throws SQLException, NoSuchQuestionException {
-		if (!exist(questionId)) {
-			throw new NoSuchQuestionException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -290,7 +390,7 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 			s.setInt(1, questionId);
 			rs = s.executeQuery();
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchQuestionException();
 			}
 			return rs.getTimestamp(DerbyConfig.TIMESTAMP);
 
@@ -304,20 +404,73 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see petoverflow.dao.QuestionDao#getNewestQuestions(int)
+	 * @see petoverflow.dao.QuestionDao#getQuestionRating(int)
 	 */
 	@Override
-	public List<Question> getNewestQuestions(int size, int offset) throws Exception {
-		List<Question> questions = getAllQuestion();
-		List<Question> questionsWithOutAnswers = new ArrayList<Question>();
-		for (Question question : questions) {
-			boolean noAnswer = getDaoManager().getAnswerDao().getQuestionAnswersAll(question.getId()).size() == 0;
-			if (noAnswer) {
-				questionsWithOutAnswers.add(question);
+	public double getQuestionRating(int questionId) throws SQLException, NoSuchQuestionException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.RATING + " FROM "
+					+ DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+			statements.add(s);
+			s.setInt(1, questionId);
+			rs = s.executeQuery();
+			if (!rs.next()) {
+				throw new NoSuchQuestionException();
 			}
+			return rs.getDouble(DerbyConfig.RATING);
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
 		}
-		Utility.sortByTimestamp(questionsWithOutAnswers);
-		return Utility.cutList(questionsWithOutAnswers, size, offset);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionRatings(int[])
+	 */
+	@Override
+	public Map<Integer, Double> getQuestionRatings(int[] questionIds) throws SQLException {
+		final Map<Integer, Double> ratings = new HashMap<Integer, Double>();
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + DerbyConfig.ID + ", " + DerbyConfig.RATING + " FROM "
+				+ DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID + " IN ", "", questionIds,
+				new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						ratings.put(rs.getInt(DerbyConfig.ID), rs.getDouble(DerbyConfig.RATING));
+					}
+				});
+		return ratings;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getNewestQuestions(int)
+	 */
+	@Override
+	public List<Question> getNewestQuestions(int size, int offset) throws Exception {
+		final List<Question> questionsWithOutAnswers = new ArrayList<Question>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME,
+				"SELECT " + QUESTION_COLUMNS + " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE "
+						+ DerbyConfig.ANSWER_COUNT + " = 0 ORDER BY " + DerbyConfig.TIMESTAMP + " DESC, "
+						+ DerbyConfig.ID + " DESC",
+				new Object[0], size, offset, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						questionsWithOutAnswers.add(toQuestion(rs, Config.HYDRATE_ENTITIES));
+					}
+				});
+		return questionsWithOutAnswers;
 	}
 
 	/*
@@ -327,53 +480,221 @@ public class QuestionDaoDerby extends DaoObject implements QuestionDao {
 	 */
 	@Override
 	public List<Question> getBestQuestions(int size, int offset) throws SQLException {
-		List<Question> questions = getAllQuestion();
-		Utility.sortByRating(questions);
-		return Utility.cutList(questions, size, offset);
+		final List<Question> questions = new ArrayList<Question>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME,
+				"SELECT " + QUESTION_COLUMNS + " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " ORDER BY "
+						+ DerbyConfig.RATING + " DESC, " + DerbyConfig.ID,
+				new Object[0], size, offset, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						questions.add(toQuestion(rs, Config.HYDRATE_ENTITIES));
+					}
+				});
+		return questions;
 	}
 
-	public List<Question> searchQuestion(String text, int size, int offset) throws Exception {
-		List<String> textWords = Utility.breakToWords(text);
-		List<Question> questions = getAllQuestion();
-		List<Question> relevantQuestions = new ArrayList<Question>();
-		questionLoop: for (Question question : questions) {
-			String questionText = question.getText();
-			for (String word : textWords) {
-				if (!questionText.contains(word)) {
-					continue questionLoop;
-				}
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getNewestQuestions(int,
+	 * java.lang.String)
+	 */
+	@Override
+	public Page<Question> getNewestQuestions(int size, String cursor) throws SQLException {
+		Cursor after = Cursor.decode(cursor);
+		String sql = "SELECT " + QUESTION_COLUMNS + " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE "
+				+ DerbyConfig.ANSWER_COUNT + " = 0";
+		Object[] params = new Object[0];
+		if (after != null) {
+			sql += " AND (" + DerbyConfig.TIMESTAMP + " < ? OR (" + DerbyConfig.TIMESTAMP + " = ? AND "
+					+ DerbyConfig.ID + " < ?))";
+			params = new Object[] { after.getTimestampKey(), after.getTimestampKey(), after.getId() };
+		}
+		sql += " ORDER BY " + DerbyConfig.TIMESTAMP + " DESC, " + DerbyConfig.ID + " DESC";
+
+		final List<Question> questions = new ArrayList<Question>();
+		final List<Cursor> cursors = new ArrayList<Cursor>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME, sql, params, size + 1, 0, new RowHandler() {
+
+			@Override
+			public void handleRow(ResultSet rs) throws SQLException {
+				Question question = toQuestion(rs, Config.HYDRATE_ENTITIES);
+				questions.add(question);
+				cursors.add(Cursor.of(rs.getTimestamp(DerbyConfig.TIMESTAMP), question.getId()));
 			}
-			relevantQuestions.add(question);
+		});
+		return Page.of(questions, cursors, size);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getBestQuestions(int, java.lang.String)
+	 */
+	@Override
+	public Page<Question> getBestQuestions(int size, String cursor) throws SQLException {
+		Cursor after = Cursor.decode(cursor);
+		String sql = "SELECT " + QUESTION_COLUMNS + ", " + DerbyConfig.RATING + " FROM "
+				+ DerbyConfig.QUESTION_TABLE_NAME;
+		Object[] params = new Object[0];
+		if (after != null) {
+			sql += " WHERE " + DerbyConfig.RATING + " < ? OR (" + DerbyConfig.RATING + " = ? AND " + DerbyConfig.ID
+					+ " > ?)";
+			params = new Object[] { after.getRatingKey(), after.getRatingKey(), after.getId() };
 		}
-		Utility.sortByRating(relevantQuestions);
-		return Utility.cutList(relevantQuestions, size, offset);
+		sql += " ORDER BY " + DerbyConfig.RATING + " DESC, " + DerbyConfig.ID;
+
+		final List<Question> questions = new ArrayList<Question>();
+		final List<Cursor> cursors = new ArrayList<Cursor>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME, sql, params, size + 1, 0, new RowHandler() {
+
+			@Override
+			public void handleRow(ResultSet rs) throws SQLException {
+				Question question = toQuestion(rs, Config.HYDRATE_ENTITIES);
+				questions.add(question);
+				cursors.add(Cursor.of(rs.getDouble(DerbyConfig.RATING), question.getId()));
+			}
+		});
+		return Page.of(questions, cursors, size);
 	}
-	
-	private List<Question> getAllQuestion() throws SQLException {
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#reconcileRatings()
+	 */
+	@Override
+	public int reconcileRatings() throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			Statement s = conn.createStatement();
+			statements.add(s);
+			int answersRepaired = s.executeUpdate(DerbyConfig.QUESTION_ANSWERS_REPAIR);
+			if (answersRepaired > 0) {
+				System.err.println("Repaired the answer counts of " + answersRepaired + " questions");
+			}
+			int ratingsRepaired = s.executeUpdate(DerbyConfig.QUESTION_RATING_REPAIR);
+			if (ratingsRepaired > 0) {
+				System.err.println("Repaired the ratings of " + ratingsRepaired + " questions");
+				indexRatings(conn, statements);
+			}
+			int bestAnswersRepaired = s.executeUpdate(DerbyConfig.QUESTION_BEST_ANSWER_REPAIR);
+			if (bestAnswersRepaired > 0) {
+				System.err.println("Repaired the best answers of " + bestAnswersRepaired + " questions");
+			}
+			return answersRepaired + ratingsRepaired + bestAnswersRepaired;
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(null, statements, conn);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#searchQuestion(java.lang.String, int,
+	 * int)
+	 */
+	@Override
+	public List<Question> searchQuestion(String text, int size, int offset) throws Exception {
+		return getQuestions(m_searchIndex.search(text, size, offset, Config.SEARCH_RATING_WEIGHT));
+	}
+
+	/**
+	 * Build the search index from the text of all the questions and answers.
+	 * Called once the schema is up to date; later questions and answers are
+	 * added as they are created.
+	 * 
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	void buildSearchIndex() throws SQLException {
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
-		List<Question> questions = new ArrayList<Question>();
-		;
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn
-					.prepareStatement("SELECT " + DerbyConfig.ID + " FROM " + DerbyConfig.QUESTION_TABLE_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + ", " + DerbyConfig.TEXT
+					+ " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " ORDER BY " + DerbyConfig.ID);
 			statements.add(s);
 			rs = s.executeQuery();
 			while (rs.next()) {
-				int id = rs.getInt(DerbyConfig.ID);
-				Question question = new Question(getDaoManager(), id);
-				questions.add(question);
+				m_searchIndex.addQuestion(rs.getInt(DerbyConfig.ID), rs.getString(DerbyConfig.TEXT));
+			}
+			rs.close();
+
+			s = conn.prepareStatement("SELECT " + DerbyConfig.ID + ", " + DerbyConfig.QUESTION_ID + ", "
+					+ DerbyConfig.TEXT + " FROM " + DerbyConfig.ANSWER_TABLE_NAME + " ORDER BY " + DerbyConfig.ID);
+			statements.add(s);
+			rs = s.executeQuery();
+			while (rs.next()) {
+				m_searchIndex.addAnswer(rs.getInt(DerbyConfig.ID), rs.getInt(DerbyConfig.QUESTION_ID),
+						rs.getString(DerbyConfig.TEXT));
 			}
+			rs.close();
+
+			indexRatings(conn, statements);
 
 		} catch (SQLException e) {
 			throw e;
 		} finally {
 			DerbyUtils.cleanUp(rs, statements, conn);
 		}
-		return questions;
+	}
+
+	/**
+	 * Set the ratings of all the questions in the search index
+	 */
+	private void indexRatings(Connection conn, List<Statement> statements) throws SQLException {
+		PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + ", " + DerbyConfig.RATING
+				+ " FROM " + DerbyConfig.QUESTION_TABLE_NAME);
+		statements.add(s);
+		ResultSet rs = s.executeQuery();
+		while (rs.next()) {
+			m_searchIndex.setRating(rs.getInt(DerbyConfig.ID), rs.getDouble(DerbyConfig.RATING));
+		}
+		rs.close();
+	}
+
+	/**
+	 * Set the changed rating of a question in the search index once the change
+	 * is committed
+	 */
+	void indexRating(final int questionId, final double rating) {
+		DerbyUnitOfWork.afterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				m_searchIndex.setRating(questionId, rating);
+			}
+		});
+	}
+
+	/**
+	 * Add a new answer to the search index, under its question
+	 */
+	void indexAnswer(int answerId, int questionId, String text) {
+		m_searchIndex.addAnswer(answerId, questionId, text);
+	}
+
+	/**
+	 * Create a question from the current row of a result set that selected
+	 * {@link #QUESTION_COLUMNS}
+	 */
+	Question toQuestion(ResultSet rs, boolean hydrate) throws SQLException {
+		int id = rs.getInt(DerbyConfig.ID);
+		if (!hydrate) {
+			return new Question(getDaoManager(), id);
+		}
+		return new Question(getDaoManager(), id, rs.getString(DerbyConfig.TEXT), rs.getInt(DerbyConfig.AUTHOR_ID),
+				rs.getTimestamp(DerbyConfig.TIMESTAMP));
 	}
 
 }
@@ -6,13 +6,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import petoverflow.dao.DaoManager;
 import petoverflow.dao.DaoObject;
 import petoverflow.dao.QuestionVoteDao;
+import petoverflow.dao.derby.DerbyUtils.RowHandler;
 import petoverflow.dao.items.Vote;
 import petoverflow.dao.items.Vote.VoteType;
+import petoverflow.dao.utility.exception.NoSuchQuestionException;
 
 /**
  * The QuestionVoteDaoDerby class implements the QuestionVoteDao interface with
@@ -75,14 +79,17 @@ public class QuestionVoteDaoDerby extends DaoObject implements QuestionVoteDao {
 			e1.printStackTrace();
 			return;
 		}
-		// Remove previous vote
-		removeVote(questionId, vote.getVoterId());
 
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
+		// Replacing the previous vote is done atomically
+		DerbyUnitOfWork.begin();
 		try {
+			// Remove previous vote
+			removeVote(questionId, vote.getVoterId());
+
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
 			PreparedStatement s = conn.prepareStatement(
 					"INSERT INTO " + DerbyConfig.QUESTION_VOTE_TABLE_NAME + " (" + DerbyConfig.VOTER_ID + ","
@@ -92,11 +99,15 @@ public class QuestionVoteDaoDerby extends DaoObject implements QuestionVoteDao {
 			s.setInt(2, questionId);
 			s.setBoolean(3, vote.getType() == VoteType.Up);
 			s.executeUpdate();
+			DerbyRatings.questionVoted(conn, statements, questionId, vote.getType() == VoteType.Up, 1);
+
+			DerbyUnitOfWork.commit();
 
 		} catch (SQLException e) {
 			throw e;
 		} finally {
 			DerbyUtils.cleanUp(rs, statements, conn);
+			DerbyUnitOfWork.end();
 		}
 	}
 
@@ -110,19 +121,37 @@ public class QuestionVoteDaoDerby extends DaoObject implements QuestionVoteDao {
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
+		// The vote and the counts depending on it change together
+		DerbyUnitOfWork.begin();
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement("DELETE FROM " + DerbyConfig.QUESTION_VOTE_TABLE_NAME
-					+ " WHERE " + DerbyConfig.VOTER_ID + " = ? AND " + DerbyConfig.QUESTION_ID + " = ?");
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.VOTE_TYPE + " FROM "
+					+ DerbyConfig.QUESTION_VOTE_TABLE_NAME + " WHERE " + DerbyConfig.VOTER_ID + " = ? AND "
+					+ DerbyConfig.QUESTION_ID + " = ?");
 			statements.add(s);
 			s.setInt(1, voterId);
 			s.setInt(2, questionId);
-			s.executeUpdate();
+			rs = s.executeQuery();
+			if (rs.next()) {
+				boolean up = rs.getBoolean(DerbyConfig.VOTE_TYPE);
+
+				s = conn.prepareStatement("DELETE FROM " + DerbyConfig.QUESTION_VOTE_TABLE_NAME + " WHERE "
+						+ DerbyConfig.VOTER_ID + " = ? AND " + DerbyConfig.QUESTION_ID + " = ?");
+				statements.add(s);
+				s.setInt(1, voterId);
+				s.setInt(2, questionId);
+				if (s.executeUpdate() > 0) {
+					DerbyRatings.questionVoted(conn, statements, questionId, up, -1);
+				}
+			}
+
+			DerbyUnitOfWork.commit();
 
 		} catch (SQLException e) {
 			throw e;
 		} finally {
 			DerbyUtils.cleanUp(rs, statements, conn);
+			DerbyUnitOfWork.end();
 		}
 	}
 
@@ -161,4 +190,87 @@ public class QuestionVoteDaoDerby extends DaoObject implements QuestionVoteDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#getVotesForQuestions(int[])
+	 */
+	@Override
+	public Map<Integer, List<Vote>> getVotesForQuestions(int[] questionIds) throws SQLException {
+		final Map<Integer, List<Vote>> votes = new HashMap<Integer, List<Vote>>();
+		for (int id : questionIds) {
+			votes.put(id, new ArrayList<Vote>());
+		}
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT * FROM " + DerbyConfig.QUESTION_VOTE_TABLE_NAME + " WHERE "
+				+ DerbyConfig.QUESTION_ID + " IN ", "", questionIds, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						int voterId = rs.getInt(DerbyConfig.VOTER_ID);
+						boolean voteTypeFlag = rs.getBoolean(DerbyConfig.VOTE_TYPE);
+						VoteType voteType = voteTypeFlag ? VoteType.Up : VoteType.Down;
+						votes.get(rs.getInt(DerbyConfig.QUESTION_ID)).add(new Vote(voterId, voteType));
+					}
+				});
+		return votes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#getVoteCount(int)
+	 */
+	@Override
+	public int getVoteCount(int questionId) throws SQLException, NoSuchQuestionException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.UP_VOTES + " - "
+					+ DerbyConfig.DOWN_VOTES + " FROM " + DerbyConfig.QUESTION_TABLE_NAME + " WHERE " + DerbyConfig.ID
+					+ " = ?");
+			statements.add(s);
+			s.setInt(1, questionId);
+			rs = s.executeQuery();
+			if (!rs.next()) {
+				throw new NoSuchQuestionException();
+			}
+			return rs.getInt(1);
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#reconcileVoteCounts()
+	 */
+	@Override
+	public int reconcileVoteCounts() throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			Statement s = conn.createStatement();
+			statements.add(s);
+			int repaired = s.executeUpdate(DerbyConfig.QUESTION_VOTES_REPAIR);
+			if (repaired > 0) {
+				System.err.println("Repaired the vote counts of " + repaired + " questions");
+			}
+			return repaired;
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(null, statements, conn);
+		}
+	}
+
 }
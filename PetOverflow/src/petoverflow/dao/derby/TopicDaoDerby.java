@@ -6,14 +6,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
+import petoverflow.Config;
 import petoverflow.Utility;
 import petoverflow.dao.DaoManager;
 import petoverflow.dao.DaoObject;
 import petoverflow.dao.TopicDao;
+import petoverflow.dao.derby.DerbyUtils.RowHandler;
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.Topic;
+import petoverflow.dao.search.Tokenizer;
+import petoverflow.dao.search.TrigramIndex;
+import petoverflow.dao.utility.Cursor;
+import petoverflow.dao.utility.Page;
 
 /**
  * The TopicDaoDerby class implements the TopicDao interface with Derby DB.
@@ -25,6 +34,20 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 	 */
 	private static TopicDaoDerby m_instance;
 
+	/**
+	 * The questions of a topic, in the order they were asked
+	 */
+	private static final String QUESTIONS_BY_TOPIC_QUERY = "SELECT " + QuestionDaoDerby.QUESTION_COLUMNS + " FROM "
+			+ DerbyConfig.TOPIC_TABLE_NAME + " t JOIN " + DerbyConfig.QUESTION_TABLE_NAME + " ON "
+			+ DerbyConfig.QUESTION_TABLE_NAME + "." + DerbyConfig.ID + " = t." + DerbyConfig.QUESTION_ID + " WHERE t."
+			+ DerbyConfig.TOPIC + " = ? ORDER BY t." + DerbyConfig.QUESTION_ID;
+
+	/**
+	 * The terms of the topics' names, which the words of a topic search that
+	 * matches nothing are corrected to
+	 */
+	private final TrigramIndex m_topicTerms = new TrigramIndex();
+
 	/**
 	 * Get the single instance of this class
 	 * 
@@ -67,8 +90,16 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 	 */
 	@Override
 	public List<Question> getQuestionsByTopic(String topic, int size, int offset) throws SQLException {
-		List<Question> questions = getQuestionsByTopicAll(topic);
-		return Utility.cutList(questions, size, offset);
+		final List<Question> questions = new ArrayList<Question>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME, QUESTIONS_BY_TOPIC_QUERY, new Object[] { topic }, size, offset,
+				new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						questions.add(QuestionDaoDerby.getInstance().toQuestion(rs, Config.HYDRATE_ENTITIES));
+					}
+				});
+		return questions;
 	}
 
 	/*
@@ -83,23 +114,15 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.QUESTION_ID + " FROM "
-					+ DerbyConfig.TOPIC_TABLE_NAME + " WHERE " + DerbyConfig.TOPIC + " = ?");
+			PreparedStatement s = conn.prepareStatement(QUESTIONS_BY_TOPIC_QUERY);
 			statements.add(s);
 			s.setString(1, topic);
 			rs = s.executeQuery();
 
 			List<Question> questions = new ArrayList<Question>();
 			while (rs.next()) {
-				int questionId = rs.getInt(DerbyConfig.QUESTION_ID);
-				try {
-					Question question = getDaoManager().getQuestionDao().getQuestion(questionId);
-					questions.add(question);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
+				questions.add(QuestionDaoDerby.getInstance().toQuestion(rs, Config.HYDRATE_ENTITIES));
 			}
-
 			return questions;
 
 		} catch (SQLException e) {
@@ -109,6 +132,53 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getQuestionsByTopics(java.util.List)
+	 */
+	@Override
+	public Map<String, List<Question>> getQuestionsByTopics(List<String> topics) throws Exception {
+		final Map<String, List<Integer>> questionIdsByTopic = new HashMap<String, List<Integer>>();
+		for (String topic : topics) {
+			questionIdsByTopic.put(topic, new ArrayList<Integer>());
+		}
+		final List<Integer> allQuestionIds = new ArrayList<Integer>();
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + DerbyConfig.QUESTION_ID + ", " + DerbyConfig.TOPIC
+				+ " FROM " + DerbyConfig.TOPIC_TABLE_NAME + " WHERE " + DerbyConfig.TOPIC + " IN ", "", topics,
+				new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						int questionId = rs.getInt(DerbyConfig.QUESTION_ID);
+						questionIdsByTopic.get(rs.getString(DerbyConfig.TOPIC)).add(questionId);
+						allQuestionIds.add(questionId);
+					}
+				});
+
+		int[] questionIds = new int[allQuestionIds.size()];
+		for (int i = 0; i < questionIds.length; i++) {
+			questionIds[i] = allQuestionIds.get(i);
+		}
+		HashMap<Integer, Question> questionsById = new HashMap<Integer, Question>();
+		for (Question question : getDaoManager().getQuestionDao().getQuestions(questionIds)) {
+			questionsById.put(question.getId(), question);
+		}
+
+		Map<String, List<Question>> questionsByTopic = new HashMap<String, List<Question>>();
+		for (String topic : topics) {
+			List<Question> questions = new ArrayList<Question>();
+			for (int questionId : questionIdsByTopic.get(topic)) {
+				Question question = questionsById.get(questionId);
+				if (question != null) {
+					questions.add(question);
+				}
+			}
+			questionsByTopic.put(topic, questions);
+		}
+		return questionsByTopic;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -143,19 +213,79 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getTopicsForQuestions(int[])
+	 */
+	@Override
+	public Map<Integer, List<Topic>> getTopicsForQuestions(int[] questionIds) throws SQLException {
+		final Map<Integer, List<Topic>> topics = new HashMap<Integer, List<Topic>>();
+		for (int questionId : questionIds) {
+			topics.put(questionId, new ArrayList<Topic>());
+		}
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + DerbyConfig.QUESTION_ID + ", " + DerbyConfig.TOPIC
+				+ " FROM " + DerbyConfig.TOPIC_TABLE_NAME + " WHERE " + DerbyConfig.QUESTION_ID + " IN ", "",
+				questionIds, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						String topicName = rs.getString(DerbyConfig.TOPIC);
+						topics.get(rs.getInt(DerbyConfig.QUESTION_ID)).add(new Topic(getDaoManager(), topicName));
+					}
+				});
+		return topics;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see petoverflow.dao.TopicDao#getTopicRating(java.lang.String)
 	 */
 	@Override
-	public double getTopicRating(String topic) throws Exception {
-		List<Question> questions = getDaoManager().getTopicDao().getQuestionsByTopicAll(topic);
-		double rating = 0;
-		for (Question question : questions) {
-			rating += question.getRating();
+	public double getTopicRating(String topic) throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.RATING + " FROM "
+					+ DerbyConfig.TOPIC_STATS_TABLE_NAME + " WHERE " + DerbyConfig.TOPIC + " = ?");
+			statements.add(s);
+			s.setString(1, topic);
+			rs = s.executeQuery();
+
+			return rs.next() ? rs.getDouble(1) : 0;
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getTopicRatings(java.util.List)
+	 */
+	@Override
+	public Map<String, Double> getTopicRatings(List<String> topics) throws SQLException {
+		final Map<String, Double> ratings = new HashMap<String, Double>();
+		for (String topic : topics) {
+			ratings.put(topic, 0.0);
 		}
-		return rating;
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + DerbyConfig.TOPIC + ", " + DerbyConfig.RATING + " FROM "
+				+ DerbyConfig.TOPIC_STATS_TABLE_NAME + " WHERE " + DerbyConfig.TOPIC + " IN ", "", topics,
+				new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						ratings.put(rs.getString(DerbyConfig.TOPIC), rs.getDouble(DerbyConfig.RATING));
+					}
+				});
+		return ratings;
 	}
 
 	/*
@@ -163,20 +293,65 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 	 * 
 	 * @see petoverflow.dao.TopicDao#setQuestionTopics(int, java.util.List)
 	 */
-	public void setQuestionTopics(int questionId, List<String> topics) throws SQLException {
+	public void setQuestionTopics(int questionId, final List<String> topics) throws SQLException {
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
+		// The topics are counted in the topics' ratings atomically
+		DerbyUnitOfWork.begin();
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			for (String topic : topics) {
+			// A topic listed twice is set once, it counts the question once
+			for (String topic : new LinkedHashSet<String>(topics)) {
 				PreparedStatement s = conn.prepareStatement("INSERT INTO " + DerbyConfig.TOPIC_TABLE_NAME + " ("
 						+ DerbyConfig.QUESTION_ID + "," + DerbyConfig.TOPIC + ") VALUES (?, ?)");
 				statements.add(s);
 				s.setInt(1, questionId);
 				s.setString(2, topic);
 				s.executeUpdate();
+				DerbyRatings.topicAdded(conn, statements, questionId, topic);
+			}
+
+			DerbyUnitOfWork.afterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					for (String topic : topics) {
+						addTopicTerms(topic);
+					}
+				}
+			});
+			DerbyUnitOfWork.commit();
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
+			DerbyUnitOfWork.end();
+		}
+	}
+
+	/**
+	 * Build the vocabulary of the topics' names. Called once the schema is up
+	 * to date; later topics are added as they are set.
+	 * 
+	 * @throws SQLException
+	 *             if derby fails
+	 */
+	void buildTopicTerms() throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn
+					.prepareStatement("SELECT " + DerbyConfig.TOPIC + " FROM " + DerbyConfig.TOPIC_STATS_TABLE_NAME);
+			statements.add(s);
+			rs = s.executeQuery();
+			while (rs.next()) {
+				addTopicTerms(rs.getString(DerbyConfig.TOPIC));
 			}
 
 		} catch (SQLException e) {
@@ -186,6 +361,12 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 		}
 	}
 
+	private void addTopicTerms(String topic) {
+		for (String term : Tokenizer.toNameTerms(topic)) {
+			m_topicTerms.add(term);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -203,6 +384,7 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
 			PreparedStatement s = conn
 					.prepareStatement("SELECT " + DerbyConfig.TOPIC + " FROM " + DerbyConfig.TOPIC_TABLE_NAME);
+			statements.add(s);
 			rs = s.executeQuery();
 
 			while (rs.next()) {
@@ -229,9 +411,18 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 	 */
 	@Override
 	public List<Topic> getPopularTopics(int size, int offset) throws SQLException {
-		List<Topic> allTopics = getAllTopics();
-		Utility.sortByRating(allTopics);
-		return Utility.cutList(allTopics, size, offset);
+		final List<Topic> topics = new ArrayList<Topic>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME,
+				"SELECT " + DerbyConfig.TOPIC + " FROM " + DerbyConfig.TOPIC_STATS_TABLE_NAME + " ORDER BY "
+						+ DerbyConfig.RATING + " DESC, " + DerbyConfig.TOPIC,
+				new Object[0], size, offset, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						topics.add(new Topic(getDaoManager(), rs.getString(DerbyConfig.TOPIC)));
+					}
+				});
+		return topics;
 	}
 
 	/*
@@ -242,9 +433,55 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 	 */
 	@Override
 	public List<Question> getBestQuestionsByTopic(String topic, int size, int offset) throws Exception {
-		List<Question> questions = getQuestionsByTopicAll(topic);
-		Utility.sortByRating(questions);
-		return Utility.cutList(questions, size, offset);
+		final List<Question> questions = new ArrayList<Question>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME,
+				"SELECT " + QuestionDaoDerby.QUESTION_COLUMNS + " FROM " + DerbyConfig.TOPIC_TABLE_NAME + " t JOIN "
+						+ DerbyConfig.QUESTION_TABLE_NAME + " ON " + DerbyConfig.QUESTION_TABLE_NAME + "."
+						+ DerbyConfig.ID + " = t." + DerbyConfig.QUESTION_ID + " WHERE t." + DerbyConfig.TOPIC
+						+ " = ? ORDER BY " + DerbyConfig.RATING + " DESC, t." + DerbyConfig.QUESTION_ID,
+				new Object[] { topic }, size, offset, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						questions.add(QuestionDaoDerby.getInstance().toQuestion(rs, Config.HYDRATE_ENTITIES));
+					}
+				});
+		return questions;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getBestQuestionsByTopic(java.lang.String,
+	 * int, java.lang.String)
+	 */
+	@Override
+	public Page<Question> getBestQuestionsByTopic(String topic, int size, String cursor) throws SQLException {
+		Cursor after = Cursor.decode(cursor);
+		String sql = "SELECT " + QuestionDaoDerby.QUESTION_COLUMNS + ", " + DerbyConfig.RATING + " FROM "
+				+ DerbyConfig.TOPIC_TABLE_NAME + " t JOIN " + DerbyConfig.QUESTION_TABLE_NAME + " ON "
+				+ DerbyConfig.QUESTION_TABLE_NAME + "." + DerbyConfig.ID + " = t." + DerbyConfig.QUESTION_ID
+				+ " WHERE t." + DerbyConfig.TOPIC + " = ?";
+		Object[] params = new Object[] { topic };
+		if (after != null) {
+			sql += " AND (" + DerbyConfig.RATING + " < ? OR (" + DerbyConfig.RATING + " = ? AND t."
+					+ DerbyConfig.QUESTION_ID + " > ?))";
+			params = new Object[] { topic, after.getRatingKey(), after.getRatingKey(), after.getId() };
+		}
+		sql += " ORDER BY " + DerbyConfig.RATING + " DESC, t." + DerbyConfig.QUESTION_ID;
+
+		final List<Question> questions = new ArrayList<Question>();
+		final List<Cursor> cursors = new ArrayList<Cursor>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME, sql, params, size + 1, 0, new RowHandler() {
+
+			@Override
+			public void handleRow(ResultSet rs) throws SQLException {
+				Question question = QuestionDaoDerby.getInstance().toQuestion(rs, Config.HYDRATE_ENTITIES);
+				questions.add(question);
+				cursors.add(Cursor.of(rs.getDouble(DerbyConfig.RATING), question.getId()));
+			}
+		});
+		return Page.of(questions, cursors, size);
 	}
 
 	/*
@@ -253,20 +490,54 @@ public class TopicDaoDerby extends DaoObject implements TopicDao {
 	 * @see petoverflow.dao.TopicDao#searchTopics(java.lang.String, int, int)
 	 */
 	public List<Topic> searchTopics(String text, int size, int offset) throws SQLException {
-		List<String> words = Utility.breakToWords(text);
+		List<String> words = Tokenizer.toTerms(text);
 		List<Topic> topics = getAllTopics();
 		List<Topic> relevantTopics = new ArrayList<Topic>();
-		topicsLoop: for (Topic topic : topics) {
-			String topicName = topic.getName();
-			for (String word : words) {
-				if (!topicName.contains(word)) {
-					continue topicsLoop;
+		for (Topic topic : topics) {
+			if (Tokenizer.containsParts(topic.getName(), words)) {
+				relevantTopics.add(topic);
+			}
+		}
+		List<String> corrected = relevantTopics.isEmpty() ? m_topicTerms.correct(words, Config.SEARCH_TYPO_BUDGET_MS)
+				: words;
+		if (!corrected.equals(words)) {
+			// Nothing matched, the words may be misspelled
+			for (Topic topic : topics) {
+				if (Tokenizer.containsParts(topic.getName(), corrected)) {
+					relevantTopics.add(topic);
 				}
 			}
-			relevantTopics.add(topic);
 		}
 		Utility.sortByName(relevantTopics);
 		return Utility.cutList(relevantTopics, size, offset);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#reconcileRatings()
+	 */
+	@Override
+	public int reconcileRatings() throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			Statement s = conn.createStatement();
+			statements.add(s);
+			int repaired = s.executeUpdate(DerbyConfig.TOPIC_STATS_FILL);
+			repaired += s.executeUpdate(DerbyConfig.TOPIC_STATS_REPAIR);
+			if (repaired > 0) {
+				System.err.println("Repaired the ratings of " + repaired + " topics");
+			}
+			return repaired;
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(null, statements, conn);
+		}
+	}
+
 }
@@ -6,19 +6,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import petoverflow.Utility;
+import petoverflow.Config;
 import petoverflow.dao.DaoManager;
 import petoverflow.dao.DaoObject;
 import petoverflow.dao.UserDao;
-import petoverflow.dao.items.Answer;
-import petoverflow.dao.items.Question;
+import petoverflow.dao.derby.DerbyUtils.RowHandler;
 import petoverflow.dao.items.Topic;
 import petoverflow.dao.items.User;
+import petoverflow.dao.utility.Cursor;
+import petoverflow.dao.utility.Page;
 import petoverflow.dao.utility.exception.ExistingUsernameException;
 import petoverflow.dao.utility.exception.NoSuchUserException;
 
@@ -32,6 +32,14 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	private static UserDaoDerby m_instance;
 
+	/**
+	 * The columns a user is hydrated from. The password is never loaded. They
+	 * are qualified by the table name, so they can be selected from joins too.
+	 */
+	private static final String USER_COLUMNS = DerbyUtils.qualify(DerbyConfig.USER_TABLE_NAME, DerbyConfig.ID,
+			DerbyConfig.USERNAME, DerbyConfig.NICKNAME, DerbyConfig.DESCRIPTION, DerbyConfig.PHOTO_URL,
+			DerbyConfig.PHONE_NUM, DerbyConfig.WANTS_SMS);
+
 	/**
 	 * Get the single instance of this class
 	 * 
@@ -83,10 +91,27 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	@Override
 	public User getUser(int userId) throws SQLException, NoSuchUserException {
-		if (!exist(userId)) {
-			throw new NoSuchUserException();
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + USER_COLUMNS + " FROM "
+					+ DerbyConfig.USER_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+			statements.add(s);
+			s.setInt(1, userId);
+			rs = s.executeQuery();
+			if (!rs.next()) {
+				throw new NoSuchUserException();
+			}
+			return toUser(rs, Config.HYDRATE_ENTITIES);
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
 		}
-		return new User(getDaoManager(), userId);
 	}
 
 	/*
@@ -96,26 +121,21 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	@Override
 	public User getUser(String username) throws SQLException, NoSuchUserException {
-		if (!exist(username)) {
-			throw new NoSuchUserException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + " FROM "
+			PreparedStatement s = conn.prepareStatement("SELECT " + USER_COLUMNS + " FROM "
 					+ DerbyConfig.USER_TABLE_NAME + " WHERE " + DerbyConfig.USERNAME + " = ?");
 			statements.add(s);
 			s.setString(1, username);
 			rs = s.executeQuery();
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchUserException();
 			}
-			int id = rs.getInt(DerbyConfig.ID);
-			return new User(getDaoManager(), id);
+			return toUser(rs, Config.HYDRATE_ENTITIES);
 
 		} catch (SQLException e) {
 			throw e;
@@ -124,6 +144,34 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUsers(int[])
+	 */
+	@Override
+	public List<User> getUsers(int[] userIds) throws SQLException {
+		final HashMap<Integer, User> found = new HashMap<Integer, User>();
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + USER_COLUMNS + " FROM " + DerbyConfig.USER_TABLE_NAME
+				+ " WHERE " + DerbyConfig.ID + " IN ", "", userIds, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						User user = toUser(rs, true);
+						found.put(user.getId(), user);
+					}
+				});
+
+		List<User> users = new ArrayList<User>();
+		for (int userId : userIds) {
+			User user = found.get(userId);
+			if (user != null) {
+				users.add(user);
+			}
+		}
+		return users;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -137,8 +185,8 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement(
-					"SELECT * FROM " + DerbyConfig.USER_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + " FROM "
+					+ DerbyConfig.USER_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
 			statements.add(s);
 			s.setInt(1, userId);
 			rs = s.executeQuery();
@@ -164,8 +212,8 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 
 		try {
 			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn.prepareStatement(
-					"SELECT * FROM " + DerbyConfig.USER_TABLE_NAME + " WHERE " + DerbyConfig.USERNAME + " = ?");
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.ID + " FROM "
+					+ DerbyConfig.USER_TABLE_NAME + " WHERE " + DerbyConfig.USERNAME + " = ?");
 			statements.add(s);
 			s.setString(1, username);
 			rs = s.executeQuery();
@@ -241,6 +289,9 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 				throw new SQLException("Unexpected error");
 			}
 			int id = rs.getInt(1);
+			if (Config.HYDRATE_ENTITIES) {
+				return new User(getDaoManager(), id, username, nickname, description, photoUrl, phoneNum, wantsSms);
+			}
 			return new User(getDaoManager(), id);
 
 		} catch (SQLException e) {
@@ -257,10 +308,6 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	@Override
 	public String getUserUsername(int userId) throws SQLException, NoSuchUserException {
-		if (!exist(userId)) {
-			throw new NoSuchUserException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -274,7 +321,7 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 			rs = s.executeQuery();
 
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchUserException();
 			}
 			return rs.getString(DerbyConfig.USERNAME);
 
@@ -292,10 +339,6 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	@Override
 	public String getUserNickname(int userId) throws SQLException, NoSuchUserException {
-		if (!exist(userId)) {
-			throw new NoSuchUserException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -309,7 +352,7 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 			rs = s.executeQuery();
 
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchUserException();
 			}
 			return rs.getString(DerbyConfig.NICKNAME);
 
@@ -327,10 +370,6 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	@Override
 	public String getUserDescription(int userId) throws SQLException, NoSuchUserException {
-		if (!exist(userId)) {
-			throw new NoSuchUserException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -344,7 +383,7 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 			rs = s.executeQuery();
 
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchUserException();
 			}
 			return rs.getString(DerbyConfig.DESCRIPTION);
 
@@ -362,10 +401,6 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	@Override
 	public String getUserPhotoURL(int userId) throws SQLException, NoSuchUserException {
-		if (!exist(userId)) {
-			throw new NoSuchUserException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -379,7 +414,7 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 			rs = s.executeQuery();
 
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchUserException();
 			}
 			return rs.getString(DerbyConfig.PHOTO_URL);
 
@@ -397,10 +432,6 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	@Override
 	public String getUserPhoneNum(int userId) throws SQLException, NoSuchUserException {
-		if (!exist(userId)) {
-			throw new NoSuchUserException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -414,7 +445,7 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 			rs = s.executeQuery();
 
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchUserException();
 			}
 			return rs.getString(DerbyConfig.PHONE_NUM);
 
@@ -432,10 +463,6 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 */
 	@Override
 	public boolean getUserWantsSms(int userId) throws SQLException, NoSuchUserException {
-		if (!exist(userId)) {
-			throw new NoSuchUserException();
-		}
-
 		Connection conn = null;
 		ArrayList<Statement> statements = new ArrayList<Statement>();
 		ResultSet rs = null;
@@ -449,7 +476,7 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 			rs = s.executeQuery();
 
 			if (!rs.next()) {
-				throw new SQLException("Unexpected error");
+				throw new NoSuchUserException();
 			}
 			return rs.getBoolean(1);
 
@@ -460,51 +487,102 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserRating(int)
+	 */
 	@Override
-	public List<Topic> getUserBestTopics(int userId, int size) throws Exception {
-		final HashMap<Topic, Double> topicsRating = new HashMap<Topic, Double>();
-		List<Answer> userAnswers = getDaoManager().getAnswerDao().getAnswersByAuthorAll(userId);
-		for (Answer answer : userAnswers) {
-			try {
-				double answerRating = answer.getRating();
-				Question question = answer.getQuestion();
-				List<Topic> questionTopics = question.getTopics();
-
-				for (Topic topic : questionTopics) {
-					Double oldValue = topicsRating.get(topic);
-					if (oldValue == null) {
-						oldValue = 0.0;
-					}
-					oldValue += answerRating;
-					topicsRating.put(topic, oldValue);
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+	public double getUserRating(int userId) throws SQLException, NoSuchUserException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+		ResultSet rs = null;
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			PreparedStatement s = conn.prepareStatement("SELECT " + DerbyConfig.RATING + " FROM "
+					+ DerbyConfig.USER_TABLE_NAME + " WHERE " + DerbyConfig.ID + " = ?");
+			statements.add(s);
+			s.setInt(1, userId);
+			rs = s.executeQuery();
+
+			if (!rs.next()) {
+				throw new NoSuchUserException();
 			}
+			return rs.getDouble(1);
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(rs, statements, conn);
 		}
+	}
 
-		List<Topic> topics = new ArrayList<Topic>(topicsRating.keySet());
-		Collections.sort(topics, new Comparator<Topic>() {
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserRatings(int[])
+	 */
+	@Override
+	public Map<Integer, Double> getUserRatings(int[] userIds) throws SQLException {
+		final Map<Integer, Double> ratings = new HashMap<Integer, Double>();
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + DerbyConfig.ID + ", " + DerbyConfig.RATING + " FROM "
+				+ DerbyConfig.USER_TABLE_NAME + " WHERE " + DerbyConfig.ID + " IN ", "", userIds, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						ratings.put(rs.getInt(DerbyConfig.ID), rs.getDouble(DerbyConfig.RATING));
+					}
+				});
+		return ratings;
+	}
 
-			@Override
-			public int compare(Topic o1, Topic o2) {
-				Double r1 = topicsRating.get(o1);
-				Double r2 = topicsRating.get(o2);
-				if (r1 == null || r2 == null) {
-					return 0;
-				}
-				if (r1 > r2) {
-					return 1;
-				} else if (r1 < r2) {
-					return -1;
-				} else {
-					return 0;
-				}
-			}
-		});
-		Collections.reverse(topics);
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserBestTopics(int, int)
+	 */
+	@Override
+	public List<Topic> getUserBestTopics(int userId, int size) throws SQLException {
+		final List<Topic> topics = new ArrayList<Topic>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME,
+				"SELECT " + DerbyConfig.TOPIC + " FROM " + DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME + " WHERE "
+						+ DerbyConfig.USER_ID + " = ? ORDER BY " + DerbyConfig.SCORE + " DESC, " + DerbyConfig.TOPIC,
+				new Object[] { userId }, size, 0, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						topics.add(new Topic(getDaoManager(), rs.getString(DerbyConfig.TOPIC)));
+					}
+				});
+		return topics;
+	}
 
-		return Utility.cutList(topics, size, 0);
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUsersBestTopics(int[], int)
+	 */
+	@Override
+	public Map<Integer, List<Topic>> getUsersBestTopics(int[] userIds, final int size) throws SQLException {
+		final Map<Integer, List<Topic>> topics = new HashMap<Integer, List<Topic>>();
+		for (int userId : userIds) {
+			topics.put(userId, new ArrayList<Topic>());
+		}
+		DerbyUtils.selectIn(DerbyConfig.DB_NAME, "SELECT " + DerbyConfig.USER_ID + ", " + DerbyConfig.TOPIC + " FROM "
+				+ DerbyConfig.USER_TOPIC_SCORE_TABLE_NAME + " WHERE " + DerbyConfig.USER_ID + " IN ",
+				" ORDER BY " + DerbyConfig.USER_ID + ", " + DerbyConfig.SCORE + " DESC, " + DerbyConfig.TOPIC, userIds,
+				new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						List<Topic> userTopics = topics.get(rs.getInt(DerbyConfig.USER_ID));
+						if (userTopics.size() < size) {
+							userTopics.add(new Topic(getDaoManager(), rs.getString(DerbyConfig.TOPIC)));
+						}
+					}
+				});
+		return topics;
 	}
 
 	/*
@@ -667,30 +745,49 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 	 * @see petoverflow.dao.UserDao#getMostRatedUsers(int, int)
 	 */
 	public List<User> getMostRatedUsers(int size, int offset) throws SQLException {
-		Connection conn = null;
-		ArrayList<Statement> statements = new ArrayList<Statement>();
-		ResultSet rs = null;
-
-		List<User> allUsers = new ArrayList<User>();
-		try {
-			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
-			PreparedStatement s = conn
-					.prepareStatement("SELECT " + DerbyConfig.ID + " FROM " + DerbyConfig.USER_TABLE_NAME);
-			statements.add(s);
-			rs = s.executeQuery();
-			while (rs.next()) {
-				int id = rs.getInt(DerbyConfig.ID);
-				allUsers.add(new User(getDaoManager(), id));
-			}
+		final List<User> users = new ArrayList<User>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME,
+				"SELECT " + USER_COLUMNS + " FROM " + DerbyConfig.USER_TABLE_NAME + " ORDER BY " + DerbyConfig.RATING
+						+ " DESC, " + DerbyConfig.ID,
+				new Object[0], size, offset, new RowHandler() {
+
+					@Override
+					public void handleRow(ResultSet rs) throws SQLException {
+						users.add(toUser(rs, Config.HYDRATE_ENTITIES));
+					}
+				});
+		return users;
+	}
 
-		} catch (SQLException e) {
-			throw e;
-		} finally {
-			DerbyUtils.cleanUp(rs, statements, conn);
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getMostRatedUsers(int, java.lang.String)
+	 */
+	@Override
+	public Page<User> getMostRatedUsers(int size, String cursor) throws SQLException {
+		Cursor after = Cursor.decode(cursor);
+		String sql = "SELECT " + USER_COLUMNS + ", " + DerbyConfig.RATING + " FROM " + DerbyConfig.USER_TABLE_NAME;
+		Object[] params = new Object[0];
+		if (after != null) {
+			sql += " WHERE " + DerbyConfig.RATING + " < ? OR (" + DerbyConfig.RATING + " = ? AND " + DerbyConfig.ID
+					+ " > ?)";
+			params = new Object[] { after.getRatingKey(), after.getRatingKey(), after.getId() };
 		}
+		sql += " ORDER BY " + DerbyConfig.RATING + " DESC, " + DerbyConfig.ID;
+
+		final List<User> users = new ArrayList<User>();
+		final List<Cursor> cursors = new ArrayList<Cursor>();
+		DerbyUtils.selectPage(DerbyConfig.DB_NAME, sql, params, size + 1, 0, new RowHandler() {
 
-		Utility.sortByRating(allUsers);
-		return Utility.cutList(allUsers, size, offset);
+			@Override
+			public void handleRow(ResultSet rs) throws SQLException {
+				User user = toUser(rs, Config.HYDRATE_ENTITIES);
+				users.add(user);
+				cursors.add(Cursor.of(rs.getDouble(DerbyConfig.RATING), user.getId()));
+			}
+		});
+		return Page.of(users, cursors, size);
 	}
 
 	/*
@@ -731,4 +828,55 @@ public class UserDaoDerby extends DaoObject implements UserDao {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#reconcileRatings()
+	 */
+	@Override
+	public int reconcileRatings() throws SQLException {
+		Connection conn = null;
+		ArrayList<Statement> statements = new ArrayList<Statement>();
+
+		try {
+			conn = DerbyUtils.getConnection(DerbyConfig.DB_NAME);
+			Statement s = conn.createStatement();
+			statements.add(s);
+			int postsRepaired = s.executeUpdate(DerbyConfig.USER_POSTS_REPAIR);
+			if (postsRepaired > 0) {
+				System.err.println("Repaired the question and answer counts of " + postsRepaired + " users");
+			}
+			int ratingsRepaired = s.executeUpdate(DerbyConfig.USER_RATING_REPAIR);
+			if (ratingsRepaired > 0) {
+				System.err.println("Repaired the ratings of " + ratingsRepaired + " users");
+			}
+			int topicScoresRepaired = s.executeUpdate(DerbyConfig.USER_TOPIC_SCORES_PRUNE)
+					+ s.executeUpdate(DerbyConfig.USER_TOPIC_SCORES_FILL)
+					+ s.executeUpdate(DerbyConfig.USER_TOPIC_SCORES_REPAIR);
+			if (topicScoresRepaired > 0) {
+				System.err.println("Repaired " + topicScoresRepaired + " topic scores of users");
+			}
+			return postsRepaired + ratingsRepaired + topicScoresRepaired;
+
+		} catch (SQLException e) {
+			throw e;
+		} finally {
+			DerbyUtils.cleanUp(null, statements, conn);
+		}
+	}
+
+	/**
+	 * Create a user from the current row of a result set that selected
+	 * {@link #USER_COLUMNS}
+	 */
+	private User toUser(ResultSet rs, boolean hydrate) throws SQLException {
+		int id = rs.getInt(DerbyConfig.ID);
+		if (!hydrate) {
+			return new User(getDaoManager(), id);
+		}
+		return new User(getDaoManager(), id, rs.getString(DerbyConfig.USERNAME), rs.getString(DerbyConfig.NICKNAME),
+				rs.getString(DerbyConfig.DESCRIPTION), rs.getString(DerbyConfig.PHOTO_URL),
+				rs.getString(DerbyConfig.PHONE_NUM), rs.getBoolean(DerbyConfig.WANTS_SMS));
+	}
+
 }
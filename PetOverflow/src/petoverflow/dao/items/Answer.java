@@ -1,13 +1,11 @@
 package petoverflow.dao.items;
 
 import java.sql.Timestamp;
-import java.util.List;
 
 import petoverflow.dao.AnswerDao;
 import petoverflow.dao.AnswerVoteDao;
 import petoverflow.dao.DaoManager;
 import petoverflow.dao.DaoObject;
-import petoverflow.dao.items.Vote.VoteType;
 import petoverflow.dao.utility.Rated;
 import petoverflow.dao.utility.Timestampable;
 
@@ -15,6 +13,9 @@ import petoverflow.dao.utility.Timestampable;
  * The Answer class represent a user answer to question. This class uses DAO to
  * get it's data and most of it's methods throw exceptions if the DAO fails.
  * 
+ * A hydrated answer holds an immutable snapshot of its row, which is read
+ * instead of the DAO.
+ * 
  * @see Question
  * @see AnswerDao
  * @see AnswerVoteDao
@@ -26,6 +27,31 @@ public class Answer extends DaoObject implements Rated, Timestampable {
 	 */
 	private final int m_id;
 
+	/**
+	 * Whether the row of this answer was loaded with it
+	 */
+	private final boolean m_hydrated;
+
+	/**
+	 * Text of the answer, if hydrated
+	 */
+	private final String m_text;
+
+	/**
+	 * Id of the answer's author, if hydrated
+	 */
+	private final int m_authorId;
+
+	/**
+	 * Id of the answer's question, if hydrated
+	 */
+	private final int m_questionId;
+
+	/**
+	 * Time stamp of the answer, if hydrated
+	 */
+	private final Timestamp m_timestamp;
+
 	/**
 	 * Constructor
 	 * 
@@ -42,6 +68,38 @@ public class Answer extends DaoObject implements Rated, Timestampable {
 	public Answer(DaoManager daoManager, int id) {
 		super(daoManager);
 		m_id = id;
+		m_hydrated = false;
+		m_text = null;
+		m_authorId = 0;
+		m_questionId = 0;
+		m_timestamp = null;
+	}
+
+	/**
+	 * Constructor of a hydrated answer
+	 * 
+	 * This constructor is not meant to be used directly. It should be called
+	 * through an answers DAO
+	 * 
+	 * @param id
+	 *            id of the answer
+	 * @param text
+	 *            text of the answer
+	 * @param authorId
+	 *            id of the answer's author
+	 * @param questionId
+	 *            id of the answer's question
+	 * @param timestamp
+	 *            time stamp of the answer
+	 */
+	public Answer(DaoManager daoManager, int id, String text, int authorId, int questionId, Timestamp timestamp) {
+		super(daoManager);
+		m_id = id;
+		m_hydrated = true;
+		m_text = text;
+		m_authorId = authorId;
+		m_questionId = questionId;
+		m_timestamp = timestamp;
 	}
 
 	/**
@@ -53,6 +111,15 @@ public class Answer extends DaoObject implements Rated, Timestampable {
 		return m_id;
 	}
 
+	/**
+	 * Check whether this answer holds a snapshot of its row
+	 * 
+	 * @return true if this answer is hydrated, else - false
+	 */
+	public boolean isHydrated() {
+		return m_hydrated;
+	}
+
 	/**
 	 * Get the text of this answer
 	 * 
@@ -61,6 +128,9 @@ public class Answer extends DaoObject implements Rated, Timestampable {
 	 *             if DAO fails
 	 */
 	public String getText() throws Exception {
+		if (m_hydrated) {
+			return m_text;
+		}
 		return getDaoManager().getAnswerDao().getAnswerText(m_id);
 	}
 
@@ -72,9 +142,26 @@ public class Answer extends DaoObject implements Rated, Timestampable {
 	 *             if DAO fails
 	 */
 	public User getAuthor() throws Exception {
+		if (m_hydrated) {
+			return getDaoManager().getUserDao().getUser(m_authorId);
+		}
 		return getDaoManager().getAnswerDao().getAnswerAuthor(m_id);
 	}
 
+	/**
+	 * Get the id of this answer's author, without loading the author
+	 * 
+	 * @return the id of this answer's author
+	 * @throws Exception
+	 *             if DAO fails
+	 */
+	public int getAuthorId() throws Exception {
+		if (m_hydrated) {
+			return m_authorId;
+		}
+		return getDaoManager().getAnswerDao().getAnswerAuthor(m_id).getId();
+	}
+
 	/**
 	 * Get the total rating of this answer
 	 * 
@@ -83,14 +170,7 @@ public class Answer extends DaoObject implements Rated, Timestampable {
 	 *             if DAO fails
 	 */
 	public double getRating() throws Exception {
-		List<Vote> answerVotes = getDaoManager().getAnswerVoteDao().getAnswerVotes(m_id);
-
-		double rating = 0;
-		for (Vote vote : answerVotes) {
-			rating += (vote.getType() == VoteType.Up) ? 1 : -1;
-		}
-
-		return rating;
+		return getDaoManager().getAnswerVoteDao().getVoteCount(m_id);
 	}
 
 	/**
@@ -101,9 +181,27 @@ public class Answer extends DaoObject implements Rated, Timestampable {
 	 *             if DAO fails
 	 */
 	public Question getQuestion() throws Exception {
+		if (m_hydrated) {
+			return getDaoManager().getQuestionDao().getQuestion(m_questionId);
+		}
 		return getDaoManager().getAnswerDao().getAnswerQuestion(m_id);
 	}
 
+	/**
+	 * Get the id of the question this answer was submitted to, without loading
+	 * the question
+	 * 
+	 * @return id of this answer's question
+	 * @throws Exception
+	 *             if DAO fails
+	 */
+	public int getQuestionId() throws Exception {
+		if (m_hydrated) {
+			return m_questionId;
+		}
+		return getDaoManager().getAnswerDao().getAnswerQuestion(m_id).getId();
+	}
+
 	/**
 	 * Get the time when this answer was submitted
 	 * 
@@ -112,6 +210,9 @@ public class Answer extends DaoObject implements Rated, Timestampable {
 	 *             if DAO fails
 	 */
 	public Timestamp getTimestamp() throws Exception {
+		if (m_hydrated) {
+			return m_timestamp;
+		}
 		return getDaoManager().getAnswerDao().getAnswerTimestamp(m_id);
 	}
 
@@ -7,7 +7,6 @@ import petoverflow.dao.DaoManager;
 import petoverflow.dao.DaoObject;
 import petoverflow.dao.QuestionDao;
 import petoverflow.dao.QuestionVoteDao;
-import petoverflow.dao.items.Vote.VoteType;
 import petoverflow.dao.utility.Rated;
 import petoverflow.dao.utility.Timestampable;
 
@@ -15,6 +14,10 @@ import petoverflow.dao.utility.Timestampable;
  * The Question class represent a user question. This class uses DAO to get it's
  * data and most methods throw exceptions if the DAO fails.
  * 
+ * A question can be hydrated: its row was loaded by the DAO together with its
+ * id, and the text, author and time stamp are read from that snapshot instead
+ * of the DAO. The snapshot is immutable.
+ * 
  * @see QuestionDao
  * @see QuestionVoteDao
  */
@@ -25,6 +28,26 @@ public class Question extends DaoObject implements Rated, Timestampable {
 	 */
 	private final int m_id;
 
+	/**
+	 * Whether the row of this question was loaded with it
+	 */
+	private final boolean m_hydrated;
+
+	/**
+	 * Text of this question, if hydrated
+	 */
+	private final String m_text;
+
+	/**
+	 * Id of this question's author, if hydrated
+	 */
+	private final int m_authorId;
+
+	/**
+	 * Time stamp of this question, if hydrated
+	 */
+	private final Timestamp m_timestamp;
+
 	/**
 	 * Constructor
 	 * 
@@ -43,6 +66,34 @@ public class Question extends DaoObject implements Rated, Timestampable {
 	public Question(DaoManager daoManager, int id) {
 		super(daoManager);
 		m_id = id;
+		m_hydrated = false;
+		m_text = null;
+		m_authorId = 0;
+		m_timestamp = null;
+	}
+
+	/**
+	 * Constructor of a hydrated question
+	 * 
+	 * This constructor is not meant to be used directly. It should be called
+	 * through a questions DAO
+	 * 
+	 * @param id
+	 *            id of this question
+	 * @param text
+	 *            text of this question
+	 * @param authorId
+	 *            id of this question's author
+	 * @param timestamp
+	 *            time stamp of this question
+	 */
+	public Question(DaoManager daoManager, int id, String text, int authorId, Timestamp timestamp) {
+		super(daoManager);
+		m_id = id;
+		m_hydrated = true;
+		m_text = text;
+		m_authorId = authorId;
+		m_timestamp = timestamp;
 	}
 
 	/**
@@ -54,6 +105,15 @@ public class Question extends DaoObject implements Rated, Timestampable {
 		return m_id;
 	}
 
+	/**
+	 * Check whether this question holds a snapshot of its row
+	 * 
+	 * @return true if this question is hydrated, else - false
+	 */
+	public boolean isHydrated() {
+		return m_hydrated;
+	}
+
 	/**
 	 * Get the text of this question
 	 * 
@@ -62,6 +122,9 @@ public class Question extends DaoObject implements Rated, Timestampable {
 	 *             if the DAO fails
 	 */
 	public String getText() throws Exception {
+		if (m_hydrated) {
+			return m_text;
+		}
 		return getDaoManager().getQuestionDao().getQuestionText(m_id);
 	}
 
@@ -73,9 +136,26 @@ public class Question extends DaoObject implements Rated, Timestampable {
 	 *             if the DAO fails
 	 */
 	public User getAuthor() throws Exception {
+		if (m_hydrated) {
+			return getDaoManager().getUserDao().getUser(m_authorId);
+		}
 		return getDaoManager().getQuestionDao().getQuestionAuthor(m_id);
 	}
 
+	/**
+	 * Get the id of this question's author, without loading the author
+	 * 
+	 * @return this question's author's id
+	 * @throws Exception
+	 *             if the DAO fails
+	 */
+	public int getAuthorId() throws Exception {
+		if (m_hydrated) {
+			return m_authorId;
+		}
+		return getDaoManager().getQuestionDao().getQuestionAuthor(m_id).getId();
+	}
+
 	/**
 	 * Get the rating of this question
 	 * 
@@ -84,19 +164,24 @@ public class Question extends DaoObject implements Rated, Timestampable {
 	 *             if the DAO fails
 	 */
 	public double getRating() throws Exception {
-		double ownQuestionRating = getVoteCount();
-		double averageAnswerRating = 0;
-
-		List<Answer> answers = getDaoManager().getAnswerDao().getQuestionAnswersAll(m_id);
-		for (Answer answer : answers) {
-			double answerRating = answer.getRating();
-			averageAnswerRating += answerRating;
-		}
-		if (answers.size() != 0) {
-			averageAnswerRating /= answers.size();
-		}
+		return getDaoManager().getQuestionDao().getQuestionRating(m_id);
+	}
 
-		return 0.2 * ownQuestionRating + 0.8 * averageAnswerRating;
+	/**
+	 * Calculate the rating of a question from its own votes and the ratings of
+	 * its answers
+	 * 
+	 * @param voteCount
+	 *            the net vote count of the question
+	 * @param answerRatingSum
+	 *            the sum of the ratings of the question's answers
+	 * @param answerCount
+	 *            the number of answers to the question
+	 * @return the rating of the question
+	 */
+	public static double combineRating(double voteCount, double answerRatingSum, int answerCount) {
+		double averageAnswerRating = answerCount != 0 ? answerRatingSum / answerCount : 0;
+		return 0.2 * voteCount + 0.8 * averageAnswerRating;
 	}
 
 	/**
@@ -106,14 +191,7 @@ public class Question extends DaoObject implements Rated, Timestampable {
 	 * @throws Exception
 	 */
 	public double getVoteCount() throws Exception {
-		List<Vote> questionVotes = getDaoManager().getQuestionVoteDao().getQuestionVotes(m_id);
-
-		double rating = 0;
-		for (Vote vote : questionVotes) {
-			rating += (vote.getType() == VoteType.Up) ? 1 : -1;
-		}
-
-		return rating;
+		return getDaoManager().getQuestionVoteDao().getVoteCount(m_id);
 	}
 
 	/**
@@ -124,6 +202,9 @@ public class Question extends DaoObject implements Rated, Timestampable {
 	 *             if the DAO fails
 	 */
 	public Timestamp getTimestamp() throws Exception {
+		if (m_hydrated) {
+			return m_timestamp;
+		}
 		return getDaoManager().getQuestionDao().getQuestionTimestamp(m_id);
 	}
 
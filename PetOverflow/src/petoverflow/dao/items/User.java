@@ -14,6 +14,10 @@ import petoverflow.dao.utility.Rated;
  * DAO to get it's data and in most of it's methods exceptions are thrown if the
  * DAO fails.
  * 
+ * A hydrated user holds an immutable snapshot of its profile, which is read
+ * instead of the DAO. The setters update the DAO only, the snapshot keeps the
+ * values it was loaded with.
+ * 
  * @see UserDao
  * @see QuestionDao
  * @see AnswerDao
@@ -25,7 +29,25 @@ public class User extends DaoObject implements Rated {
 	 */
 	private final int m_id;
 
-	private static final int BEST_TOPICS_SIZE = 5;
+	/**
+	 * Whether the profile of this user was loaded with it
+	 */
+	private final boolean m_hydrated;
+
+	/**
+	 * Profile of this user, if hydrated
+	 */
+	private final String m_username;
+	private final String m_nickname;
+	private final String m_description;
+	private final String m_photoUrl;
+	private final String m_phoneNum;
+	private final boolean m_wantsSms;
+
+	/**
+	 * The number of topics in a user's best topics
+	 */
+	public static final int BEST_TOPICS_SIZE = 5;
 
 	/**
 	 * Constructor
@@ -45,6 +67,47 @@ public class User extends DaoObject implements Rated {
 	public User(DaoManager daoManager, int id) {
 		super(daoManager);
 		m_id = id;
+		m_hydrated = false;
+		m_username = null;
+		m_nickname = null;
+		m_description = null;
+		m_photoUrl = null;
+		m_phoneNum = null;
+		m_wantsSms = false;
+	}
+
+	/**
+	 * Constructor of a hydrated user
+	 * 
+	 * This constructor is not meant to be used directly. It should be called
+	 * through an users DAO
+	 * 
+	 * @param id
+	 *            id of the user
+	 * @param username
+	 *            the user's username
+	 * @param nickname
+	 *            the user's nickname
+	 * @param description
+	 *            the user's description
+	 * @param photoUrl
+	 *            the user's photo URL
+	 * @param phoneNum
+	 *            the user's phone number
+	 * @param wantsSms
+	 *            whether the user wants SMS notifications
+	 */
+	public User(DaoManager daoManager, int id, String username, String nickname, String description,
+			String photoUrl, String phoneNum, boolean wantsSms) {
+		super(daoManager);
+		m_id = id;
+		m_hydrated = true;
+		m_username = username;
+		m_nickname = nickname;
+		m_description = description;
+		m_photoUrl = photoUrl;
+		m_phoneNum = phoneNum;
+		m_wantsSms = wantsSms;
 	}
 
 	/**
@@ -56,6 +119,15 @@ public class User extends DaoObject implements Rated {
 		return m_id;
 	}
 
+	/**
+	 * Check whether this user holds a snapshot of its profile
+	 * 
+	 * @return true if this user is hydrated, else - false
+	 */
+	public boolean isHydrated() {
+		return m_hydrated;
+	}
+
 	/**
 	 * Get the username of this user
 	 * 
@@ -64,6 +136,9 @@ public class User extends DaoObject implements Rated {
 	 *             if DAO fails
 	 */
 	public String getUsername() throws Exception {
+		if (m_hydrated) {
+			return m_username;
+		}
 		return getDaoManager().getUserDao().getUserUsername(m_id);
 	}
 
@@ -75,6 +150,9 @@ public class User extends DaoObject implements Rated {
 	 *             if DAO fails
 	 */
 	public String getNickname() throws Exception {
+		if (m_hydrated) {
+			return m_nickname;
+		}
 		return getDaoManager().getUserDao().getUserNickname(m_id);
 	}
 
@@ -86,6 +164,9 @@ public class User extends DaoObject implements Rated {
 	 *             if DAO fails
 	 */
 	public String getDescription() throws Exception {
+		if (m_hydrated) {
+			return m_description;
+		}
 		return getDaoManager().getUserDao().getUserDescription(m_id);
 	}
 
@@ -97,6 +178,9 @@ public class User extends DaoObject implements Rated {
 	 *             if DAO fails
 	 */
 	public String getPhotoUrl() throws Exception {
+		if (m_hydrated) {
+			return m_photoUrl;
+		}
 		return getDaoManager().getUserDao().getUserPhotoURL(m_id);
 	}
 
@@ -108,6 +192,9 @@ public class User extends DaoObject implements Rated {
 	 *             if DAO fails
 	 */
 	public String getPhoneNum() throws Exception {
+		if (m_hydrated) {
+			return m_phoneNum;
+		}
 		return getDaoManager().getUserDao().getUserPhoneNum(m_id);
 	}
 
@@ -118,6 +205,9 @@ public class User extends DaoObject implements Rated {
 	 * @throws Exception
 	 */
 	public boolean getWantsSms() throws Exception {
+		if (m_hydrated) {
+			return m_wantsSms;
+		}
 		return getDaoManager().getUserDao().getUserWantsSms(m_id);
 	}
 
@@ -129,19 +219,27 @@ public class User extends DaoObject implements Rated {
 	 *             if DAO fails
 	 */
 	public double getRating() throws Exception {
-		List<Question> userQuestions = getDaoManager().getQuestionDao().getQuestionsByAuthorAll(m_id);
-		List<Answer> userAnswers = getDaoManager().getAnswerDao().getAnswersByAuthorAll(m_id);
-
-		double averageQuestionsRating = 0;
-		for (Question userQuestion : userQuestions) {
-			averageQuestionsRating += userQuestion.getRating() / userQuestions.size();
-		}
-
-		double averageAnswersRating = 0;
-		for (Answer userAnswer : userAnswers) {
-			averageAnswersRating += userAnswer.getRating() / userAnswers.size();
-		}
+		return getDaoManager().getUserDao().getUserRating(m_id);
+	}
 
+	/**
+	 * Calculate the rating of a user from the ratings of the user's questions
+	 * and answers
+	 * 
+	 * @param questionRatingSum
+	 *            the sum of the ratings of the user's questions
+	 * @param questionCount
+	 *            the number of the user's questions
+	 * @param answerRatingSum
+	 *            the sum of the ratings of the user's answers
+	 * @param answerCount
+	 *            the number of the user's answers
+	 * @return the rating of the user
+	 */
+	public static double combineRating(double questionRatingSum, int questionCount, double answerRatingSum,
+			int answerCount) {
+		double averageQuestionsRating = questionCount != 0 ? questionRatingSum / questionCount : 0;
+		double averageAnswersRating = answerCount != 0 ? answerRatingSum / answerCount : 0;
 		return 0.2 * averageQuestionsRating + 0.8 * averageAnswersRating;
 	}
 
@@ -1,5 +1,7 @@
 package petoverflow.dao.items;
 
+import java.util.List;
+
 /**
  * The Vote class represent a single vote of a user to a question or an answer.
  * The vote can be positive(Up) or negative(Down)
@@ -57,6 +59,22 @@ public class Vote {
 		return m_type;
 	}
 
+	/**
+	 * Get the net score of a list of votes, +1 for each up vote and -1 for each
+	 * down vote
+	 * 
+	 * @param votes
+	 *            the votes
+	 * @return the net score of the votes
+	 */
+	public static int netScore(List<Vote> votes) {
+		int score = 0;
+		for (Vote vote : votes) {
+			score += (vote.getType() == VoteType.Up) ? 1 : -1;
+		}
+		return score;
+	}
+
 	public int hashCode() {
 		return m_voterId ^ ((m_type == VoteType.Up ? 1 : -1) << 16);
 	}
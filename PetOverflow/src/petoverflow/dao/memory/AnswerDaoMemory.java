@@ -0,0 +1,266 @@
+package petoverflow.dao.memory;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import petoverflow.Config;
+import petoverflow.dao.AnswerDao;
+import petoverflow.dao.DaoManager;
+import petoverflow.dao.DaoObject;
+import petoverflow.dao.items.Answer;
+import petoverflow.dao.items.Question;
+import petoverflow.dao.items.User;
+import petoverflow.dao.memory.MemoryStore.AnswerRow;
+import petoverflow.dao.memory.MemoryStore.QuestionRow;
+import petoverflow.dao.memory.MemoryStore.UserRow;
+import petoverflow.dao.utility.Cursor;
+import petoverflow.dao.utility.exception.NoSuchAnswerException;
+import petoverflow.dao.utility.exception.NoSuchQuestionException;
+import petoverflow.dao.utility.exception.NoSuchUserException;
+
+/**
+ * The AnswerDaoMemory class implements the AnswerDao interface in memory.
+ */
+public class AnswerDaoMemory extends DaoObject implements AnswerDao {
+
+	private final MemoryStore m_store;
+
+	AnswerDaoMemory(DaoManager daoManager, MemoryStore store) {
+		super(daoManager);
+		m_store = store;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#exist(int)
+	 */
+	@Override
+	public boolean exist(int answerId) {
+		return m_store.m_answers.get(answerId) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#createAnswer(java.lang.String, int, int)
+	 */
+	@Override
+	public Answer createAnswer(String text, int authorId, int questionId)
+			throws NoSuchUserException, NoSuchQuestionException {
+		AnswerRow row;
+		synchronized (m_store) {
+			UserRow author = m_store.m_users.get(authorId);
+			if (author == null) {
+				throw new NoSuchUserException();
+			}
+			QuestionRow question = m_store.m_questions.get(questionId);
+			if (question == null) {
+				throw new NoSuchQuestionException();
+			}
+			row = new AnswerRow(m_store.m_answers.getLastId() + 1, text, authorId, questionId,
+					new Timestamp(System.currentTimeMillis()));
+			m_store.m_answers.insert(row);
+			author.m_answerIds.add(row.m_id);
+			question.m_answerIds.add(row.m_id);
+			m_store.m_unanswered.remove(questionId);
+			m_store.m_searchIndex.addAnswer(row.m_id, questionId, text);
+			m_store.scoreUserTopics(authorId, question.m_topics, 0);
+		}
+		m_store.answerChanged(row);
+		return toAnswer(row);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswer(int)
+	 */
+	@Override
+	public Answer getAnswer(int answerId) throws NoSuchAnswerException {
+		return toAnswer(getRow(answerId));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswers(int[])
+	 */
+	@Override
+	public List<Answer> getAnswers(int[] answerIds) {
+		List<Answer> answers = new ArrayList<Answer>();
+		for (int answerId : answerIds) {
+			AnswerRow row = m_store.m_answers.get(answerId);
+			if (row != null) {
+				answers.add(toAnswer(row));
+			}
+		}
+		return answers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswerText(int)
+	 */
+	@Override
+	public String getAnswerText(int answerId) throws NoSuchAnswerException {
+		return getRow(answerId).m_text;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswerAuthor(int)
+	 */
+	@Override
+	public User getAnswerAuthor(int answerId) throws Exception {
+		return getDaoManager().getUserDao().getUser(getRow(answerId).m_authorId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswerQuestion(int)
+	 */
+	@Override
+	public Question getAnswerQuestion(int answerId) throws Exception {
+		return getDaoManager().getQuestionDao().getQuestion(getRow(answerId).m_questionId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswerTimestamp(int)
+	 */
+	@Override
+	public Timestamp getAnswerTimestamp(int answerId) throws NoSuchAnswerException {
+		return getRow(answerId).m_timestamp;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswersByAuthor(int, int, int)
+	 */
+	@Override
+	public List<Answer> getAnswersByAuthor(int authorId, int size, int offset) {
+		Ranking<Answer> ranking = new Ranking<Answer>(Ranking.NEWEST_FIRST);
+		for (AnswerRow row : getRows(getAuthorAnswerIds(authorId))) {
+			ranking.add(toAnswer(row), Cursor.of(row.m_timestamp, row.m_id));
+		}
+		return ranking.getRange(size, offset);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswersByAuthorAll(int)
+	 */
+	@Override
+	public List<Answer> getAnswersByAuthorAll(int authorId) {
+		return toAnswers(getRows(getAuthorAnswerIds(authorId)));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswersByAuthors(int[])
+	 */
+	@Override
+	public Map<Integer, List<Answer>> getAnswersByAuthors(int[] authorIds) {
+		Map<Integer, List<Answer>> answersByAuthor = new HashMap<Integer, List<Answer>>();
+		for (int authorId : authorIds) {
+			answersByAuthor.put(authorId, getAnswersByAuthorAll(authorId));
+		}
+		return answersByAuthor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getQuestionAnswers(int, int, int)
+	 */
+	@Override
+	public List<Answer> getQuestionAnswers(int questionId, int size, int offset) {
+		return rankByRating(questionId).getRange(size, offset);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getQuestionAnswersAll(int)
+	 */
+	@Override
+	public List<Answer> getQuestionAnswersAll(int questionId) {
+		return rankByRating(questionId).getRange(Integer.MAX_VALUE, 0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerDao#getAnswersForQuestions(int[])
+	 */
+	@Override
+	public Map<Integer, List<Answer>> getAnswersForQuestions(int[] questionIds) {
+		Map<Integer, List<Answer>> answersByQuestion = new HashMap<Integer, List<Answer>>();
+		for (int questionId : questionIds) {
+			answersByQuestion.put(questionId, toAnswers(getRows(getQuestionAnswerIds(questionId))));
+		}
+		return answersByQuestion;
+	}
+
+	private Ranking<Answer> rankByRating(int questionId) {
+		Ranking<Answer> ranking = new Ranking<Answer>(Ranking.BEST_FIRST);
+		for (AnswerRow row : getRows(getQuestionAnswerIds(questionId))) {
+			ranking.add(toAnswer(row), Cursor.of(m_store.getAnswerRating(row), row.m_id));
+		}
+		return ranking;
+	}
+
+	private List<Integer> getAuthorAnswerIds(int authorId) {
+		UserRow author = m_store.m_users.get(authorId);
+		return author != null ? author.m_answerIds : new ArrayList<Integer>();
+	}
+
+	private List<Integer> getQuestionAnswerIds(int questionId) {
+		QuestionRow question = m_store.m_questions.get(questionId);
+		return question != null ? question.m_answerIds : new ArrayList<Integer>();
+	}
+
+	private List<AnswerRow> getRows(List<Integer> answerIds) {
+		List<AnswerRow> rows = new ArrayList<AnswerRow>();
+		for (int answerId : answerIds) {
+			rows.add(m_store.m_answers.get(answerId));
+		}
+		return rows;
+	}
+
+	private AnswerRow getRow(int answerId) throws NoSuchAnswerException {
+		AnswerRow row = m_store.m_answers.get(answerId);
+		if (row == null) {
+			throw new NoSuchAnswerException();
+		}
+		return row;
+	}
+
+	private List<Answer> toAnswers(List<AnswerRow> rows) {
+		List<Answer> answers = new ArrayList<Answer>();
+		for (AnswerRow row : rows) {
+			answers.add(toAnswer(row));
+		}
+		return answers;
+	}
+
+	private Answer toAnswer(AnswerRow row) {
+		if (!Config.HYDRATE_ENTITIES) {
+			return new Answer(getDaoManager(), row.m_id);
+		}
+		return new Answer(getDaoManager(), row.m_id, row.m_text, row.m_authorId, row.m_questionId,
+				row.m_timestamp);
+	}
+
+}
@@ -0,0 +1,157 @@
+package petoverflow.dao.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import petoverflow.dao.AnswerVoteDao;
+import petoverflow.dao.DaoManager;
+import petoverflow.dao.DaoObject;
+import petoverflow.dao.items.Vote;
+import petoverflow.dao.items.Vote.VoteType;
+import petoverflow.dao.memory.MemoryStore.AnswerRow;
+import petoverflow.dao.memory.MemoryStore.QuestionRow;
+import petoverflow.dao.utility.exception.NoSuchAnswerException;
+
+/**
+ * The AnswerVoteDaoMemory class implements the AnswerVoteDao interface in
+ * memory.
+ */
+public class AnswerVoteDaoMemory extends DaoObject implements AnswerVoteDao {
+
+	private final MemoryStore m_store;
+
+	AnswerVoteDaoMemory(DaoManager daoManager, MemoryStore store) {
+		super(daoManager);
+		m_store = store;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#addVote(int,
+	 * petoverflow.dao.items.Vote)
+	 */
+	@Override
+	public void addVote(int answerId, Vote vote) throws NoSuchAnswerException {
+		AnswerRow answer = getRow(answerId);
+		if (answer.m_authorId == vote.getVoterId()) {
+			// Can vote to yourself
+			return;
+		}
+		// Replaces the previous vote
+		if (m_store.voteAnswer(answer, vote.getVoterId(), vote.getType() == VoteType.Up)) {
+			m_store.answerChanged(answer);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#removeVote(int, int)
+	 */
+	@Override
+	public void removeVote(int answerId, int voterId) {
+		AnswerRow answer = m_store.m_answers.get(answerId);
+		if (answer != null && m_store.voteAnswer(answer, voterId, null)) {
+			m_store.answerChanged(answer);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#getAnswerVotes(int)
+	 */
+	@Override
+	public List<Vote> getAnswerVotes(int answerId) {
+		AnswerRow answer = m_store.m_answers.get(answerId);
+		return answer != null ? QuestionVoteDaoMemory.toVotes(answer.m_votes) : new ArrayList<Vote>();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#getVotesForAnswers(int[])
+	 */
+	@Override
+	public Map<Integer, List<Vote>> getVotesForAnswers(int[] answerIds) {
+		Map<Integer, List<Vote>> votes = new HashMap<Integer, List<Vote>>();
+		for (int answerId : answerIds) {
+			votes.put(answerId, getAnswerVotes(answerId));
+		}
+		return votes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#getBestAnswerForQuestion(int)
+	 */
+	@Override
+	public Integer getBestAnswerForQuestion(int questionId) {
+		QuestionRow question = m_store.m_questions.get(questionId);
+		if (question == null) {
+			return null;
+		}
+		Integer bestAnswer = null;
+		int bestRating = Integer.MIN_VALUE;
+		for (int answerId : question.m_answerIds) {
+			int currentRating = m_store.m_answers.get(answerId).m_score;
+			if (currentRating > bestRating) {
+				bestRating = currentRating;
+				bestAnswer = answerId;
+			}
+		}
+		return bestAnswer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#getBestAnswersForQuestions(int[])
+	 */
+	@Override
+	public Map<Integer, Integer> getBestAnswersForQuestions(int[] questionIds) {
+		Map<Integer, Integer> bestAnswers = new HashMap<Integer, Integer>();
+		for (int questionId : questionIds) {
+			Integer bestAnswer = getBestAnswerForQuestion(questionId);
+			if (bestAnswer != null) {
+				bestAnswers.put(questionId, bestAnswer);
+			}
+		}
+		return bestAnswers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#getVoteCount(int)
+	 */
+	@Override
+	public int getVoteCount(int answerId) throws NoSuchAnswerException {
+		return getRow(answerId).m_score;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.AnswerVoteDao#reconcileVoteCounts()
+	 */
+	@Override
+	public int reconcileVoteCounts() {
+		// The stored scores are checked with the ratings, see
+		// MemoryStore#reconcileQuestionRatings
+		return 0;
+	}
+
+	private AnswerRow getRow(int answerId) throws NoSuchAnswerException {
+		AnswerRow row = m_store.m_answers.get(answerId);
+		if (row == null) {
+			throw new NoSuchAnswerException();
+		}
+		return row;
+	}
+
+}
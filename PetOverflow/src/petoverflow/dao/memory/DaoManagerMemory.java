@@ -0,0 +1,75 @@
+package petoverflow.dao.memory;
+
+import java.io.File;
+import java.io.IOException;
+
+import petoverflow.Config;
+import petoverflow.dao.DaoManager;
+
+/**
+ * Manager for in-memory DAO objects
+ * 
+ * All the data is kept in the heap of the server. If
+ * {@link Config#MEMORY_SNAPSHOT_FILE} is set, the data is loaded from that file
+ * on startup and written back to it on shutdown. Writes are applied at once, so
+ * the unit of work methods do nothing and a unit of work isn't rolled back.
+ * 
+ * @see petoverflow.dao.DaoManager
+ */
+public class DaoManagerMemory extends DaoManager {
+
+	private final MemoryStore m_store;
+
+	public static void init() throws IOException {
+		m_instance = new DaoManagerMemory();
+	}
+
+	protected DaoManagerMemory() throws IOException {
+		super();
+		if (Config.MEMORY_SNAPSHOT_FILE != null) {
+			System.out.println("Loading in-memory database from " + Config.MEMORY_SNAPSHOT_FILE);
+			m_store = MemoryStore.load(new File(Config.MEMORY_SNAPSHOT_FILE));
+		} else {
+			m_store = new MemoryStore();
+		}
+
+		QuestionDaoMemory questionDao = new QuestionDaoMemory(this, m_store);
+		m_userDao = new UserDaoMemory(this, m_store);
+		m_questionDao = questionDao;
+		m_answerDao = new AnswerDaoMemory(this, m_store);
+		m_questionVoteDao = new QuestionVoteDaoMemory(this, m_store);
+		m_answerVoteDao = new AnswerVoteDaoMemory(this, m_store);
+		m_topicDao = new TopicDaoMemory(this, m_store, questionDao);
+	}
+
+	/**
+	 * Write a snapshot of all the data to {@link Config#MEMORY_SNAPSHOT_FILE}.
+	 * Does nothing if no snapshot file is configured.
+	 * 
+	 * @throws IOException
+	 *             if the snapshot can't be written
+	 */
+	public void snapshot() throws IOException {
+		if (Config.MEMORY_SNAPSHOT_FILE != null) {
+			long start = System.currentTimeMillis();
+			m_store.save(new File(Config.MEMORY_SNAPSHOT_FILE));
+			System.out.println("Saved in-memory database to " + Config.MEMORY_SNAPSHOT_FILE + " in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.DaoManager#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		try {
+			snapshot();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package petoverflow.dao.memory;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The IdTable class holds the rows of an in-memory table, keyed by their int
+ * id. Ids are given out in sequence starting at 1, so the rows are stored in
+ * an array indexed by the id: a lookup is a single array read, without hashing
+ * or boxing the key.
+ *
+ * Reads are lock free. Inserts are serialized, a row is visible to readers
+ * once its insert returns.
+ *
+ * @param <T>
+ *            the type of the rows
+ */
+class IdTable<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The rows, the row with id i is at index i
+	 */
+	private volatile AtomicReferenceArray<T> m_rows = new AtomicReferenceArray<T>(INITIAL_CAPACITY);
+
+	/**
+	 * The id of the last inserted row, 0 if the table is empty
+	 */
+	private volatile int m_lastId = 0;
+
+	/**
+	 * Insert a new row
+	 * 
+	 * @param row
+	 *            the row
+	 * @return the id given to the row
+	 */
+	synchronized int insert(T row) {
+		int id = m_lastId + 1;
+		AtomicReferenceArray<T> rows = m_rows;
+		if (id >= rows.length()) {
+			AtomicReferenceArray<T> grown = new AtomicReferenceArray<T>(rows.length() * 2);
+			for (int i = 1; i < id; i++) {
+				grown.set(i, rows.get(i));
+			}
+			rows = grown;
+		}
+		rows.set(id, row);
+		m_rows = rows;
+		m_lastId = id;
+		return id;
+	}
+
+	/**
+	 * Get a row by its id
+	 * 
+	 * @param id
+	 *            the id
+	 * @return the row, or null if there is no row with this id
+	 */
+	T get(int id) {
+		AtomicReferenceArray<T> rows = m_rows;
+		if (id <= 0 || id >= rows.length()) {
+			return null;
+		}
+		return rows.get(id);
+	}
+
+	/**
+	 * Get the id of the last inserted row. All the ids up to it are in use.
+	 * 
+	 * @return the last id, 0 if the table is empty
+	 */
+	int getLastId() {
+		return m_lastId;
+	}
+
+}
@@ -0,0 +1,821 @@
+package petoverflow.dao.memory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import petoverflow.Config;
+import petoverflow.dao.items.Question;
+import petoverflow.dao.items.User;
+import petoverflow.dao.search.SearchIndex;
+import petoverflow.dao.search.Tokenizer;
+import petoverflow.dao.search.TrigramIndex;
+import petoverflow.dao.utility.Cursor;
+
+/**
+ * The MemoryStore class holds all the data of the in-memory backend: the rows
+ * of users, questions and answers, their votes, and the indexes the DAOs query
+ * by.
+ *
+ * Reads don't lock, every structure is safe for concurrent readers. Writes
+ * that touch more than one structure synchronize on the store, so they are
+ * atomic towards each other and towards {@link #save(File)}.
+ *
+ * The ratings are stored with the rows, with the counts and sums they are
+ * calculated from, as the Derby backend stores them. Each vote or new post
+ * changes them by its delta under {@link #m_ratingsLock}, so reading a rating
+ * costs O(1). They are derived from the votes, so they aren't written to the
+ * snapshot; they are recalculated when the store is loaded.
+ */
+class MemoryStore implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * How far a stored sum of ratings may be from the recalculated sum. The
+	 * sums are updated by the change of each rating, so they collect rounding
+	 * errors that are not worth a repair.
+	 */
+	private static final double RATING_SUM_TOLERANCE = 1E-9;
+
+	/**
+	 * Orders topic scores highest first, and by topic name on ties
+	 */
+	private static final Comparator<Entry<String, Integer>> BEST_TOPICS_FIRST = new Comparator<Entry<String, Integer>>() {
+
+		@Override
+		public int compare(Entry<String, Integer> o1, Entry<String, Integer> o2) {
+			int result = o2.getValue().compareTo(o1.getValue());
+			return result != 0 ? result : o1.getKey().compareTo(o2.getKey());
+		}
+	};
+
+	final IdTable<UserRow> m_users = new IdTable<UserRow>();
+
+	/**
+	 * The id of each user, by username
+	 */
+	final ConcurrentHashMap<String, Integer> m_userIds = new ConcurrentHashMap<String, Integer>();
+
+	final IdTable<QuestionRow> m_questions = new IdTable<QuestionRow>();
+
+	final IdTable<AnswerRow> m_answers = new IdTable<AnswerRow>();
+
+	/**
+	 * The ids of the questions of each topic, in ascending order, by topic
+	 * name
+	 */
+	final ConcurrentSkipListMap<String, ConcurrentSkipListSet<Integer>> m_topics = new ConcurrentSkipListMap<String, ConcurrentSkipListSet<Integer>>();
+
+	/**
+	 * The ids of the users, best rated first. A user's entry is re-keyed from
+	 * the user's stored rating whenever it changes. The ranking is derived
+	 * from the rows, so it isn't written to the snapshot; it is rebuilt when
+	 * the store is loaded.
+	 */
+	transient RankedIndex m_userRanking;
+
+	/**
+	 * The ids of the questions, best rated first. Rebuilt when the store is
+	 * loaded, as {@link #m_userRanking}.
+	 */
+	transient RankedIndex m_questionRanking;
+
+	/**
+	 * The ids of the questions that have no answers yet, newest first.
+	 * Questions enter it when they are created and leave it with their first
+	 * answer, under the store's lock. Rebuilt when the store is loaded.
+	 */
+	transient RankedIndex m_unanswered;
+
+	/**
+	 * The sum of the ratings of the questions of each topic, by topic name.
+	 * The number of the topic's questions is the size of its set in
+	 * {@link #m_topics}. Rebuilt when the store is loaded.
+	 */
+	transient ConcurrentHashMap<String, Double> m_topicRatings;
+
+	/**
+	 * The names of the topics, best rated first. Rebuilt when the store is
+	 * loaded.
+	 */
+	transient RankedNames m_topicRanking;
+
+	/**
+	 * The ids of the questions of each topic, best rated first, by topic
+	 * name. Rebuilt when the store is loaded.
+	 */
+	transient ConcurrentHashMap<String, RankedIndex> m_topicQuestions;
+
+	/**
+	 * Serializes the changes of the votes, and of the ratings, sums and scores
+	 * derived from them
+	 */
+	transient Object m_ratingsLock;
+
+	/**
+	 * The score of each user in each topic the user answered in - the sum of
+	 * the net votes of the user's answers in the topic - by user id and topic
+	 * name. The scores change by the delta of each vote under
+	 * {@link #m_ratingsLock}. Rebuilt when the store is loaded.
+	 */
+	transient ConcurrentHashMap<Integer, ConcurrentHashMap<String, Integer>> m_topicScores;
+
+	/**
+	 * The terms of the text of the questions and their answers, which
+	 * searches are answered from. Questions and answers are added when they
+	 * are created. Rebuilt when the store is loaded.
+	 */
+	transient SearchIndex m_searchIndex;
+
+	/**
+	 * The terms of the topics' names, which the words of a topic search that
+	 * matches nothing are corrected to. Topics are added when they are first
+	 * set. Rebuilt when the store is loaded.
+	 */
+	transient TrigramIndex m_topicTerms;
+
+	MemoryStore() {
+		buildRankings();
+	}
+
+	/**
+	 * Load a store from a snapshot file
+	 * 
+	 * @param file
+	 *            the snapshot file
+	 * @return the loaded store, or an empty store if the file doesn't exist
+	 * @throws IOException
+	 *             if the snapshot can't be read
+	 */
+	static MemoryStore load(File file) throws IOException {
+		if (!file.exists()) {
+			return new MemoryStore();
+		}
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+		try {
+			return (MemoryStore) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Invalid snapshot " + file, e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Write a snapshot of this store to a file. The snapshot is written to a
+	 * temporary file first, so a crash while saving leaves the previous
+	 * snapshot intact.
+	 * 
+	 * @param file
+	 *            the snapshot file
+	 * @throws IOException
+	 *             if the snapshot can't be written
+	 */
+	synchronized void save(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(temp));
+		try {
+			out.writeObject(this);
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Can't replace snapshot " + file);
+		}
+		if (!temp.renameTo(file)) {
+			throw new IOException("Can't replace snapshot " + file);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		buildRankings();
+	}
+
+	private void buildRankings() {
+		m_ratingsLock = new Object();
+		m_topicScores = new ConcurrentHashMap<Integer, ConcurrentHashMap<String, Integer>>();
+		m_searchIndex = new SearchIndex(Config.SEARCH_ANSWER_WEIGHT, Config.SEARCH_TYPO_BUDGET_MS);
+		m_topicTerms = new TrigramIndex();
+		for (String topic : m_topics.keySet()) {
+			addTopicTerms(topic);
+		}
+		int lastAnswerId = m_answers.getLastId();
+		for (int answerId = 1; answerId <= lastAnswerId; answerId++) {
+			AnswerRow answer = m_answers.get(answerId);
+			QuestionRow question = m_questions.get(answer.m_questionId);
+			answer.m_score = netScore(answer.m_votes);
+			question.m_answerScore += answer.m_score;
+			m_searchIndex.addAnswer(answerId, answer.m_questionId, answer.m_text);
+			scoreUserTopics(answer.m_authorId, question.m_topics, answer.m_score);
+		}
+		for (int questionId = 1; questionId <= m_questions.getLastId(); questionId++) {
+			QuestionRow question = m_questions.get(questionId);
+			question.m_voteScore = netScore(question.m_votes);
+			question.m_rating = calculateQuestionRating(question);
+		}
+		for (int userId = 1; userId <= m_users.getLastId(); userId++) {
+			UserRow user = m_users.get(userId);
+			for (int questionId : user.m_questionIds) {
+				user.m_questionRatingSum += m_questions.get(questionId).m_rating;
+			}
+			for (int answerId : user.m_answerIds) {
+				user.m_answerScore += m_answers.get(answerId).m_score;
+			}
+			user.m_rating = calculateUserRating(user);
+		}
+
+		m_userRanking = new RankedIndex(Ranking.BEST_FIRST);
+		int lastId = m_users.getLastId();
+		for (int userId = 1; userId <= lastId; userId++) {
+			rankUser(m_users.get(userId));
+		}
+		m_questionRanking = new RankedIndex(Ranking.BEST_FIRST);
+		m_unanswered = new RankedIndex(Ranking.NEWEST_FIRST);
+		m_topicQuestions = new ConcurrentHashMap<String, RankedIndex>();
+		for (String topic : m_topics.keySet()) {
+			m_topicQuestions.put(topic, new RankedIndex(Ranking.BEST_FIRST));
+		}
+		lastId = m_questions.getLastId();
+		for (int questionId = 1; questionId <= lastId; questionId++) {
+			QuestionRow question = m_questions.get(questionId);
+			rankQuestion(question);
+			m_searchIndex.addQuestion(questionId, question.m_text);
+			if (question.m_answerIds.isEmpty()) {
+				m_unanswered.put(Cursor.of(question.m_timestamp, questionId));
+			}
+		}
+
+		m_topicRatings = new ConcurrentHashMap<String, Double>();
+		m_topicRanking = new RankedNames();
+		for (Entry<String, ConcurrentSkipListSet<Integer>> topic : m_topics.entrySet()) {
+			double rating = 0;
+			for (int questionId : topic.getValue()) {
+				rating += m_questions.get(questionId).m_rating;
+			}
+			rateTopic(topic.getKey(), rating);
+		}
+	}
+
+	/**
+	 * Add the terms of a topic's name, and the words they are joined from, to
+	 * the vocabulary of the topics
+	 */
+	void addTopicTerms(String topic) {
+		for (String term : Tokenizer.toNameTerms(topic)) {
+			m_topicTerms.add(term);
+		}
+	}
+
+	/**
+	 * Update the rating and the rankings after a new question, or a change of
+	 * a question's votes or answers
+	 */
+	void questionChanged(QuestionRow question) {
+		synchronized (m_ratingsLock) {
+			rateQuestion(question);
+		}
+	}
+
+	/**
+	 * Update the ratings and the rankings after a change of an answer's
+	 * votes, or a new answer
+	 */
+	void answerChanged(AnswerRow answer) {
+		synchronized (m_ratingsLock) {
+			rateUser(m_users.get(answer.m_authorId));
+			rateQuestion(m_questions.get(answer.m_questionId));
+		}
+	}
+
+	/**
+	 * Set the rating of a question from its stored scores, and move the change
+	 * of the rating to the sums stored with its author and topics. Called
+	 * under {@link #m_ratingsLock}.
+	 */
+	private void rateQuestion(QuestionRow question) {
+		double rating = calculateQuestionRating(question);
+		double delta = rating - question.m_rating;
+		UserRow author = m_users.get(question.m_authorId);
+		author.m_questionRatingSum += delta;
+		question.m_rating = rating;
+		rankQuestion(question);
+		for (String topic : question.m_topics) {
+			rateTopic(topic, m_topicRatings.get(topic) + delta);
+		}
+		rateUser(author);
+	}
+
+	/**
+	 * Set the rating of a topic. Called under {@link #m_ratingsLock}.
+	 */
+	private void rateTopic(String topic, double rating) {
+		m_topicRatings.put(topic, rating);
+		m_topicRanking.put(topic, rating);
+	}
+
+	/**
+	 * Set the rating of a user from the user's stored counts and sums. Called
+	 * under {@link #m_ratingsLock}.
+	 */
+	private void rateUser(UserRow user) {
+		user.m_rating = calculateUserRating(user);
+		rankUser(user);
+	}
+
+	/**
+	 * Add a new user to the ranking
+	 */
+	void userAdded(UserRow user) {
+		synchronized (m_ratingsLock) {
+			rankUser(user);
+		}
+	}
+
+	/**
+	 * Update the position of a user in the ranking from the user's stored
+	 * rating
+	 */
+	private void rankUser(UserRow user) {
+		m_userRanking.put(Cursor.of(user.m_rating, user.m_id));
+	}
+
+	/**
+	 * Update the position of a question in the rankings, and its rating in the
+	 * search index, from the question's current rating
+	 */
+	private void rankQuestion(QuestionRow question) {
+		Cursor entry = Cursor.of(question.m_rating, question.m_id);
+		m_questionRanking.put(entry);
+		for (String topic : question.m_topics) {
+			m_topicQuestions.get(topic).put(entry);
+		}
+		m_searchIndex.setRating(question.m_id, question.m_rating);
+	}
+
+	/**
+	 * Set or remove a vote of a question
+	 * 
+	 * @param question
+	 *            the question
+	 * @param voterId
+	 *            the voter's id
+	 * @param up
+	 *            true for an up vote, false for a down vote, null to remove
+	 *            the voter's vote
+	 * @return whether the question's votes changed
+	 */
+	boolean voteQuestion(QuestionRow question, int voterId, Boolean up) {
+		synchronized (m_ratingsLock) {
+			Boolean previous = up != null ? question.m_votes.put(voterId, up) : question.m_votes.remove(voterId);
+			question.m_voteScore += voteScore(up) - voteScore(previous);
+			return up == null ? previous != null : !up.equals(previous);
+		}
+	}
+
+	/**
+	 * Set or remove a vote of an answer, and add the change of the answer's
+	 * score to the sums of answer scores of its question and its author, and
+	 * to its author's scores in the question's topics
+	 * 
+	 * @param answer
+	 *            the answer
+	 * @param voterId
+	 *            the voter's id
+	 * @param up
+	 *            true for an up vote, false for a down vote, null to remove
+	 *            the voter's vote
+	 * @return whether the answer's votes changed
+	 */
+	boolean voteAnswer(AnswerRow answer, int voterId, Boolean up) {
+		// A topic added to the question meanwhile counts the vote exactly once,
+		// see addQuestionTopic
+		synchronized (m_ratingsLock) {
+			Boolean previous = up != null ? answer.m_votes.put(voterId, up) : answer.m_votes.remove(voterId);
+			int delta = voteScore(up) - voteScore(previous);
+			if (delta != 0) {
+				QuestionRow question = m_questions.get(answer.m_questionId);
+				answer.m_score += delta;
+				question.m_answerScore += delta;
+				m_users.get(answer.m_authorId).m_answerScore += delta;
+				scoreUserTopics(answer.m_authorId, question.m_topics, delta);
+			}
+			return up == null ? previous != null : !up.equals(previous);
+		}
+	}
+
+	/**
+	 * Add a topic to a question, count the question's rating in the topic's
+	 * rating, and count the question's answers in their authors' scores in
+	 * the topic
+	 * 
+	 * @return whether the topic was added, false if the question already has
+	 *         it
+	 */
+	boolean addQuestionTopic(QuestionRow question, String topic) {
+		synchronized (m_ratingsLock) {
+			if (!question.m_topics.addIfAbsent(topic)) {
+				return false;
+			}
+			RankedIndex questions = m_topicQuestions.get(topic);
+			if (questions == null) {
+				questions = new RankedIndex(Ranking.BEST_FIRST);
+				m_topicQuestions.put(topic, questions);
+			}
+			questions.put(Cursor.of(question.m_rating, question.m_id));
+			Double rating = m_topicRatings.get(topic);
+			rateTopic(topic, (rating == null ? 0 : rating) + question.m_rating);
+			for (int answerId : question.m_answerIds) {
+				AnswerRow answer = m_answers.get(answerId);
+				scoreUserTopics(answer.m_authorId, Collections.singletonList(topic), answer.m_score);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Add to the scores of a user in some topics, and score the topics the
+	 * user has no score in yet
+	 */
+	void scoreUserTopics(int userId, List<String> topics, int delta) {
+		synchronized (m_ratingsLock) {
+			ConcurrentHashMap<String, Integer> scores = m_topicScores.get(userId);
+			if (scores == null) {
+				scores = new ConcurrentHashMap<String, Integer>();
+				m_topicScores.put(userId, scores);
+			}
+			for (String topic : topics) {
+				Integer score = scores.get(topic);
+				scores.put(topic, (score == null ? 0 : score) + delta);
+			}
+		}
+	}
+
+	/**
+	 * Get the best topics of a user, by the user's scores in them
+	 * 
+	 * @param userId
+	 *            the user's id
+	 * @param size
+	 *            the maximal number of topics
+	 * @return the names of the topics, best first
+	 * @see petoverflow.dao.UserDao#getUserBestTopics(int, int)
+	 */
+	List<String> getBestTopics(int userId, int size) {
+		List<String> topics = new ArrayList<String>();
+		Map<String, Integer> scores = m_topicScores.get(userId);
+		if (scores == null || size <= 0) {
+			return topics;
+		}
+		// The best topics seen so far, the worst of them on top, so each topic
+		// costs O(log size) and only the best ones are ever sorted
+		PriorityQueue<Entry<String, Integer>> best = new PriorityQueue<Entry<String, Integer>>(size + 1,
+				Collections.reverseOrder(BEST_TOPICS_FIRST));
+		for (Entry<String, Integer> score : scores.entrySet()) {
+			best.add(new SimpleImmutableEntry<String, Integer>(score.getKey(), score.getValue()));
+			if (best.size() > size) {
+				best.poll();
+			}
+		}
+		while (!best.isEmpty()) {
+			topics.add(best.poll().getKey());
+		}
+		Collections.reverse(topics);
+		return topics;
+	}
+
+	/**
+	 * Get the score of a vote: 1 for up, -1 for down, 0 for no vote
+	 */
+	private static int voteScore(Boolean up) {
+		return up == null ? 0 : up ? 1 : -1;
+	}
+
+	/**
+	 * Get the net score of a set of votes
+	 */
+	static int netScore(Map<Integer, Boolean> votes) {
+		int score = 0;
+		for (boolean up : votes.values()) {
+			score += up ? 1 : -1;
+		}
+		return score;
+	}
+
+	/**
+	 * Get the rating of an answer
+	 * 
+	 * @see petoverflow.dao.items.Answer#getRating()
+	 */
+	double getAnswerRating(AnswerRow answer) {
+		return answer.m_score;
+	}
+
+	/**
+	 * Get the rating of a question
+	 * 
+	 * @see petoverflow.dao.items.Question#getRating()
+	 */
+	double getQuestionRating(QuestionRow question) {
+		return question.m_rating;
+	}
+
+	/**
+	 * Calculate the rating of a question from its stored scores
+	 */
+	private static double calculateQuestionRating(QuestionRow question) {
+		return Question.combineRating(question.m_voteScore, question.m_answerScore, question.m_answerIds.size());
+	}
+
+	/**
+	 * Check the stored scores and ratings of the answers and questions against
+	 * their votes, and repair the ones that drifted
+	 * 
+	 * @return the number of questions repaired
+	 * @see petoverflow.dao.QuestionDao#reconcileRatings()
+	 */
+	int reconcileQuestionRatings() {
+		int repaired = 0;
+		synchronized (m_ratingsLock) {
+			for (int questionId = 1; questionId <= m_questions.getLastId(); questionId++) {
+				QuestionRow question = m_questions.get(questionId);
+				int answerScore = 0;
+				for (int answerId : question.m_answerIds) {
+					AnswerRow answer = m_answers.get(answerId);
+					answer.m_score = netScore(answer.m_votes);
+					answerScore += answer.m_score;
+				}
+				int voteScore = netScore(question.m_votes);
+				if (question.m_voteScore != voteScore || question.m_answerScore != answerScore
+						|| question.m_rating != Question.combineRating(voteScore, answerScore,
+								question.m_answerIds.size())) {
+					question.m_voteScore = voteScore;
+					question.m_answerScore = answerScore;
+					question.m_rating = calculateQuestionRating(question);
+					rankQuestion(question);
+					repaired++;
+				}
+			}
+		}
+		if (repaired > 0) {
+			System.err.println("Repaired the ratings of " + repaired + " questions");
+		}
+		return repaired;
+	}
+
+	/**
+	 * Get the rating of a user
+	 * 
+	 * @see petoverflow.dao.items.User#getRating()
+	 */
+	double getUserRating(UserRow user) {
+		return user.m_rating;
+	}
+
+	/**
+	 * Calculate the rating of a user from the user's stored sums
+	 */
+	private static double calculateUserRating(UserRow user) {
+		return User.combineRating(user.m_questionRatingSum, user.m_questionIds.size(), user.m_answerScore,
+				user.m_answerIds.size());
+	}
+
+	/**
+	 * Check the sums and ratings stored with the users against the ratings of
+	 * their questions and answers, and repair the ones that drifted
+	 * 
+	 * @return the number of users repaired
+	 * @see petoverflow.dao.UserDao#reconcileRatings()
+	 */
+	int reconcileUserRatings() {
+		int repaired = 0;
+		synchronized (m_ratingsLock) {
+			for (int userId = 1; userId <= m_users.getLastId(); userId++) {
+				UserRow user = m_users.get(userId);
+				double questionRatingSum = 0;
+				for (int questionId : user.m_questionIds) {
+					questionRatingSum += m_questions.get(questionId).m_rating;
+				}
+				int answerScore = 0;
+				for (int answerId : user.m_answerIds) {
+					answerScore += m_answers.get(answerId).m_score;
+				}
+				boolean drifted = Math.abs(user.m_questionRatingSum - questionRatingSum) > RATING_SUM_TOLERANCE
+						|| user.m_answerScore != answerScore;
+				if (drifted || user.m_rating != calculateUserRating(user)) {
+					user.m_questionRatingSum = questionRatingSum;
+					user.m_answerScore = answerScore;
+					rateUser(user);
+					repaired++;
+				}
+			}
+		}
+		if (repaired > 0) {
+			System.err.println("Repaired the ratings of " + repaired + " users");
+		}
+		return repaired;
+	}
+
+	/**
+	 * Get the rating of a topic
+	 * 
+	 * @see petoverflow.dao.items.Topic#getRating()
+	 */
+	double getTopicRating(String topic) {
+		Double rating = m_topicRatings.get(topic);
+		return rating != null ? rating : 0;
+	}
+
+	/**
+	 * Check the ratings stored with the topics against the ratings of their
+	 * questions, and repair the ones that drifted
+	 * 
+	 * @return the number of topics repaired
+	 * @see petoverflow.dao.TopicDao#reconcileRatings()
+	 */
+	int reconcileTopicRatings() {
+		int repaired = 0;
+		synchronized (m_ratingsLock) {
+			for (Entry<String, ConcurrentSkipListSet<Integer>> topic : m_topics.entrySet()) {
+				double rating = 0;
+				for (int questionId : topic.getValue()) {
+					rating += m_questions.get(questionId).m_rating;
+				}
+				if (Math.abs(getTopicRating(topic.getKey()) - rating) > RATING_SUM_TOLERANCE) {
+					rateTopic(topic.getKey(), rating);
+					repaired++;
+				}
+			}
+		}
+		if (repaired > 0) {
+			System.err.println("Repaired the ratings of " + repaired + " topics");
+		}
+		return repaired;
+	}
+
+	/**
+	 * A row of the users table
+	 */
+	static class UserRow implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final int m_id;
+
+		final String m_username;
+
+		final String m_nickname;
+
+		volatile String m_password;
+
+		volatile String m_description;
+
+		volatile String m_photoUrl;
+
+		volatile String m_phoneNum;
+
+		volatile boolean m_wantsSms;
+
+		/**
+		 * The ids of the user's questions, in ascending order
+		 */
+		final CopyOnWriteArrayList<Integer> m_questionIds = new CopyOnWriteArrayList<Integer>();
+
+		/**
+		 * The ids of the user's answers, in ascending order
+		 */
+		final CopyOnWriteArrayList<Integer> m_answerIds = new CopyOnWriteArrayList<Integer>();
+
+		/**
+		 * The sum of the ratings of the user's questions
+		 */
+		transient volatile double m_questionRatingSum;
+
+		/**
+		 * The sum of the net scores of the user's answers
+		 */
+		transient volatile int m_answerScore;
+
+		transient volatile double m_rating;
+
+		UserRow(int id, String username, String password, String nickname, String description, String photoUrl,
+				String phoneNum, boolean wantsSms) {
+			m_id = id;
+			m_username = username;
+			m_password = password;
+			m_nickname = nickname;
+			m_description = description;
+			m_photoUrl = photoUrl;
+			m_phoneNum = phoneNum;
+			m_wantsSms = wantsSms;
+		}
+
+	}
+
+	/**
+	 * A row of the questions table
+	 */
+	static class QuestionRow implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final int m_id;
+
+		final String m_text;
+
+		final int m_authorId;
+
+		final Timestamp m_timestamp;
+
+		/**
+		 * The ids of the question's answers, in ascending order
+		 */
+		final CopyOnWriteArrayList<Integer> m_answerIds = new CopyOnWriteArrayList<Integer>();
+
+		/**
+		 * The votes of the question: true for up, by voter id
+		 */
+		final ConcurrentHashMap<Integer, Boolean> m_votes = new ConcurrentHashMap<Integer, Boolean>();
+
+		/**
+		 * The names of the question's topics, in the order they were set
+		 */
+		final CopyOnWriteArrayList<String> m_topics = new CopyOnWriteArrayList<String>();
+
+		/**
+		 * The net score of the question's votes
+		 */
+		transient volatile int m_voteScore;
+
+		/**
+		 * The sum of the net scores of the question's answers
+		 */
+		transient volatile int m_answerScore;
+
+		transient volatile double m_rating;
+
+		QuestionRow(int id, String text, int authorId, Timestamp timestamp) {
+			m_id = id;
+			m_text = text;
+			m_authorId = authorId;
+			m_timestamp = timestamp;
+		}
+
+	}
+
+	/**
+	 * A row of the answers table
+	 */
+	static class AnswerRow implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final int m_id;
+
+		final String m_text;
+
+		final int m_authorId;
+
+		final int m_questionId;
+
+		final Timestamp m_timestamp;
+
+		/**
+		 * The votes of the answer: true for up, by voter id
+		 */
+		final ConcurrentHashMap<Integer, Boolean> m_votes = new ConcurrentHashMap<Integer, Boolean>();
+
+		/**
+		 * The net score of the answer's votes, which is its rating
+		 */
+		transient volatile int m_score;
+
+		AnswerRow(int id, String text, int authorId, int questionId, Timestamp timestamp) {
+			m_id = id;
+			m_text = text;
+			m_authorId = authorId;
+			m_questionId = questionId;
+			m_timestamp = timestamp;
+		}
+
+	}
+
+}
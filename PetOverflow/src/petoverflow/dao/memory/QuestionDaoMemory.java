@@ -0,0 +1,310 @@
+package petoverflow.dao.memory;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import petoverflow.Config;
+import petoverflow.dao.DaoManager;
+import petoverflow.dao.DaoObject;
+import petoverflow.dao.QuestionDao;
+import petoverflow.dao.items.Question;
+import petoverflow.dao.items.User;
+import petoverflow.dao.memory.MemoryStore.QuestionRow;
+import petoverflow.dao.memory.MemoryStore.UserRow;
+import petoverflow.dao.utility.Cursor;
+import petoverflow.dao.utility.Page;
+import petoverflow.dao.utility.exception.NoSuchQuestionException;
+import petoverflow.dao.utility.exception.NoSuchUserException;
+
+/**
+ * The QuestionDaoMemory class implements the QuestionDao interface in memory.
+ */
+public class QuestionDaoMemory extends DaoObject implements QuestionDao {
+
+	private final MemoryStore m_store;
+
+	QuestionDaoMemory(DaoManager daoManager, MemoryStore store) {
+		super(daoManager);
+		m_store = store;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#exist(int)
+	 */
+	@Override
+	public boolean exist(int questionId) {
+		return m_store.m_questions.get(questionId) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#createQuestion(java.lang.String, int,
+	 * java.util.List)
+	 */
+	@Override
+	public Question createQuestion(String text, int authorId, List<String> topics) throws Exception {
+		QuestionRow row;
+		// The question and its topics are written atomically
+		synchronized (m_store) {
+			UserRow author = m_store.m_users.get(authorId);
+			if (author == null) {
+				throw new NoSuchUserException();
+			}
+			row = new QuestionRow(m_store.m_questions.getLastId() + 1, text, authorId,
+					new Timestamp(System.currentTimeMillis()));
+			m_store.m_questions.insert(row);
+			m_store.m_unanswered.put(Cursor.of(row.m_timestamp, row.m_id));
+			m_store.m_searchIndex.addQuestion(row.m_id, text);
+			author.m_questionIds.add(row.m_id);
+			getDaoManager().getTopicDao().setQuestionTopics(row.m_id, topics);
+		}
+		m_store.questionChanged(row);
+		return toQuestion(row);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestion(int)
+	 */
+	@Override
+	public Question getQuestion(int questionId) throws NoSuchQuestionException {
+		return toQuestion(getRow(questionId));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestions(int[])
+	 */
+	@Override
+	public List<Question> getQuestions(int[] questionIds) {
+		List<Question> questions = new ArrayList<Question>();
+		for (int questionId : questionIds) {
+			QuestionRow row = m_store.m_questions.get(questionId);
+			if (row != null) {
+				questions.add(toQuestion(row));
+			}
+		}
+		return questions;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionText(int)
+	 */
+	@Override
+	public String getQuestionText(int questionId) throws NoSuchQuestionException {
+		return getRow(questionId).m_text;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionAuthor(int)
+	 */
+	@Override
+	public User getQuestionAuthor(int questionId) throws Exception {
+		return getDaoManager().getUserDao().getUser(getRow(questionId).m_authorId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionTimestamp(int)
+	 */
+	@Override
+	public Timestamp getQuestionTimestamp(int questionId) throws NoSuchQuestionException {
+		return getRow(questionId).m_timestamp;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionRating(int)
+	 */
+	@Override
+	public double getQuestionRating(int questionId) throws NoSuchQuestionException {
+		return m_store.getQuestionRating(getRow(questionId));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionRatings(int[])
+	 */
+	@Override
+	public Map<Integer, Double> getQuestionRatings(int[] questionIds) {
+		Map<Integer, Double> ratings = new HashMap<Integer, Double>();
+		for (int questionId : questionIds) {
+			QuestionRow row = m_store.m_questions.get(questionId);
+			if (row != null) {
+				ratings.put(questionId, m_store.getQuestionRating(row));
+			}
+		}
+		return ratings;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionsByAuthor(int, int, int)
+	 */
+	@Override
+	public List<Question> getQuestionsByAuthor(int authorId, int size, int offset) {
+		Ranking<Question> ranking = new Ranking<Question>(Ranking.NEWEST_FIRST);
+		for (QuestionRow row : getAuthorRows(authorId)) {
+			ranking.add(toQuestion(row), Cursor.of(row.m_timestamp, row.m_id));
+		}
+		return ranking.getRange(size, offset);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionsByAuthorAll(int)
+	 */
+	@Override
+	public List<Question> getQuestionsByAuthorAll(int authorId) {
+		List<Question> questions = new ArrayList<Question>();
+		for (QuestionRow row : getAuthorRows(authorId)) {
+			questions.add(toQuestion(row));
+		}
+		return questions;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getQuestionsByAuthors(int[])
+	 */
+	@Override
+	public Map<Integer, List<Question>> getQuestionsByAuthors(int[] authorIds) {
+		Map<Integer, List<Question>> questionsByAuthor = new HashMap<Integer, List<Question>>();
+		for (int authorId : authorIds) {
+			questionsByAuthor.put(authorId, getQuestionsByAuthorAll(authorId));
+		}
+		return questionsByAuthor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getNewestQuestions(int, int)
+	 */
+	@Override
+	public List<Question> getNewestQuestions(int size, int offset) {
+		return toQuestions(m_store.m_unanswered.getRange(size, offset));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getNewestQuestions(int,
+	 * java.lang.String)
+	 */
+	@Override
+	public Page<Question> getNewestQuestions(int size, String cursor) {
+		return getPage(m_store.m_unanswered, size, cursor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getBestQuestions(int, int)
+	 */
+	@Override
+	public List<Question> getBestQuestions(int size, int offset) {
+		return toQuestions(m_store.m_questionRanking.getRange(size, offset));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#getBestQuestions(int, java.lang.String)
+	 */
+	@Override
+	public Page<Question> getBestQuestions(int size, String cursor) {
+		return getPage(m_store.m_questionRanking, size, cursor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#searchQuestion(java.lang.String, int,
+	 * int)
+	 */
+	@Override
+	public List<Question> searchQuestion(String text, int size, int offset) throws Exception {
+		return getQuestions(m_store.m_searchIndex.search(text, size, offset, Config.SEARCH_RATING_WEIGHT));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionDao#reconcileRatings()
+	 */
+	@Override
+	public int reconcileRatings() {
+		return m_store.reconcileQuestionRatings();
+	}
+
+	/**
+	 * Get the page of an index's questions that follows a cursor
+	 */
+	Page<Question> getPage(RankedIndex index, int size, String cursor) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("size should be positive");
+		}
+		List<Cursor> entries = index.getAfter(Cursor.decode(cursor), size + 1);
+		return Page.of(toQuestions(entries), entries, size);
+	}
+
+	/**
+	 * Create question items from the entries of an index
+	 */
+	List<Question> toQuestions(List<Cursor> entries) {
+		List<Question> questions = new ArrayList<Question>();
+		for (Cursor entry : entries) {
+			questions.add(toQuestion(m_store.m_questions.get(entry.getId())));
+		}
+		return questions;
+	}
+
+	private List<QuestionRow> getAuthorRows(int authorId) {
+		List<QuestionRow> rows = new ArrayList<QuestionRow>();
+		UserRow author = m_store.m_users.get(authorId);
+		if (author != null) {
+			for (int questionId : author.m_questionIds) {
+				rows.add(m_store.m_questions.get(questionId));
+			}
+		}
+		return rows;
+	}
+
+	private QuestionRow getRow(int questionId) throws NoSuchQuestionException {
+		QuestionRow row = m_store.m_questions.get(questionId);
+		if (row == null) {
+			throw new NoSuchQuestionException();
+		}
+		return row;
+	}
+
+	/**
+	 * Create a question item from its row
+	 */
+	Question toQuestion(QuestionRow row) {
+		if (!Config.HYDRATE_ENTITIES) {
+			return new Question(getDaoManager(), row.m_id);
+		}
+		return new Question(getDaoManager(), row.m_id, row.m_text, row.m_authorId, row.m_timestamp);
+	}
+
+}
@@ -0,0 +1,127 @@
+package petoverflow.dao.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import petoverflow.dao.DaoManager;
+import petoverflow.dao.DaoObject;
+import petoverflow.dao.QuestionVoteDao;
+import petoverflow.dao.items.Vote;
+import petoverflow.dao.items.Vote.VoteType;
+import petoverflow.dao.memory.MemoryStore.QuestionRow;
+import petoverflow.dao.utility.exception.NoSuchQuestionException;
+
+/**
+ * The QuestionVoteDaoMemory class implements the QuestionVoteDao interface in
+ * memory.
+ */
+public class QuestionVoteDaoMemory extends DaoObject implements QuestionVoteDao {
+
+	private final MemoryStore m_store;
+
+	QuestionVoteDaoMemory(DaoManager daoManager, MemoryStore store) {
+		super(daoManager);
+		m_store = store;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#addVote(int,
+	 * petoverflow.dao.items.Vote)
+	 */
+	@Override
+	public void addVote(int questionId, Vote vote) throws NoSuchQuestionException {
+		QuestionRow question = getRow(questionId);
+		if (question.m_authorId == vote.getVoterId()) {
+			// Can vote to yourself
+			return;
+		}
+		// Replaces the previous vote
+		if (m_store.voteQuestion(question, vote.getVoterId(), vote.getType() == VoteType.Up)) {
+			m_store.questionChanged(question);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#removeVote(int, int)
+	 */
+	@Override
+	public void removeVote(int questionId, int voterId) {
+		QuestionRow question = m_store.m_questions.get(questionId);
+		if (question != null && m_store.voteQuestion(question, voterId, null)) {
+			m_store.questionChanged(question);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#getQuestionVotes(int)
+	 */
+	@Override
+	public List<Vote> getQuestionVotes(int questionId) {
+		QuestionRow question = m_store.m_questions.get(questionId);
+		return question != null ? toVotes(question.m_votes) : new ArrayList<Vote>();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#getVotesForQuestions(int[])
+	 */
+	@Override
+	public Map<Integer, List<Vote>> getVotesForQuestions(int[] questionIds) {
+		Map<Integer, List<Vote>> votes = new HashMap<Integer, List<Vote>>();
+		for (int questionId : questionIds) {
+			votes.put(questionId, getQuestionVotes(questionId));
+		}
+		return votes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#getVoteCount(int)
+	 */
+	@Override
+	public int getVoteCount(int questionId) throws NoSuchQuestionException {
+		return getRow(questionId).m_voteScore;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.QuestionVoteDao#reconcileVoteCounts()
+	 */
+	@Override
+	public int reconcileVoteCounts() {
+		// The stored scores are checked with the ratings, see
+		// MemoryStore#reconcileQuestionRatings
+		return 0;
+	}
+
+	/**
+	 * Create vote items from the votes of a question or an answer
+	 */
+	static List<Vote> toVotes(Map<Integer, Boolean> votes) {
+		List<Vote> voteList = new ArrayList<Vote>();
+		for (Map.Entry<Integer, Boolean> vote : votes.entrySet()) {
+			voteList.add(new Vote(vote.getKey(), vote.getValue() ? VoteType.Up : VoteType.Down));
+		}
+		return voteList;
+	}
+
+	private QuestionRow getRow(int questionId) throws NoSuchQuestionException {
+		QuestionRow row = m_store.m_questions.get(questionId);
+		if (row == null) {
+			throw new NoSuchQuestionException();
+		}
+		return row;
+	}
+
+}
@@ -0,0 +1,124 @@
+package petoverflow.dao.memory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import petoverflow.dao.utility.Cursor;
+
+/**
+ * The RankedIndex class keeps ids ordered by a sort key that changes over
+ * time, such as a rating, in the same order the Derby backend uses. Each id is
+ * in the index once, under its current key.
+ *
+ * The entries are kept in a skip list, so the first page, or the page after a
+ * cursor, is read in O(log n + size) without sorting anything. Reads don't
+ * lock; changes of the keys are serialized.
+ */
+class RankedIndex {
+
+	/**
+	 * The entries of the index, in order
+	 */
+	private final NavigableSet<Cursor> m_entries;
+
+	/**
+	 * The current entry of each id, by id
+	 */
+	private final ConcurrentHashMap<Integer, Cursor> m_current = new ConcurrentHashMap<Integer, Cursor>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param order
+	 *            the order of the entries
+	 */
+	RankedIndex(Comparator<Cursor> order) {
+		m_entries = new ConcurrentSkipListSet<Cursor>(order);
+	}
+
+	/**
+	 * Put an id in the index under its current key, replacing its previous
+	 * key
+	 *
+	 * @param entry
+	 *            the id and its key
+	 */
+	synchronized void put(Cursor entry) {
+		Cursor previous = m_current.get(entry.getId());
+		if (previous != null && previous.getKey() == entry.getKey()) {
+			return;
+		}
+		// The new entry is added before the previous one is removed, so
+		// readers never miss the id; they skip whichever entry isn't current
+		m_entries.add(entry);
+		m_current.put(entry.getId(), entry);
+		if (previous != null) {
+			m_entries.remove(previous);
+		}
+	}
+
+	/**
+	 * Remove an id from the index
+	 *
+	 * @param id
+	 *            the id
+	 */
+	synchronized void remove(int id) {
+		Cursor previous = m_current.remove(id);
+		if (previous != null) {
+			m_entries.remove(previous);
+		}
+	}
+
+	/**
+	 * Get the entries in range [offset, offset + size)
+	 */
+	List<Cursor> getRange(int size, int offset) {
+		if (size < 0) {
+			throw new IllegalArgumentException("size shouldn't be negative");
+		} else if (offset < 0) {
+			throw new IllegalArgumentException("offset shouldn't be negative");
+		}
+		return collect(m_entries, offset, size);
+	}
+
+	/**
+	 * Get the entries that follow a cursor
+	 *
+	 * @param after
+	 *            the cursor, null to start from the first entry
+	 * @param count
+	 *            the maximal number of entries
+	 */
+	List<Cursor> getAfter(Cursor after, int count) {
+		return collect(after == null ? m_entries : m_entries.tailSet(after, false), 0, count);
+	}
+
+	/**
+	 * Get the number of ids in the index
+	 */
+	int size() {
+		return m_current.size();
+	}
+
+	private List<Cursor> collect(Iterable<Cursor> entries, int skip, int count) {
+		List<Cursor> collected = new ArrayList<Cursor>();
+		for (Cursor entry : entries) {
+			if (collected.size() >= count) {
+				break;
+			} else if (m_current.get(entry.getId()) != entry) {
+				continue;
+			} else if (skip > 0) {
+				skip--;
+			} else {
+				collected.add(entry);
+			}
+		}
+		return collected;
+	}
+
+}
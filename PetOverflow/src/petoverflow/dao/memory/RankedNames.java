@@ -0,0 +1,93 @@
+package petoverflow.dao.memory;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The RankedNames class keeps names ordered by a sort key that changes over
+ * time, highest key first and by name on ties, as {@link RankedIndex} keeps
+ * ids. It ranks the topics, which are known by name, in the order the Derby
+ * backend uses.
+ *
+ * Reads don't lock; changes of the keys are serialized.
+ */
+class RankedNames {
+
+	/**
+	 * Highest key first, ties by name
+	 */
+	private static final Comparator<Entry<String, Double>> BEST_FIRST = new Comparator<Entry<String, Double>>() {
+
+		@Override
+		public int compare(Entry<String, Double> o1, Entry<String, Double> o2) {
+			int byKey = Double.compare(o2.getValue(), o1.getValue());
+			return byKey != 0 ? byKey : o1.getKey().compareTo(o2.getKey());
+		}
+	};
+
+	/**
+	 * The entries of the index, in order
+	 */
+	private final NavigableSet<Entry<String, Double>> m_entries = new ConcurrentSkipListSet<Entry<String, Double>>(
+			BEST_FIRST);
+
+	/**
+	 * The current entry of each name, by name
+	 */
+	private final ConcurrentHashMap<String, Entry<String, Double>> m_current = new ConcurrentHashMap<String, Entry<String, Double>>();
+
+	/**
+	 * Put a name in the index under its current key, replacing its previous
+	 * key
+	 *
+	 * @param name
+	 *            the name
+	 * @param key
+	 *            its key
+	 */
+	synchronized void put(String name, double key) {
+		Entry<String, Double> previous = m_current.get(name);
+		if (previous != null && previous.getValue() == key) {
+			return;
+		}
+		// As in RankedIndex, the new entry is added before the previous one is
+		// removed, and readers skip whichever entry isn't current
+		Entry<String, Double> entry = new SimpleImmutableEntry<String, Double>(name, key);
+		m_entries.add(entry);
+		m_current.put(name, entry);
+		if (previous != null) {
+			m_entries.remove(previous);
+		}
+	}
+
+	/**
+	 * Get the names in range [offset, offset + size)
+	 */
+	List<String> getRange(int size, int offset) {
+		if (size < 0) {
+			throw new IllegalArgumentException("size shouldn't be negative");
+		} else if (offset < 0) {
+			throw new IllegalArgumentException("offset shouldn't be negative");
+		}
+		List<String> names = new ArrayList<String>();
+		for (Entry<String, Double> entry : m_entries) {
+			if (names.size() >= size) {
+				break;
+			} else if (m_current.get(entry.getKey()) != entry) {
+				continue;
+			} else if (offset > 0) {
+				offset--;
+			} else {
+				names.add(entry.getKey());
+			}
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,141 @@
+package petoverflow.dao.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import petoverflow.Utility;
+import petoverflow.dao.utility.Cursor;
+import petoverflow.dao.utility.Page;
+
+/**
+ * The Ranking class sorts the elements of a list by a sort key and id, and
+ * pages through them either by offset or by cursor, in the same order the
+ * Derby backend uses
+ *
+ * @param <T>
+ *            the type of the elements
+ */
+class Ranking<T> {
+
+	/**
+	 * Highest key first, ties by ascending id
+	 */
+	static final Comparator<Cursor> BEST_FIRST = new Comparator<Cursor>() {
+
+		@Override
+		public int compare(Cursor c1, Cursor c2) {
+			int byKey = Double.compare(c2.getRatingKey(), c1.getRatingKey());
+			return byKey != 0 ? byKey : compareIds(c1.getId(), c2.getId());
+		}
+	};
+
+	/**
+	 * Latest timestamp first, ties by descending id
+	 */
+	static final Comparator<Cursor> NEWEST_FIRST = new Comparator<Cursor>() {
+
+		@Override
+		public int compare(Cursor c1, Cursor c2) {
+			int byKey = c1.getKey() < c2.getKey() ? 1 : (c1.getKey() > c2.getKey() ? -1 : 0);
+			return byKey != 0 ? byKey : compareIds(c2.getId(), c1.getId());
+		}
+	};
+
+	private final Comparator<Cursor> m_order;
+
+	private final List<Entry<T>> m_entries = new ArrayList<Entry<T>>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param order
+	 *            the order of the elements, by their cursors
+	 */
+	Ranking(Comparator<Cursor> order) {
+		m_order = order;
+	}
+
+	/**
+	 * Add an element
+	 * 
+	 * @param item
+	 *            the element
+	 * @param cursor
+	 *            the cursor right after the element
+	 */
+	void add(T item, Cursor cursor) {
+		m_entries.add(new Entry<T>(item, cursor));
+	}
+
+	/**
+	 * Get the elements in range [offset, offset + size)
+	 */
+	List<T> getRange(int size, int offset) {
+		sort();
+		List<T> items = new ArrayList<T>();
+		for (Entry<T> entry : Utility.cutList(m_entries, size, offset)) {
+			items.add(entry.m_item);
+		}
+		return items;
+	}
+
+	/**
+	 * Get the page of elements that follows a cursor
+	 * 
+	 * @param token
+	 *            the cursor's token, null or empty for the first page
+	 * @param size
+	 *            the page size
+	 */
+	Page<T> getPage(String token, int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("size should be positive");
+		}
+		Cursor after = Cursor.decode(token);
+		sort();
+		int start = 0;
+		if (after != null) {
+			while (start < m_entries.size() && m_order.compare(m_entries.get(start).m_cursor, after) <= 0) {
+				start++;
+			}
+		}
+
+		List<T> rows = new ArrayList<T>();
+		List<Cursor> cursors = new ArrayList<Cursor>();
+		for (Entry<T> entry : m_entries.subList(start, Math.min(m_entries.size(), start + size + 1))) {
+			rows.add(entry.m_item);
+			cursors.add(entry.m_cursor);
+		}
+		return Page.of(rows, cursors, size);
+	}
+
+	private void sort() {
+		Collections.sort(m_entries, new Comparator<Entry<T>>() {
+
+			@Override
+			public int compare(Entry<T> e1, Entry<T> e2) {
+				return m_order.compare(e1.m_cursor, e2.m_cursor);
+			}
+		});
+	}
+
+	private static int compareIds(int id1, int id2) {
+		return id1 < id2 ? -1 : (id1 > id2 ? 1 : 0);
+	}
+
+	private static class Entry<T> {
+
+		private final T m_item;
+
+		private final Cursor m_cursor;
+
+		private Entry(T item, Cursor cursor) {
+			m_item = item;
+			m_cursor = cursor;
+		}
+
+	}
+
+}
@@ -0,0 +1,263 @@
+package petoverflow.dao.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import petoverflow.Config;
+import petoverflow.Utility;
+import petoverflow.dao.DaoManager;
+import petoverflow.dao.DaoObject;
+import petoverflow.dao.TopicDao;
+import petoverflow.dao.items.Question;
+import petoverflow.dao.items.Topic;
+import petoverflow.dao.search.Tokenizer;
+import petoverflow.dao.memory.MemoryStore.QuestionRow;
+import petoverflow.dao.utility.Page;
+import petoverflow.dao.utility.exception.NoSuchQuestionException;
+
+/**
+ * The TopicDaoMemory class implements the TopicDao interface in memory.
+ */
+public class TopicDaoMemory extends DaoObject implements TopicDao {
+
+	private final MemoryStore m_store;
+
+	private final QuestionDaoMemory m_questionDao;
+
+	TopicDaoMemory(DaoManager daoManager, MemoryStore store, QuestionDaoMemory questionDao) {
+		super(daoManager);
+		m_store = store;
+		m_questionDao = questionDao;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getTopicRating(java.lang.String)
+	 */
+	@Override
+	public double getTopicRating(String topicName) {
+		return m_store.getTopicRating(topicName);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getTopicRatings(java.util.List)
+	 */
+	@Override
+	public Map<String, Double> getTopicRatings(List<String> topics) {
+		Map<String, Double> ratings = new HashMap<String, Double>();
+		for (String topic : topics) {
+			ratings.put(topic, m_store.getTopicRating(topic));
+		}
+		return ratings;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getQuestionTopics(int)
+	 */
+	@Override
+	public List<Topic> getQuestionTopics(int questionId) {
+		List<Topic> topics = new ArrayList<Topic>();
+		QuestionRow question = m_store.m_questions.get(questionId);
+		if (question != null) {
+			for (String name : question.m_topics) {
+				topics.add(new Topic(getDaoManager(), name));
+			}
+		}
+		return topics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getTopicsForQuestions(int[])
+	 */
+	@Override
+	public Map<Integer, List<Topic>> getTopicsForQuestions(int[] questionIds) {
+		Map<Integer, List<Topic>> topics = new HashMap<Integer, List<Topic>>();
+		for (int questionId : questionIds) {
+			topics.put(questionId, getQuestionTopics(questionId));
+		}
+		return topics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#setQuestionTopics(int, java.util.List)
+	 */
+	@Override
+	public void setQuestionTopics(int questionId, List<String> topics) throws NoSuchQuestionException {
+		synchronized (m_store) {
+			QuestionRow question = m_store.m_questions.get(questionId);
+			if (question == null) {
+				throw new NoSuchQuestionException();
+			}
+			for (String topic : topics) {
+				if (m_store.addQuestionTopic(question, topic)) {
+					ConcurrentSkipListSet<Integer> questionIds = m_store.m_topics.get(topic);
+					if (questionIds == null) {
+						questionIds = new ConcurrentSkipListSet<Integer>();
+						m_store.m_topics.put(topic, questionIds);
+						m_store.addTopicTerms(topic);
+					}
+					questionIds.add(questionId);
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getAllTopics()
+	 */
+	@Override
+	public List<Topic> getAllTopics() {
+		List<Topic> topics = new ArrayList<Topic>();
+		for (String name : m_store.m_topics.keySet()) {
+			topics.add(new Topic(getDaoManager(), name));
+		}
+		return topics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getQuestionsByTopic(java.lang.String, int,
+	 * int)
+	 */
+	@Override
+	public List<Question> getQuestionsByTopic(String topic, int size, int offset) {
+		return Utility.cutList(getQuestionsByTopicAll(topic), size, offset);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getQuestionsByTopicAll(java.lang.String)
+	 */
+	@Override
+	public List<Question> getQuestionsByTopicAll(String topic) {
+		List<Question> questions = new ArrayList<Question>();
+		for (QuestionRow row : getTopicRows(topic)) {
+			questions.add(m_questionDao.toQuestion(row));
+		}
+		return questions;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getQuestionsByTopics(java.util.List)
+	 */
+	@Override
+	public Map<String, List<Question>> getQuestionsByTopics(List<String> topics) {
+		Map<String, List<Question>> questionsByTopic = new HashMap<String, List<Question>>();
+		for (String topic : topics) {
+			questionsByTopic.put(topic, getQuestionsByTopicAll(topic));
+		}
+		return questionsByTopic;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getPopularTopics(int, int)
+	 */
+	@Override
+	public List<Topic> getPopularTopics(int size, int offset) {
+		List<Topic> topics = new ArrayList<Topic>();
+		for (String name : m_store.m_topicRanking.getRange(size, offset)) {
+			topics.add(new Topic(getDaoManager(), name));
+		}
+		return topics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getBestQuestionsByTopic(java.lang.String,
+	 * int, int)
+	 */
+	@Override
+	public List<Question> getBestQuestionsByTopic(String topic, int size, int offset) {
+		return m_questionDao.toQuestions(getTopicQuestions(topic).getRange(size, offset));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#getBestQuestionsByTopic(java.lang.String,
+	 * int, java.lang.String)
+	 */
+	@Override
+	public Page<Question> getBestQuestionsByTopic(String topic, int size, String cursor) {
+		return m_questionDao.getPage(getTopicQuestions(topic), size, cursor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#searchTopics(java.lang.String, int, int)
+	 */
+	@Override
+	public List<Topic> searchTopics(String text, int size, int offset) {
+		List<String> words = Tokenizer.toTerms(text);
+		List<Topic> relevantTopics = new ArrayList<Topic>();
+		for (String name : m_store.m_topics.keySet()) {
+			if (Tokenizer.containsParts(name, words)) {
+				relevantTopics.add(new Topic(getDaoManager(), name));
+			}
+		}
+		List<String> corrected = relevantTopics.isEmpty()
+				? m_store.m_topicTerms.correct(words, Config.SEARCH_TYPO_BUDGET_MS) : words;
+		if (!corrected.equals(words)) {
+			// Nothing matched, the words may be misspelled
+			for (String name : m_store.m_topics.keySet()) {
+				if (Tokenizer.containsParts(name, corrected)) {
+					relevantTopics.add(new Topic(getDaoManager(), name));
+				}
+			}
+		}
+		// The topics are already sorted by name
+		return Utility.cutList(relevantTopics, size, offset);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.TopicDao#reconcileRatings()
+	 */
+	@Override
+	public int reconcileRatings() {
+		return m_store.reconcileTopicRatings();
+	}
+
+	/**
+	 * Get the questions of a topic, best rated first
+	 */
+	private RankedIndex getTopicQuestions(String topic) {
+		RankedIndex questions = m_store.m_topicQuestions.get(topic);
+		return questions != null ? questions : new RankedIndex(Ranking.BEST_FIRST);
+	}
+
+	private List<QuestionRow> getTopicRows(String topic) {
+		List<QuestionRow> rows = new ArrayList<QuestionRow>();
+		ConcurrentSkipListSet<Integer> questionIds = m_store.m_topics.get(topic);
+		if (questionIds != null) {
+			for (int questionId : questionIds) {
+				rows.add(m_store.m_questions.get(questionId));
+			}
+		}
+		return rows;
+	}
+
+}
@@ -0,0 +1,370 @@
+package petoverflow.dao.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import petoverflow.Config;
+import petoverflow.dao.DaoManager;
+import petoverflow.dao.DaoObject;
+import petoverflow.dao.UserDao;
+import petoverflow.dao.items.Topic;
+import petoverflow.dao.items.User;
+import petoverflow.dao.memory.MemoryStore.UserRow;
+import petoverflow.dao.utility.Cursor;
+import petoverflow.dao.utility.Page;
+import petoverflow.dao.utility.exception.ExistingUsernameException;
+import petoverflow.dao.utility.exception.NoSuchUserException;
+
+/**
+ * The UserDaoMemory class implements the UserDao interface in memory.
+ */
+public class UserDaoMemory extends DaoObject implements UserDao {
+
+	private final MemoryStore m_store;
+
+	UserDaoMemory(DaoManager daoManager, MemoryStore store) {
+		super(daoManager);
+		m_store = store;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#exist(int)
+	 */
+	@Override
+	public boolean exist(int userId) {
+		return m_store.m_users.get(userId) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#exist(java.lang.String)
+	 */
+	@Override
+	public boolean exist(String username) {
+		return m_store.m_userIds.containsKey(username);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return m_store.m_users.getLastId() == 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#createUser(java.lang.String,
+	 * java.lang.String, java.lang.String, java.lang.String, java.lang.String,
+	 * java.lang.String, boolean)
+	 */
+	@Override
+	public User createUser(String username, String password, String nickname, String description, String photoUrl,
+			String phoneNum, boolean wantsSms) throws ExistingUsernameException {
+		UserRow row;
+		synchronized (m_store) {
+			if (exist(username)) {
+				throw new ExistingUsernameException();
+			}
+			row = new UserRow(m_store.m_users.getLastId() + 1, username, password, nickname, description, photoUrl,
+					phoneNum, wantsSms);
+			m_store.m_users.insert(row);
+			m_store.m_userIds.put(username, row.m_id);
+		}
+		m_store.userAdded(row);
+		return toUser(row);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUser(int)
+	 */
+	@Override
+	public User getUser(int userId) throws NoSuchUserException {
+		return toUser(getRow(userId));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUser(java.lang.String)
+	 */
+	@Override
+	public User getUser(String username) throws NoSuchUserException {
+		Integer userId = m_store.m_userIds.get(username);
+		if (userId == null) {
+			throw new NoSuchUserException();
+		}
+		return getUser(userId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUsers(int[])
+	 */
+	@Override
+	public List<User> getUsers(int[] userIds) {
+		List<User> users = new ArrayList<User>();
+		for (int userId : userIds) {
+			UserRow row = m_store.m_users.get(userId);
+			if (row != null) {
+				users.add(toUser(row));
+			}
+		}
+		return users;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserUsername(int)
+	 */
+	@Override
+	public String getUserUsername(int userId) throws NoSuchUserException {
+		return getRow(userId).m_username;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserNickname(int)
+	 */
+	@Override
+	public String getUserNickname(int userId) throws NoSuchUserException {
+		return getRow(userId).m_nickname;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserDescription(int)
+	 */
+	@Override
+	public String getUserDescription(int userId) throws NoSuchUserException {
+		return getRow(userId).m_description;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserPhotoURL(int)
+	 */
+	@Override
+	public String getUserPhotoURL(int userId) throws NoSuchUserException {
+		return getRow(userId).m_photoUrl;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserPhoneNum(int)
+	 */
+	@Override
+	public String getUserPhoneNum(int userId) throws NoSuchUserException {
+		return getRow(userId).m_phoneNum;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserWantsSms(int)
+	 */
+	@Override
+	public boolean getUserWantsSms(int userId) throws NoSuchUserException {
+		return getRow(userId).m_wantsSms;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserRating(int)
+	 */
+	@Override
+	public double getUserRating(int userId) throws NoSuchUserException {
+		return m_store.getUserRating(getRow(userId));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserRatings(int[])
+	 */
+	@Override
+	public Map<Integer, Double> getUserRatings(int[] userIds) {
+		Map<Integer, Double> ratings = new HashMap<Integer, Double>();
+		for (int userId : userIds) {
+			UserRow row = m_store.m_users.get(userId);
+			if (row != null) {
+				ratings.put(userId, m_store.getUserRating(row));
+			}
+		}
+		return ratings;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUserBestTopics(int, int)
+	 */
+	@Override
+	public List<Topic> getUserBestTopics(int userId, int size) throws NoSuchUserException {
+		getRow(userId);
+		return toTopics(m_store.getBestTopics(userId, size));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getUsersBestTopics(int[], int)
+	 */
+	@Override
+	public Map<Integer, List<Topic>> getUsersBestTopics(int[] userIds, int size) {
+		Map<Integer, List<Topic>> topics = new HashMap<Integer, List<Topic>>();
+		for (int userId : userIds) {
+			topics.put(userId, toTopics(m_store.getBestTopics(userId, size)));
+		}
+		return topics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#setUserPassword(int, java.lang.String)
+	 */
+	@Override
+	public void setUserPassword(int userId, String password) throws NoSuchUserException {
+		getRow(userId).m_password = password;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#setUserDescription(int, java.lang.String)
+	 */
+	@Override
+	public void setUserDescription(int userId, String description) throws NoSuchUserException {
+		getRow(userId).m_description = description;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#setUserPhoto(int, java.lang.String)
+	 */
+	@Override
+	public void setUserPhoto(int userId, String photoUrl) throws NoSuchUserException {
+		getRow(userId).m_photoUrl = photoUrl;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#setUserPhoneNum(int, java.lang.String)
+	 */
+	@Override
+	public void setUserPhoneNum(int userId, String phoneNum) throws NoSuchUserException {
+		getRow(userId).m_phoneNum = phoneNum;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#setUserWantsSms(int, boolean)
+	 */
+	@Override
+	public void setUserWantsSms(int userId, boolean wantsSms) throws NoSuchUserException {
+		getRow(userId).m_wantsSms = wantsSms;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getMostRatedUsers(int, int)
+	 */
+	@Override
+	public List<User> getMostRatedUsers(int size, int offset) {
+		List<User> users = new ArrayList<User>();
+		for (Cursor entry : m_store.m_userRanking.getRange(size, offset)) {
+			users.add(toUser(m_store.m_users.get(entry.getId())));
+		}
+		return users;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#getMostRatedUsers(int, java.lang.String)
+	 */
+	@Override
+	public Page<User> getMostRatedUsers(int size, String cursor) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("size should be positive");
+		}
+		List<Cursor> entries = m_store.m_userRanking.getAfter(Cursor.decode(cursor), size + 1);
+		List<User> users = new ArrayList<User>();
+		for (Cursor entry : entries) {
+			users.add(toUser(m_store.m_users.get(entry.getId())));
+		}
+		return Page.of(users, entries, size);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#isAuthenticationPair(java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public Integer isAuthenticationPair(String username, String password) {
+		Integer userId = m_store.m_userIds.get(username);
+		if (userId == null || !m_store.m_users.get(userId).m_password.equals(password)) {
+			return null;
+		}
+		return userId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see petoverflow.dao.UserDao#reconcileRatings()
+	 */
+	@Override
+	public int reconcileRatings() {
+		return m_store.reconcileUserRatings();
+	}
+
+	private List<Topic> toTopics(List<String> names) {
+		List<Topic> topics = new ArrayList<Topic>();
+		for (String name : names) {
+			topics.add(new Topic(getDaoManager(), name));
+		}
+		return topics;
+	}
+
+	private UserRow getRow(int userId) throws NoSuchUserException {
+		UserRow row = m_store.m_users.get(userId);
+		if (row == null) {
+			throw new NoSuchUserException();
+		}
+		return row;
+	}
+
+	private User toUser(UserRow row) {
+		if (!Config.HYDRATE_ENTITIES) {
+			return new User(getDaoManager(), row.m_id);
+		}
+		return new User(getDaoManager(), row.m_id, row.m_username, row.m_nickname, row.m_description,
+				row.m_photoUrl, row.m_phoneNum, row.m_wantsSms);
+	}
+
+}
@@ -0,0 +1,138 @@
+package petoverflow.dao.search;
+
+import java.util.Arrays;
+
+/**
+ * The PostingList class holds the ids of the documents a term appears in, in
+ * ascending order, and the number of times the term appears in each of them,
+ * compressed. Each id is stored as the difference from the previous one,
+ * followed by the frequency, both in a variable-length encoding of 7 bits per
+ * byte, so a posting of ids that are close together takes two bytes.
+ *
+ * Ids are appended in ascending order; an id lower than the last one is
+ * inserted by re-encoding the list. The class isn't thread safe, the
+ * {@link SearchIndex} locks it.
+ */
+class PostingList {
+
+	private byte[] m_bytes = new byte[4];
+
+	private int m_length = 0;
+
+	private int m_size = 0;
+
+	private int m_lastId = 0;
+
+	/**
+	 * Add an id to the list. Ids already in the list are ignored.
+	 *
+	 * @param id
+	 *            a positive id
+	 * @param frequency
+	 *            the number of times the term appears in the document
+	 */
+	void add(int id, int frequency) {
+		if (id > m_lastId) {
+			append(id - m_lastId);
+			append(frequency);
+			m_lastId = id;
+			m_size++;
+			return;
+		}
+		// A document that was indexed out of order, re-encode the list
+		int[] ids = new int[m_size];
+		int[] frequencies = new int[m_size];
+		Reader reader = reader();
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = reader.next();
+			frequencies[i] = reader.frequency();
+		}
+		int index = Arrays.binarySearch(ids, id);
+		if (index >= 0) {
+			return;
+		}
+		index = -index - 1;
+		m_length = 0;
+		m_size = 0;
+		m_lastId = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (i == index) {
+				add(id, frequency);
+			}
+			add(ids[i], frequencies[i]);
+		}
+	}
+
+	/**
+	 * Get the number of ids in the list
+	 */
+	int size() {
+		return m_size;
+	}
+
+	/**
+	 * Get a reader of the postings of the list, in ascending order of ids
+	 */
+	Reader reader() {
+		return new Reader();
+	}
+
+	private void append(int value) {
+		if (m_length + 5 > m_bytes.length) {
+			m_bytes = Arrays.copyOf(m_bytes, m_bytes.length * 2);
+		}
+		while (value >= 0x80) {
+			m_bytes[m_length++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		m_bytes[m_length++] = (byte) value;
+	}
+
+	/**
+	 * Decodes the postings of a list one at a time
+	 */
+	class Reader {
+
+		private int m_position = 0;
+
+		private int m_id = 0;
+
+		private int m_frequency = 0;
+
+		boolean hasNext() {
+			return m_position < m_length;
+		}
+
+		/**
+		 * Move to the next posting
+		 *
+		 * @return its id
+		 */
+		int next() {
+			m_id += decode();
+			m_frequency = decode();
+			return m_id;
+		}
+
+		/**
+		 * Get the frequency of the term in the current posting
+		 */
+		int frequency() {
+			return m_frequency;
+		}
+
+		private int decode() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = m_bytes[m_position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+	}
+
+}
@@ -0,0 +1,570 @@
+package petoverflow.dao.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The SearchIndex class is an inverted index of the text of questions and
+ * their answers: for each term the {@link Tokenizer} finds in the questions,
+ * the ids of the questions it appears in and how many times, as a compressed
+ * {@link PostingList}, and the same for the answers. Each answer is mapped
+ * back to its question, so a question is found by the words of its answers
+ * too.
+ *
+ * A query is answered by intersecting the postings of its terms, shortest
+ * first, so its cost depends on the number of questions that contain the
+ * terms and not on the number of questions in the index. The matches are
+ * ranked by their BM25 relevance to the query, optionally blended with their
+ * rating scaled to the range of the relevance, and only the best ones are
+ * kept, in a bounded heap. The text of the
+ * answers counts in the relevance of their question by a field weight. A
+ * term of a query that isn't in the index is taken as misspelled, and
+ * matches the questions of the near terms a {@link TrigramIndex} finds.
+ *
+ * The index lives in memory. The DAOs build it when they start, add each
+ * new question and answer to it and set the rating of a question when it
+ * changes, so a search doesn't read the ratings back. Searches run
+ * concurrently; changes are serialized.
+ */
+public class SearchIndex {
+
+	/**
+	 * How fast the weight of a term saturates as it repeats in a question
+	 */
+	private static final double K1 = 1.2;
+
+	/**
+	 * How much the weight of a term is normalized by the length of the
+	 * question, between 0 and 1
+	 */
+	private static final double B = 0.75;
+
+	private static final Comparator<Matches> SHORTEST_FIRST = new Comparator<Matches>() {
+
+		@Override
+		public int compare(Matches o1, Matches o2) {
+			return Integer.compare(o1.m_ids.length, o2.m_ids.length);
+		}
+	};
+
+	/**
+	 * How much an appearance of a term in an answer weighs, relative to an
+	 * appearance in the question
+	 */
+	private final double m_answerWeight;
+
+	/**
+	 * The posting list of each term in the text of the questions, by question
+	 * id
+	 */
+	private final Map<String, PostingList> m_questionPostings = new HashMap<String, PostingList>();
+
+	/**
+	 * The posting list of each term in the text of the answers, by answer id.
+	 * Answers are added to old questions too, so they are listed by their own
+	 * ids, which grow, and are mapped to their questions when searched.
+	 */
+	private final Map<String, PostingList> m_answerPostings = new HashMap<String, PostingList>();
+
+	/**
+	 * The question of each answer, by answer id. 0 for answers that aren't
+	 * indexed.
+	 */
+	private int[] m_answerQuestionIds = new int[64];
+
+	/**
+	 * The number of terms in the text of each question, by question id
+	 */
+	private int[] m_questionLengths = new int[64];
+
+	/**
+	 * The number of terms in the answers of each question, by question id
+	 */
+	private int[] m_answerLengths = new int[64];
+
+	/**
+	 * The rating of each question, by question id
+	 */
+	private double[] m_ratings = new double[64];
+
+	/**
+	 * The number of questions in the index, with their text or an answer
+	 */
+	private int m_questionCount = 0;
+
+	/**
+	 * The total number of terms in the questions in the index
+	 */
+	private long m_totalQuestionLength = 0;
+
+	/**
+	 * The total number of terms in the answers in the index
+	 */
+	private long m_totalAnswerLength = 0;
+
+	/**
+	 * The terms of the questions and answers, which a misspelled term of a
+	 * query is expanded to
+	 */
+	private final TrigramIndex m_vocabulary = new TrigramIndex();
+
+	/**
+	 * The milliseconds a search may spend on expanding misspelled terms
+	 */
+	private final long m_typoBudgetMs;
+
+	private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Constructor
+	 *
+	 * @param answerWeight
+	 *            how much an appearance of a term in an answer weighs,
+	 *            relative to an appearance in the question
+	 * @param typoBudgetMs
+	 *            the milliseconds a search may spend on expanding the terms
+	 *            that aren't in the index to near terms that are. 0 disables
+	 *            the expansion.
+	 */
+	public SearchIndex(double answerWeight, long typoBudgetMs) {
+		m_answerWeight = answerWeight;
+		m_typoBudgetMs = typoBudgetMs;
+	}
+
+	/**
+	 * Add a question to the index. Questions already in the index are
+	 * ignored.
+	 *
+	 * @param questionId
+	 *            the id of the question
+	 * @param text
+	 *            the text of the question
+	 */
+	public void addQuestion(int questionId, String text) {
+		List<String> terms = Tokenizer.toTerms(text);
+		if (terms.isEmpty()) {
+			return;
+		}
+		m_lock.writeLock().lock();
+		try {
+			growQuestions(questionId);
+			if (m_questionLengths[questionId] > 0) {
+				return;
+			}
+			countQuestion(questionId);
+			m_questionLengths[questionId] = terms.size();
+			m_totalQuestionLength += terms.size();
+			addPostings(m_questionPostings, questionId, terms);
+		} finally {
+			m_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add an answer to the index, under its question. Answers already in the
+	 * index are ignored.
+	 *
+	 * @param answerId
+	 *            the id of the answer
+	 * @param questionId
+	 *            the id of the answer's question
+	 * @param text
+	 *            the text of the answer
+	 */
+	public void addAnswer(int answerId, int questionId, String text) {
+		List<String> terms = Tokenizer.toTerms(text);
+		if (terms.isEmpty()) {
+			return;
+		}
+		m_lock.writeLock().lock();
+		try {
+			if (answerId >= m_answerQuestionIds.length) {
+				m_answerQuestionIds = Arrays.copyOf(m_answerQuestionIds,
+						Math.max(answerId + 1, m_answerQuestionIds.length * 2));
+			}
+			if (m_answerQuestionIds[answerId] != 0) {
+				return;
+			}
+			growQuestions(questionId);
+			countQuestion(questionId);
+			m_answerQuestionIds[answerId] = questionId;
+			m_answerLengths[questionId] += terms.size();
+			m_totalAnswerLength += terms.size();
+			addPostings(m_answerPostings, answerId, terms);
+		} finally {
+			m_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Set the rating of a question, which searches blend with its relevance
+	 *
+	 * @param questionId
+	 *            the id of the question
+	 * @param rating
+	 *            the question's current rating
+	 */
+	public void setRating(int questionId, double rating) {
+		m_lock.writeLock().lock();
+		try {
+			growQuestions(questionId);
+			m_ratings[questionId] = rating;
+		} finally {
+			m_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the questions that contain all the terms of a query, in their text
+	 * or in their answers, most relevant first
+	 *
+	 * @param query
+	 *            the text to search
+	 * @param size
+	 *            the maximal number of questions to return
+	 * @param offset
+	 *            the number of best questions to skip
+	 * @param ratingWeight
+	 *            the weight of a question's rating in its score, added to its
+	 *            relevance: the best rated match gains this fraction of the
+	 *            highest relevance of the matches, the worst rated none. 0
+	 *            ranks by relevance only.
+	 * @return the ids of the questions in range [offset, offset + size), by
+	 *         descending score, ties by ascending id. Empty if the query has
+	 *         no terms.
+	 */
+	public int[] search(String query, int size, int offset, double ratingWeight) {
+		if (size < 0) {
+			throw new IllegalArgumentException("size shouldn't be negative");
+		} else if (offset < 0) {
+			throw new IllegalArgumentException("offset shouldn't be negative");
+		}
+		LinkedHashSet<String> terms = new LinkedHashSet<String>(Tokenizer.toTerms(query));
+		if (terms.isEmpty() || size == 0) {
+			return new int[0];
+		}
+
+		int[] ids;
+		double[] scores;
+		int count;
+		m_lock.readLock().lock();
+		try {
+			Matches[] matches = new Matches[terms.size()];
+			int i = 0;
+			long deadline = System.nanoTime() + m_typoBudgetMs * 1000000;
+			for (String term : terms) {
+				matches[i] = getMatches(term);
+				if (matches[i].m_ids.length == 0 && m_typoBudgetMs > 0) {
+					// A misspelled term matches the questions of its near terms
+					List<Matches> nearMatches = new ArrayList<Matches>();
+					for (String nearTerm : m_vocabulary.getNearTerms(term, deadline)) {
+						nearMatches.add(getMatches(nearTerm));
+					}
+					matches[i] = union(nearMatches);
+				}
+				if (matches[i++].m_ids.length == 0) {
+					return new int[0];
+				}
+			}
+			Arrays.sort(matches, SHORTEST_FIRST);
+
+			double averageLength = (m_totalQuestionLength + m_answerWeight * m_totalAnswerLength)
+					/ m_questionCount;
+			ids = matches[0].m_ids.clone();
+			scores = new double[ids.length];
+			double idf = idf(ids.length);
+			for (i = 0; i < ids.length; i++) {
+				scores[i] = weigh(idf, matches[0].m_frequencies[i], getLength(ids[i]), averageLength);
+			}
+			count = ids.length;
+			for (i = 1; i < matches.length && count > 0; i++) {
+				count = intersect(ids, scores, count, matches[i], averageLength);
+			}
+			if (ratingWeight != 0 && count > 0) {
+				blendRatings(ids, scores, count, ratingWeight);
+			}
+		} finally {
+			m_lock.readLock().unlock();
+		}
+
+		if (offset >= count) {
+			return new int[0];
+		}
+		// offset + size may overflow an int
+		int[] best = top(ids, scores, count, (int) Math.min((long) offset + size, count));
+		return Arrays.copyOfRange(best, offset, best.length);
+	}
+
+	private void growQuestions(int questionId) {
+		if (questionId >= m_questionLengths.length) {
+			int length = Math.max(questionId + 1, m_questionLengths.length * 2);
+			m_questionLengths = Arrays.copyOf(m_questionLengths, length);
+			m_answerLengths = Arrays.copyOf(m_answerLengths, length);
+			m_ratings = Arrays.copyOf(m_ratings, length);
+		}
+	}
+
+	/**
+	 * Count a question in the index when its text or its first answer is
+	 * added
+	 */
+	private void countQuestion(int questionId) {
+		if (m_questionLengths[questionId] == 0 && m_answerLengths[questionId] == 0) {
+			m_questionCount++;
+		}
+	}
+
+	private void addPostings(Map<String, PostingList> postings, int id, List<String> terms) {
+		Map<String, Integer> frequencies = new LinkedHashMap<String, Integer>();
+		for (String term : terms) {
+			Integer frequency = frequencies.get(term);
+			frequencies.put(term, frequency == null ? 1 : frequency + 1);
+		}
+		for (Entry<String, Integer> frequency : frequencies.entrySet()) {
+			PostingList list = postings.get(frequency.getKey());
+			if (list == null) {
+				list = new PostingList();
+				postings.put(frequency.getKey(), list);
+				m_vocabulary.add(frequency.getKey());
+			}
+			list.add(id, frequency.getValue());
+		}
+	}
+
+	/**
+	 * Get the weighted length of a question and its answers
+	 */
+	private double getLength(int questionId) {
+		return m_questionLengths[questionId] + m_answerWeight * m_answerLengths[questionId];
+	}
+
+	/**
+	 * Get the questions a term appears in, in their text or in their answers,
+	 * with the weighted frequency of the term in each of them
+	 */
+	private Matches getMatches(String term) {
+		PostingList questionPostings = m_questionPostings.get(term);
+		PostingList answerPostings = m_answerPostings.get(term);
+
+		// The answers' postings by question id, each packed in a long as the
+		// question id followed by the frequency, so they sort by question
+		long[] answers = new long[answerPostings != null ? answerPostings.size() : 0];
+		PostingList.Reader reader = answerPostings != null ? answerPostings.reader() : null;
+		for (int i = 0; i < answers.length; i++) {
+			int questionId = m_answerQuestionIds[reader.next()];
+			answers[i] = (long) questionId << 32 | reader.frequency();
+		}
+		Arrays.sort(answers);
+
+		int questionCount = questionPostings != null ? questionPostings.size() : 0;
+		int[] ids = new int[questionCount + answers.length];
+		double[] frequencies = new double[ids.length];
+		int count = 0;
+		reader = questionPostings != null ? questionPostings.reader() : null;
+		int questionId = reader != null && reader.hasNext() ? reader.next() : Integer.MAX_VALUE;
+		int answer = 0;
+		while (questionId != Integer.MAX_VALUE || answer < answers.length) {
+			int answerQuestionId = answer < answers.length ? (int) (answers[answer] >>> 32) : Integer.MAX_VALUE;
+			int id = Math.min(questionId, answerQuestionId);
+			double frequency = 0;
+			if (questionId == id) {
+				frequency += reader.frequency();
+				questionId = reader.hasNext() ? reader.next() : Integer.MAX_VALUE;
+			}
+			while (answer < answers.length && (int) (answers[answer] >>> 32) == id) {
+				frequency += m_answerWeight * (int) answers[answer++];
+			}
+			ids[count] = id;
+			frequencies[count++] = frequency;
+		}
+		return new Matches(Arrays.copyOf(ids, count), Arrays.copyOf(frequencies, count));
+	}
+
+	/**
+	 * Get the questions any of several terms appear in, with the highest
+	 * frequency of the terms in each of them
+	 */
+	private static Matches union(List<Matches> matches) {
+		TreeMap<Integer, Double> frequencies = new TreeMap<Integer, Double>();
+		for (Matches termMatches : matches) {
+			for (int i = 0; i < termMatches.m_ids.length; i++) {
+				Double frequency = frequencies.get(termMatches.m_ids[i]);
+				if (frequency == null || frequency < termMatches.m_frequencies[i]) {
+					frequencies.put(termMatches.m_ids[i], termMatches.m_frequencies[i]);
+				}
+			}
+		}
+		int[] ids = new int[frequencies.size()];
+		double[] values = new double[ids.length];
+		int i = 0;
+		for (Entry<Integer, Double> frequency : frequencies.entrySet()) {
+			ids[i] = frequency.getKey();
+			values[i++] = frequency.getValue();
+		}
+		return new Matches(ids, values);
+	}
+
+	/**
+	 * Keep the ids that a term also appears in, and add the weight of the term
+	 * to their scores
+	 *
+	 * @param ids
+	 *            ascending ids, the first count of them are kept in place
+	 * @param scores
+	 *            the scores of the ids, moved with them
+	 * @return the number of ids kept
+	 */
+	private int intersect(int[] ids, double[] scores, int count, Matches matches, double averageLength) {
+		double idf = idf(matches.m_ids.length);
+		int kept = 0;
+		int other = 0;
+		for (int i = 0; i < count && other < matches.m_ids.length; i++) {
+			while (other < matches.m_ids.length && matches.m_ids[other] < ids[i]) {
+				other++;
+			}
+			if (other < matches.m_ids.length && matches.m_ids[other] == ids[i]) {
+				ids[kept] = ids[i];
+				scores[kept++] = scores[i]
+						+ weigh(idf, matches.m_frequencies[other], getLength(ids[i]), averageLength);
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Add the ratings of the matches to their scores. Ratings and relevance
+	 * are on different scales, so the ratings are scaled to the matches' range
+	 * of relevance: the best rated match gains ratingWeight times the highest
+	 * relevance, the worst rated none.
+	 */
+	private void blendRatings(int[] ids, double[] scores, int count, double ratingWeight) {
+		double maxScore = 0;
+		double minRating = Double.POSITIVE_INFINITY;
+		double maxRating = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			maxScore = Math.max(maxScore, scores[i]);
+			minRating = Math.min(minRating, m_ratings[ids[i]]);
+			maxRating = Math.max(maxRating, m_ratings[ids[i]]);
+		}
+		if (maxRating == minRating) {
+			// Equal ratings don't change the order
+			return;
+		}
+		double scale = ratingWeight * maxScore / (maxRating - minRating);
+		for (int i = 0; i < count; i++) {
+			scores[i] += scale * (m_ratings[ids[i]] - minRating);
+		}
+	}
+
+	/**
+	 * Get the inverse document frequency of a term: the rarer the term, the
+	 * more a match of it weighs
+	 *
+	 * @param frequency
+	 *            the number of questions the term appears in
+	 */
+	private double idf(int frequency) {
+		return Math.log(1 + (m_questionCount - frequency + 0.5) / (frequency + 0.5));
+	}
+
+	/**
+	 * Get the BM25 weight of a term in a question
+	 */
+	private static double weigh(double idf, double frequency, double length, double averageLength) {
+		return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+	}
+
+	/**
+	 * Select the best scored ids with a heap that holds at most limit of them,
+	 * worst on top
+	 *
+	 * @return the selected ids, by descending score, ties by ascending id
+	 */
+	private static int[] top(int[] ids, double[] scores, int count, int limit) {
+		int[] heap = new int[Math.min(count, limit)];
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			if (size < heap.length) {
+				heap[size] = i;
+				siftUp(heap, size++, ids, scores);
+			} else if (isBetter(i, heap[0], ids, scores)) {
+				heap[0] = i;
+				siftDown(heap, size, ids, scores);
+			}
+		}
+		int[] best = new int[size];
+		while (size > 0) {
+			best[size - 1] = ids[heap[0]];
+			heap[0] = heap[--size];
+			siftDown(heap, size, ids, scores);
+		}
+		return best;
+	}
+
+	private static boolean isBetter(int i, int j, int[] ids, double[] scores) {
+		int byScore = Double.compare(scores[i], scores[j]);
+		return byScore != 0 ? byScore > 0 : ids[i] < ids[j];
+	}
+
+	private static void siftUp(int[] heap, int index, int[] ids, double[] scores) {
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (!isBetter(heap[parent], heap[index], ids, scores)) {
+				return;
+			}
+			swap(heap, parent, index);
+			index = parent;
+		}
+	}
+
+	private static void siftDown(int[] heap, int size, int[] ids, double[] scores) {
+		int index = 0;
+		while (true) {
+			int worst = index;
+			for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+				if (isBetter(heap[worst], heap[child], ids, scores)) {
+					worst = child;
+				}
+			}
+			if (worst == index) {
+				return;
+			}
+			swap(heap, worst, index);
+			index = worst;
+		}
+	}
+
+	private static void swap(int[] heap, int i, int j) {
+		int temp = heap[i];
+		heap[i] = heap[j];
+		heap[j] = temp;
+	}
+
+	/**
+	 * The questions a term appears in, ascending, and the weighted frequency
+	 * of the term in each of them
+	 */
+	private static class Matches {
+
+		final int[] m_ids;
+
+		final double[] m_frequencies;
+
+		Matches(int[] ids, double[] frequencies) {
+			m_ids = ids;
+			m_frequencies = frequencies;
+		}
+
+	}
+
+}
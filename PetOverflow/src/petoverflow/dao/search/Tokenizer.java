@@ -0,0 +1,203 @@
+package petoverflow.dao.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The Tokenizer class breaks text to the terms it is searched by. A term is a
+ * run of letters and digits, in lower case. Apostrophes inside a word are
+ * dropped, so "don't" is "dont", as is a possessive "'s", and any other
+ * character separates terms.
+ * Common English words, such as "the", aren't terms; plurals are reduced to
+ * their singular with the S-stemmer (Harman, 1991), so "cats" matches "cat".
+ *
+ * A term is built in a reusable char buffer, and only terms that are kept are
+ * copied to strings. A tokenizer isn't thread safe, but it is cheap to create.
+ */
+public class Tokenizer {
+
+	/**
+	 * The words that aren't terms, sorted
+	 */
+	private static final String[] STOPWORDS = { "a", "about", "an", "and", "are", "as", "at", "be", "but", "by",
+			"do", "for", "from", "has", "have", "how", "i", "if", "in", "is", "it", "its", "me", "my", "no", "not",
+			"of", "on", "or", "our", "so", "that", "the", "their", "them", "they", "this", "to", "was", "we", "what",
+			"when", "which", "who", "why", "with", "you", "your" };
+
+	private char[] m_buffer = new char[32];
+
+	private int m_length = 0;
+
+	/**
+	 * Break a text to its terms
+	 *
+	 * @param text
+	 *            the text
+	 * @return the terms, in the order they appear in the text
+	 */
+	public static List<String> toTerms(String text) {
+		return new Tokenizer().tokenize(text);
+	}
+
+	/**
+	 * Break a name to its terms, and to the words a term is joined from where
+	 * a capital starts a new word, such as "african" and "grey" of
+	 * "AfricanGrey"
+	 *
+	 * @param name
+	 *            the name
+	 * @return the terms, each once, followed by the words they are joined
+	 *         from
+	 */
+	public static List<String> toNameTerms(String name) {
+		StringBuilder words = new StringBuilder(name.length() + 8);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (i > 0 && Character.isUpperCase(c) && Character.isLowerCase(name.charAt(i - 1))) {
+				words.append(' ');
+			}
+			words.append(c);
+		}
+		LinkedHashSet<String> terms = new LinkedHashSet<String>(toTerms(name));
+		terms.addAll(toTerms(words.toString()));
+		return new ArrayList<String>(terms);
+	}
+
+	/**
+	 * Check if each of the given terms is a part of a term of a text, such as
+	 * "grey" of "AfricanGrey"
+	 *
+	 * @param text
+	 *            the text
+	 * @param parts
+	 *            terms, as the tokenizer found them in another text
+	 * @return true if each of the parts is in the text
+	 */
+	public static boolean containsParts(String text, List<String> parts) {
+		List<String> terms = toTerms(text);
+		partsLoop: for (String part : parts) {
+			for (String term : terms) {
+				if (term.contains(part)) {
+					continue partsLoop;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Break a text to its terms
+	 *
+	 * @param text
+	 *            the text
+	 * @return the terms, in the order they appear in the text
+	 */
+	public List<String> tokenize(CharSequence text) {
+		if (text == null) {
+			throw new IllegalArgumentException("text can't be null");
+		}
+		List<String> terms = new ArrayList<String>();
+		m_length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				append(Character.toLowerCase(c));
+			} else if (isApostrophe(c) && m_length > 0) {
+				// A possessive "'s" is dropped, other apostrophes are skipped
+				if (i + 1 < text.length() && Character.toLowerCase(text.charAt(i + 1)) == 's'
+						&& (i + 2 == text.length() || !Character.isLetterOrDigit(text.charAt(i + 2)))) {
+					i++;
+				}
+			} else {
+				endTerm(terms);
+			}
+		}
+		endTerm(terms);
+		return terms;
+	}
+
+	private void append(char c) {
+		if (m_length == m_buffer.length) {
+			m_buffer = Arrays.copyOf(m_buffer, m_length * 2);
+		}
+		m_buffer[m_length++] = c;
+	}
+
+	/**
+	 * Add the term in the buffer to the terms, unless it's a stopword, and
+	 * clear the buffer
+	 */
+	private void endTerm(List<String> terms) {
+		if (m_length > 0 && !isStopword()) {
+			stem();
+			terms.add(new String(m_buffer, 0, m_length));
+		}
+		m_length = 0;
+	}
+
+	private boolean isStopword() {
+		int low = 0;
+		int high = STOPWORDS.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compared = compareToBuffer(STOPWORDS[middle]);
+			if (compared < 0) {
+				low = middle + 1;
+			} else if (compared > 0) {
+				high = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int compareToBuffer(String word) {
+		int length = Math.min(word.length(), m_length);
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) != m_buffer[i]) {
+				return word.charAt(i) - m_buffer[i];
+			}
+		}
+		return word.length() - m_length;
+	}
+
+	/**
+	 * Reduce the plural in the buffer to its singular: "-ies" to "-y",
+	 * "-es" to "-e" and "-s" to "", except for words that end with "-aies",
+	 * "-eies", "-aes", "-ees", "-oes", "-us" or "-ss"
+	 */
+	private void stem() {
+		if (m_length <= 3 || m_buffer[m_length - 1] != 's') {
+			return;
+		}
+		if (endsWith("ies") && !endsWith("aies") && !endsWith("eies")) {
+			m_length -= 2;
+			m_buffer[m_length - 1] = 'y';
+		} else if (endsWith("es") && !endsWith("aes") && !endsWith("ees") && !endsWith("oes")) {
+			m_length--;
+		} else if (!endsWith("es") && !endsWith("us") && !endsWith("ss")) {
+			m_length--;
+		}
+	}
+
+	private boolean endsWith(String suffix) {
+		if (suffix.length() > m_length) {
+			return false;
+		}
+		for (int i = 0; i < suffix.length(); i++) {
+			if (m_buffer[m_length - suffix.length() + i] != suffix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isApostrophe(char c) {
+		return c == '\'' || c == '\u2019';
+	}
+
+}
@@ -0,0 +1,275 @@
+package petoverflow.dao.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The TrigramIndex class holds a vocabulary of terms, indexed by the
+ * sequences of three characters they contain, and finds the terms that are
+ * near a misspelled one.
+ *
+ * An edit changes at most 4 of the trigrams of a term, so a term within k
+ * edits of a misspelled one shares all but 4k of its trigrams, and only the
+ * terms that share that many are candidates. The candidates that share the
+ * most are checked first, by their edit distance, where swapping two adjacent
+ * characters counts as one edit. Terms of up to 7 characters may be 1 edit
+ * away, longer terms 2; terms shorter than 4 characters aren't corrected.
+ *
+ * The work a lookup may do is bounded by a deadline and by the number of
+ * candidates it checks, so a misspelled query adds a bounded latency.
+ */
+public class TrigramIndex {
+
+	/**
+	 * The length of the shortest term that is corrected
+	 */
+	private static final int MIN_LENGTH = 4;
+
+	/**
+	 * The maximal number of candidates checked for each term
+	 */
+	private static final int MAX_CANDIDATES = 200;
+
+	/**
+	 * The maximal number of near terms returned for each term
+	 */
+	private static final int MAX_NEAR_TERMS = 5;
+
+	/**
+	 * The terms of the vocabulary, by id
+	 */
+	private final List<String> m_terms = new ArrayList<String>();
+
+	/**
+	 * The ids of the terms that contain each trigram, in ascending order
+	 */
+	private final Map<String, TermIds> m_postings = new HashMap<String, TermIds>();
+
+	private final Map<String, Integer> m_ids = new HashMap<String, Integer>();
+
+	private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Add a term to the vocabulary. Terms already in it are ignored.
+	 *
+	 * @param term
+	 *            the term, as the {@link Tokenizer} found it
+	 */
+	public void add(String term) {
+		if (term.length() < MIN_LENGTH - 1) {
+			// Too short to be a correction of a term that is corrected
+			return;
+		}
+		m_lock.writeLock().lock();
+		try {
+			if (m_ids.containsKey(term)) {
+				return;
+			}
+			int id = m_terms.size();
+			m_terms.add(term);
+			m_ids.put(term, id);
+			for (String trigram : toTrigrams(term)) {
+				TermIds ids = m_postings.get(trigram);
+				if (ids == null) {
+					ids = new TermIds();
+					m_postings.put(trigram, ids);
+				}
+				ids.add(id);
+			}
+		} finally {
+			m_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Check if a term is in the vocabulary
+	 */
+	public boolean contains(String term) {
+		m_lock.readLock().lock();
+		try {
+			return m_ids.containsKey(term);
+		} finally {
+			m_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the terms of the vocabulary that are near a term
+	 *
+	 * @param term
+	 *            the term, as the {@link Tokenizer} found it
+	 * @param deadline
+	 *            the {@link System#nanoTime()} after which the lookup stops
+	 *            and returns the terms it found so far
+	 * @return the near terms, nearest first, ties by name. Empty if the term
+	 *         is too short to be corrected.
+	 */
+	public List<String> getNearTerms(String term, long deadline) {
+		List<String> nearTerms = new ArrayList<String>();
+		if (term.length() < MIN_LENGTH) {
+			return nearTerms;
+		}
+		int maxDistance = term.length() <= 7 ? 1 : 2;
+
+		m_lock.readLock().lock();
+		try {
+			// Count the trigrams each term shares with the given one
+			LinkedHashSet<String> trigrams = toTrigrams(term);
+			int minShared = trigrams.size() - 4 * maxDistance;
+			Map<Integer, Integer> shared = new HashMap<Integer, Integer>();
+			for (String trigram : trigrams) {
+				TermIds ids = m_postings.get(trigram);
+				if (ids == null) {
+					continue;
+				}
+				for (int i = 0; i < ids.m_size; i++) {
+					Integer count = shared.get(ids.m_ids[i]);
+					shared.put(ids.m_ids[i], count == null ? 1 : count + 1);
+				}
+				if (System.nanoTime() > deadline) {
+					return nearTerms;
+				}
+			}
+
+			List<Entry<Integer, Integer>> candidates = new ArrayList<Entry<Integer, Integer>>();
+			for (Entry<Integer, Integer> entry : shared.entrySet()) {
+				String candidate = m_terms.get(entry.getKey());
+				if (Math.abs(candidate.length() - term.length()) <= maxDistance && entry.getValue() >= minShared) {
+					candidates.add(entry);
+				}
+			}
+			Collections.sort(candidates, new Comparator<Entry<Integer, Integer>>() {
+
+				@Override
+				public int compare(Entry<Integer, Integer> o1, Entry<Integer, Integer> o2) {
+					int byShared = o2.getValue().compareTo(o1.getValue());
+					return byShared != 0 ? byShared : o1.getKey().compareTo(o2.getKey());
+				}
+			});
+
+			final Map<String, Integer> distances = new HashMap<String, Integer>();
+			for (int i = 0; i < candidates.size() && i < MAX_CANDIDATES; i++) {
+				String candidate = m_terms.get(candidates.get(i).getKey());
+				int distance = getDistance(term, candidate, maxDistance);
+				if (distance <= maxDistance && !candidate.equals(term)) {
+					distances.put(candidate, distance);
+				}
+				if (System.nanoTime() > deadline) {
+					break;
+				}
+			}
+			nearTerms.addAll(distances.keySet());
+			Collections.sort(nearTerms, new Comparator<String>() {
+
+				@Override
+				public int compare(String o1, String o2) {
+					int byDistance = distances.get(o1).compareTo(distances.get(o2));
+					return byDistance != 0 ? byDistance : o1.compareTo(o2);
+				}
+			});
+			return nearTerms.size() > MAX_NEAR_TERMS ? nearTerms.subList(0, MAX_NEAR_TERMS) : nearTerms;
+		} finally {
+			m_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Replace each term that isn't in the vocabulary with the nearest term
+	 * that is, if there is one
+	 *
+	 * @param terms
+	 *            the terms, as the {@link Tokenizer} found them
+	 * @param budgetMs
+	 *            the milliseconds the lookups may take together
+	 * @return the corrected terms
+	 */
+	public List<String> correct(List<String> terms, long budgetMs) {
+		long deadline = System.nanoTime() + budgetMs * 1000000;
+		List<String> corrected = new ArrayList<String>();
+		for (String term : terms) {
+			List<String> nearTerms = contains(term) ? null : getNearTerms(term, deadline);
+			corrected.add(nearTerms != null && !nearTerms.isEmpty() ? nearTerms.get(0) : term);
+		}
+		return corrected;
+	}
+
+	/**
+	 * Get the trigrams of a term, with its start and end marked. The start is
+	 * marked twice, so terms that start with the same letter share a trigram
+	 * even if they're short.
+	 */
+	private static LinkedHashSet<String> toTrigrams(String term) {
+		String padded = "^^" + term + "$";
+		LinkedHashSet<String> trigrams = new LinkedHashSet<String>();
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			trigrams.add(padded.substring(i, i + 3));
+		}
+		return trigrams;
+	}
+
+	/**
+	 * Get the edit distance between two terms: the number of characters
+	 * inserted, deleted, replaced or swapped with their neighbor
+	 *
+	 * @return the distance, or more than maxDistance if it's more
+	 */
+	private static int getDistance(String s, String t, int maxDistance) {
+		int[] beforePrevious = new int[t.length() + 1];
+		int[] previous = new int[t.length() + 1];
+		int[] current = new int[t.length() + 1];
+		for (int j = 0; j <= t.length(); j++) {
+			previous[j] = j;
+		}
+		int previousMin = 0;
+		for (int i = 1; i <= s.length(); i++) {
+			current[0] = i;
+			int rowMin = i;
+			for (int j = 1; j <= t.length(); j++) {
+				int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				if (i > 1 && j > 1 && s.charAt(i - 1) == t.charAt(j - 2) && s.charAt(i - 2) == t.charAt(j - 1)) {
+					current[j] = Math.min(current[j], beforePrevious[j - 2] + 1);
+				}
+				rowMin = Math.min(rowMin, current[j]);
+			}
+			// A swap reaches back two rows, so both have to be too far
+			if (rowMin > maxDistance && previousMin > maxDistance) {
+				return maxDistance + 1;
+			}
+			previousMin = rowMin;
+			int[] rotated = beforePrevious;
+			beforePrevious = previous;
+			previous = current;
+			current = rotated;
+		}
+		return previous[t.length()];
+	}
+
+	/**
+	 * A growing array of term ids
+	 */
+	private static class TermIds {
+
+		int[] m_ids = new int[4];
+
+		int m_size = 0;
+
+		void add(int id) {
+			if (m_size == m_ids.length) {
+				m_ids = Arrays.copyOf(m_ids, m_size * 2);
+			}
+			m_ids[m_size++] = id;
+		}
+
+	}
+
+}
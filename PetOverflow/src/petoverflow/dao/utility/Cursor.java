@@ -0,0 +1,114 @@
+package petoverflow.dao.utility;
+
+import java.sql.Timestamp;
+
+/**
+ * The Cursor class marks a position in a sorted list: the sort key and the id
+ * of the last element that was already returned. The next page starts right
+ * after that element, so its cost doesn't depend on how deep the page is, and
+ * elements inserted before the position don't shift the following pages.
+ *
+ * Cursors are handed to clients as opaque tokens, see {@link #encode()}.
+ */
+public class Cursor {
+
+	/**
+	 * Separates the key from the id in a token
+	 */
+	private static final char SEPARATOR = '.';
+
+	private final long m_key;
+
+	private final int m_id;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param key
+	 *            the sort key of the last returned element
+	 * @param id
+	 *            the id of the last returned element
+	 */
+	public Cursor(long key, int id) {
+		m_key = key;
+		m_id = id;
+	}
+
+	/**
+	 * Create a cursor after an element sorted by a rating
+	 */
+	public static Cursor of(double rating, int id) {
+		return new Cursor(Double.doubleToLongBits(rating), id);
+	}
+
+	/**
+	 * Create a cursor after an element sorted by a timestamp. The timestamp is
+	 * kept up to nanoseconds, so elements created in the same millisecond are
+	 * told apart.
+	 */
+	public static Cursor of(Timestamp timestamp, int id) {
+		long seconds = timestamp.getTime() / 1000;
+		return new Cursor(seconds * 1000000000L + timestamp.getNanos(), id);
+	}
+
+	public long getKey() {
+		return m_key;
+	}
+
+	/**
+	 * Get the key of a cursor created by {@link #of(double, int)}
+	 */
+	public double getRatingKey() {
+		return Double.longBitsToDouble(m_key);
+	}
+
+	/**
+	 * Get the key of a cursor created by {@link #of(Timestamp, int)}
+	 */
+	public Timestamp getTimestampKey() {
+		Timestamp timestamp = new Timestamp(m_key / 1000000000L * 1000);
+		timestamp.setNanos((int) (m_key % 1000000000L));
+		return timestamp;
+	}
+
+	public int getId() {
+		return m_id;
+	}
+
+	/**
+	 * Encode this cursor as a short token that is safe in URLs
+	 * 
+	 * @return the token
+	 */
+	public String encode() {
+		return Long.toString(m_key, Character.MAX_RADIX) + SEPARATOR + Integer.toString(m_id, Character.MAX_RADIX);
+	}
+
+	/**
+	 * Decode a token created by {@link #encode()}
+	 * 
+	 * @param token
+	 *            the token
+	 * @return the cursor, or null if the token is null or empty, which means
+	 *         the first page
+	 * @throws IllegalArgumentException
+	 *             if the token is malformed
+	 */
+	public static Cursor decode(String token) {
+		if (token == null || token.isEmpty()) {
+			return null;
+		}
+		int separator = token.indexOf(SEPARATOR);
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid cursor: " + token);
+		}
+		try {
+			long key = Long.parseLong(token.substring(0, separator), Character.MAX_RADIX);
+			int id = Integer.parseInt(token.substring(separator + 1), Character.MAX_RADIX);
+			return new Cursor(key, id);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + token);
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package petoverflow.dao.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Page class holds a single page of a sorted list, and the cursor of the
+ * page that follows it
+ *
+ * @param <T>
+ *            the type of the elements
+ */
+public class Page<T> {
+
+	private final List<T> m_items;
+
+	private final String m_nextCursor;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param items
+	 *            the elements of the page
+	 * @param nextCursor
+	 *            the token of the next page, null if this is the last page
+	 */
+	public Page(List<T> items, String nextCursor) {
+		m_items = items;
+		m_nextCursor = nextCursor;
+	}
+
+	/**
+	 * Create a page from the rows of a query that fetched one row more than
+	 * the page size. The extra row only tells whether there is a next page,
+	 * and is dropped.
+	 * 
+	 * @param rows
+	 *            the fetched rows, at most size + 1
+	 * @param cursors
+	 *            the cursor after each of the rows
+	 * @param size
+	 *            the page size
+	 * @return the page
+	 * @throws IllegalArgumentException
+	 *             if the page size isn't positive
+	 */
+	public static <T> Page<T> of(List<T> rows, List<Cursor> cursors, int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("size should be positive");
+		} else if (rows.size() <= size) {
+			return new Page<T>(rows, null);
+		}
+		return new Page<T>(new ArrayList<T>(rows.subList(0, size)), cursors.get(size - 1).encode());
+	}
+
+	public List<T> getItems() {
+		return m_items;
+	}
+
+	/**
+	 * Get the token of the next page
+	 * 
+	 * @return the token, or null if this is the last page
+	 */
+	public String getNextCursor() {
+		return m_nextCursor;
+	}
+
+}
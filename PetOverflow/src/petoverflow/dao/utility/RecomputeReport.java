@@ -0,0 +1,136 @@
+package petoverflow.dao.utility;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The RecomputeReport class holds the outcome of a recalculation of the
+ * derived values a DAO stores: how many rows were read and how fast, how many
+ * stored values of each kind drifted from the recalculated ones, and how many
+ * of them were repaired.
+ *
+ * @see petoverflow.dao.DaoManager#recompute()
+ */
+public class RecomputeReport {
+
+	/**
+	 * The number of drifted values, by the kind of value
+	 */
+	private final Map<String, Integer> m_drift = new LinkedHashMap<String, Integer>();
+
+	private long m_rowsRead = 0;
+
+	private int m_written = 0;
+
+	private int m_skipped = 0;
+
+	private long m_durationMs = 0;
+
+	/**
+	 * Count rows read to recalculate the values
+	 */
+	public void addRowsRead(long rows) {
+		m_rowsRead += rows;
+	}
+
+	/**
+	 * Count stored values that drifted from the recalculated ones
+	 *
+	 * @param kind
+	 *            the kind of the values, such as "question ratings"
+	 * @param count
+	 *            the number of drifted values
+	 */
+	public void addDrift(String kind, int count) {
+		if (count <= 0) {
+			return;
+		}
+		Integer previous = m_drift.get(kind);
+		m_drift.put(kind, (previous == null ? 0 : previous) + count);
+	}
+
+	/**
+	 * Count rows that were repaired
+	 */
+	public void addWritten(int rows) {
+		m_written += rows;
+	}
+
+	/**
+	 * Count rows that weren't repaired, because a concurrent change updated
+	 * them after they were read
+	 */
+	public void addSkipped(int rows) {
+		m_skipped += rows;
+	}
+
+	public void setDurationMs(long durationMs) {
+		m_durationMs = durationMs;
+	}
+
+	/**
+	 * Add the counts of another report to this one
+	 */
+	public void merge(RecomputeReport other) {
+		m_rowsRead += other.m_rowsRead;
+		m_written += other.m_written;
+		m_skipped += other.m_skipped;
+		for (Entry<String, Integer> drift : other.m_drift.entrySet()) {
+			addDrift(drift.getKey(), drift.getValue());
+		}
+	}
+
+	public long getRowsRead() {
+		return m_rowsRead;
+	}
+
+	/**
+	 * Get the number of drifted values of each kind
+	 */
+	public Map<String, Integer> getDrift() {
+		return m_drift;
+	}
+
+	/**
+	 * Get the total number of drifted values
+	 */
+	public int getDriftCount() {
+		int count = 0;
+		for (int drift : m_drift.values()) {
+			count += drift;
+		}
+		return count;
+	}
+
+	public int getWritten() {
+		return m_written;
+	}
+
+	public int getSkipped() {
+		return m_skipped;
+	}
+
+	public long getDurationMs() {
+		return m_durationMs;
+	}
+
+	/**
+	 * Get the number of rows read per second
+	 */
+	public long getRowsPerSecond() {
+		return m_rowsRead * 1000 / Math.max(m_durationMs, 1);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder drift = new StringBuilder();
+		for (Entry<String, Integer> entry : m_drift.entrySet()) {
+			drift.append(drift.length() == 0 ? "" : ", ").append(entry.getValue()).append(' ').append(entry.getKey());
+		}
+		return m_rowsRead + " rows read in " + m_durationMs + "ms (" + getRowsPerSecond() + " rows/s), "
+				+ (drift.length() == 0 ? "no drift" : "drifted: " + drift) + ", " + m_written + " rows repaired, "
+				+ m_skipped + " changed meanwhile";
+	}
+
+}
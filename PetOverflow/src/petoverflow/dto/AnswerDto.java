@@ -2,10 +2,11 @@ package petoverflow.dto;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import petoverflow.dao.DaoManager;
 import petoverflow.dao.items.Answer;
 import petoverflow.dao.items.Vote;
-import petoverflow.dao.items.Vote.VoteType;
 
 /**
  * The AnswerDto holds information about an answer. This object is used to
@@ -14,22 +15,20 @@ import petoverflow.dao.items.Vote.VoteType;
 public class AnswerDto {
 
 	public AnswerDto(Answer answer, int userId) throws Exception {
+		this(answer, userId, answer.getDaoManager().getAnswerVoteDao().getAnswerVotes(answer.getId()));
+	}
+
+	/**
+	 * Constructor from the already loaded votes of the answer
+	 */
+	private AnswerDto(Answer answer, int userId, List<Vote> votes) throws Exception {
 		id = answer.getId();
 		text = answer.getText();
-		authorId = answer.getAuthor().getId();
-		rating = answer.getRating();
+		authorId = answer.getAuthorId();
+		rating = Vote.netScore(votes);
 		timestamp = answer.getTimestamp().getTime();
-		questionId = answer.getQuestion().getId();
-
-		int voteStatusValue = 0;
-		List<Vote> votes = answer.getDaoManager().getAnswerVoteDao().getAnswerVotes(id);
-		for (Vote vote : votes) {
-			if (vote.getVoterId() == userId) {
-				voteStatusValue = vote.getType() == VoteType.Up ? 1 : -1;
-				break;
-			}
-		}
-		voteStatus = voteStatusValue;
+		questionId = answer.getQuestionId();
+		voteStatus = BatchRatings.getVoteStatus(votes, userId);
 	}
 
 	public int id;
@@ -50,6 +49,9 @@ public class AnswerDto {
 	/**
 	 * Creates AnswerDto objects from Answer objects, given a user ID
 	 * 
+	 * The data of all answers is loaded together, with the same number of
+	 * queries for any number of answers.
+	 * 
 	 * @param answers
 	 *            The answers
 	 * @param userId
@@ -59,8 +61,24 @@ public class AnswerDto {
 	 */
 	public static List<AnswerDto> listToDto(List<Answer> answers, int userId) throws Exception {
 		List<AnswerDto> listDto = new ArrayList<AnswerDto>();
+		if (answers.isEmpty()) {
+			return listDto;
+		}
+
+		DaoManager daoManager = answers.get(0).getDaoManager();
+		int[] ids = new int[answers.size()];
+		boolean hydrated = true;
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = answers.get(i).getId();
+			hydrated &= answers.get(i).isHydrated();
+		}
+		if (!hydrated) {
+			answers = daoManager.getAnswerDao().getAnswers(ids);
+		}
+
+		Map<Integer, List<Vote>> votes = daoManager.getAnswerVoteDao().getVotesForAnswers(ids);
 		for (Answer answer : answers) {
-			listDto.add(new AnswerDto(answer, userId));
+			listDto.add(new AnswerDto(answer, userId, votes.get(answer.getId())));
 		}
 		return listDto;
 	}
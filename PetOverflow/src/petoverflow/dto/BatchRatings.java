@@ -0,0 +1,124 @@
+package petoverflow.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import petoverflow.dao.DaoManager;
+import petoverflow.dao.items.Question;
+import petoverflow.dao.items.Vote;
+import petoverflow.dao.items.Vote.VoteType;
+
+/**
+ * The BatchRatings class loads the ratings of a batch of questions and the data
+ * the rest of their DTOs depend on - the questions' votes and best answers - in
+ * three queries. It is used to build lists of DTOs
+ * without querying per item.
+ */
+class BatchRatings {
+
+	/**
+	 * The stored rating of each question
+	 */
+	private final Map<Integer, Double> m_ratings;
+
+	/**
+	 * The votes of each question
+	 */
+	private final Map<Integer, List<Vote>> m_questionVotes;
+
+	/**
+	 * The stored best answer of each question that has answers
+	 */
+	private final Map<Integer, Integer> m_bestAnswers;
+
+	private BatchRatings(Map<Integer, Double> ratings, Map<Integer, List<Vote>> questionVotes,
+			Map<Integer, Integer> bestAnswers) {
+		m_ratings = ratings;
+		m_questionVotes = questionVotes;
+		m_bestAnswers = bestAnswers;
+	}
+
+	/**
+	 * Load the ratings of a batch of questions
+	 * 
+	 * @param daoManager
+	 *            the DAO manager to load with
+	 * @param questionIds
+	 *            the questions' ids
+	 * @return the ratings of the questions
+	 * @throws Exception
+	 *             if the DAO fails
+	 */
+	public static BatchRatings load(DaoManager daoManager, int[] questionIds) throws Exception {
+		Map<Integer, Double> ratings = daoManager.getQuestionDao().getQuestionRatings(questionIds);
+		Map<Integer, List<Vote>> questionVotes = daoManager.getQuestionVoteDao().getVotesForQuestions(questionIds);
+		Map<Integer, Integer> bestAnswers = daoManager.getAnswerVoteDao().getBestAnswersForQuestions(questionIds);
+		return new BatchRatings(ratings, questionVotes, bestAnswers);
+	}
+
+	/**
+	 * Get the votes of a question
+	 * 
+	 * @param questionId
+	 *            the question's id, one of the loaded questions
+	 * @return the question's votes
+	 */
+	public List<Vote> getQuestionVotes(int questionId) {
+		return m_questionVotes.get(questionId);
+	}
+
+	/**
+	 * Get the net vote count of a question
+	 * 
+	 * @param questionId
+	 *            the question's id, one of the loaded questions
+	 * @return the question's vote count
+	 * @see Question#getVoteCount()
+	 */
+	public double getVoteCount(int questionId) {
+		return Vote.netScore(m_questionVotes.get(questionId));
+	}
+
+	/**
+	 * Get the rating of a question
+	 * 
+	 * @param questionId
+	 *            the question's id, one of the loaded questions
+	 * @return the question's rating
+	 * @see Question#getRating()
+	 */
+	public double getRating(int questionId) {
+		return m_ratings.get(questionId);
+	}
+
+	/**
+	 * Get the best answer of a question
+	 * 
+	 * @param questionId
+	 *            the question's id, one of the loaded questions
+	 * @return id of the best answer, or null if there aren't any
+	 * @see Question#getBestAnswer()
+	 */
+	public Integer getBestAnswer(int questionId) {
+		return m_bestAnswers.get(questionId);
+	}
+
+	/**
+	 * Get the vote status of a user in a list of votes
+	 * 
+	 * @param votes
+	 *            the votes
+	 * @param userId
+	 *            the user's id
+	 * @return 1 if the user voted up, -1 if the user voted down, else - 0
+	 */
+	public static int getVoteStatus(List<Vote> votes, int userId) {
+		for (Vote vote : votes) {
+			if (vote.getVoterId() == userId) {
+				return vote.getType() == VoteType.Up ? 1 : -1;
+			}
+		}
+		return 0;
+	}
+
+}
@@ -0,0 +1,23 @@
+package petoverflow.dto;
+
+import java.util.List;
+
+/**
+ * The PageDto holds a single page of a list, and the cursor the client sends
+ * to get the next page. The cursor is omitted on the last page.
+ *
+ * @param <T>
+ *            the type of the DTOs in the page
+ */
+public class PageDto<T> {
+
+	public PageDto(List<T> items, String nextCursor) {
+		this.items = items;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<T> items;
+
+	public String nextCursor;
+
+}
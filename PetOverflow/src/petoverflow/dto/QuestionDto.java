@@ -2,11 +2,11 @@ package petoverflow.dto;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import petoverflow.dao.DaoManager;
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.Topic;
-import petoverflow.dao.items.Vote;
-import petoverflow.dao.items.Vote.VoteType;
 
 /**
  * The QuestionDto holds information about a question. This object is used to
@@ -17,27 +17,30 @@ public class QuestionDto {
 	public QuestionDto(Question question, int userId) throws Exception {
 		id = question.getId();
 		text = question.getText();
-		authorId = question.getAuthor().getId();
+		authorId = question.getAuthorId();
 		rating = question.getRating();
 		voteCount = question.getVoteCount();
 		timestamp = question.getTimestamp().getTime();
 		bestAnswerId = question.getBestAnswer();
+		topics = topicNames(question.getTopics());
+		voteStatus = BatchRatings.getVoteStatus(
+				question.getDaoManager().getQuestionVoteDao().getQuestionVotes(id), userId);
+	}
 
-		List<Topic> topicsValue = question.getTopics();
-		topics = new ArrayList<String>();
-		for (Topic topic : topicsValue) {
-			topics.add(topic.getName());
-		}
-
-		int voteStatusValue = 0;
-		List<Vote> votes = question.getDaoManager().getQuestionVoteDao().getQuestionVotes(id);
-		for (Vote vote : votes) {
-			if (vote.getVoterId() == userId) {
-				voteStatusValue = vote.getType() == VoteType.Up ? 1 : -1;
-				break;
-			}
-		}
-		voteStatus = voteStatusValue;
+	/**
+	 * Constructor from data loaded for a whole list of questions
+	 */
+	private QuestionDto(Question question, int userId, BatchRatings ratings, List<Topic> questionTopics)
+			throws Exception {
+		id = question.getId();
+		text = question.getText();
+		authorId = question.getAuthorId();
+		rating = ratings.getRating(id);
+		voteCount = ratings.getVoteCount(id);
+		timestamp = question.getTimestamp().getTime();
+		bestAnswerId = ratings.getBestAnswer(id);
+		topics = topicNames(questionTopics);
+		voteStatus = BatchRatings.getVoteStatus(ratings.getQuestionVotes(id), userId);
 	}
 
 	public int id;
@@ -61,6 +64,9 @@ public class QuestionDto {
 	/**
 	 * Creates QuestionDto objects from Question objects, given a user ID
 	 * 
+	 * The data of all questions is loaded together, with the same number of
+	 * queries for any number of questions.
+	 * 
 	 * @param question
 	 *            The questions
 	 * @param userId
@@ -70,10 +76,35 @@ public class QuestionDto {
 	 */
 	public static List<QuestionDto> listToDto(List<Question> questions, int userId) throws Exception {
 		List<QuestionDto> listDto = new ArrayList<QuestionDto>();
+		if (questions.isEmpty()) {
+			return listDto;
+		}
+
+		DaoManager daoManager = questions.get(0).getDaoManager();
+		int[] ids = new int[questions.size()];
+		boolean hydrated = true;
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = questions.get(i).getId();
+			hydrated &= questions.get(i).isHydrated();
+		}
+		if (!hydrated) {
+			questions = daoManager.getQuestionDao().getQuestions(ids);
+		}
+
+		BatchRatings ratings = BatchRatings.load(daoManager, ids);
+		Map<Integer, List<Topic>> topics = daoManager.getTopicDao().getTopicsForQuestions(ids);
 		for (Question question : questions) {
-			listDto.add(new QuestionDto(question, userId));
+			listDto.add(new QuestionDto(question, userId, ratings, topics.get(question.getId())));
 		}
 		return listDto;
 	}
 
+	private static List<String> topicNames(List<Topic> topics) {
+		List<String> names = new ArrayList<String>();
+		for (Topic topic : topics) {
+			names.add(topic.getName());
+		}
+		return names;
+	}
+
 }
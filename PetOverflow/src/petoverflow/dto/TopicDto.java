@@ -1,8 +1,11 @@
 package petoverflow.dto;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import petoverflow.dao.DaoManager;
 import petoverflow.dao.items.Topic;
 
 /**
@@ -16,6 +19,14 @@ public class TopicDto {
 		rating = topic.getRating();
 	}
 
+	/**
+	 * Constructor from an already calculated rating
+	 */
+	TopicDto(String name, double rating) {
+		this.name = name;
+		this.rating = rating;
+	}
+
 	public String name;
 
 	public double rating;
@@ -23,6 +34,9 @@ public class TopicDto {
 	/**
 	 * Creates TopicDto objects from Topic objects, given a user ID
 	 * 
+	 * The ratings of all topics are loaded together, with the same number of
+	 * queries for any number of topics.
+	 * 
 	 * @param topics
 	 *            The topic
 	 * @param userId
@@ -32,10 +46,38 @@ public class TopicDto {
 	 */
 	public static List<TopicDto> listToDto(List<Topic> topics, int userId) throws Exception {
 		List<TopicDto> listDto = new ArrayList<TopicDto>();
+		if (topics.isEmpty()) {
+			return listDto;
+		}
+
+		List<String> names = new ArrayList<String>();
 		for (Topic topic : topics) {
-			listDto.add(new TopicDto(topic));
+			names.add(topic.getName());
+		}
+		Map<String, Double> ratings = loadRatings(topics.get(0).getDaoManager(), names);
+		for (String name : names) {
+			listDto.add(new TopicDto(name, ratings.get(name)));
 		}
 		return listDto;
 	}
 
+	/**
+	 * Load the ratings of many topics together
+	 * 
+	 * @param daoManager
+	 *            the DAO manager to load with
+	 * @param names
+	 *            the topics' names
+	 * @return the rating of each topic, by its name
+	 * @throws Exception
+	 *             if the DAO fails
+	 * @see Topic#getRating()
+	 */
+	static Map<String, Double> loadRatings(DaoManager daoManager, List<String> names) throws Exception {
+		if (names.isEmpty()) {
+			return new HashMap<String, Double>();
+		}
+		return daoManager.getTopicDao().getTopicRatings(names);
+	}
+
 }
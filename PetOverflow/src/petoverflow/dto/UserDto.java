@@ -1,8 +1,12 @@
 package petoverflow.dto;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import petoverflow.dao.DaoManager;
 import petoverflow.dao.items.Topic;
 import petoverflow.dao.items.User;
 
@@ -31,6 +35,21 @@ public class UserDto {
 		expertise = bestTopicsDto;
 	}
 
+	/**
+	 * Constructor from data loaded for a whole list of users
+	 */
+	private UserDto(User user, double rating, List<TopicDto> expertise) throws Exception {
+		id = user.getId();
+		username = user.getUsername();
+		nickname = user.getNickname();
+		description = user.getDescription();
+		photoUrl = user.getPhotoUrl();
+		this.rating = rating;
+		phoneNumber = user.getPhoneNum();
+		wantsSms = user.getWantsSms();
+		this.expertise = expertise;
+	}
+
 	public int id;
 
 	public String username;
@@ -53,14 +72,47 @@ public class UserDto {
 	/**
 	 * Creates UserDto objects from User objects
 	 * 
+	 * The data of all users is loaded together, with the same number of
+	 * queries for any number of users.
+	 * 
 	 * @param users The users
 	 * @return UserDto objects
 	 * @throws Exception
 	 */
 	public static List<UserDto> listToDto(List<User> users) throws Exception {
 		List<UserDto> listDto = new ArrayList<UserDto>();
+		if (users.isEmpty()) {
+			return listDto;
+		}
+
+		DaoManager daoManager = users.get(0).getDaoManager();
+		int[] ids = new int[users.size()];
+		boolean hydrated = true;
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = users.get(i).getId();
+			hydrated &= users.get(i).isHydrated();
+		}
+		if (!hydrated) {
+			users = daoManager.getUserDao().getUsers(ids);
+		}
+
+		// The users' ratings and best topics, and the ratings of the topics
+		Map<Integer, Double> ratings = daoManager.getUserDao().getUserRatings(ids);
+		Map<Integer, List<Topic>> bestTopics = daoManager.getUserDao().getUsersBestTopics(ids, User.BEST_TOPICS_SIZE);
+		Set<String> allBestTopics = new HashSet<String>();
+		for (List<Topic> topics : bestTopics.values()) {
+			for (Topic topic : topics) {
+				allBestTopics.add(topic.getName());
+			}
+		}
+		Map<String, Double> topicRatings = TopicDto.loadRatings(daoManager, new ArrayList<String>(allBestTopics));
+
 		for (User user : users) {
-			listDto.add(new UserDto(user));
+			List<TopicDto> expertise = new ArrayList<TopicDto>();
+			for (Topic topic : bestTopics.get(user.getId())) {
+				expertise.add(new TopicDto(topic.getName(), topicRatings.get(topic.getName())));
+			}
+			listDto.add(new UserDto(user, ratings.get(user.getId()), expertise));
 		}
 		return listDto;
 	}
@@ -1,11 +1,19 @@
 package petoverflow.servlets;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 import petoverflow.authentication.DataValidator;
 import petoverflow.dao.DaoManager;
@@ -21,11 +29,90 @@ public class AuthenticatedHttpServlet extends HttpServlet {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The number of times a request is run when its unit of work deadlocks
+	 */
+	private static final int MAX_ATTEMPTS = 3;
+
 	public AuthenticatedHttpServlet() {
 		super();
 		m_daoManager = DaoManager.getInstance();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * Every request runs in a single unit of work, so all the DAO calls it
+	 * makes share one connection and are committed once at the end. The body
+	 * of the response is held back until the commit succeeded, so a client is
+	 * never told that work which was rolled back is done. A unit of work that
+	 * deadlocked with another request was rolled back entirely, so the request
+	 * is run again instead of failing.
+	 * 
+	 * @see javax.servlet.http.HttpServlet#service(javax.servlet.http.
+	 * HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void service(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		BufferedRequest replayable = new BufferedRequest(request);
+		for (int attempt = 1;; attempt++) {
+			BufferedResponse buffered = new BufferedResponse(response);
+			m_daoManager.beginWork();
+			try {
+				try {
+					super.service(replayable, buffered);
+				} catch (ServletException e) {
+					if (canRetry(attempt, response)) {
+						continue;
+					}
+					throw e;
+				} catch (RuntimeException e) {
+					if (canRetry(attempt, response)) {
+						continue;
+					}
+					throw e;
+				}
+				try {
+					m_daoManager.commitWork();
+				} catch (Exception e) {
+					if (canRetry(attempt, response)) {
+						continue;
+					}
+					e.printStackTrace();
+					if (!response.isCommitted()) {
+						response.reset();
+						response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					}
+					return;
+				}
+			} finally {
+				m_daoManager.endWork();
+			}
+			buffered.send();
+			return;
+		}
+	}
+
+	/**
+	 * Check whether a failed attempt of a request can be run again, and if so
+	 * clear what it set on the response
+	 * 
+	 * @param attempt
+	 *            the number of the failed attempt, starting from 1
+	 * @param response
+	 *            the response to the client
+	 * @return true if the unit of work deadlocked and nothing was sent to the
+	 *         client yet, else - false
+	 */
+	private boolean canRetry(int attempt, HttpServletResponse response) {
+		if (attempt >= MAX_ATTEMPTS || !m_daoManager.isWorkDeadlocked() || response.isCommitted()) {
+			return false;
+		}
+		response.reset();
+		return true;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -294,4 +381,80 @@ public class AuthenticatedHttpServlet extends HttpServlet {
 		}
 	}
 
+	/**
+	 * A request whose body is read once and kept, so that it can be read again
+	 * when the request is run again
+	 */
+	private static class BufferedRequest extends HttpServletRequestWrapper {
+
+		private String m_body;
+
+		BufferedRequest(HttpServletRequest request) {
+			super(request);
+		}
+
+		@Override
+		public BufferedReader getReader() throws IOException {
+			if (m_body == null) {
+				StringBuilder body = new StringBuilder();
+				BufferedReader reader = getRequest().getReader();
+				char[] buffer = new char[4096];
+				int read;
+				while ((read = reader.read(buffer)) != -1) {
+					body.append(buffer, 0, read);
+				}
+				m_body = body.toString();
+			}
+			return new BufferedReader(new StringReader(m_body));
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			throw new IllegalStateException("The body of a request is read with getReader");
+		}
+
+	}
+
+	/**
+	 * A response whose body is written to a buffer, and sent to the client
+	 * only by {@link #send()}. Status, headers and errors go to the client
+	 * response directly.
+	 */
+	private static class BufferedResponse extends HttpServletResponseWrapper {
+
+		private final StringWriter m_body = new StringWriter();
+
+		private final PrintWriter m_writer = new PrintWriter(m_body);
+
+		BufferedResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			return m_writer;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			throw new IllegalStateException("The body of a response is written with getWriter");
+		}
+
+		@Override
+		public void flushBuffer() {
+			// Nothing is sent before the unit of work is committed
+		}
+
+		/**
+		 * Send the buffered body to the client
+		 */
+		void send() throws IOException {
+			m_writer.flush();
+			if (m_body.getBuffer().length() > 0) {
+				getResponse().getWriter().write(m_body.toString());
+			}
+		}
+
+	}
+
 }
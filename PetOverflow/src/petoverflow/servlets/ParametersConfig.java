@@ -15,6 +15,7 @@ public class ParametersConfig {
 	public static final String TOPICS = "topics";
 	public static final String SIZE = "size";
 	public static final String OFFSET = "offset";
+	public static final String CURSOR = "cursor";
 	public static final String USERNAME = "username";
 	public static final String PASSWORD = "password";
 	public static final String NICKNAME = "nickname";
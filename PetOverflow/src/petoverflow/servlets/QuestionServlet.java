@@ -18,7 +18,9 @@ import petoverflow.dao.items.Question;
 import petoverflow.dao.items.User;
 import petoverflow.dao.items.Vote;
 import petoverflow.dao.items.Vote.VoteType;
+import petoverflow.dao.utility.Page;
 import petoverflow.dto.AnswerDto;
+import petoverflow.dto.PageDto;
 import petoverflow.dto.QuestionDto;
 
 /**
@@ -246,14 +248,27 @@ public class QuestionServlet extends AuthenticatedHttpServlet {
 			throws ServletException, IOException {
 		HashMap<String, Object> params = ServletUtility.getRequestParameters(request);
 		int size = ((Double) params.get(ParametersConfig.SIZE)).intValue();
-		int offset = ((Double) params.get(ParametersConfig.OFFSET)).intValue();
 
-		List<QuestionDto> questionsDto;
+		String cursor = (String) params.get(ParametersConfig.CURSOR);
+		if (!ServletUtility.isValidCursor(cursor)) {
+			// A malformed cursor is the client's error
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		Object questionsDto;
 		try {
-			List<Question> newestQuestions = m_daoManager.getQuestionDao().getNewestQuestions(size, offset);
-			questionsDto = QuestionDto.listToDto(newestQuestions, user.getId());
+			if (params.containsKey(ParametersConfig.CURSOR)) {
+				Page<Question> page = m_daoManager.getQuestionDao().getNewestQuestions(size, cursor);
+				questionsDto = new PageDto<QuestionDto>(QuestionDto.listToDto(page.getItems(), user.getId()),
+						page.getNextCursor());
+			} else {
+				int offset = ((Double) params.get(ParametersConfig.OFFSET)).intValue();
+				List<Question> newestQuestions = m_daoManager.getQuestionDao().getNewestQuestions(size, offset);
+				questionsDto = QuestionDto.listToDto(newestQuestions, user.getId());
+			}
 		} catch (Exception e) {
-			throw new ServletException(e);
+			throw new ServletException(e.getMessage());
 		}
 
 		response.setContentType("application/json");
@@ -266,12 +281,25 @@ public class QuestionServlet extends AuthenticatedHttpServlet {
 			throws ServletException, IOException {
 		HashMap<String, Object> params = ServletUtility.getRequestParameters(request);
 		int size = ((Double) params.get(ParametersConfig.SIZE)).intValue();
-		int offset = ((Double) params.get(ParametersConfig.OFFSET)).intValue();
 
-		List<QuestionDto> questionsDto;
+		String cursor = (String) params.get(ParametersConfig.CURSOR);
+		if (!ServletUtility.isValidCursor(cursor)) {
+			// A malformed cursor is the client's error
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		Object questionsDto;
 		try {
-			List<Question> bestQuestions = m_daoManager.getQuestionDao().getBestQuestions(size, offset);
-			questionsDto = QuestionDto.listToDto(bestQuestions, user.getId());
+			if (params.containsKey(ParametersConfig.CURSOR)) {
+				Page<Question> page = m_daoManager.getQuestionDao().getBestQuestions(size, cursor);
+				questionsDto = new PageDto<QuestionDto>(QuestionDto.listToDto(page.getItems(), user.getId()),
+						page.getNextCursor());
+			} else {
+				int offset = ((Double) params.get(ParametersConfig.OFFSET)).intValue();
+				List<Question> bestQuestions = m_daoManager.getQuestionDao().getBestQuestions(size, offset);
+				questionsDto = QuestionDto.listToDto(bestQuestions, user.getId());
+			}
 		} catch (Exception e1) {
 			throw new ServletException(e1.getMessage());
 		}
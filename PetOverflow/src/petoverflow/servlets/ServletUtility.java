@@ -11,6 +11,8 @@ import javax.servlet.http.HttpServletRequest;
 
 import com.google.gson.Gson;
 
+import petoverflow.dao.utility.Cursor;
+
 /**
  * Utilities used when communication with the client side
  */
@@ -59,6 +61,21 @@ public class ServletUtility {
 		}
 	}
 
+	/**
+	 * Checks whether a page cursor sent by the client is well formed
+	 * 
+	 * @param cursor The cursor, null or empty for the first page
+	 * @return true if the DAOs can decode the cursor, else - false
+	 */
+	public static boolean isValidCursor(String cursor) {
+		try {
+			Cursor.decode(cursor);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Returns the requested path of the user
 	 * 
@@ -16,6 +16,8 @@ import com.google.gson.Gson;
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.Topic;
 import petoverflow.dao.items.User;
+import petoverflow.dao.utility.Page;
+import petoverflow.dto.PageDto;
 import petoverflow.dto.QuestionDto;
 import petoverflow.dto.TopicDto;
 
@@ -129,12 +131,26 @@ public class TopicServlet extends AuthenticatedHttpServlet {
 			String topic) throws ServletException, IOException {
 		HashMap<String, Object> params = ServletUtility.getRequestParameters(request);
 		int size = (((Double) params.get(ParametersConfig.SIZE))).intValue();
-		int offset = ((Double) (params.get(ParametersConfig.OFFSET))).intValue();
 
-		List<QuestionDto> questionsDto;
+		String cursor = (String) params.get(ParametersConfig.CURSOR);
+		if (!ServletUtility.isValidCursor(cursor)) {
+			// A malformed cursor is the client's error
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		Object questionsDto;
 		try {
-			List<Question> bestQuestions = m_daoManager.getTopicDao().getBestQuestionsByTopic(topic, size, offset);
-			questionsDto = QuestionDto.listToDto(bestQuestions, user.getId());
+			if (params.containsKey(ParametersConfig.CURSOR)) {
+				Page<Question> page = m_daoManager.getTopicDao().getBestQuestionsByTopic(topic, size, cursor);
+				questionsDto = new PageDto<QuestionDto>(QuestionDto.listToDto(page.getItems(), user.getId()),
+						page.getNextCursor());
+			} else {
+				int offset = ((Double) (params.get(ParametersConfig.OFFSET))).intValue();
+				List<Question> bestQuestions = m_daoManager.getTopicDao().getBestQuestionsByTopic(topic, size,
+						offset);
+				questionsDto = QuestionDto.listToDto(bestQuestions, user.getId());
+			}
 		} catch (Exception e) {
 			throw new ServletException(e.getMessage());
 		}
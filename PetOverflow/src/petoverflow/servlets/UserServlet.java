@@ -18,7 +18,9 @@ import petoverflow.Utility;
 import petoverflow.dao.items.Answer;
 import petoverflow.dao.items.Question;
 import petoverflow.dao.items.User;
+import petoverflow.dao.utility.Page;
 import petoverflow.dto.AnswerDto;
+import petoverflow.dto.PageDto;
 import petoverflow.dto.QuestionDto;
 import petoverflow.dto.UserDto;
 
@@ -183,12 +185,24 @@ public class UserServlet extends AuthenticatedHttpServlet {
 			throws IOException, ServletException {
 		HashMap<String, Object> params = ServletUtility.getRequestParameters(request);
 		int size = (((Double) params.get(ParametersConfig.SIZE))).intValue();
-		int offset = ((Double) (params.get(ParametersConfig.OFFSET))).intValue();
 
-		List<UserDto> leadersDto;
+		String cursor = (String) params.get(ParametersConfig.CURSOR);
+		if (!ServletUtility.isValidCursor(cursor)) {
+			// A malformed cursor is the client's error
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		Object leadersDto;
 		try {
-			List<User> leaders = m_daoManager.getUserDao().getMostRatedUsers(size, offset);
-			leadersDto = UserDto.listToDto(leaders);
+			if (params.containsKey(ParametersConfig.CURSOR)) {
+				Page<User> page = m_daoManager.getUserDao().getMostRatedUsers(size, cursor);
+				leadersDto = new PageDto<UserDto>(UserDto.listToDto(page.getItems()), page.getNextCursor());
+			} else {
+				int offset = ((Double) (params.get(ParametersConfig.OFFSET))).intValue();
+				List<User> leaders = m_daoManager.getUserDao().getMostRatedUsers(size, offset);
+				leadersDto = UserDto.listToDto(leaders);
+			}
 		} catch (Exception e1) {
 			e1.printStackTrace();
 			throw new ServletException(e1.getMessage());
@@ -262,11 +276,9 @@ public class UserServlet extends AuthenticatedHttpServlet {
 			e1.printStackTrace();
 			throw new ServletException(e1.getMessage());
 		}
-		Utility.sortByTimestamp(answers);
-		List<Answer> releventAnswers = answers.subList(0, Math.min(size, answers.size()));
 		List<AnswerDto> releventAnswersDto;
 		try {
-			releventAnswersDto = AnswerDto.listToDto(releventAnswers, user.getId());
+			releventAnswersDto = AnswerDto.listToDto(answers, user.getId());
 		} catch (Exception e) {
 			throw new ServletException(e.getCause());
 		}
@@ -290,8 +302,6 @@ public class UserServlet extends AuthenticatedHttpServlet {
 			e1.printStackTrace();
 			throw new ServletException(e1.getMessage());
 		}
-		Utility.sortByTimestamp(questions);
-		Utility.cutList(questions, size, offset);
 		List<QuestionDto> releventAnswersDto;
 		try {
 			releventAnswersDto = QuestionDto.listToDto(questions, user.getId());